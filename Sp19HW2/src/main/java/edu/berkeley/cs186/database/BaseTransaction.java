@@ -2,14 +2,17 @@ package edu.berkeley.cs186.database;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.index.BPlusTreeStats;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.RecordIdBitmap;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -38,6 +41,68 @@ public abstract class BaseTransaction implements AutoCloseable {
     public abstract void createTableWithIndices(Schema s, String tableName,
                                 List<String> indexColumns) throws DatabaseException;
 
+    /**
+     * Create an index on a column of an existing table, bulk loading it from the
+     * table's sorted (key, rid) pairs with the given leaf fill factor.
+     *
+     * @param tableName the name of the table
+     * @param columnName the column to index
+     * @param fillFactor how full to make each leaf, in (0, 1]
+     * @throws DatabaseException
+     */
+    public abstract void createIndex(String tableName, String columnName,
+                                     float fillFactor) throws DatabaseException;
+
+    /**
+     * Create an index on a column of an existing table that also stores the
+     * values of includedColumns with every record id, bulk loading it with the
+     * given leaf fill factor.
+     *
+     * @param tableName the name of the table
+     * @param columnName the column to index
+     * @param includedColumns the columns whose values to store in the index
+     * @param fillFactor how full to make each leaf, in (0, 1]
+     * @throws DatabaseException
+     */
+    public abstract void createIndex(String tableName, String columnName,
+                                     List<String> includedColumns,
+                                     float fillFactor) throws DatabaseException;
+
+    /**
+     * Create an index on several columns of an existing table, whose keys are
+     * ordered lexicographically by the columns, bulk loading it with the given
+     * leaf fill factor.
+     *
+     * @param tableName the name of the table
+     * @param columnNames the columns to index, in order
+     * @param fillFactor how full to make each leaf, in (0, 1]
+     * @throws DatabaseException
+     */
+    public abstract void createCompositeIndex(String tableName, List<String> columnNames,
+                                              float fillFactor) throws DatabaseException;
+
+    /**
+     * Create a hash index on a column of an existing table, which answers
+     * equality lookups on the column.
+     *
+     * @param tableName the name of the table
+     * @param columnName the column to index
+     * @throws DatabaseException
+     */
+    public abstract void createHashIndex(String tableName,
+                                         String columnName) throws DatabaseException;
+
+    /**
+     * Rebuild the index on a column, repacking its leaves to fillFactor.
+     *
+     * @param tableName the name of the table
+     * @param columnName the indexed column
+     * @param fillFactor how full to pack the leaves, in (0, 1]
+     * @throws DatabaseException
+     */
+    public abstract void rebuildIndex(String tableName, String columnName,
+                                      float fillFactor) throws DatabaseException;
+
     /**
      * Delete a table in this database.
      *
@@ -97,6 +162,15 @@ public abstract class BaseTransaction implements AutoCloseable {
      */
     public abstract boolean indexExists(String tableName, String columnName);
 
+    /**
+     * Perform a check to see if the database has a hash index on this (table,column).
+     *
+     * @param tableName the name of the table
+     * @param columnName the name of the column
+     * @return boolean if the hash index exists
+     */
+    public abstract boolean hashIndexExists(String tableName, String columnName);
+
     public abstract Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException;
 
     public abstract Iterator<Record> sortedScanFrom(String tableName, String columnName,
@@ -105,6 +179,33 @@ public abstract class BaseTransaction implements AutoCloseable {
     public abstract Iterator<Record> lookupKey(String tableName, String columnName,
                                DataBox key) throws DatabaseException;
 
+    public abstract List<List<RecordId>> lookupKeys(String tableName, String columnName,
+            List<DataBox> keys) throws DatabaseException;
+
+    public abstract Iterator<Record> sortedScanRange(String tableName, String columnName,
+            Optional<DataBox> lo, boolean loInclusive, Optional<DataBox> hi, boolean hiInclusive,
+            boolean descending) throws DatabaseException;
+
+    public abstract Iterator<Record> indexOnlyScanRange(String tableName, String columnName,
+            Optional<DataBox> lo, boolean loInclusive, Optional<DataBox> hi, boolean hiInclusive,
+            boolean descending) throws DatabaseException;
+
+    public abstract List<String> getIndexIncludedColumns(String tableName,
+            String columnName) throws DatabaseException;
+
+    public abstract Iterator<Record> sortedScanPrefix(String tableName, List<String> columnNames,
+            List<DataBox> prefix, Optional<DataBox> lo, boolean loInclusive,
+            Optional<DataBox> hi, boolean hiInclusive) throws DatabaseException;
+
+    public abstract List<List<String>> getCompositeIndices(String tableName);
+
+    public abstract RecordIdBitmap getRecordIdBitmap(String tableName, String columnName,
+            Optional<DataBox> lo, boolean loInclusive, Optional<DataBox> hi,
+            boolean hiInclusive) throws DatabaseException;
+
+    public abstract Iterator<Record> bitmapHeapScan(String tableName,
+            RecordIdBitmap bitmap) throws DatabaseException;
+
     public abstract boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException;
 
     public abstract RecordId addRecord(String tableName, List<DataBox> values) throws DatabaseException;
@@ -150,6 +251,15 @@ public abstract class BaseTransaction implements AutoCloseable {
 
     public abstract int getNumIndexPages(String tableName, String columnName) throws DatabaseException;
 
+    public abstract int getNumIndexPages(String tableName,
+                                         List<String> columnNames) throws DatabaseException;
+
+    public abstract double getHashIndexBucketLength(String tableName,
+            String columnName) throws DatabaseException;
+
+    public abstract BPlusTreeStats getIndexStats(String tableName,
+            String columnName) throws DatabaseException;
+
     public abstract Schema getSchema(String tableName) throws DatabaseException;
 
     public abstract Schema getFullyQualifiedSchema(String tableName) throws DatabaseException;
@@ -11,16 +11,20 @@ import java.util.concurrent.locks.ReentrantLock;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.*;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeException;
+import edu.berkeley.cs186.database.index.BPlusTreeStats;
+import edu.berkeley.cs186.database.index.HashIndex;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryPlanException;
 import edu.berkeley.cs186.database.query.SortOperator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.RecordIdBitmap;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
@@ -31,12 +35,16 @@ public class Database {
     private Map<String, Table> tableLookup;
     private Map<String, BPlusTree> indexLookup;
     private Map<String, List<String>> tableIndices;
+    private Map<String, HashIndex> hashIndexLookup;
     private Map<Long, Transaction> activeTransactions;
     private long numTransactions;
     private String fileDir;
     private LockManager lockManager;
     private int numMemoryPages;
 
+    // The leaf fill factor used by createIndex when none is given.
+    public static final float DEFAULT_INDEX_FILL_FACTOR = 0.75f;
+
     /**
      * Creates a new database with locking disabled.
      *
@@ -74,6 +82,7 @@ public class Database {
         tableLookup = new ConcurrentHashMap<>();
         indexLookup = new ConcurrentHashMap<>();
         tableIndices = new ConcurrentHashMap<>();
+        hashIndexLookup = new ConcurrentHashMap<>();
         activeTransactions = new ConcurrentHashMap<>();
 
         File dir = new File(fileDir);
@@ -102,12 +111,19 @@ public class Database {
                     int lastIndex = fName.lastIndexOf(BPlusTree.FILENAME_EXTENSION);
                     String indexName = fName.substring(0, lastIndex);
                     String tableName = indexName.split(",", 2)[0];
-                    indexLookup.put(indexName, new BPlusTree(f.toString(), getIndexContext(indexName),
-                            initTransaction));
+                    BPlusTree index = new BPlusTree(f.toString(), getIndexContext(indexName),
+                                                    initTransaction);
+                    index.setRebalanceOnRemove(true);
+                    indexLookup.put(indexName, index);
                     if (!tableIndices.containsKey(tableName)) {
                         tableIndices.put(tableName, new ArrayList<>());
                     }
                     tableIndices.get(tableName).add(indexName);
+                } else if (fName.endsWith(HashIndex.FILENAME_EXTENSION)) {
+                    int lastIndex = fName.lastIndexOf(HashIndex.FILENAME_EXTENSION);
+                    String indexName = fName.substring(0, lastIndex);
+                    hashIndexLookup.put(indexName, new HashIndex(f.toString(),
+                                        getIndexContext(indexName), initTransaction));
                 }
             }
         }
@@ -128,9 +144,14 @@ public class Database {
                 t.close();
             }
 
+            for (HashIndex h : this.hashIndexLookup.values()) {
+                h.close();
+            }
+
             this.tableLookup.clear();
             this.indexLookup.clear();
             this.tableIndices.clear();
+            this.hashIndexLookup.clear();
         }
     }
 
@@ -146,6 +167,15 @@ public class Database {
         return lockManager.databaseContext().childContext("index-" + index);
     }
 
+    /**
+     * Returns the name of the index on columnNames of tableName. An index on a
+     * column c of a table t is named "t,c", and an index on the columns c1,
+     * ..., cn (see Transaction.createCompositeIndex) is named "t,c1+...+cn".
+     */
+    private static String indexName(String tableName, List<String> columnNames) {
+        return tableName + "," + String.join("+", columnNames);
+    }
+
     /**
      * Start a new transaction.
      *
@@ -169,7 +199,9 @@ public class Database {
         long transNum;
         boolean active;
         boolean blocked;
-        HashMap<String, Table> tempTables;
+        // Operators running on the worker threads of an ExchangeOperator may
+        // create and delete temporary tables concurrently.
+        Map<String, Table> tempTables;
         HashMap<String, String> aliasMaps;
         long tempTableCounter;
 
@@ -180,7 +212,7 @@ public class Database {
             this.transNum = tNum;
             this.active = true;
             this.blocked = false;
-            this.tempTables = new HashMap<String, Table>();
+            this.tempTables = new ConcurrentHashMap<String, Table>();
             this.aliasMaps = new HashMap<String, String>();
             this.tempTableCounter = 0;
         }
@@ -260,12 +292,14 @@ public class Database {
             for (int i : schemaColIndex) {
                 String colName = schemaColNames.get(i);
                 Type colType = schemaColType.get(i);
-                String indexName = tableName + "," + colName;
+                String indexName = indexName(tableName, Collections.singletonList(colName));
                 Path p = Paths.get(Database.this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
                 LockContext indexContext = getIndexContext(indexName);
                 try {
-                    Database.this.indexLookup.put(indexName, new BPlusTree(p.toString(), colType,
-                                                  BPlusTree.maxOrder(Page.pageSize, colType), indexContext, this));
+                    BPlusTree index = new BPlusTree(p.toString(), colType,
+                                                    BPlusTree.maxOrder(Page.pageSize, colType), false, indexContext, this);
+                    index.setRebalanceOnRemove(true);
+                    Database.this.indexLookup.put(indexName, index);
                     Database.this.tableIndices.get(tableName).add(indexName);
                 } catch (BPlusTreeException e) {
                     throw new DatabaseException(e.getMessage());
@@ -273,6 +307,239 @@ public class Database {
             }
         }
 
+        /**
+         * Create an index on a column of an existing table, filling its leaves
+         * to DEFAULT_INDEX_FILL_FACTOR.
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @throws DatabaseException
+         */
+        public void createIndex(String tableName, String columnName) throws DatabaseException {
+            createIndex(tableName, columnName, DEFAULT_INDEX_FILL_FACTOR);
+        }
+
+        /**
+         * Create an index on a column of an existing table. Instead of inserting
+         * the table's records into the index one at a time, the (key, rid)
+         * pairs of the column are sorted in parallel (see IndexBuilder) and bulk
+         * loaded, so the index is built bottom-up with every leaf fillFactor
+         * full.
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @param fillFactor how full to make each leaf, in (0, 1]
+         * @throws DatabaseException
+         */
+        public void createIndex(String tableName, String columnName,
+                                float fillFactor) throws DatabaseException {
+            createIndex(tableName, columnName, Collections.emptyList(), fillFactor);
+        }
+
+        /**
+         * Create a covering index on a column of an existing table, filling its
+         * leaves to DEFAULT_INDEX_FILL_FACTOR. See createIndex below.
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @param includedColumns the columns whose values to store in the index
+         * @throws DatabaseException
+         */
+        public void createIndex(String tableName, String columnName,
+                                List<String> includedColumns) throws DatabaseException {
+            createIndex(tableName, columnName, includedColumns, DEFAULT_INDEX_FILL_FACTOR);
+        }
+
+        /**
+         * Create an index on a column of an existing table that also stores, with
+         * every record id, the values of includedColumns in that record. A query
+         * that only reads columnName and includedColumns can then be answered from
+         * the index alone (see IndexOnlyScanOperator). The index is bulk loaded
+         * as described above.
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @param includedColumns the columns whose values to store in the index
+         * @param fillFactor how full to make each leaf, in (0, 1]
+         * @throws DatabaseException
+         */
+        public void createIndex(String tableName, String columnName, List<String> includedColumns,
+                                float fillFactor) throws DatabaseException {
+            buildIndex(tableName, Collections.singletonList(columnName), includedColumns, fillFactor);
+        }
+
+        /**
+         * Create an index on several columns of an existing table, filling its
+         * leaves to DEFAULT_INDEX_FILL_FACTOR. See createCompositeIndex below.
+         *
+         * @param tableName the name of the table
+         * @param columnNames the columns to index, in order
+         * @throws DatabaseException
+         */
+        public void createCompositeIndex(String tableName,
+                                         List<String> columnNames) throws DatabaseException {
+            createCompositeIndex(tableName, columnNames, DEFAULT_INDEX_FILL_FACTOR);
+        }
+
+        /**
+         * Create an index on several columns of an existing table. Its keys are
+         * CompositeDataBoxes of the values of columnNames, ordered by the first
+         * column, then by the second, and so on, so the index answers lookups
+         * of any prefix of the columns, optionally with a range on the next
+         * column (see sortedScanPrefix). The index is bulk loaded as described
+         * above.
+         *
+         * @param tableName the name of the table
+         * @param columnNames the columns to index, in order
+         * @param fillFactor how full to make each leaf, in (0, 1]
+         * @throws DatabaseException
+         */
+        public void createCompositeIndex(String tableName, List<String> columnNames,
+                                         float fillFactor) throws DatabaseException {
+            if (columnNames.size() < 2) {
+                throw new DatabaseException("Composite index needs at least two columns");
+            }
+            buildIndex(tableName, columnNames, Collections.emptyList(), fillFactor);
+        }
+
+        private void buildIndex(String tableName, List<String> columnNames,
+                                List<String> includedColumns,
+                                float fillFactor) throws DatabaseException {
+            assert(this.active);
+
+            if (!Database.this.tableLookup.containsKey(tableName)) {
+                throw new DatabaseException("Table: " + tableName + " does not exist");
+            }
+            Table tab = Database.this.tableLookup.get(tableName);
+            Schema s = tab.getSchema();
+            List<Integer> columnIndices = new ArrayList<>();
+            List<Type> keyTypes = new ArrayList<>();
+            for (String col : columnNames) {
+                int i = s.getFieldNames().indexOf(col);
+                if (i == -1) {
+                    throw new DatabaseException("Column desired for index does not exist");
+                }
+                if (columnIndices.contains(i)) {
+                    throw new DatabaseException("Column desired for index has been duplicated");
+                }
+                columnIndices.add(i);
+                keyTypes.add(s.getFieldTypes().get(i));
+            }
+            String indexName = indexName(tableName, columnNames);
+            if (Database.this.indexLookup.containsKey(indexName)) {
+                throw new DatabaseException("Index already exists");
+            }
+            if (fillFactor <= 0 || fillFactor > 1) {
+                throw new DatabaseException("Fill factor must be in (0, 1]");
+            }
+            List<Type> includedTypes = new ArrayList<>();
+            for (String col : includedColumns) {
+                int i = s.getFieldNames().indexOf(col);
+                if (i == -1) {
+                    throw new DatabaseException("Included column " + col + " does not exist");
+                }
+                if (columnIndices.contains(i)) {
+                    throw new DatabaseException("Column " + col + " is already in the index");
+                }
+                columnIndices.add(i);
+                includedTypes.add(s.getFieldTypes().get(i));
+            }
+            Schema includedSchema = new Schema(new ArrayList<>(includedColumns), includedTypes);
+
+            Type keyType = keyTypes.size() == 1 ? keyTypes.get(0) : Type.compositeType(keyTypes);
+            int order = BPlusTree.maxOrder(Page.pageSize, keyType, includedSchema);
+            if (order < 1) {
+                throw new DatabaseException("Included columns are too large to fit in an index");
+            }
+            Path p = Paths.get(Database.this.fileDir, indexName + BPlusTree.FILENAME_EXTENSION);
+            IndexBuilder builder = new IndexBuilder(this, tab, columnIndices, columnNames.size(),
+                                                    getNumMemoryPages(),
+                                                    Paths.get(Database.this.fileDir, "temp"));
+            BPlusTree index;
+            try {
+                Iterator<Pair<Record, RecordId>> data = builder.sort();
+                index = new BPlusTree(p.toString(), keyType, order, false, includedSchema,
+                                      getIndexContext(indexName), this);
+                index.bulkLoadRecords(this, data, fillFactor);
+                index.setRebalanceOnRemove(true);
+            } catch (BPlusTreeException e) {
+                throw new DatabaseException(e.getMessage());
+            } finally {
+                builder.close();
+            }
+            Database.this.indexLookup.put(indexName, index);
+            Database.this.tableIndices.get(tableName).add(indexName);
+        }
+
+        /**
+         * Create a hash index on a column of an existing table. A hash index
+         * only answers equality predicates, but it answers them by reading a
+         * single bucket, usually one page, instead of a path through a B+ tree
+         * (see HashIndex). Once created, it is used for every lookupKey on
+         * columnName, even if the column also has a B+ tree index.
+         *
+         * @param tableName the name of the table
+         * @param columnName the column to index
+         * @throws DatabaseException
+         */
+        public void createHashIndex(String tableName, String columnName) throws DatabaseException {
+            assert(this.active);
+
+            if (!Database.this.tableLookup.containsKey(tableName)) {
+                throw new DatabaseException("Table: " + tableName + " does not exist");
+            }
+            Table tab = Database.this.tableLookup.get(tableName);
+            Schema s = tab.getSchema();
+            int column = s.getFieldNames().indexOf(columnName);
+            if (column == -1) {
+                throw new DatabaseException("Column desired for index does not exist");
+            }
+            String indexName = indexName(tableName, Collections.singletonList(columnName));
+            if (Database.this.hashIndexLookup.containsKey(indexName)) {
+                throw new DatabaseException("Index already exists");
+            }
+
+            Path p = Paths.get(Database.this.fileDir, indexName + HashIndex.FILENAME_EXTENSION);
+            HashIndex index;
+            try {
+                index = new HashIndex(p.toString(), s.getFieldTypes().get(column),
+                                      getIndexContext(indexName), this);
+            } catch (IllegalArgumentException e) {
+                throw new DatabaseException(e.getMessage());
+            }
+            Iterator<Page> pages = tab.getAllocator().iterator(this);
+            pages.next(); // Skip the header page.
+            while (pages.hasNext()) {
+                for (Pair<RecordId, Record> r : tab.getPageRecords(this, pages.next())) {
+                    index.put(this, r.getSecond().getValues().get(column), r.getFirst());
+                }
+            }
+            Database.this.hashIndexLookup.put(indexName, index);
+        }
+
+        /**
+         * Rebuild the index on columnName, repacking its leaves to fillFactor
+         * (see BPlusTree.rebuild). Queries may keep scanning the index while
+         * it is rebuilt.
+         *
+         * @param tableName the name of the table
+         * @param columnName the indexed column
+         * @param fillFactor how full to pack the leaves, in (0, 1]
+         * @throws DatabaseException
+         */
+        public void rebuildIndex(String tableName, String columnName,
+                                 float fillFactor) throws DatabaseException {
+            assert(this.active);
+            if (fillFactor <= 0 || fillFactor > 1) {
+                throw new DatabaseException("Fill factor must be in (0, 1]");
+            }
+            try {
+                this.resolveIndexFromName(tableName, columnName).getSecond().rebuild(this, fillFactor);
+            } catch (BPlusTreeException e) {
+                throw new DatabaseException(e.getMessage());
+            }
+        }
+
         /**
          * Delete a table in this database.
          *
@@ -284,8 +551,8 @@ public class Database {
                 return false;
             }
 
-            Database.this.tableLookup.get(tableName).close();
-            Database.this.tableLookup.remove(tableName);
+            Table tab = Database.this.tableLookup.remove(tableName);
+            tab.close();
 
             File f = new File(fileDir + tableName + Table.FILENAME_EXTENSION);
             f.delete();
@@ -302,6 +569,15 @@ public class Database {
             }
             Database.this.tableIndices.remove(tableName);
 
+            for (String column : tab.getSchema().getFieldNames()) {
+                String indexName = indexName(tableName, Collections.singletonList(column));
+                HashIndex index = Database.this.hashIndexLookup.remove(indexName);
+                if (index != null) {
+                    index.close();
+                    new File(fileDir + indexName + HashIndex.FILENAME_EXTENSION).delete();
+                }
+            }
+
             return true;
         }
 
@@ -339,7 +615,7 @@ public class Database {
             }
         }
 
-        public String createTempTable(Schema schema) throws DatabaseException {
+        public synchronized String createTempTable(Schema schema) throws DatabaseException {
             assert(this.active);
             String tempTableName = "tempTable" + tempTableCounter;
             tempTableCounter++;
@@ -347,7 +623,8 @@ public class Database {
             return tempTableName;
         }
 
-        public void createTempTable(Schema schema, String tempTableName) throws DatabaseException {
+        public synchronized void createTempTable(Schema schema,
+                String tempTableName) throws DatabaseException {
             assert(this.active);
 
             if (Database.this.tableLookup.containsKey(tempTableName)
@@ -376,6 +653,16 @@ public class Database {
             return true;
         }
 
+        /** Returns whether columnName of tableName has a hash index. */
+        public boolean hashIndexExists(String tableName, String columnName) {
+            try {
+                resolveHashIndexFromName(tableName, columnName);
+            } catch (DatabaseException e) {
+                return false;
+            }
+            return true;
+        }
+
         public Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException {
             Table tab = getTable(tableName);
             try {
@@ -399,14 +686,158 @@ public class Database {
             return new RecordIterator(this, tab, index.getSecond().scanGreaterEqual(this, startValue));
         }
 
+        /**
+         * Returns the records of tableName whose columnName lies between lo
+         * and hi, in ascending (or descending) order of columnName, using the
+         * index on columnName. See BPlusTree.scanRange.
+         */
+        public Iterator<Record> sortedScanRange(String tableName, String columnName,
+                                                Optional<DataBox> lo, boolean loInclusive,
+                                                Optional<DataBox> hi, boolean hiInclusive,
+                                                boolean descending) throws DatabaseException {
+            Table tab = getTable(tableName);
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            return new RecordIterator(this, tab, index.getSecond().scanRange(this, lo, loInclusive,
+                                      hi, hiInclusive, descending));
+        }
+
+        /**
+         * Like sortedScanRange, but reads the index on columnName alone: returns
+         * for each matching record a Record holding its columnName followed by
+         * its included columns (see getIndexIncludedColumns).
+         */
+        public Iterator<Record> indexOnlyScanRange(String tableName, String columnName,
+                                                   Optional<DataBox> lo, boolean loInclusive,
+                                                   Optional<DataBox> hi, boolean hiInclusive,
+                                                   boolean descending) throws DatabaseException {
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            return index.getSecond().scanRangeRecords(this, lo, loInclusive, hi, hiInclusive,
+                                                      descending);
+        }
+
+        /**
+         * Returns the records of tableName whose values of the first columns of
+         * the composite index on columnNames are `prefix`, and whose value of
+         * the next column lies between lo and hi, in ascending order of the
+         * index's key. Either bound may be empty. For example, with an index
+         * on (a, b, c), sortedScanPrefix(t, [a, b, c], [1], Optional.of(2),
+         * true, Optional.empty(), true) returns the records with a = 1 and
+         * b >= 2. See BPlusTree.scanPrefix.
+         */
+        public Iterator<Record> sortedScanPrefix(String tableName, List<String> columnNames,
+                List<DataBox> prefix, Optional<DataBox> lo, boolean loInclusive,
+                Optional<DataBox> hi, boolean hiInclusive) throws DatabaseException {
+            Table tab = getTable(tableName);
+            BPlusTree tree = resolveIndexFromNames(tableName, columnNames).getSecond();
+            try {
+                return new RecordIterator(this, tab, tree.scanPrefix(this, prefix, lo, loInclusive,
+                                          hi, hiInclusive, false));
+            } catch (IllegalArgumentException e) {
+                throw new DatabaseException(e.getMessage());
+            }
+        }
+
+        /**
+         * Returns the (unqualified) names of the columns of each composite
+         * index on tableName, in the order they are indexed.
+         */
+        public List<List<String>> getCompositeIndices(String tableName) {
+            List<List<String>> indices = new ArrayList<>();
+            tableName = resolveTableName(tableName);
+            for (String indexName : Database.this.tableIndices.getOrDefault(tableName,
+                    Collections.emptyList())) {
+                String columns = indexName.split(",", 2)[1];
+                if (columns.contains("+")) {
+                    indices.add(Arrays.asList(columns.split("\\+")));
+                }
+            }
+            return indices;
+        }
+
+        /**
+         * Returns the (unqualified) names of the columns included in the index on
+         * columnName, which is empty if the index doesn't include any.
+         */
+        public List<String> getIndexIncludedColumns(String tableName,
+                                                    String columnName) throws DatabaseException {
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            return index.getSecond().getIncludedSchema().getFieldNames();
+        }
+
+        /**
+         * Returns the records of tableName whose columnName is key, using the
+         * hash index on columnName if there is one, and the B+ tree index on
+         * columnName otherwise.
+         */
         public Iterator<Record> lookupKey(String tableName, String columnName,
                                           DataBox key) throws DatabaseException {
             Table tab = getTable(tableName);
+            if (hashIndexExists(tableName, columnName)) {
+                HashIndex index = resolveHashIndexFromName(tableName, columnName);
+                return new RecordIterator(this, tab, index.scanEqual(this, key));
+            }
             Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
             return new RecordIterator(this, tab, index.getSecond().scanEqual(this, key));
         }
 
+        /**
+         * Returns, for every key of keys, the record ids of the records of
+         * tableName whose columnName is that key. A B+ tree index answers the
+         * whole batch in one pass over its leaves (see BPlusTree.getBatch).
+         */
+        public List<List<RecordId>> lookupKeys(String tableName, String columnName,
+                                               List<DataBox> keys) throws DatabaseException {
+            if (hashIndexExists(tableName, columnName)) {
+                HashIndex index = resolveHashIndexFromName(tableName, columnName);
+                List<List<RecordId>> rids = new ArrayList<>(keys.size());
+                for (DataBox key : keys) {
+                    List<RecordId> keyRids = new ArrayList<>();
+                    index.scanEqual(this, key).forEachRemaining(keyRids::add);
+                    rids.add(keyRids);
+                }
+                return rids;
+            }
+            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            return index.getSecond().getBatch(this, keys);
+        }
+
+        /**
+         * Returns the record ids of the records of tableName whose columnName
+         * lies between lo and hi, collected into a bitmap, using the index on
+         * columnName. Either bound may be empty. An equality range (lo and hi
+         * equal and inclusive) uses the hash index on columnName if there is
+         * one.
+         */
+        public RecordIdBitmap getRecordIdBitmap(String tableName, String columnName,
+                                                Optional<DataBox> lo, boolean loInclusive,
+                                                Optional<DataBox> hi, boolean hiInclusive) throws DatabaseException {
+            Iterator<RecordId> rids;
+            boolean equality = lo.isPresent() && hi.isPresent() && loInclusive && hiInclusive &&
+                               lo.get().equals(hi.get());
+            if (equality && hashIndexExists(tableName, columnName)) {
+                rids = resolveHashIndexFromName(tableName, columnName).scanEqual(this, lo.get());
+            } else {
+                Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+                rids = index.getSecond().scanRange(this, lo, loInclusive, hi, hiInclusive, false);
+            }
+            RecordIdBitmap bitmap = new RecordIdBitmap();
+            rids.forEachRemaining(bitmap::add);
+            return bitmap;
+        }
+
+        /**
+         * Returns the records of tableName whose record ids are in bitmap, in
+         * order of record id. Every page of the table is read at most once.
+         */
+        public Iterator<Record> bitmapHeapScan(String tableName,
+                                               RecordIdBitmap bitmap) throws DatabaseException {
+            return getTable(tableName).bitmapIterator(this, bitmap);
+        }
+
         public boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException {
+            if (hashIndexExists(tableName, columnName)) {
+                return resolveHashIndexFromName(tableName, columnName).scanEqual(this, key).hasNext();
+            }
             Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
             return index.getSecond().get(this, key).isPresent();
         }
@@ -423,11 +854,23 @@ public class Database {
                 String col = colNames.get(i);
                 if (indexExists(tableName, col)) {
                     try {
-                        resolveIndexFromName(tableName, col).getSecond().put(this, values.get(i), rid);
+                        BPlusTree tree = resolveIndexFromName(tableName, col).getSecond();
+                        tree.put(this, values.get(i), rid, includedValues(s, tree, values));
                     } catch (BPlusTreeException e) {
                         throw new DatabaseException(e.getMessage());
                     }
                 }
+                if (hashIndexExists(tableName, col)) {
+                    resolveHashIndexFromName(tableName, col).put(this, values.get(i), rid);
+                }
+            }
+            for (List<String> columns : getCompositeIndices(tableName)) {
+                try {
+                    resolveIndexFromNames(tableName, columns).getSecond().put(this,
+                            compositeKey(s, columns, values), rid);
+                } catch (BPlusTreeException e) {
+                    throw new DatabaseException(e.getMessage());
+                }
             }
             return rid;
         }
@@ -449,9 +892,16 @@ public class Database {
             for (int i = 0; i < colNames.size(); i++) {
                 String col = colNames.get(i);
                 if (indexExists(tableName, col)) {
-                    resolveIndexFromName(tableName, col).getSecond().remove(this, values.get(i));
+                    resolveIndexFromName(tableName, col).getSecond().remove(this, values.get(i), rid);
+                }
+                if (hashIndexExists(tableName, col)) {
+                    resolveHashIndexFromName(tableName, col).remove(this, values.get(i), rid);
                 }
             }
+            for (List<String> columns : getCompositeIndices(tableName)) {
+                resolveIndexFromNames(tableName, columns).getSecond().remove(this,
+                        compositeKey(s, columns, values), rid);
+            }
 
             return rid;
         }
@@ -476,6 +926,19 @@ public class Database {
             return getTable(tableName).getAllocator().iterator(this);
         }
 
+        /**
+         * Returns the records stored on data page `page` of tableName, in
+         * order of entry number. The page is read once.
+         */
+        public List<Record> getPageRecords(String tableName, Page page) throws DatabaseException {
+            assert(this.active);
+            List<Record> records = new ArrayList<>();
+            for (Pair<RecordId, Record> r : getTable(tableName).getPageRecords(this, page)) {
+                records.add(r.getSecond());
+            }
+            return records;
+        }
+
         public BacktrackingIterator<Record> getBlockIterator(String tableName,
                 Page[] block) throws DatabaseException {
             assert(this.active);
@@ -531,13 +994,27 @@ public class Database {
                 String col = colNames.get(i);
                 if (indexExists(tableName, col)) {
                     BPlusTree tree = resolveIndexFromName(tableName, col).getSecond();
-                    tree.remove(this, oldValues.get(i));
+                    tree.remove(this, oldValues.get(i), rid);
                     try {
-                        tree.put(this, values.get(i), rid);
+                        tree.put(this, values.get(i), rid, includedValues(s, tree, values));
                     } catch (BPlusTreeException e) {
                         throw new DatabaseException(e.getMessage());
                     }
                 }
+                if (hashIndexExists(tableName, col)) {
+                    HashIndex index = resolveHashIndexFromName(tableName, col);
+                    index.remove(this, oldValues.get(i), rid);
+                    index.put(this, values.get(i), rid);
+                }
+            }
+            for (List<String> columns : getCompositeIndices(tableName)) {
+                BPlusTree tree = resolveIndexFromNames(tableName, columns).getSecond();
+                tree.remove(this, compositeKey(s, columns, oldValues), rid);
+                try {
+                    tree.put(this, compositeKey(s, columns, values), rid);
+                } catch (BPlusTreeException e) {
+                    throw new DatabaseException(e.getMessage());
+                }
             }
 
             return rid;
@@ -583,6 +1060,33 @@ public class Database {
             return this.resolveIndexFromName(tableName, columnName).getSecond().getNumPages();
         }
 
+        /**
+         * Returns statistics about the shape of the index on columnName, e.g.
+         * how full its leaves are.
+         */
+        public BPlusTreeStats getIndexStats(String tableName,
+                                            String columnName) throws DatabaseException {
+            assert(this.active);
+            return this.resolveIndexFromName(tableName, columnName).getSecond().getStats(this);
+        }
+
+        /**
+         * Returns the average number of pages in a bucket of the hash index on
+         * columnName, i.e. the number of pages an equality lookup reads.
+         */
+        public double getHashIndexBucketLength(String tableName,
+                                               String columnName) throws DatabaseException {
+            assert(this.active);
+            return this.resolveHashIndexFromName(tableName, columnName).getAverageBucketLength();
+        }
+
+        /** Returns the number of pages of the composite index on columnNames. */
+        public int getNumIndexPages(String tableName,
+                                    List<String> columnNames) throws DatabaseException {
+            assert(this.active);
+            return this.resolveIndexFromNames(tableName, columnNames).getSecond().getNumPages();
+        }
+
         public Schema getSchema(String tableName) throws DatabaseException {
             assert(this.active);
             return getTable(tableName).getSchema();
@@ -600,28 +1104,82 @@ public class Database {
             return new Schema(newColumnNames, schema.getFieldTypes());
         }
 
-        private Pair<String, BPlusTree> resolveIndexFromName(String tableName,
-                String columnName) throws DatabaseException {
-            while (aliasMaps.containsKey(tableName)) {
-                tableName = aliasMaps.get(tableName);
+        /**
+         * Returns the values of the columns included in `tree` among `values`,
+         * the values of a record of a table with schema s.
+         */
+        private Record includedValues(Schema s, BPlusTree tree, List<DataBox> values) {
+            List<String> included = tree.getIncludedSchema().getFieldNames();
+            List<DataBox> includedValues = new ArrayList<>(included.size());
+            for (String col : included) {
+                includedValues.add(values.get(s.getFieldNames().indexOf(col)));
             }
-            if (columnName.contains(".")) {
-                String columnPrefix = columnName.split("\\.")[0];
-                while (aliasMaps.containsKey(columnPrefix)) {
-                    columnPrefix = aliasMaps.get(columnPrefix);
-                }
-                if (!tableName.equals(columnPrefix)) {
-                    throw new DatabaseException("Column: " + columnName + " is not a column of " + tableName);
-                }
-                columnName = columnName.split("\\.")[1];
+            return new Record(includedValues);
+        }
+
+        /**
+         * Returns the key of the composite index on columns among `values`, the
+         * values of a record of a table with schema s.
+         */
+        private DataBox compositeKey(Schema s, List<String> columns, List<DataBox> values) {
+            List<DataBox> key = new ArrayList<>(columns.size());
+            for (String col : columns) {
+                key.add(values.get(s.getFieldNames().indexOf(col)));
             }
-            String indexName = tableName + "," + columnName;
+            return new CompositeDataBox(key);
+        }
+
+        private Pair<String, BPlusTree> resolveIndexFromName(String tableName,
+                String columnName) throws DatabaseException {
+            return resolveIndexFromNames(tableName, Collections.singletonList(columnName));
+        }
+
+        private Pair<String, BPlusTree> resolveIndexFromNames(String tableName,
+                List<String> columnNames) throws DatabaseException {
+            String indexName = resolveIndexName(tableName, columnNames);
             if (Database.this.indexLookup.containsKey(indexName)) {
                 return new Pair<>(indexName, Database.this.indexLookup.get(indexName));
             }
             throw new DatabaseException("Index does not exist");
         }
 
+        private HashIndex resolveHashIndexFromName(String tableName,
+                String columnName) throws DatabaseException {
+            String indexName = resolveIndexName(tableName, Collections.singletonList(columnName));
+            if (Database.this.hashIndexLookup.containsKey(indexName)) {
+                return Database.this.hashIndexLookup.get(indexName);
+            }
+            throw new DatabaseException("Index does not exist");
+        }
+
+        /**
+         * Returns the name of the index on columnNames of tableName, which may
+         * be an alias, and whose columns may be qualified with its name.
+         */
+        private String resolveIndexName(String tableName,
+                                        List<String> columnNames) throws DatabaseException {
+            tableName = resolveTableName(tableName);
+            List<String> columns = new ArrayList<>(columnNames.size());
+            for (String columnName : columnNames) {
+                if (columnName.contains(".")) {
+                    String columnPrefix = resolveTableName(columnName.split("\\.")[0]);
+                    if (!tableName.equals(columnPrefix)) {
+                        throw new DatabaseException("Column: " + columnName + " is not a column of " + tableName);
+                    }
+                    columnName = columnName.split("\\.")[1];
+                }
+                columns.add(columnName);
+            }
+            return indexName(tableName, columns);
+        }
+
+        private String resolveTableName(String tableName) {
+            while (aliasMaps.containsKey(tableName)) {
+                tableName = aliasMaps.get(tableName);
+            }
+            return tableName;
+        }
+
         private Table getTable(String tableName) throws DatabaseException {
             if (this.tempTables.containsKey(tableName)) {
                 return this.tempTables.get(tableName);
@@ -638,7 +1196,7 @@ public class Database {
             return Database.this.tableLookup.get(tableName);
         }
 
-        public void deleteTempTable(String tempTableName) {
+        public synchronized void deleteTempTable(String tempTableName) {
             assert(this.active);
 
             if (!this.tempTables.containsKey(tempTableName)) {
@@ -0,0 +1,363 @@
+package edu.berkeley.cs186.database;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+/**
+ * An IndexBuilder produces the (key, rid) pairs of the indexed columns of a
+ * table in ascending key order, ready to be bulk loaded into a B+ tree. The
+ * key of an index on several columns is a CompositeDataBox of their values.
+ * Each key is returned as a Record holding the key followed by the values of
+ * the index's included columns, if any (see BPlusTree.bulkLoadRecords). The
+ * pairs are sorted with an external merge sort using numBuffers pages of
+ * memory per worker, and both phases of the sort are run by a pool of worker
+ * threads:
+ *
+ *   - Pass 0 splits the data pages of the table into one contiguous range per
+ *     worker. Each worker scans its range, and every time it has buffered
+ *     numBuffers pages worth of pairs, sorts them and writes them out as a run.
+ *   - Each merge pass splits the runs into groups of numBuffers - 1 and merges
+ *     the groups concurrently. Passes are repeated until at most
+ *     numBuffers - 1 runs remain, which are merged lazily by the iterator
+ *     returned from sort.
+ *
+ * Each run is written to its own file in tempDir and is only ever touched by
+ * one worker at a time, so workers share nothing but the (read-only) table.
+ */
+class IndexBuilder {
+    private Database.Transaction transaction;
+    private Table table;
+    private List<Integer> columnIndices;
+    private int numKeyColumns;
+    private int numBuffers;
+    private int numThreads;
+
+    // The schema of the key records, the number of pairs that fit on a page of
+    // a run, and the number of pairs buffered before a run is written in pass 0.
+    private Schema recordSchema;
+    private int entriesPerPage;
+    private int runSize;
+
+    // Runs are written to files in tempDir. finalRuns are the runs merged by
+    // the iterator returned from sort.
+    private Path tempDir;
+    private List<Run> finalRuns;
+
+    // columnIndices holds the indices of the numKeyColumns key columns followed
+    // by the indices of the included columns.
+    IndexBuilder(Database.Transaction transaction, Table table, List<Integer> columnIndices,
+                 int numKeyColumns, int numBuffers, Path tempDir) {
+        this.transaction = transaction;
+        this.table = table;
+        this.columnIndices = columnIndices;
+        this.numKeyColumns = numKeyColumns;
+        this.numBuffers = Math.max(numBuffers, 3);
+        this.numThreads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                                               table.getNumDataPages()));
+
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        for (int i : columnIndices) {
+            names.add(table.getSchema().getFieldNames().get(i));
+            types.add(table.getSchema().getFieldTypes().get(i));
+        }
+        if (numKeyColumns > 1) {
+            List<String> keyNames = names.subList(0, numKeyColumns);
+            List<Type> keyTypes = types.subList(0, numKeyColumns);
+            String keyName = String.join("+", keyNames);
+            Type keyType = Type.compositeType(keyTypes);
+            keyNames.clear();
+            keyTypes.clear();
+            names.add(0, keyName);
+            types.add(0, keyType);
+        }
+        this.recordSchema = new Schema(names, types);
+        int entrySize = recordSchema.getSizeInBytes() + RecordId.getSizeInBytes();
+        this.entriesPerPage = (Page.pageSize - Integer.BYTES) / entrySize;
+        this.runSize = this.numBuffers * this.entriesPerPage;
+        this.tempDir = tempDir;
+        this.finalRuns = new ArrayList<>();
+    }
+
+    /** Returns the (key, rid) pairs of the column in ascending key order. */
+    Iterator<Pair<Record, RecordId>> sort() throws DatabaseException {
+        tempDir.toFile().mkdirs();
+        List<Run> runs = sortRuns();
+        while (runs.size() > numBuffers - 1) {
+            runs = mergePass(runs);
+        }
+        finalRuns = runs;
+        return new MergeIterator(runs);
+    }
+
+    /**
+     * Pass 0: returns the sorted runs of the table, scanning disjoint ranges of
+     * data pages in parallel.
+     */
+    private List<Run> sortRuns() throws DatabaseException {
+        List<Page> pages = new ArrayList<>();
+        Iterator<Page> pageIter = table.getAllocator().iterator(transaction);
+        pageIter.next(); // Skip the header page.
+        while (pageIter.hasNext()) {
+            pages.add(pageIter.next());
+        }
+
+        List<Callable<List<Run>>> tasks = new ArrayList<>();
+        int pagesPerThread = (pages.size() + numThreads - 1) / numThreads;
+        for (int start = 0; start < pages.size(); start += pagesPerThread) {
+            List<Page> range = pages.subList(start, Math.min(start + pagesPerThread, pages.size()));
+            tasks.add(() -> sortRange(range));
+        }
+
+        List<Run> runs = new ArrayList<>();
+        for (List<Run> rangeRuns : runInParallel(tasks)) {
+            runs.addAll(rangeRuns);
+        }
+        return runs;
+    }
+
+    private List<Run> sortRange(List<Page> pages) throws DatabaseException {
+        List<Run> runs = new ArrayList<>();
+        List<Pair<Record, RecordId>> buffer = new ArrayList<>();
+        for (Page page : pages) {
+            for (Pair<RecordId, Record> r : table.getPageRecords(transaction, page)) {
+                List<DataBox> values = r.getSecond().getValues();
+                List<DataBox> key = new ArrayList<>(columnIndices.size());
+                for (int i : columnIndices) {
+                    key.add(values.get(i));
+                }
+                if (numKeyColumns > 1) {
+                    List<DataBox> keyValues = key.subList(0, numKeyColumns);
+                    DataBox composite = new CompositeDataBox(keyValues);
+                    keyValues.clear();
+                    key.add(0, composite);
+                }
+                buffer.add(new Pair<>(new Record(key), r.getFirst()));
+            }
+            if (buffer.size() >= runSize) {
+                runs.add(writeRun(buffer));
+                buffer.clear();
+            }
+        }
+        if (!buffer.isEmpty()) {
+            runs.add(writeRun(buffer));
+        }
+        return runs;
+    }
+
+    private Run writeRun(List<Pair<Record, RecordId>> pairs) throws DatabaseException {
+        pairs.sort(Comparator.comparing(p -> p.getFirst().getValues().get(0)));
+        Run run = createRun();
+        for (Pair<Record, RecordId> p : pairs) {
+            run.add(p);
+        }
+        run.flush();
+        return run;
+    }
+
+    /**
+     * Merges the runs in groups of numBuffers - 1, merging the groups in
+     * parallel, and returns the merged runs. The input runs are deleted.
+     */
+    private List<Run> mergePass(List<Run> runs) throws DatabaseException {
+        List<Callable<Run>> tasks = new ArrayList<>();
+        for (int start = 0; start < runs.size(); start += numBuffers - 1) {
+            List<Run> group = runs.subList(start, Math.min(start + numBuffers - 1, runs.size()));
+            tasks.add(() -> {
+                Run merged = createRun();
+                Iterator<Pair<Record, RecordId>> iter = new MergeIterator(group);
+                while (iter.hasNext()) {
+                    merged.add(iter.next());
+                }
+                merged.flush();
+                return merged;
+            });
+        }
+
+        List<Run> merged = runInParallel(tasks);
+        for (Run run : runs) {
+            run.delete();
+        }
+        return merged;
+    }
+
+    private <T> List<T> runInParallel(List<Callable<T>> tasks) throws DatabaseException {
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<T> results = new ArrayList<>();
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatabaseException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DatabaseException) {
+                throw (DatabaseException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DatabaseException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Run createRun() throws DatabaseException {
+        try {
+            return new Run(Files.createTempFile(tempDir, "indexRun", ".run"));
+        } catch (IOException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    /**
+     * Deletes the runs left over from sort. The iterator returned by sort
+     * cannot be used afterwards.
+     */
+    void close() {
+        for (Run run : finalRuns) {
+            run.delete();
+        }
+        finalRuns.clear();
+    }
+
+    /**
+     * A Run is a sorted sequence of (key, rid) pairs stored in its own file.
+     * Pairs are written and read a full page at a time; every page holds an int
+     * n followed by n serialized (key, rid) pairs.
+     */
+    private class Run {
+        private Path path;
+        private PageAllocator allocator;
+        private java.nio.ByteBuffer page;
+        private int numEntriesOnPage;
+
+        private Run(Path path) {
+            this.path = path;
+            this.allocator = new PageAllocator(path.toString(), true, false, transaction);
+            this.page = java.nio.ByteBuffer.allocate(Page.pageSize);
+            this.numEntriesOnPage = 0;
+        }
+
+        private void add(Pair<Record, RecordId> p) {
+            if (numEntriesOnPage == entriesPerPage) {
+                flush();
+            }
+            if (numEntriesOnPage == 0) {
+                page.clear();
+                page.putInt(0);
+            }
+            page.put(p.getFirst().toBytes(recordSchema)).put(p.getSecond().toBytes());
+            numEntriesOnPage++;
+        }
+
+        /** Writes out the page being filled, if it holds any pairs. */
+        private void flush() {
+            if (numEntriesOnPage == 0) {
+                return;
+            }
+            page.putInt(0, numEntriesOnPage);
+            Page p = allocator.fetchPage(transaction, allocator.allocPage(transaction));
+            p.writeBytes(transaction, page.array());
+            numEntriesOnPage = 0;
+        }
+
+        private void delete() {
+            allocator.close();
+            path.toFile().delete();
+        }
+
+        private Iterator<Pair<Record, RecordId>> iterator() {
+            Iterator<Page> pageIter = allocator.iterator(transaction);
+
+            return new Iterator<Pair<Record, RecordId>>() {
+                private Buffer buf = null;
+                private int numLeft = 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (numLeft == 0 && pageIter.hasNext()) {
+                        buf = ByteBuffer.wrap(pageIter.next().readBytes(transaction));
+                        numLeft = buf.getInt();
+                    }
+                    return numLeft > 0;
+                }
+
+                @Override
+                public Pair<Record, RecordId> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    numLeft--;
+                    Record key = Record.fromBytes(buf, recordSchema);
+                    return new Pair<>(key, RecordId.fromBytes(buf));
+                }
+            };
+        }
+    }
+
+    /**
+     * A MergeIterator merges sorted runs, holding the next pair of each run in
+     * a priority queue.
+     */
+    private class MergeIterator implements Iterator<Pair<Record, RecordId>> {
+        private List<Iterator<Pair<Record, RecordId>>> iters;
+        private PriorityQueue<Pair<Pair<Record, RecordId>, Integer>> queue;
+
+        private MergeIterator(List<Run> runs) {
+            this.iters = new ArrayList<>();
+            this.queue = new PriorityQueue<>(Math.max(runs.size(), 1),
+                                             Comparator.comparing(p -> p.getFirst().getFirst()
+                                                                        .getValues().get(0)));
+            for (Run run : runs) {
+                Iterator<Pair<Record, RecordId>> iter = run.iterator();
+                iters.add(iter);
+                advance(iters.size() - 1);
+            }
+        }
+
+        private void advance(int i) {
+            if (iters.get(i).hasNext()) {
+                queue.add(new Pair<>(iters.get(i).next(), i));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public Pair<Record, RecordId> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Pair<Pair<Record, RecordId>, Integer> p = queue.poll();
+            advance(p.getSecond());
+            return p.getFirst();
+        }
+    }
+}
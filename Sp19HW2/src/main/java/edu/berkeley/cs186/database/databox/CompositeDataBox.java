@@ -0,0 +1,198 @@
+package edu.berkeley.cs186.database.databox;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A CompositeDataBox is a value of a composite type (see Type.compositeType):
+ * the key of an index on several columns. Composite values are compared
+ * lexicographically, field by field.
+ *
+ * Besides full keys, which have a value for every field, a CompositeDataBox
+ * can be a prefix bound: a value for only the first few fields, which sorts
+ * either before or after every full key that starts with those values (see
+ * lowerBound and upperBound). A prefix bound never equals a full key, so a
+ * scan from the lower bound to the upper bound of a prefix visits exactly the
+ * keys with that prefix. Prefix bounds are only used to search for keys, and
+ * cannot be serialized.
+ */
+public class CompositeDataBox extends DataBox {
+    private Type type;
+    private List<DataBox> values;
+
+    // 0 for a full key, and -1 (or 1) for a prefix bound that sorts before (or
+    // after) every full key starting with values.
+    private int bound;
+
+    /** Constructs the full key of type Type.compositeType(types of values). */
+    public CompositeDataBox(List<DataBox> values) {
+        this(typeOf(values), values, 0);
+    }
+
+    private CompositeDataBox(Type type, List<DataBox> values, int bound) {
+        this.type = type;
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        this.bound = bound;
+    }
+
+    private static Type typeOf(List<DataBox> values) {
+        List<Type> types = new ArrayList<>();
+        for (DataBox d : values) {
+            types.add(d.type());
+        }
+        return Type.compositeType(types);
+    }
+
+    /**
+     * Returns the prefix bound of type `type` that sorts before every key that
+     * starts with `prefix` (and after every smaller key). `prefix` must hold
+     * values of the first fields of `type`, but not of all of them.
+     */
+    public static CompositeDataBox lowerBound(Type type, List<DataBox> prefix) {
+        checkPrefix(type, prefix);
+        return new CompositeDataBox(type, prefix, -1);
+    }
+
+    /**
+     * Returns the prefix bound of type `type` that sorts after every key that
+     * starts with `prefix` (and before every larger key).
+     */
+    public static CompositeDataBox upperBound(Type type, List<DataBox> prefix) {
+        checkPrefix(type, prefix);
+        return new CompositeDataBox(type, prefix, 1);
+    }
+
+    private static void checkPrefix(Type type, List<DataBox> prefix) {
+        if (type.getTypeId() != TypeId.COMPOSITE) {
+            throw new DataBoxException(String.format("%s is not a composite type.", type));
+        }
+        List<Type> fieldTypes = type.getFieldTypes();
+        if (prefix.size() >= fieldTypes.size()) {
+            String msg = String.format("A prefix of %s must have fewer than %d fields.",
+                                       type, fieldTypes.size());
+            throw new DataBoxException(msg);
+        }
+        for (int i = 0; i < prefix.size(); ++i) {
+            if (!prefix.get(i).type().equals(fieldTypes.get(i))) {
+                String msg = String.format("%s is not of type %s.", prefix.get(i), fieldTypes.get(i));
+                throw new DataBoxException(msg);
+            }
+        }
+    }
+
+    @Override
+    public Type type() {
+        return type;
+    }
+
+    /** Returns the values of the fields, which are only a prefix for a bound. */
+    public List<DataBox> getValues() {
+        return values;
+    }
+
+    /**
+     * Returns 0 for a full key, and a negative (or positive) number for a
+     * prefix bound that sorts before (or after) the keys it prefixes.
+     */
+    public int getBound() {
+        return bound;
+    }
+
+    // A full key is serialized as the concatenation of its fields.
+    @Override
+    public byte[] toBytes() {
+        if (bound != 0) {
+            throw new DataBoxException("Prefix bounds cannot be serialized.");
+        }
+        ByteBuffer buf = ByteBuffer.allocate(type.getSizeInBytes());
+        for (DataBox d : values) {
+            buf.put(d.toBytes());
+        }
+        return buf.array();
+    }
+
+    // The normalized key of a full key is the concatenation of the normalized
+    // keys of its fields, which all have a fixed width. A lower bound is just
+    // the normalized prefix, which is shorter than (and so sorts before) every
+    // key it prefixes. An upper bound is the normalized prefix padded with 0xFF
+    // bytes to one byte longer than a full key, so it sorts after them.
+    @Override
+    public byte[] toOrderedBytes() {
+        int size = 0;
+        List<byte[]> fields = new ArrayList<>();
+        for (DataBox d : values) {
+            fields.add(d.toOrderedBytes());
+            size += fields.get(fields.size() - 1).length;
+        }
+        int prefixSize = size;
+        if (bound > 0) {
+            size = type.getSizeInBytes() + 1;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (byte[] field : fields) {
+            buf.put(field);
+        }
+        for (int i = prefixSize; i < size; ++i) {
+            buf.put((byte) 0xFF);
+        }
+        return buf.array();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("(");
+        for (int i = 0; i < values.size(); ++i) {
+            s.append(i == 0 ? "" : ", ").append(values.get(i));
+        }
+        if (bound != 0) {
+            s.append(values.isEmpty() ? "" : ", ").append(bound < 0 ? "-inf" : "+inf");
+        }
+        return s.append(")").toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof CompositeDataBox)) {
+            return false;
+        }
+        CompositeDataBox c = (CompositeDataBox) o;
+        return type.equals(c.type) && values.equals(c.values) && bound == c.bound;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, values, bound);
+    }
+
+    @Override
+    public int compareTo(DataBox d) {
+        if (!(d instanceof CompositeDataBox) || !type.equals(d.type())) {
+            String err = String.format("Invalid comparison between %s and %s.",
+                                       toString(), d.toString());
+            throw new DataBoxException(err);
+        }
+        CompositeDataBox c = (CompositeDataBox) d;
+        int n = Math.min(values.size(), c.values.size());
+        for (int i = 0; i < n; ++i) {
+            int cmp = values.get(i).compareTo(c.values.get(i));
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        // The common fields are equal. If one of us is shorter, it is a prefix
+        // bound of the other, which it sorts before or after.
+        if (values.size() < c.values.size()) {
+            return bound;
+        }
+        if (values.size() > c.values.size()) {
+            return -c.bound;
+        }
+        return Integer.compare(bound, c.bound);
+    }
+}
@@ -23,6 +23,13 @@ public class FloatDataBox extends DataBox {
         return ByteBuffer.allocate(Float.BYTES).putFloat(f).array();
     }
 
+    @Override
+    public byte[] toOrderedBytes() {
+        int bits = Float.floatToIntBits(f);
+        bits ^= (bits < 0) ? 0xFFFFFFFF : Integer.MIN_VALUE;
+        return ByteBuffer.allocate(Integer.BYTES).putInt(bits).array();
+    }
+
     @Override
     public String toString() {
         return new Float(f).toString();
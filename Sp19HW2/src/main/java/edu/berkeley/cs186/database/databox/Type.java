@@ -3,6 +3,9 @@ package edu.berkeley.cs186.database.databox;
 import edu.berkeley.cs186.database.common.Buffer;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -15,6 +18,11 @@ import java.util.Objects;
  *
  * Note that n-byte strings and m-byte strings are considered different types
  * when n != m.
+ *
+ * There is also one compound type, the composite type
+ * Type.compositeType(types) of the keys of a multi-column index: a value of
+ * it is a list of values of types (see CompositeDataBox), and it is as large
+ * as all of them together.
  */
 public class Type {
     // The type of this type.
@@ -23,9 +31,17 @@ public class Type {
     // The size (in bytes) of an element of this type.
     private int sizeInBytes;
 
+    // The types of the fields of a composite type, and empty otherwise.
+    private List<Type> fieldTypes;
+
     private Type(TypeId typeId, int sizeInBytes) {
+        this(typeId, sizeInBytes, Collections.emptyList());
+    }
+
+    private Type(TypeId typeId, int sizeInBytes, List<Type> fieldTypes) {
         this.typeId = typeId;
         this.sizeInBytes = sizeInBytes;
+        this.fieldTypes = fieldTypes;
     }
 
     public static Type boolType() {
@@ -55,6 +71,18 @@ public class Type {
         return new Type(TypeId.STRING, n);
     }
 
+    public static Type compositeType(List<Type> fieldTypes) {
+        if (fieldTypes.isEmpty()) {
+            throw new DataBoxException("Composite types must have at least one field.");
+        }
+        int sizeInBytes = 0;
+        for (Type t : fieldTypes) {
+            sizeInBytes += t.getSizeInBytes();
+        }
+        return new Type(TypeId.COMPOSITE, sizeInBytes,
+                        Collections.unmodifiableList(new ArrayList<>(fieldTypes)));
+    }
+
     public TypeId getTypeId() {
         return typeId;
     }
@@ -63,6 +91,10 @@ public class Type {
         return sizeInBytes;
     }
 
+    public List<Type> getFieldTypes() {
+        return fieldTypes;
+    }
+
     public byte[] toBytes() {
         // A Type is uniquely identified by its typeId `t` and the size (in bytes)
         // of an element of the type `s`. A Type is serialized as two integers. The
@@ -71,9 +103,27 @@ public class Type {
         // For example, the type "42-byte string" would serialized as the bytes [3,
         // 42] because 3 is the ordinal of the STRING TypeId and 42 is the number
         // of bytes in a 42-byte string (duh).
-        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * 2);
+        //
+        // A composite type is followed by the number of its fields and then
+        // the serialization of each field's type.
+        int size = Integer.BYTES * 2;
+        List<byte[]> fields = new ArrayList<>();
+        if (typeId == TypeId.COMPOSITE) {
+            size += Integer.BYTES;
+            for (Type t : fieldTypes) {
+                fields.add(t.toBytes());
+                size += fields.get(fields.size() - 1).length;
+            }
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size);
         buf.putInt(typeId.ordinal());
         buf.putInt(sizeInBytes);
+        if (typeId == TypeId.COMPOSITE) {
+            buf.putInt(fields.size());
+            for (byte[] field : fields) {
+                buf.put(field);
+            }
+        }
         return buf.array();
     }
 
@@ -91,6 +141,15 @@ public class Type {
             return Type.floatType();
         } else if (ordinal == TypeId.STRING.ordinal()) {
             return Type.stringType(sizeInBytes);
+        } else if (ordinal == TypeId.COMPOSITE.ordinal()) {
+            int numFields = buf.getInt();
+            List<Type> fieldTypes = new ArrayList<>();
+            for (int i = 0; i < numFields; ++i) {
+                fieldTypes.add(Type.fromBytes(buf));
+            }
+            Type t = Type.compositeType(fieldTypes);
+            assert(sizeInBytes == t.getSizeInBytes());
+            return t;
         } else {
             String err = String.format("Unknown TypeId ordinal %d.", ordinal);
             throw new IllegalArgumentException(err);
@@ -99,6 +158,9 @@ public class Type {
 
     @Override
     public String toString() {
+        if (typeId == TypeId.COMPOSITE) {
+            return String.format("(%s, %d, %s)", typeId.toString(), sizeInBytes, fieldTypes);
+        }
         return String.format("(%s, %d)", typeId.toString(), sizeInBytes);
     }
 
@@ -111,11 +173,12 @@ public class Type {
             return false;
         }
         Type t = (Type) o;
-        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes;
+        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes &&
+               fieldTypes.equals(t.fieldTypes);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(typeId, sizeInBytes);
+        return Objects.hash(typeId, sizeInBytes, fieldTypes);
     }
 }
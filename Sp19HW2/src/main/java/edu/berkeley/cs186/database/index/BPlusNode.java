@@ -1,13 +1,18 @@
 package edu.berkeley.cs186.database.index;
 
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 
 /**
@@ -132,11 +137,21 @@ abstract class BPlusNode {
      * Our B+ trees do not support duplicate entries with the same key. If a
      * duplicate key is inserted, the tree is left unchanged and an exception is
      * raised.
+     *
+     * In a tree with included columns, `included` holds the values of those
+     * columns in the record `rid`; otherwise, it holds no values.
      */
     public abstract Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key,
-            RecordId rid)
+            RecordId rid, Record included)
     throws BPlusTreeException;
 
+    /** n.put(k, r) puts (k, r) into a tree without included columns. */
+    public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key,
+            RecordId rid)
+    throws BPlusTreeException {
+        return put(transaction, key, rid, new Record(Collections.emptyList()));
+    }
+
     /**
      * n.bulkLoad(data, fillFactor) bulk loads pairs of (k, r) from data into
      * the tree with the given fill factor.
@@ -156,9 +171,33 @@ abstract class BPlusNode {
      * (not inner nodes), and calculations should round up, i.e. with d=5
      * and fillFactor=0.75, leaf nodes should be 8/10 full.
      */
-    public abstract Optional<Pair<DataBox, Integer>> bulkLoad(BaseTransaction transaction,
+    public Optional<Pair<DataBox, Integer>> bulkLoad(BaseTransaction transaction,
             Iterator<Pair<DataBox, RecordId>> data,
             float fillFactor)
+    throws BPlusTreeException {
+        Iterator<Pair<Record, RecordId>> records = new Iterator<Pair<Record, RecordId>>() {
+            @Override
+            public boolean hasNext() {
+                return data.hasNext();
+            }
+
+            @Override
+            public Pair<Record, RecordId> next() {
+                Pair<DataBox, RecordId> p = data.next();
+                return new Pair<>(new Record(Collections.singletonList(p.getFirst())), p.getSecond());
+            }
+        };
+        return bulkLoadRecords(transaction, records, fillFactor);
+    }
+
+    /**
+     * Like bulkLoad, but for a tree with included columns. Each element of
+     * data pairs a record id with a Record holding its key followed by its
+     * included values.
+     */
+    public abstract Optional<Pair<DataBox, Integer>> bulkLoadRecords(BaseTransaction transaction,
+            Iterator<Pair<Record, RecordId>> data,
+            float fillFactor)
     throws BPlusTreeException;
 
     /**
@@ -249,22 +288,77 @@ abstract class BPlusNode {
     /** n.toBytes() serializes n. */
     public abstract byte[] toBytes();
 
+    /**
+     * Compares the key serialized at byte `offset` of `buf` with `key`,
+     * returning a negative number, zero, or a positive number as in
+     * DataBox.compareTo. The serialized key is compared in place, without
+     * deserializing it into a DataBox. `key` must be of type `keySchema`.
+     */
+    static int compareKeyInPage(Buffer buf, int offset, Type keySchema, DataBox key) {
+        switch (keySchema.getTypeId()) {
+        case BOOL:
+            return Boolean.compare(buf.get(offset) != 0, key.getBool());
+        case INT:
+            return Integer.compare(buf.getInt(offset), key.getInt());
+        case FLOAT:
+            return Float.compare(buf.getFloat(offset), key.getFloat());
+        case STRING: {
+            // Every allowed character is a single ASCII byte, and both strings
+            // are padded to the same length.
+            String s = key.getString();
+            for (int i = 0; i < keySchema.getSizeInBytes(); ++i) {
+                int c = (buf.get(offset + i) & 0xFF) - s.charAt(i);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+        case COMPOSITE: {
+            // Compare field by field. If key is a prefix bound, it has fewer
+            // fields, and sorts before or after the keys it prefixes.
+            CompositeDataBox composite = (CompositeDataBox) key;
+            List<Type> fieldTypes = keySchema.getFieldTypes();
+            List<DataBox> values = composite.getValues();
+            for (int i = 0; i < values.size(); ++i) {
+                int c = compareKeyInPage(buf, offset, fieldTypes.get(i), values.get(i));
+                if (c != 0) {
+                    return c;
+                }
+                offset += fieldTypes.get(i).getSizeInBytes();
+            }
+            return -composite.getBound();
+        }
+        default:
+            String msg = String.format("Unhandled TypeId %s.", keySchema.getTypeId());
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
     /**
      * BPlusNode.fromBytes(m, p) loads a BPlusNode from page p of
-     * meta.getAllocator().
+     * meta.getAllocator(). If the node of page p is in meta.getNodeCache(), the
+     * cached node is returned without reading the page.
      */
     public static BPlusNode fromBytes(BaseTransaction transaction, BPlusTreeMetadata metadata,
                                       int pageNum) {
+        BPlusNode node = metadata.getNodeCache().get(pageNum);
+        if (node != null) {
+            return node;
+        }
+
         Page p = metadata.getAllocator().fetchPage(transaction, pageNum);
         Buffer buf = p.getBuffer(transaction);
         byte b = buf.get();
         if (b == 1) {
-            return LeafNode.fromBytes(transaction, metadata, pageNum);
+            node = LeafNode.fromBytes(transaction, metadata, pageNum);
         } else if (b == 0) {
-            return InnerNode.fromBytes(transaction, metadata, pageNum);
+            node = InnerNode.fromBytes(transaction, metadata, pageNum);
         } else {
             String msg = String.format("Unexpected byte %b.", b);
             throw new IllegalArgumentException(msg);
         }
+        metadata.getNodeCache().put(pageNum, node);
+        return node;
     }
 }
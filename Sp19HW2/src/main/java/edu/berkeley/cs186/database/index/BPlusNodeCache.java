@@ -0,0 +1,90 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A BPlusNodeCache is a bounded cache of the deserialized nodes of a B+ tree,
+ * keyed by page number. Without it, every step of every traversal would
+ * re-read a node's page and rebuild its keys and children (or rids) from
+ * scratch, even for the root. With it, a point lookup on a warm tree is just
+ * pointer chasing:
+ *
+ *   BPlusNode node = cache.get(pageNum);
+ *   if (node == null) {
+ *       node = ...; // deserialize the node from page pageNum
+ *       cache.put(pageNum, node);
+ *   }
+ *
+ * Recall from the comment in LeafNode.java that a node object is only an
+ * in-memory copy of its page, and that two node objects for the same page can
+ * drift apart if one of them is modified. The cache keeps this from
+ * happening: every node registers itself with the cache whenever it syncs
+ * itself to its page, so the cached node for a page is always the most
+ * recently modified one, and its contents always match the page. Evicting a
+ * node is therefore always safe; the next lookup simply deserializes the page
+ * again.
+ *
+ * The cache holds at most `capacity` nodes and evicts the least recently used
+ * node when it is full. Since every node fits on a single page, the cache uses
+ * at most roughly `capacity` pages of memory.
+ */
+class BPlusNodeCache {
+    // The number of nodes cached by default. This is 4 MB worth of 4 KB pages,
+    // which is enough to hold every inner node of all but the largest trees.
+    static final int DEFAULT_CAPACITY = 1024;
+
+    private final int capacity;
+    private final LruMap nodes;
+
+    /**
+     * An access-ordered LinkedHashMap iterates from least to most recently
+     * used, so its eldest entry is the one to evict.
+     */
+    private static class LruMap extends LinkedHashMap<Integer, BPlusNode> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        LruMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, BPlusNode> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    /** Construct an empty cache holding at most `capacity` nodes. */
+    BPlusNodeCache(int capacity) {
+        this.capacity = capacity;
+        this.nodes = new LruMap(capacity);
+    }
+
+    /** Returns the cached node of page `pageNum`, or null if it isn't cached. */
+    synchronized BPlusNode get(int pageNum) {
+        return nodes.get(pageNum);
+    }
+
+    /** Caches `node` as the node of page `pageNum`, replacing any other. */
+    synchronized void put(int pageNum, BPlusNode node) {
+        if (capacity > 0) {
+            nodes.put(pageNum, node);
+        }
+    }
+
+    /** Forgets the cached node of page `pageNum`, e.g. if the page is freed. */
+    synchronized void invalidate(int pageNum) {
+        nodes.remove(pageNum);
+    }
+
+    synchronized int size() {
+        return nodes.size();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+}
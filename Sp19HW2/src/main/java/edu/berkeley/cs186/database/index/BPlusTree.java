@@ -5,6 +5,10 @@ import java.io.IOException;
 import java.io.FileWriter;
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.common.Buffer;
@@ -12,11 +16,16 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.DataBoxException;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
 
 /**
  * A persistent B+ tree.
@@ -52,6 +61,44 @@ import edu.berkeley.cs186.database.table.RecordId;
  *   fromDisk.get(new IntDataBox(0)); // Optional.empty()
  *   fromDisk.get(new IntDataBox(1)); // Optional.of(RecordId(1, 1))
  *   fromDisk.get(new IntDataBox(2)); // Optional.of(RecordId(2, 2))
+ *
+ * By default, a key maps to a single record id, and putting a key twice is an
+ * error. A tree constructed with unique = false allows duplicate keys instead:
+ * each key maps to any number of record ids, stored in a compressed posting
+ * list (see PostingList). get then returns the smallest record id of a key,
+ * scans return all of them, in ascending order within each key, and a single
+ * (key, rid) pair can be removed with remove(key, rid).
+ *
+ * A tree may also be constructed with included columns, which makes it a
+ * covering index: every (key, rid) pair then also stores the values of those
+ * columns in the record rid identifies (see put), and scanRangeRecords returns
+ * them along with the keys, so a query that only needs the key and included
+ * columns never has to fetch the records themselves.
+ *
+ * The key schema may be a composite type (see Type.compositeType), in which
+ * case the tree indexes several columns at once and orders keys
+ * lexicographically. scanPrefix then returns the keys that start with given
+ * values of the first few columns, optionally within a range of the next.
+ *
+ * Any number of threads may get, scan, put, and remove concurrently. Every
+ * node page is protected by a read/write latch, and operations latch-crab
+ * down the tree: a child is latched before its parent is released, and a
+ * writer only keeps the latches of ancestors that a split might still reach.
+ * The pointer to the root is protected by a latch of its own, which a writer
+ * holds only while the root itself might split. Latches are always acquired
+ * from the root down (and from left to right across leaves, one leaf at a
+ * time), so operations never deadlock. See put for the details.
+ *
+ * By default, remove leaves underfull leaves in place. With
+ * setRebalanceOnRemove, it instead merges and redistributes underfull nodes
+ * as it goes (see remove). A tree whose leaves have grown sparse can also be
+ * repacked all at once, without blocking readers, with rebuild; getStats
+ * reports how full the leaves are.
+ *
+ * Latches are short-lived and protect the physical structure of the tree;
+ * they are independent of the lock context passed to the constructor, which
+ * protects its logical contents. bulkLoad, toSexp, and toDot are not safe to
+ * run concurrently with writers.
  */
 public class BPlusTree implements Closeable {
     public static final String FILENAME_PREFIX = "db";
@@ -60,9 +107,30 @@ public class BPlusTree implements Closeable {
     private PageAllocator allocator;
     private BPlusTreeMetadata metadata;
     private Page headerPage;
-    private BPlusNode root;
     private LockContext lockContext;
 
+    // The page number of the root, protected by rootLatch.
+    private int rootPageNum;
+    private final ReentrantReadWriteLock rootLatch = new ReentrantReadWriteLock();
+
+    // The latches of the node pages, keyed by page number. A page's latch is
+    // created the first time the page is latched.
+    private final ConcurrentHashMap<Integer, ReentrantReadWriteLock> latches =
+        new ConcurrentHashMap<>();
+
+    // Writers (put, remove, and bulkLoad) hold this latch shared. rebuild and
+    // getStats hold it exclusively, to keep writers out while they walk the
+    // leaves; readers are never blocked by it.
+    private final ReentrantReadWriteLock writersLatch = new ReentrantReadWriteLock();
+
+    // Bumped whenever entries move to the left or a node is freed, i.e. on
+    // every merge, redistribution, root collapse, and rebuild. See
+    // BPlusTreeIterator.
+    private final AtomicLong structureVersion = new AtomicLong();
+
+    // Whether remove merges and redistributes underfull nodes. See remove.
+    private volatile boolean rebalanceOnRemove = false;
+
     // Constructors ////////////////////////////////////////////////////////////
     /**
      * Construct a new B+ tree which is serialized into the file `filename`,
@@ -80,14 +148,40 @@ public class BPlusTree implements Closeable {
      * page which contains:
      *
      *   - the key schema of the tree,
-     *   - the order of the tree, and
-     *   - the page number of the root of the tree.
+     *   - the order of the tree,
+     *   - the page number of the root of the tree,
+     *   - whether the tree allows duplicate keys, and
+     *   - the schema of the tree's included columns.
      *
-     * All other pages are serializations of inner and leaf nodes. See
-     * writeHeader for details.
+     * All other pages are serializations of inner and leaf nodes, or pages of
+     * posting lists. See writeHeader for details.
      */
     public BPlusTree(String filename, Type keySchema, int order, LockContext lockContext,
                      BaseTransaction transaction)
+    throws BPlusTreeException {
+        this(filename, keySchema, order, true, lockContext, transaction);
+    }
+
+    /**
+     * Like the constructor above, but constructs a tree that allows duplicate
+     * keys if `unique` is false.
+     */
+    public BPlusTree(String filename, Type keySchema, int order, boolean unique,
+                     LockContext lockContext, BaseTransaction transaction)
+    throws BPlusTreeException {
+        this(filename, keySchema, order, unique, BPlusTreeMetadata.emptySchema(), lockContext,
+             transaction);
+    }
+
+    /**
+     * Like the constructor above, but constructs a tree that stores the values
+     * of the columns in `includedSchema` with every record id. The order must
+     * be small enough for the included values to fit in the leaves; see
+     * maxOrder(pageSizeInBytes, keySchema, includedSchema).
+     */
+    public BPlusTree(String filename, Type keySchema, int order, boolean unique,
+                     Schema includedSchema, LockContext lockContext,
+                     BaseTransaction transaction)
     throws BPlusTreeException {
         // Sanity checks.
         if (order < 0) {
@@ -97,7 +191,7 @@ public class BPlusTree implements Closeable {
             throw new BPlusTreeException(msg);
         }
 
-        int maxOrder = BPlusTree.maxOrder(Page.pageSize, keySchema);
+        int maxOrder = BPlusTree.maxOrder(Page.pageSize, keySchema, includedSchema);
         if (order > maxOrder) {
             String msg = String.format(
                              "You cannot construct a B+ tree with order %d greater than the " +
@@ -110,7 +204,7 @@ public class BPlusTree implements Closeable {
 
         // Initialize the page allocator.
         this.allocator = new PageAllocator(this.lockContext, filename, true, transaction);
-        this.metadata = new BPlusTreeMetadata(allocator, keySchema, order);
+        this.metadata = new BPlusTreeMetadata(allocator, keySchema, order, unique, includedSchema);
 
         // Allocate the header page.
         int headerPageNum = allocator.allocPage(transaction);
@@ -121,7 +215,8 @@ public class BPlusTree implements Closeable {
         List<DataBox> keys = new ArrayList<>();
         List<RecordId> rids = new ArrayList<>();
         Optional<Integer> rightSibling = Optional.empty();
-        this.root = new LeafNode(this.metadata, keys, rids, rightSibling, transaction);
+        LeafNode root = new LeafNode(this.metadata, keys, rids, rightSibling, transaction);
+        this.rootPageNum = root.getPage().getPageNum();
 
         // Initialize the header page.
         writeHeader(transaction, headerPage);
@@ -141,11 +236,13 @@ public class BPlusTree implements Closeable {
         Type keySchema = Type.fromBytes(buf);
         int order = buf.getInt();
         int rootPageNum = buf.getInt();
+        boolean unique = buf.get() == (byte) 0;
+        Schema includedSchema = Schema.fromBytes(buf);
 
         // Initialize members.
-        this.metadata = new BPlusTreeMetadata(allocator, keySchema, order);
+        this.metadata = new BPlusTreeMetadata(allocator, keySchema, order, unique, includedSchema);
         this.headerPage = allocator.fetchPage(transaction, 0);
-        this.root = BPlusNode.fromBytes(transaction, this.metadata, rootPageNum);
+        this.rootPageNum = rootPageNum;
     }
 
     public void close() {
@@ -165,12 +262,21 @@ public class BPlusTree implements Closeable {
      *   // Get the value we put and also try to get a value we never put.
      *   tree.get(key);                 // Optional.of(rid)
      *   tree.get(new IntDataBox(100)); // Optional.empty()
+     *
+     * If the tree allows duplicate keys, the smallest record id of `key` is
+     * returned.
      */
     public Optional<RecordId> get(BaseTransaction transaction, DataBox key) {
         typecheck(key);
         //throw new UnsupportedOperationException("TODO(hw2): implement");
-        LeafNode node = this.root.get(transaction, key);
-        return node.getKey(key);
+        int leaf = latchLeaf(transaction, Optional.of(key), false);
+        try {
+            Buffer buf = getBuffer(transaction, leaf);
+            Optional<RecordId> value = LeafNode.getKeyInPage(buf, metadata, key);
+            return value.map(v -> PostingList.first(transaction, metadata, v));
+        } finally {
+            latch(leaf).readLock().unlock();
+        }
     }
 
     /**
@@ -179,17 +285,97 @@ public class BPlusTree implements Closeable {
      * then scanEqual(k) returns an empty iterator. If get(k) returns
      * Optional.of(rid) for some rid, then scanEqual(k) returns an iterator
      * over rid.
+     *
+     * If the tree allows duplicate keys, scanEqual(k) returns every record id
+     * of k in ascending order, so that fetching the records they identify
+     * reads each data page once and in order. The posting list of k is
+     * streamed one page at a time.
      */
     public Iterator<RecordId> scanEqual(BaseTransaction transaction, DataBox key) {
         typecheck(key);
-        Optional<RecordId> rid = get(transaction, key);
-        if (rid.isPresent()) {
-            ArrayList<RecordId> l = new ArrayList<>();
-            l.add(rid.get());
-            return l.iterator();
-        } else {
-            return new ArrayList<RecordId>().iterator();
+        return new RidIterator(new PostingIterator(transaction, key, false));
+    }
+
+    /**
+     * Looks up many keys at once, returning the record ids scanEqual would
+     * return for each of `keys`, in the order of `keys`:
+     *
+     *   tree.getBatch(Arrays.asList(k3, k1, k2)); // [scanEqual(k3), scanEqual(k1), scanEqual(k2)]
+     *
+     * Rather than searching down from the root once per key, the keys are
+     * sorted, and after searching down to the leaf of the smallest key we
+     * answer every key up to the largest key of the leaf, then move on to the
+     * leaf's right sibling, and so on. When the keys are so sparse that the
+     * right sibling holds none of them, we search down from the root for the
+     * next key instead. Like scans, the batch holds one leaf latch at a time,
+     * and searches down again if the tree is restructured while it moves
+     * between leaves (see BPlusTreeIterator).
+     */
+    public List<List<RecordId>> getBatch(BaseTransaction transaction, List<DataBox> keys) {
+        keys.forEach(this::typecheck);
+        List<DataBox> probes = new ArrayList<>(new TreeSet<>(keys));
+        TreeMap<DataBox, List<RecordId>> values = new TreeMap<>();
+        int i = 0;
+        while (i < probes.size()) {
+            int leaf = latchLeaf(transaction, Optional.of(probes.get(i)), false);
+            // probes.get(i) belongs in a leaf we search down to, whether or
+            // not the leaf holds it; one we step right to only answers the
+            // keys up to its largest.
+            boolean searched = true;
+            while (true) {
+                int start = i;
+                int rightSibling;
+                long version;
+                try {
+                    Buffer buf = getBuffer(transaction, leaf);
+                    int n = LeafNode.numEntriesInPage(buf);
+                    DataBox last = n == 0 ? null : LeafNode.keyInPage(buf, metadata, n - 1);
+                    while (i < probes.size() && ((searched && i == start) ||
+                                                 (last != null && probes.get(i).compareTo(last) <= 0))) {
+                        DataBox key = probes.get(i++);
+                        int j = LeafNode.indexOfKeyInPage(buf, metadata, key);
+                        if (j != -1) {
+                            RecordId rid = LeafNode.ridInPage(buf, metadata, j);
+                            values.put(key, Collections.singletonList(rid));
+                        }
+                    }
+                    rightSibling = LeafNode.rightSiblingInPage(buf);
+                    version = structureVersion.get();
+                } finally {
+                    latch(leaf).readLock().unlock();
+                }
+
+                if (rightSibling == -1) {
+                    // The remaining keys are past the largest key of the tree.
+                    i = probes.size();
+                }
+                if (i == probes.size() || (!searched && i == start)) {
+                    break;
+                }
+                latch(rightSibling).readLock().lock();
+                if (structureVersion.get() != version) {
+                    latch(rightSibling).readLock().unlock();
+                    break;
+                }
+                leaf = rightSibling;
+                searched = false;
+            }
+        }
+
+        // Posting lists are read after their leaves are released, a page at a
+        // time (see PostingIterator).
+        for (Map.Entry<DataBox, List<RecordId>> entry : values.entrySet()) {
+            if (PostingList.isPointer(entry.getValue().get(0))) {
+                List<RecordId> rids = new ArrayList<>();
+                scanEqual(transaction, entry.getKey()).forEachRemaining(rids::add);
+                entry.setValue(rids);
+            }
+        }
+        List<List<RecordId>> result = new ArrayList<>(keys.size());
+        for (DataBox key : keys) {
+            result.add(values.getOrDefault(key, Collections.emptyList()));
         }
+        return result;
     }
 
     /**
@@ -220,7 +406,7 @@ public class BPlusTree implements Closeable {
     public Iterator<RecordId> scanAll(BaseTransaction transaction) {
         // TODO(hw2): Return a BPlusTreeIterator.
         //throw new UnsupportedOperationException("TODO(hw2): implement");
-        return new BPlusTreeIterator(this.root, transaction, Optional.empty());
+        return scanRange(transaction, Optional.empty(), true, Optional.empty(), true, false);
     }
 
     /**
@@ -251,35 +437,277 @@ public class BPlusTree implements Closeable {
         typecheck(key);
         // TODO(hw2): Return a BPlusTreeIterator.
         //throw new UnsupportedOperationException("TODO(hw2): implement");
-        LeafNode startNode = this.root.get(transaction,key);
-        return new BPlusTreeIterator(startNode, transaction, Optional.of(key));
+        return scanRange(transaction, Optional.of(key), true, Optional.empty(), true, false);
+    }
+
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree whose
+     * keys lie between `lo` and `hi`, in ascending order of their keys. Each
+     * bound is inclusive or exclusive as specified.
+     *
+     *   // Create a B+ tree and insert some values into it.
+     *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
+     *   for (int i = 1; i <= 5; ++i) {
+     *       tree.put(new IntDataBox(i), new RecordId(i, (short) i));
+     *   }
+     *
+     *   DataBox two = new IntDataBox(2);
+     *   DataBox four = new IntDataBox(4);
+     *   tree.scanRange(two, true, four, true);   // [(2, 2), (3, 3), (4, 4)]
+     *   tree.scanRange(two, false, four, false); // [(3, 3)]
+     *
+     * The scan starts at the leaf holding `lo` and stops at the leaf holding
+     * `hi`, so it only reads the leaves that overlap the range.
+     */
+    public Iterator<RecordId> scanRange(BaseTransaction transaction, DataBox lo,
+                                        boolean loInclusive, DataBox hi, boolean hiInclusive) {
+        typecheck(lo);
+        typecheck(hi);
+        return scanRange(transaction, Optional.of(lo), loInclusive, Optional.of(hi), hiInclusive,
+                         false);
+    }
+
+    /**
+     * Like scanRange, but returns the RecordIds in descending order of their
+     * keys.
+     */
+    public Iterator<RecordId> scanRangeDescending(BaseTransaction transaction, DataBox lo,
+            boolean loInclusive, DataBox hi, boolean hiInclusive) {
+        typecheck(lo);
+        typecheck(hi);
+        return scanRange(transaction, Optional.of(lo), loInclusive, Optional.of(hi), hiInclusive,
+                         true);
+    }
+
+    /**
+     * Like scanAll, but returns the RecordIds in descending order of their
+     * keys.
+     */
+    public Iterator<RecordId> scanAllDescending(BaseTransaction transaction) {
+        return scanRange(transaction, Optional.empty(), true, Optional.empty(), true, true);
+    }
+
+    /**
+     * The most general scan. Returns an iterator over all the RecordIds whose
+     * keys are greater than `lo` and less than `hi`, in descending order of
+     * their keys if `descending` and in ascending order otherwise. Either bound
+     * may be empty, in which case the range is unbounded on that side, and each
+     * bound is inclusive or exclusive as specified.
+     */
+    public Iterator<RecordId> scanRange(BaseTransaction transaction, Optional<DataBox> lo,
+                                        boolean loInclusive, Optional<DataBox> hi,
+                                        boolean hiInclusive, boolean descending) {
+        return new RidIterator(scanEntries(transaction, lo, loInclusive, hi, hiInclusive,
+                                           descending, false));
+    }
+
+    /**
+     * Like scanRange, but instead of the record ids, returns a Record for each
+     * of them holding its key followed by its included values, in the order
+     * of the columns of getIncludedSchema. The records are read from the
+     * leaves (and posting lists) of the tree alone.
+     *
+     *   // A tree on column x of a table T(x, y, z) including column z.
+     *   tree.scanRangeRecords(lo, true, hi, true, false); // [[x0, z0], [x1, z1], ...]
+     */
+    public Iterator<Record> scanRangeRecords(BaseTransaction transaction, Optional<DataBox> lo,
+            boolean loInclusive, Optional<DataBox> hi,
+            boolean hiInclusive, boolean descending) {
+        Iterator<Pair<RecordId, Record>> entries =
+            scanEntries(transaction, lo, loInclusive, hi, hiInclusive, descending, true);
+        return new Iterator<Record>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Record next() {
+                return entries.next().getSecond();
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over the RecordIds of the keys of a tree on a
+     * composite key (see Type.compositeType) that start with `prefix`, in
+     * ascending order of their keys.
+     *
+     *   // A tree on columns (x, y, z).
+     *   tree.scanPrefix(Arrays.asList(x0));     // keys (x0, *, *)
+     *   tree.scanPrefix(Arrays.asList(x0, y0)); // keys (x0, y0, *)
+     */
+    public Iterator<RecordId> scanPrefix(BaseTransaction transaction, List<DataBox> prefix) {
+        return scanPrefix(transaction, prefix, Optional.empty(), true, Optional.empty(), true,
+                          false);
+    }
+
+    /**
+     * Like scanPrefix, but only returns the keys whose field after `prefix`
+     * also lies between `lo` and `hi`, like scanRange. For example, on a tree
+     * on columns (x, y, z), scanPrefix([x0], Optional.of(y0), true,
+     * Optional.empty(), true, false) returns the keys with x = x0 and y >= y0.
+     * Either bound may be empty.
+     */
+    public Iterator<RecordId> scanPrefix(BaseTransaction transaction, List<DataBox> prefix,
+                                         Optional<DataBox> lo, boolean loInclusive,
+                                         Optional<DataBox> hi, boolean hiInclusive,
+                                         boolean descending) {
+        Pair<DataBox, Boolean> loBound = prefixBound(prefix, lo, loInclusive, false);
+        Pair<DataBox, Boolean> hiBound = prefixBound(prefix, hi, hiInclusive, true);
+        return scanRange(transaction, Optional.of(loBound.getFirst()), loBound.getSecond(),
+                         Optional.of(hiBound.getFirst()), hiBound.getSecond(), descending);
+    }
+
+    /**
+     * Returns the key, and whether it is inclusive, of the lower (or upper, if
+     * `upper`) end of the range of keys that start with `prefix` followed by a
+     * field within `bound`. If prefix and bound make up a full key, this is
+     * just that key. Otherwise, it is a prefix bound (see CompositeDataBox)
+     * placed just before or after the keys with that prefix, so it is never
+     * equal to a key and its inclusiveness doesn't matter.
+     */
+    private Pair<DataBox, Boolean> prefixBound(List<DataBox> prefix, Optional<DataBox> bound,
+            boolean inclusive, boolean upper) {
+        Type keySchema = metadata.getKeySchema();
+        if (keySchema.getTypeId() != TypeId.COMPOSITE) {
+            String msg = String.format("%s is not a composite type", keySchema);
+            throw new IllegalArgumentException(msg);
+        }
+        List<DataBox> values = new ArrayList<>(prefix);
+        bound.ifPresent(values::add);
+        if (values.size() == keySchema.getFieldTypes().size()) {
+            DataBox key = new CompositeDataBox(values);
+            typecheck(key);
+            return new Pair<>(key, inclusive);
+        }
+
+        // An inclusive lower end (or exclusive upper end) is placed before the
+        // keys starting with values, and an exclusive lower end (or inclusive
+        // upper end) after them.
+        boolean after = bound.isPresent() ? upper == inclusive : upper;
+        try {
+            return new Pair<>(after ? CompositeDataBox.upperBound(keySchema, values)
+                              : CompositeDataBox.lowerBound(keySchema, values), true);
+        } catch (DataBoxException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns an iterator over the (rid, record) entries of the keys between
+     * `lo` and `hi`, where record holds the key and included values of rid if
+     * `withRecords`, and is null otherwise.
+     */
+    private Iterator<Pair<RecordId, Record>> scanEntries(BaseTransaction transaction,
+            Optional<DataBox> lo, boolean loInclusive, Optional<DataBox> hi,
+            boolean hiInclusive, boolean descending, boolean withRecords) {
+        lo.ifPresent(this::typecheck);
+        hi.ifPresent(this::typecheck);
+        if (descending) {
+            return new DescendingIterator(transaction, lo, loInclusive, hi, hiInclusive,
+                                          withRecords);
+        }
+
+        return new BPlusTreeIterator(transaction, lo, loInclusive, hi, hiInclusive, withRecords);
     }
 
     /**
      * Inserts a (key, rid) pair into a B+ tree. If the key already exists in
-     * the B+ tree, then the pair is not inserted and an exception is raised.
+     * the B+ tree, then the pair is not inserted and an exception is raised,
+     * unless the tree allows duplicate keys, in which case only inserting the
+     * same (key, rid) pair twice raises an exception.
      *
      *   BPlusTree tree = new BPlusTree("t.txt", Type.intType(), 4);
      *   DataBox key = new IntDataBox(42);
      *   RecordId rid = new RecordId(42, (short) 42);
      *   tree.put(key, rid); // Sucess :)
      *   tree.put(key, rid); // BPlusTreeException :(
+     *
+     * Most puts don't split their leaf, so a put first optimistically read
+     * latches its way down to the leaf, write latching only the leaf. If the
+     * leaf turns out to be full, the put releases it and starts over,
+     * pessimistically write latching every node on the way down. A write
+     * latched node that isn't full can absorb a split of its child, so once we
+     * reach one we release the latches of all of its ancestors (including the
+     * root latch, if we hold it). The put is then carried out by the highest
+     * node we still hold, which only ever touches the nodes below it that we
+     * have latched.
      */
     public void put(BaseTransaction transaction, DataBox key, RecordId rid) throws BPlusTreeException {
+        put(transaction, key, rid, metadata.noIncluded());
+    }
+
+    /**
+     * Like put above, but for a tree with included columns: `included` holds
+     * the values of the included columns in the record `rid`, in the order of
+     * getIncludedSchema. An exception is raised if it holds the wrong number
+     * of values.
+     */
+    public void put(BaseTransaction transaction, DataBox key, RecordId rid, Record included)
+    throws BPlusTreeException {
         typecheck(key);
-        //throw new UnsupportedOperationException("TODO(hw2): implement");
-        Optional<Pair<DataBox, Integer>> result = this.root.put(transaction,key,rid);
+        writersLatch.readLock().lock();
+        try {
+            //throw new UnsupportedOperationException("TODO(hw2): implement");
+            int leaf = latchLeaf(transaction, Optional.of(key), true);
+            try {
+                if (isSafe(getBuffer(transaction, leaf))) {
+                    BPlusNode.fromBytes(transaction, metadata, leaf).put(transaction, key, rid, included);
+                    return;
+                }
+            } finally {
+                latch(leaf).writeLock().unlock();
+            }
 
-        if (result.isPresent()){
-            // Construct the new root.
-            List<DataBox> keys = new ArrayList<>();
-            keys.add(result.get().getFirst());
-            List<Integer> children = new ArrayList<>();
-            children.add(this.root.getPage().getPageNum());
-            children.add(result.get().getSecond());
-            this.root = new InnerNode(this.metadata, keys, children, transaction);
-        }
+            Deque<Lock> held = new ArrayDeque<>();
+            try {
+                rootLatch.writeLock().lock();
+                held.push(rootLatch.writeLock());
+                int pageNum = rootPageNum;
+                boolean holdsRoot = true;
+                int highest = pageNum;
+                while (true) {
+                    latch(pageNum).writeLock().lock();
+                    held.addLast(latch(pageNum).writeLock());
+                    Buffer buf = getBuffer(transaction, pageNum);
+                    if (isSafe(buf)) {
+                        while (held.size() > 1) {
+                            held.pollFirst().unlock();
+                        }
+                        holdsRoot = false;
+                        highest = pageNum;
+                    }
+                    if (buf.get(0) != (byte) 0) {
+                        break;
+                    }
+                    pageNum = InnerNode.childInPage(buf, metadata.getKeySchema(), key);
+                }
+
+                BPlusNode node = BPlusNode.fromBytes(transaction, metadata, highest);
+                Optional<Pair<DataBox, Integer>> result = node.put(transaction, key, rid, included);
+                if (result.isPresent()) {
+                    // Only the root can split without being absorbed by a parent.
+                    assert(holdsRoot);
 
+                    // Construct the new root.
+                    List<DataBox> keys = new ArrayList<>();
+                    keys.add(result.get().getFirst());
+                    List<Integer> children = new ArrayList<>();
+                    children.add(rootPageNum);
+                    children.add(result.get().getSecond());
+                    this.rootPageNum = new InnerNode(this.metadata, keys, children,
+                                                     transaction).getPage().getPageNum();
+                    writeHeader(transaction, headerPage);
+                }
+            } finally {
+                while (!held.isEmpty()) {
+                    held.pollLast().unlock();
+                }
+            }
+        } finally {
+            writersLatch.readLock().unlock();
+        }
     }
 
     /**
@@ -294,18 +722,65 @@ public class BPlusTree implements Closeable {
      * of bulk loading. If data does not meet the preconditions (contains
      * duplicates or not in order), the resulting behavior is undefined.
      *
+     * If the tree allows duplicate keys, data may contain them, and the record
+     * ids of each run of equal keys are written to a posting list.
+     *
      * The behavior of this method should be similar to that of InnerNode's
      * bulkLoad (see comments in BPlusNode.bulkLoad).
      */
     public void bulkLoad(BaseTransaction transaction, Iterator<Pair<DataBox, RecordId>> data,
                          float fillFactor) throws BPlusTreeException {
         //throw new UnsupportedOperationException("TODO(hw2): implement");
+        bulkLoadRecords(transaction, new Iterator<Pair<Record, RecordId>>() {
+            @Override
+            public boolean hasNext() {
+                return data.hasNext();
+            }
+
+            @Override
+            public Pair<Record, RecordId> next() {
+                Pair<DataBox, RecordId> p = data.next();
+                return new Pair<>(new Record(Collections.singletonList(p.getFirst())), p.getSecond());
+            }
+        }, fillFactor);
+    }
+
+    /**
+     * Like bulkLoad, but for a tree with included columns. Each element of
+     * data pairs a record id with a Record holding its key followed by its
+     * included values (see scanRangeRecords), sorted by key.
+     */
+    public void bulkLoadRecords(BaseTransaction transaction, Iterator<Pair<Record, RecordId>> data,
+                                float fillFactor) throws BPlusTreeException {
         Iterator<RecordId> iter = scanAll(transaction);
         if (iter.hasNext()){
             throw new BPlusTreeException("The tree is not empty.");
         }
+        if (!metadata.isUnique()) {
+            data = new GroupingIterator(transaction, data);
+        }
+        writersLatch.readLock().lock();
+        rootLatch.writeLock().lock();
+        try {
+            BPlusNode root = BPlusNode.fromBytes(transaction, metadata, rootPageNum);
+            this.rootPageNum = bulkLoadInto(transaction, root, data, fillFactor);
+            writeHeader(transaction, headerPage);
+        } finally {
+            rootLatch.writeLock().unlock();
+            writersLatch.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bulk loads data into the tree rooted at `root`, which need not be the
+     * root of this tree, and returns the page number of the resulting root.
+     */
+    private int bulkLoadInto(BaseTransaction transaction, BPlusNode root,
+                             Iterator<Pair<Record, RecordId>> data, float fillFactor)
+    throws BPlusTreeException {
         while(data.hasNext()) {
-            Optional<Pair<DataBox, Integer>> result = this.root.bulkLoad(transaction, data, fillFactor);
+            Optional<Pair<DataBox, Integer>> result = root.bulkLoadRecords(transaction, data,
+                    fillFactor);
 
             //leafnode overflow
             if (result.isPresent()) {
@@ -313,11 +788,12 @@ public class BPlusTree implements Closeable {
                 List<DataBox> keys = new ArrayList<>();
                 keys.add(result.get().getFirst());
                 List<Integer> children = new ArrayList<>();
-                children.add(this.root.getPage().getPageNum());
+                children.add(root.getPage().getPageNum());
                 children.add(result.get().getSecond());
-                this.root = new InnerNode(this.metadata, keys, children, transaction);
+                root = new InnerNode(this.metadata, keys, children, transaction);
             }
         }
+        return root.getPage().getPageNum();
     }
 
     /**
@@ -331,11 +807,264 @@ public class BPlusTree implements Closeable {
      *   tree.get(key); // Optional.of(rid)
      *   tree.remove(key);
      *   tree.get(key); // Optional.empty()
+     *
+     * If the tree allows duplicate keys, every record id of the key is
+     * removed.
+     *
+     * By default, removing a key never restructures the tree, so only the
+     * leaf is write latched, and leaves may be left underfull or even empty.
+     * If rebalancing is enabled (see setRebalanceOnRemove), a node that falls
+     * below d entries (where d is the order of the tree) is instead merged
+     * with a sibling if the two fit in a single node, and otherwise takes
+     * entries from the sibling so that both have at least d. A merge removes
+     * a key from the parent, which may underflow in turn, and a root that is
+     * left with a single child is replaced by the child.
+     *
+     * Like put, a remove first optimistically latches only the leaf, and if
+     * the leaf might underflow, starts over, write latching every node on the
+     * way down. A node that has more than d entries (or the root, if it is a
+     * leaf or has more than one key) can lose one without underflowing, so
+     * once we reach one we release the latches of its ancestors. Siblings are
+     * only latched while their parent is write latched, so no other
+     * operation can reach them except through a leaf's right sibling pointer,
+     * and scans that follow those pointers never hold more than one latch.
      */
     public void remove(BaseTransaction transaction, DataBox key) {
-        typecheck(key);
         //throw new UnsupportedOperationException("TODO(hw2): implement");
-        this.root.remove(transaction, key);
+        remove(transaction, key, Optional.empty());
+    }
+
+    /**
+     * Deletes the single pair (key, rid) from a B+ tree, if it exists. In a
+     * tree that allows duplicate keys, the other record ids of the key are
+     * left in place; otherwise, this is the same as remove(key) if key maps to
+     * rid.
+     */
+    public void remove(BaseTransaction transaction, DataBox key, RecordId rid) {
+        remove(transaction, key, Optional.of(rid));
+    }
+
+    private void remove(BaseTransaction transaction, DataBox key, Optional<RecordId> rid) {
+        typecheck(key);
+        writersLatch.readLock().lock();
+        try {
+            int leaf = latchLeaf(transaction, Optional.of(key), true);
+            try {
+                if (!rebalanceOnRemove || !mayUnderflow(getBuffer(transaction, leaf), false)) {
+                    removeFromLeaf(transaction, leaf, key, rid);
+                    return;
+                }
+            } finally {
+                latch(leaf).writeLock().unlock();
+            }
+
+            Deque<Lock> held = new ArrayDeque<>();
+            try {
+                rootLatch.writeLock().lock();
+                held.push(rootLatch.writeLock());
+                // The write latched nodes, from the highest down to the leaf.
+                List<Integer> path = new ArrayList<>();
+                boolean holdsRoot = true;
+                int pageNum = rootPageNum;
+                while (true) {
+                    latch(pageNum).writeLock().lock();
+                    held.addLast(latch(pageNum).writeLock());
+                    path.add(pageNum);
+                    Buffer buf = getBuffer(transaction, pageNum);
+                    if (!mayUnderflow(buf, holdsRoot && pageNum == rootPageNum)) {
+                        while (held.size() > 1) {
+                            held.pollFirst().unlock();
+                        }
+                        path.subList(0, path.size() - 1).clear();
+                        holdsRoot = false;
+                    }
+                    if (buf.get(0) != (byte) 0) {
+                        break;
+                    }
+                    pageNum = InnerNode.childInPage(buf, metadata.getKeySchema(), key);
+                }
+
+                removeFromLeaf(transaction, pageNum, key, rid);
+                for (int i = path.size() - 1; i > 0; --i) {
+                    BPlusNode child = BPlusNode.fromBytes(transaction, metadata, path.get(i));
+                    if (numKeys(child) >= metadata.getOrder()) {
+                        break;
+                    }
+                    InnerNode parent = (InnerNode) BPlusNode.fromBytes(transaction, metadata,
+                                       path.get(i - 1));
+                    rebalanceChild(transaction, parent, parent.getChildren().indexOf(path.get(i)),
+                                   held);
+                }
+
+                BPlusNode root = BPlusNode.fromBytes(transaction, metadata, path.get(0));
+                if (holdsRoot && root instanceof InnerNode && numKeys(root) == 0) {
+                    // Only the root can be left with a single child.
+                    structureVersion.incrementAndGet();
+                    this.rootPageNum = ((InnerNode) root).getChildren().get(0);
+                    writeHeader(transaction, headerPage);
+                    freeNode(transaction, path.get(0));
+                }
+            } finally {
+                while (!held.isEmpty()) {
+                    held.pollLast().unlock();
+                }
+            }
+        } finally {
+            writersLatch.readLock().unlock();
+        }
+    }
+
+    private void removeFromLeaf(BaseTransaction transaction, int pageNum, DataBox key,
+                                Optional<RecordId> rid) {
+        LeafNode leaf = (LeafNode) BPlusNode.fromBytes(transaction, metadata, pageNum);
+        if (rid.isPresent()) {
+            leaf.remove(transaction, key, rid.get());
+        } else {
+            leaf.remove(transaction, key);
+        }
+    }
+
+    /**
+     * Merges or redistributes child i of `parent` with a sibling: the one to
+     * its right, or the one to its left if child i is the last. Both parent
+     * and child i must be write latched; the sibling is write latched and its
+     * latch pushed onto `held`.
+     */
+    private void rebalanceChild(BaseTransaction transaction, InnerNode parent, int i,
+                                Deque<Lock> held) {
+        List<Integer> children = parent.getChildren();
+        if (children.size() < 2) {
+            return;
+        }
+        int l = i < children.size() - 1 ? i : i - 1;
+        int sibling = children.get(l == i ? i + 1 : i - 1);
+        latch(sibling).writeLock().lock();
+        held.addLast(latch(sibling).writeLock());
+        structureVersion.incrementAndGet();
+
+        int rightPageNum = children.get(l + 1);
+        BPlusNode left = BPlusNode.fromBytes(transaction, metadata, children.get(l));
+        BPlusNode right = BPlusNode.fromBytes(transaction, metadata, rightPageNum);
+        int maxKeys = 2 * metadata.getOrder();
+        if (left instanceof LeafNode) {
+            LeafNode leftLeaf = (LeafNode) left;
+            LeafNode rightLeaf = (LeafNode) right;
+            if (numKeys(left) + numKeys(right) > maxKeys) {
+                parent.setKey(transaction, l, leftLeaf.redistribute(transaction, rightLeaf));
+                return;
+            }
+            leftLeaf.merge(transaction, rightLeaf);
+        } else {
+            InnerNode leftInner = (InnerNode) left;
+            InnerNode rightInner = (InnerNode) right;
+            DataBox separator = parent.getKeys().get(l);
+            if (numKeys(left) + 1 + numKeys(right) > maxKeys) {
+                parent.setKey(transaction, l,
+                              leftInner.redistribute(transaction, separator, rightInner));
+                return;
+            }
+            leftInner.merge(transaction, separator, rightInner);
+        }
+        parent.removeChild(transaction, l + 1);
+        freeNode(transaction, rightPageNum);
+    }
+
+    /**
+     * Enables or disables merging and redistributing underfull nodes on
+     * remove (see remove). Rebalancing is disabled by default.
+     */
+    public void setRebalanceOnRemove(boolean rebalanceOnRemove) {
+        this.rebalanceOnRemove = rebalanceOnRemove;
+    }
+
+    /**
+     * Rebuilds the tree from scratch, packing its entries into as few leaves
+     * as `fillFactor` allows (see bulkLoad), e.g. after many removes have left
+     * its leaves sparse. The pages of the old tree are freed; posting lists
+     * are carried over as is.
+     *
+     * Readers run concurrently with a rebuild: they keep reading the old tree
+     * until the new one is complete, at which point the root pointer is
+     * swapped, and scans that are under way resume in the new tree (see
+     * BPlusTreeIterator). Writers wait for the rebuild to finish.
+     */
+    public void rebuild(BaseTransaction transaction, float fillFactor) throws BPlusTreeException {
+        writersLatch.writeLock().lock();
+        try {
+            // With writers locked out, the old tree stays as it is, so we can
+            // read it without latching it.
+            List<Integer> oldPages = new ArrayList<>();
+            List<Integer> oldLeaves = new ArrayList<>();
+            Deque<Integer> frontier = new ArrayDeque<>();
+            frontier.add(rootPageNum);
+            while (!frontier.isEmpty()) {
+                int pageNum = frontier.poll();
+                oldPages.add(pageNum);
+                BPlusNode node = BPlusNode.fromBytes(transaction, metadata, pageNum);
+                if (node instanceof InnerNode) {
+                    frontier.addAll(((InnerNode) node).getChildren());
+                } else {
+                    oldLeaves.add(pageNum);
+                }
+            }
+
+            LeafNode root = new LeafNode(metadata, new ArrayList<>(), new ArrayList<>(),
+                                         new ArrayList<>(), Optional.empty(), transaction);
+            Iterator<Pair<Record, RecordId>> data = new LeafEntryIterator(transaction, oldLeaves);
+            int newRoot = bulkLoadInto(transaction, root, data, fillFactor);
+
+            rootLatch.writeLock().lock();
+            try {
+                structureVersion.incrementAndGet();
+                this.rootPageNum = newRoot;
+                writeHeader(transaction, headerPage);
+            } finally {
+                rootLatch.writeLock().unlock();
+            }
+
+            // Old pages are freed from the root down, and only once no reader
+            // holds them: a reader releases a node only after latching the
+            // child it descends to.
+            for (int pageNum : oldPages) {
+                latch(pageNum).writeLock().lock();
+                try {
+                    freeNode(transaction, pageNum);
+                } finally {
+                    latch(pageNum).writeLock().unlock();
+                }
+            }
+        } finally {
+            writersLatch.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns statistics about the shape of the tree. Writers wait while the
+     * leaves are counted.
+     */
+    public BPlusTreeStats getStats(BaseTransaction transaction) {
+        writersLatch.writeLock().lock();
+        try {
+            int height = 0;
+            BPlusNode node = getRoot(transaction);
+            while (node instanceof InnerNode) {
+                ++height;
+                int child = ((InnerNode) node).getChildren().get(0);
+                node = BPlusNode.fromBytes(transaction, metadata, child);
+            }
+            int numLeaves = 0;
+            long numEntries = 0;
+            Optional<LeafNode> leaf = Optional.of((LeafNode) node);
+            while (leaf.isPresent()) {
+                ++numLeaves;
+                numEntries += leaf.get().getKeys().size();
+                leaf = leaf.get().getRightSibling(transaction);
+            }
+            return new BPlusTreeStats(metadata.getOrder(), height, numLeaves, numEntries,
+                                      getNumPages());
+        } finally {
+            writersLatch.writeLock().unlock();
+        }
     }
 
     // Helpers /////////////////////////////////////////////////////////////////
@@ -344,7 +1073,7 @@ public class BPlusTree implements Closeable {
      * more information.
      */
     public String toSexp(BaseTransaction transaction) {
-        return root.toSexp(transaction);
+        return getRoot(transaction).toSexp(transaction);
     }
 
     /**
@@ -363,7 +1092,7 @@ public class BPlusTree implements Closeable {
         List<String> strings = new ArrayList<>();
         strings.add("digraph g {" );
         strings.add("  node [shape=record, height=0.1];");
-        strings.add(root.toDot(transaction));
+        strings.add(getRoot(transaction).toDot(transaction));
         strings.add("}");
         return String.join("\n", strings);
     }
@@ -402,7 +1131,13 @@ public class BPlusTree implements Closeable {
      * of size `pageSizeInBytes`.
      */
     public static int maxOrder(int pageSizeInBytes, Type keySchema) {
-        int leafOrder = LeafNode.maxOrder(pageSizeInBytes, keySchema);
+        return maxOrder(pageSizeInBytes, keySchema, BPlusTreeMetadata.emptySchema());
+    }
+
+    /** Like maxOrder above, but for a tree with included columns. */
+    public static int maxOrder(int pageSizeInBytes, Type keySchema, Schema includedSchema) {
+        int leafOrder = LeafNode.maxOrder(pageSizeInBytes, keySchema,
+                                          includedSchema.getSizeInBytes());
         int innerOrder = InnerNode.maxOrder(pageSizeInBytes, keySchema);
         return Math.min(leafOrder, innerOrder);
     }
@@ -412,13 +1147,136 @@ public class BPlusTree implements Closeable {
         return metadata.getAllocator().getNumPages();
     }
 
+    /**
+     * Returns the schema of the tree's included columns, which has no fields
+     * if the tree has none.
+     */
+    public Schema getIncludedSchema() {
+        return metadata.getIncludedSchema();
+    }
+
     /** Serializes the header page to page. */
     private void writeHeader(BaseTransaction transaction, Page page) {
         byte[] keySchema = metadata.getKeySchema().toBytes();
         Buffer buf = page.getBuffer(transaction);
         buf.put(keySchema);
         buf.putInt(metadata.getOrder());
-        buf.putInt(root.getPage().getPageNum());
+        buf.putInt(rootPageNum);
+        // Trees written before duplicate keys and included columns were
+        // supported have zeros here, i.e. are unique and include no columns.
+        buf.put(metadata.isUnique() ? (byte) 0 : (byte) 1);
+        buf.put(metadata.getIncludedSchema().toBytes());
+    }
+
+    private BPlusNode getRoot(BaseTransaction transaction) {
+        return BPlusNode.fromBytes(transaction, metadata, rootPageNum);
+    }
+
+    private Buffer getBuffer(BaseTransaction transaction, int pageNum) {
+        return allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+    }
+
+    /** Frees the page of a node that is no longer part of the tree. */
+    private void freeNode(BaseTransaction transaction, int pageNum) {
+        metadata.getNodeCache().invalidate(pageNum);
+        allocator.freePage(transaction, pageNum);
+    }
+
+    private ReentrantReadWriteLock latch(int pageNum) {
+        return latches.computeIfAbsent(pageNum, p -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Returns whether the node serialized in `buf` has room for one more key,
+     * and so would not split if a key were put into it (or into one of its
+     * descendants).
+     */
+    private boolean isSafe(Buffer buf) {
+        int numKeys = buf.get(0) == (byte) 0 ? InnerNode.numKeysInPage(buf)
+                                             : LeafNode.numEntriesInPage(buf);
+        return numKeys < 2 * metadata.getOrder();
+    }
+
+    /**
+     * Returns whether the node serialized in `buf` might underflow if a key
+     * were removed from it (or from one of its descendants), and so be merged
+     * or redistributed with a sibling, or collapsed if it is the root.
+     */
+    private boolean mayUnderflow(Buffer buf, boolean isRoot) {
+        if (buf.get(0) == (byte) 0) {
+            return InnerNode.numKeysInPage(buf) <= (isRoot ? 1 : metadata.getOrder());
+        }
+        return !isRoot && LeafNode.numEntriesInPage(buf) <= metadata.getOrder();
+    }
+
+    private static int numKeys(BPlusNode node) {
+        return node instanceof InnerNode ? ((InnerNode) node).getKeys().size()
+                                         : ((LeafNode) node).getKeys().size();
+    }
+
+    /**
+     * Latch-crabs down to the leaf in which `key` belongs (or to the leftmost
+     * leaf if `key` is empty) and returns its page number. The inner nodes are
+     * read latched and searched in place, and each is released as soon as its
+     * child is latched. The leaf is returned latched, for writing if
+     * `exclusive` and for reading otherwise; the caller must release it.
+     */
+    private int latchLeaf(BaseTransaction transaction, Optional<DataBox> key,
+                          boolean exclusive) {
+        Type keySchema = metadata.getKeySchema();
+        Lock parent = rootLatch.readLock();
+        parent.lock();
+        int pageNum = rootPageNum;
+        while (true) {
+            // Whether a page holds a leaf or an inner node never changes, so
+            // we can check before choosing which latch to acquire.
+            Buffer buf = getBuffer(transaction, pageNum);
+            boolean isLeaf = buf.get(0) != (byte) 0;
+            Lock child = isLeaf && exclusive ? latch(pageNum).writeLock()
+                                             : latch(pageNum).readLock();
+            child.lock();
+            parent.unlock();
+            if (isLeaf) {
+                return pageNum;
+            }
+            parent = child;
+            pageNum = key.isPresent() ? InnerNode.childInPage(buf, keySchema, key.get())
+                                      : InnerNode.childAtInPage(buf, keySchema, 0);
+        }
+    }
+
+    /**
+     * Like latchLeaf, but for descending scans: latch-crabs down to the leaf
+     * holding the largest keys that are less than `bound` (or less than or
+     * equal to `bound` if `inclusive`, or the rightmost leaf if `bound` is
+     * empty). The leaf is returned read latched, along with the smallest key
+     * that may be stored in it, if any: every key in a leaf to its left is
+     * less than this lower fence.
+     */
+    private Pair<Integer, Optional<DataBox>> latchLeafBelow(BaseTransaction transaction,
+            Optional<DataBox> bound, boolean inclusive) {
+        Type keySchema = metadata.getKeySchema();
+        Optional<DataBox> fence = Optional.empty();
+        Lock parent = rootLatch.readLock();
+        parent.lock();
+        int pageNum = rootPageNum;
+        while (true) {
+            Buffer buf = getBuffer(transaction, pageNum);
+            Lock child = latch(pageNum).readLock();
+            child.lock();
+            parent.unlock();
+            if (buf.get(0) != (byte) 0) {
+                return new Pair<>(pageNum, fence);
+            }
+            parent = child;
+            int i = bound.isPresent()
+                    ? InnerNode.childIndexInPage(buf, keySchema, bound.get(), inclusive)
+                    : InnerNode.numKeysInPage(buf);
+            if (i > 0) {
+                fence = Optional.of(InnerNode.keyInPage(buf, keySchema, i - 1));
+            }
+            pageNum = InnerNode.childAtInPage(buf, keySchema, i);
+        }
     }
 
     private void typecheck(DataBox key) {
@@ -430,54 +1288,478 @@ public class BPlusTree implements Closeable {
     }
 
     // Iterator ////////////////////////////////////////////////////////////////
-    private class BPlusTreeIterator implements Iterator<RecordId> {
-        // TODO(hw2): Add whatever fields and constructors you want here.
-        private LeafNode currNode;
-        private Iterator<RecordId> currIter;
+    /**
+     * The internal iterators below return (rid, record) entries, where record
+     * holds the key and included values of rid if the iterator was created
+     * `withRecords` (see scanRangeRecords), and is null otherwise. A
+     * RidIterator strips the records off for the public rid scans.
+     */
+    private static class RidIterator implements Iterator<RecordId> {
+        private Iterator<Pair<RecordId, Record>> entries;
+
+        RidIterator(Iterator<Pair<RecordId, Record>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+
+        @Override
+        public RecordId next() {
+            return entries.next().getFirst();
+        }
+    }
+
+    /** Returns the record holding `key` followed by the values of `included`. */
+    private static Record indexRecord(DataBox key, Record included) {
+        List<DataBox> values = new ArrayList<>(included.getValues().size() + 1);
+        values.add(key);
+        values.addAll(included.getValues());
+        return new Record(values);
+    }
+
+    /**
+     * Copies entry i of the leaf in `buf` into keys, rids, and included, in the
+     * form ExpandingIterator expects.
+     */
+    private void copyEntry(Buffer buf, int i, boolean withRecords, List<DataBox> keys,
+                           List<RecordId> rids, List<Record> included) {
+        RecordId rid = LeafNode.ridInPage(buf, metadata, i);
+        rids.add(rid);
+        boolean needsKey = withRecords || PostingList.isPointer(rid);
+        keys.add(needsKey ? LeafNode.keyInPage(buf, metadata, i) : null);
+        included.add(withRecords ? LeafNode.includedInPage(buf, metadata, i) : null);
+    }
+
+    /**
+     * An iterator over the record ids of the keys between `lo` and `hi`.
+     *
+     * The iterator doesn't hold any latches between calls to next. Instead, it
+     * copies the record ids of one leaf at a time while holding the leaf's
+     * read latch, along with the page number of its right sibling. A leaf only
+     * ever splits to the right, so a concurrent split of a leaf that we have
+     * already copied just moves record ids we have already returned; we never
+     * see a record id twice.
+     *
+     * Merges and redistributions (see remove) and rebuilds can move record ids
+     * to the left, or free the right sibling altogether, so every one of them
+     * bumps structureVersion. If the version has changed by the time we latch
+     * the right sibling, we don't read it, and instead search down from the
+     * root again for the keys past the last one we copied.
+     */
+    private class BPlusTreeIterator implements Iterator<Pair<RecordId, Record>> {
         private BaseTransaction transaction;
+        private Optional<DataBox> hi;
+        private boolean hiInclusive;
+        private boolean withRecords;
+        private Iterator<Pair<RecordId, Record>> currIter;
+        private int nextLeaf;
+
+        // Where to search from if the tree is restructured: the keys after
+        // resumeKey (or from resumeKey on, if resumeInclusive) have not been
+        // copied yet. version is the structureVersion of the copied leaf.
+        private Optional<DataBox> resumeKey;
+        private boolean resumeInclusive;
+        private long version;
 
-        public BPlusTreeIterator(BPlusNode node, BaseTransaction transaction, Optional<DataBox> key){
-            this.currNode = node.getLeftmostLeaf(transaction);
-            if (key.isPresent()){
-                this.currIter = this.currNode.scanGreaterEqual(key.get());
-            } else {
-                this.currIter = this.currNode.scanAll();
+        BPlusTreeIterator(BaseTransaction transaction, Optional<DataBox> lo,
+                          boolean loInclusive, Optional<DataBox> hi, boolean hiInclusive,
+                          boolean withRecords) {
+            this.transaction = transaction;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.withRecords = withRecords;
+            this.resumeKey = lo;
+            this.resumeInclusive = loInclusive;
+            seek();
+        }
+
+        // Searches down to the leaf holding resumeKey and copies it.
+        private void seek() {
+            int pageNum = latchLeaf(transaction, resumeKey, false);
+            try {
+                int index = 0;
+                if (resumeKey.isPresent()) {
+                    Buffer buf = getBuffer(transaction, pageNum);
+                    index = LeafNode.numLessThanInPage(buf, metadata, resumeKey.get(),
+                                                       !resumeInclusive);
+                }
+                copyLeaf(pageNum, index);
+            } finally {
+                latch(pageNum).readLock().unlock();
+            }
+        }
+
+        // Leaf `pageNum` must be read latched.
+        private void copyLeaf(int pageNum, int index) {
+            this.version = structureVersion.get();
+            Buffer buf = getBuffer(transaction, pageNum);
+            int numEntries = LeafNode.numEntriesInPage(buf);
+            int end = hi.isPresent()
+                      ? LeafNode.numLessThanInPage(buf, metadata, hi.get(), hiInclusive)
+                      : numEntries;
+            List<RecordId> rids = new ArrayList<>(Math.max(end - index, 0));
+            List<DataBox> keys = new ArrayList<>(Math.max(end - index, 0));
+            List<Record> included = new ArrayList<>(Math.max(end - index, 0));
+            for (int i = index; i < end; ++i) {
+                copyEntry(buf, i, withRecords, keys, rids, included);
             }
+            this.currIter = new ExpandingIterator(transaction, keys, rids, included, withRecords);
+            if (index < end) {
+                this.resumeKey = Optional.of(LeafNode.keyInPage(buf, metadata, end - 1));
+                this.resumeInclusive = false;
+            }
+
+            // If the range ends within this leaf, there is no need to read the
+            // leaves to its right.
+            this.nextLeaf = end < numEntries ? -1 : LeafNode.rightSiblingInPage(buf);
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!currIter.hasNext() && nextLeaf != -1) {
+                int pageNum = nextLeaf;
+                latch(pageNum).readLock().lock();
+                boolean restructured;
+                try {
+                    restructured = structureVersion.get() != version;
+                    if (!restructured) {
+                        copyLeaf(pageNum, 0);
+                    }
+                } finally {
+                    latch(pageNum).readLock().unlock();
+                }
+                if (restructured) {
+                    seek();
+                }
+            }
+            return currIter.hasNext();
+        }
+
+        @Override
+        public Pair<RecordId, Record> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currIter.next();
+        }
+    }
+
+    /**
+     * An iterator over the record ids of the keys between `lo` and `hi`, in
+     * descending order of their keys.
+     *
+     * Leaves don't point to their left siblings, so after copying the record
+     * ids of a leaf (see BPlusTreeIterator), we find the leaf to its left by
+     * searching down from the root for the keys less than the leaf's lower
+     * fence (see latchLeafBelow). Every search moves strictly to the left of
+     * the keys we have already returned, so the scan always makes progress,
+     * even past empty leaves, and never returns a record id twice.
+     */
+    private class DescendingIterator implements Iterator<Pair<RecordId, Record>> {
+        private BaseTransaction transaction;
+        private Optional<DataBox> lo;
+        private boolean loInclusive;
+        private boolean withRecords;
+
+        // The bound of the next leaf to copy, or empty if there is none.
+        private Optional<DataBox> nextBound;
+        private boolean nextBoundInclusive;
+        private boolean done;
+
+        private Iterator<Pair<RecordId, Record>> currIter = Collections.emptyIterator();
+
+        DescendingIterator(BaseTransaction transaction, Optional<DataBox> lo,
+                           boolean loInclusive, Optional<DataBox> hi, boolean hiInclusive,
+                           boolean withRecords) {
             this.transaction = transaction;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.withRecords = withRecords;
+            this.nextBound = hi;
+            this.nextBoundInclusive = hiInclusive;
+            this.done = false;
+        }
+
+        private void copyPreviousLeaf() {
+            Pair<Integer, Optional<DataBox>> leaf =
+                latchLeafBelow(transaction, nextBound, nextBoundInclusive);
+            int pageNum = leaf.getFirst();
+            try {
+                Buffer buf = getBuffer(transaction, pageNum);
+                int end = nextBound.isPresent()
+                          ? LeafNode.numLessThanInPage(buf, metadata, nextBound.get(),
+                                                       nextBoundInclusive)
+                          : LeafNode.numEntriesInPage(buf);
+                int start = lo.isPresent()
+                            ? LeafNode.numLessThanInPage(buf, metadata, lo.get(), !loInclusive)
+                            : 0;
+                List<RecordId> rids = new ArrayList<>(Math.max(end - start, 0));
+                List<DataBox> keys = new ArrayList<>(Math.max(end - start, 0));
+                List<Record> included = new ArrayList<>(Math.max(end - start, 0));
+                for (int i = end - 1; i >= start; --i) {
+                    copyEntry(buf, i, withRecords, keys, rids, included);
+                }
+                this.currIter = new ExpandingIterator(transaction, keys, rids, included,
+                                                      withRecords);
+
+                // We're done once the range starts within this leaf, or once
+                // there are no leaves to its left holding keys in the range.
+                Optional<DataBox> fence = leaf.getSecond();
+                this.done = start > 0 || !fence.isPresent() ||
+                            (lo.isPresent() && lo.get().compareTo(fence.get()) >= 0);
+                this.nextBound = fence;
+                this.nextBoundInclusive = false;
+            } finally {
+                latch(pageNum).readLock().unlock();
+            }
         }
 
         @Override
         public boolean hasNext() {
-            //throw new UnsupportedOperationException("TODO(hw2): implement");
-            if (this.currIter.hasNext()){
-                return true;
-            } else {
-                Optional<LeafNode> rightNode = this.currNode.getRightSibling(this.transaction);
-                if (rightNode.isPresent()){
-                    this.currNode = rightNode.get();
-                    this.currIter = this.currNode.scanAll();
-                    return hasNext();
+            while (!currIter.hasNext() && !done) {
+                copyPreviousLeaf();
+            }
+            return currIter.hasNext();
+        }
+
+        @Override
+        public Pair<RecordId, Record> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return currIter.next();
+        }
+    }
+
+    /**
+     * An iterator over the entries of copied leaf entries, which expands every
+     * pointer to a posting list into the entries of the list (see
+     * PostingIterator). keys.get(i) is the key of rids.get(i) if rids.get(i) is
+     * a pointer or `withRecords` is set, and null otherwise: only pointers and
+     * records need their keys. Likewise, included.get(i) is only set if
+     * `withRecords` is set and rids.get(i) isn't a pointer.
+     */
+    private class ExpandingIterator implements Iterator<Pair<RecordId, Record>> {
+        private BaseTransaction transaction;
+        private Iterator<DataBox> keys;
+        private Iterator<RecordId> rids;
+        private Iterator<Record> included;
+        private boolean withRecords;
+        private Iterator<Pair<RecordId, Record>> postings = Collections.emptyIterator();
+        private Pair<RecordId, Record> nextEntry = null;
+
+        ExpandingIterator(BaseTransaction transaction, List<DataBox> keys, List<RecordId> rids,
+                          List<Record> included, boolean withRecords) {
+            this.transaction = transaction;
+            this.keys = keys.iterator();
+            this.rids = rids.iterator();
+            this.included = included.iterator();
+            this.withRecords = withRecords;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // A posting list may have been emptied since its leaf was copied,
+            // so we may have to skip past several pointers.
+            while (nextEntry == null && !postings.hasNext() && rids.hasNext()) {
+                DataBox key = keys.next();
+                RecordId rid = rids.next();
+                Record inc = included.next();
+                if (PostingList.isPointer(rid)) {
+                    postings = new PostingIterator(transaction, key, withRecords);
                 } else {
+                    nextEntry = new Pair<>(rid, withRecords ? indexRecord(key, inc) : null);
+                }
+            }
+            return nextEntry != null || postings.hasNext();
+        }
+
+        @Override
+        public Pair<RecordId, Record> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (nextEntry != null) {
+                Pair<RecordId, Record> entry = nextEntry;
+                nextEntry = null;
+                return entry;
+            }
+            return postings.next();
+        }
+    }
+
+    /**
+     * An iterator over the entries of a single key, in ascending order of
+     * their record ids.
+     *
+     * Like BPlusTreeIterator, the iterator doesn't hold any latches between
+     * calls to next. Each time it runs out of record ids, it searches down to
+     * the leaf holding the key again and, with the leaf read latched, copies
+     * the next page of the key's posting list: the page holding the smallest
+     * record ids larger than the last one returned (see PostingList.readAfter).
+     */
+    private class PostingIterator implements Iterator<Pair<RecordId, Record>> {
+        private BaseTransaction transaction;
+        private DataBox key;
+        private boolean withRecords;
+        private Optional<RecordId> last;
+        private Iterator<Pair<RecordId, Record>> currIter;
+        private boolean done;
+
+        PostingIterator(BaseTransaction transaction, DataBox key, boolean withRecords) {
+            this.transaction = transaction;
+            this.key = key;
+            this.withRecords = withRecords;
+            this.last = Optional.empty();
+            this.currIter = Collections.emptyIterator();
+            this.done = false;
+        }
+
+        private void copyNextPage() {
+            int leaf = latchLeaf(transaction, Optional.of(key), false);
+            try {
+                Buffer buf = getBuffer(transaction, leaf);
+                int i = LeafNode.indexOfKeyInPage(buf, metadata, key);
+                if (i == -1) {
+                    this.done = true;
+                    return;
+                }
+                RecordId value = LeafNode.ridInPage(buf, metadata, i);
+                Record valueIncluded = LeafNode.includedInPage(buf, metadata, i);
+                Pair<List<Pair<RecordId, Record>>, Boolean> page =
+                    PostingList.readAfter(transaction, metadata, value, valueIncluded, last);
+                this.currIter = page.getFirst().iterator();
+                this.done = !page.getSecond();
+            } finally {
+                latch(leaf).readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!currIter.hasNext() && !done) {
+                copyNextPage();
+                if (!currIter.hasNext()) {
+                    this.done = true;
+                }
+            }
+            return currIter.hasNext();
+        }
+
+        @Override
+        public Pair<RecordId, Record> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Pair<RecordId, Record> entry = currIter.next();
+            last = Optional.of(entry.getFirst());
+            Record record = withRecords ? indexRecord(key, entry.getSecond()) : null;
+            return new Pair<>(entry.getFirst(), record);
+        }
+    }
+
+    /**
+     * An iterator over the entries of the leaves of pages `leaves`, in the form bulkLoadRecords
+     * expects: every record id is paired with a record holding its key and
+     * included values, and every pointer to a posting list with its key.
+     */
+    private class LeafEntryIterator implements Iterator<Pair<Record, RecordId>> {
+        private BaseTransaction transaction;
+        private Iterator<Integer> leaves;
+        private LeafNode leaf;
+        private int index;
+
+        LeafEntryIterator(BaseTransaction transaction, List<Integer> leaves) {
+            this.transaction = transaction;
+            this.leaves = leaves.iterator();
+            this.leaf = null;
+            this.index = 0;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (leaf == null || index == leaf.getKeys().size()) {
+                if (!leaves.hasNext()) {
                     return false;
                 }
+                leaf = (LeafNode) BPlusNode.fromBytes(transaction, metadata, leaves.next());
+                index = 0;
             }
+            return true;
         }
 
         @Override
-        public RecordId next() {
-            //throw new UnsupportedOperationException("TODO(hw2): implement");
-            if (this.currIter.hasNext()){
-                return currIter.next();
-            } else {
-                Optional<LeafNode> rightNode = this.currNode.getRightSibling(this.transaction);
-                if (rightNode.isPresent()){
-                    this.currNode = rightNode.get();
-                    this.currIter = this.currNode.scanAll();
-                    return next();
-                } else {
-                    throw new NoSuchElementException();
+        public Pair<Record, RecordId> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            DataBox key = leaf.getKeys().get(index);
+            RecordId rid = leaf.getRids().get(index);
+            Record record = PostingList.isPointer(rid)
+                            ? new Record(Collections.singletonList(key))
+                            : indexRecord(key, leaf.getIncluded().get(index));
+            ++index;
+            return new Pair<>(record, rid);
+        }
+    }
+
+    /**
+     * Groups runs of equal keys of sorted (record, rid) pairs (see
+     * bulkLoadRecords) into single pairs, writing the record ids and included
+     * values of every run longer than one to a posting list. Used to bulk load
+     * trees that allow duplicate keys.
+     */
+    private class GroupingIterator implements Iterator<Pair<Record, RecordId>> {
+        private BaseTransaction transaction;
+        private Iterator<Pair<Record, RecordId>> data;
+        private Pair<Record, RecordId> nextPair;
+
+        GroupingIterator(BaseTransaction transaction, Iterator<Pair<Record, RecordId>> data) {
+            this.transaction = transaction;
+            this.data = data;
+            this.nextPair = data.hasNext() ? data.next() : null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextPair != null;
+        }
+
+        @Override
+        public Pair<Record, RecordId> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record first = nextPair.getFirst();
+            DataBox key = first.getValues().get(0);
+            List<Pair<Record, RecordId>> group = new ArrayList<>();
+            group.add(nextPair);
+            nextPair = null;
+            while (data.hasNext()) {
+                Pair<Record, RecordId> p = data.next();
+                if (!p.getFirst().getValues().get(0).equals(key)) {
+                    nextPair = p;
+                    break;
                 }
+                group.add(p);
+            }
+            if (group.size() == 1) {
+                return group.get(0);
+            }
+
+            group.sort((a, b) -> a.getSecond().compareTo(b.getSecond()));
+            List<RecordId> rids = new ArrayList<>(group.size());
+            List<Record> included = new ArrayList<>(group.size());
+            for (Pair<Record, RecordId> p : group) {
+                List<DataBox> values = p.getFirst().getValues();
+                rids.add(p.getSecond());
+                included.add(new Record(values.subList(1, values.size())));
             }
+            RecordId pointer = PostingList.create(transaction, metadata, rids, included);
+            return new Pair<>(new Record(Collections.singletonList(key)), pointer);
         }
     }
 }
@@ -1,7 +1,13 @@
 package edu.berkeley.cs186.database.index;
 
+import java.util.ArrayList;
+import java.util.Collections;
+
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
 
 /** Metadata about a B+ tree. */
 class BPlusTreeMetadata {
@@ -20,10 +26,58 @@ class BPlusTreeMetadata {
     // may contain fewer than d entries.
     private final int order;
 
+    // Whether every key maps to a single record id. If not, a key may map to
+    // any number of record ids, stored in a posting list (see PostingList).
+    private final boolean unique;
+
+    // The columns whose values are stored alongside every record id of the
+    // tree (the tree's included columns), so that they can be read without
+    // fetching the record. Empty unless the tree is a covering index.
+    private final Schema includedSchema;
+
+    // The included values of an entry of a tree without included columns.
+    private static final Record NO_VALUES = new Record(Collections.emptyList());
+
+    // The cache of deserialized nodes shared by every node of the tree.
+    private final BPlusNodeCache nodeCache;
+
     public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order) {
+        this(allocator, keySchema, order, true);
+    }
+
+    public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order,
+                             boolean unique) {
+        this(allocator, keySchema, order, unique, BPlusNodeCache.DEFAULT_CAPACITY);
+    }
+
+    public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order,
+                             int nodeCacheCapacity) {
+        this(allocator, keySchema, order, true, nodeCacheCapacity);
+    }
+
+    public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order,
+                             boolean unique, int nodeCacheCapacity) {
+        this(allocator, keySchema, order, unique, emptySchema(), nodeCacheCapacity);
+    }
+
+    public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order,
+                             boolean unique, Schema includedSchema) {
+        this(allocator, keySchema, order, unique, includedSchema,
+             BPlusNodeCache.DEFAULT_CAPACITY);
+    }
+
+    public BPlusTreeMetadata(PageAllocator allocator, Type keySchema, int order,
+                             boolean unique, Schema includedSchema, int nodeCacheCapacity) {
         this.allocator = allocator;
         this.keySchema = keySchema;
         this.order = order;
+        this.unique = unique;
+        this.includedSchema = includedSchema;
+        this.nodeCache = new BPlusNodeCache(nodeCacheCapacity);
+    }
+
+    static Schema emptySchema() {
+        return new Schema(new ArrayList<>(), new ArrayList<>());
     }
 
     public PageAllocator getAllocator() {
@@ -37,4 +91,45 @@ class BPlusTreeMetadata {
     public int getOrder() {
         return order;
     }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    public Schema getIncludedSchema() {
+        return includedSchema;
+    }
+
+    /** Returns the number of bytes of the included values of an entry. */
+    public int getIncludedSize() {
+        return includedSchema.getSizeInBytes();
+    }
+
+    /** Returns the included values of an entry of a tree without included columns. */
+    public Record noIncluded() {
+        return NO_VALUES;
+    }
+
+    /** Reads the included values of an entry from `buf`. */
+    Record readIncluded(Buffer buf) {
+        if (includedSchema.getFieldTypes().isEmpty()) {
+            return NO_VALUES;
+        }
+        return Record.fromBytes(buf, includedSchema);
+    }
+
+    /**
+     * Returns the serialization of the included values of an entry, which are
+     * all zero bytes if `included` is null.
+     */
+    byte[] includedToBytes(Record included) {
+        if (included == null) {
+            return new byte[getIncludedSize()];
+        }
+        return included.toBytes(includedSchema);
+    }
+
+    public BPlusNodeCache getNodeCache() {
+        return nodeCache;
+    }
 }
@@ -0,0 +1,63 @@
+package edu.berkeley.cs186.database.index;
+
+/**
+ * Statistics about the shape of a B+ tree, computed by BPlusTree.getStats.
+ * They tell how well packed the leaves of a tree are, and so whether it is
+ * worth rebuilding (see BPlusTree.rebuild):
+ *
+ *   BPlusTreeStats stats = tree.getStats(transaction);
+ *   stats.getNumLeaves();  // The number of leaves.
+ *   stats.getNumEntries(); // The number of (key, rid) entries in the leaves.
+ *   stats.getFillFactor(); // How full the leaves are on average, in [0, 1].
+ *
+ * A key with several record ids in a tree that allows duplicate keys takes a
+ * single leaf entry (see PostingList), so it counts as a single entry.
+ */
+public class BPlusTreeStats {
+    private int order;
+    private int height;
+    private int numLeaves;
+    private long numEntries;
+    private int numPages;
+
+    BPlusTreeStats(int order, int height, int numLeaves, long numEntries, int numPages) {
+        this.order = order;
+        this.height = height;
+        this.numLeaves = numLeaves;
+        this.numEntries = numEntries;
+        this.numPages = numPages;
+    }
+
+    /** Returns the number of inner nodes on a path from the root to a leaf. */
+    public int getHeight() {
+        return height;
+    }
+
+    public int getNumLeaves() {
+        return numLeaves;
+    }
+
+    public long getNumEntries() {
+        return numEntries;
+    }
+
+    /** Returns the number of pages of the tree, including posting lists. */
+    public int getNumPages() {
+        return numPages;
+    }
+
+    /**
+     * Returns the average fraction of the 2d entries of a leaf (where d is the
+     * order of the tree) that are in use.
+     */
+    public float getFillFactor() {
+        return (float) numEntries / ((long) numLeaves * 2 * order);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BPlusTreeStats(height=%d, leaves=%d, entries=%d, pages=%d, " +
+                             "fill=%.2f)", height, numLeaves, numEntries, numPages,
+                             getFillFactor());
+    }
+}
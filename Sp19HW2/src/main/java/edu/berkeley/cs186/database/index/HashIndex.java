@@ -0,0 +1,440 @@
+package edu.berkeley.cs186.database.index;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * A persistent hash index that maps keys to any number of record ids. Unlike
+ * a B+ tree, it can only answer equality lookups, but it answers them by
+ * reading a single bucket instead of a path from the root to a leaf.
+ *
+ *   HashIndex index = new HashIndex("h.txt", Type.intType(), lockContext, transaction);
+ *   index.put(transaction, new IntDataBox(1), new RecordId(0, (short) 0));
+ *   index.put(transaction, new IntDataBox(1), new RecordId(0, (short) 1));
+ *   index.scanEqual(transaction, new IntDataBox(1)); // [(0, 0), (0, 1)]
+ *   index.remove(transaction, new IntDataBox(1), new RecordId(0, (short) 0));
+ *   index.scanEqual(transaction, new IntDataBox(1)); // [(0, 1)]
+ *
+ * The index uses linear hashing. A bucket is a primary page followed by a
+ * chain of overflow pages, each holding (key, rid) entries. There are 2^level
+ * + next buckets: bucket b < next has already been split into b and b +
+ * 2^level, so a key whose hash is h lives in bucket h mod 2^level, or in
+ * bucket h mod 2^(level + 1) if that is less than next. Whenever the index
+ * holds more than MAX_LOAD times the number of entries its primary pages can
+ * hold, bucket next is split, and next moves on to the following bucket (or
+ * back to 0, one level up, once every bucket of the level has been split).
+ * The index thus grows one bucket at a time, and buckets that overflow in
+ * the meantime are split soon after. Buckets are never merged.
+ *
+ * Page 0 of the file is a header page (see writeHeader). The page numbers of
+ * the primary pages of the buckets are stored in directory pages, in order.
+ *
+ * Any number of threads may use the index concurrently. Lookups share a
+ * read/write latch on the whole index, and writers hold it exclusively.
+ */
+public class HashIndex implements Closeable {
+    public static final String FILENAME_EXTENSION = ".hashindex";
+
+    // A bucket is split whenever the number of entries exceeds this fraction
+    // of the number of entries the primary pages of all buckets can hold.
+    static final double MAX_LOAD = 0.75;
+
+    // The page number that ends a chain of bucket pages.
+    private static final int NO_PAGE = -1;
+
+    // A bucket page holds its number of entries and the page number of the
+    // next page in its chain, followed by its entries.
+    private static final int BUCKET_HEADER_SIZE = 2 * Integer.BYTES;
+
+    // The number of primary page numbers stored on each directory page.
+    private static final int DIRECTORY_FANOUT = Page.pageSize / Integer.BYTES;
+
+    private PageAllocator allocator;
+    private LockContext lockContext;
+    private Page headerPage;
+    private Type keySchema;
+
+    private int level;
+    private int next;
+    private int numEntries;
+    private int numBucketPages;
+    private List<Integer> directoryPages = new ArrayList<>();
+
+    private final ReentrantReadWriteLock latch = new ReentrantReadWriteLock();
+
+    // Constructors ////////////////////////////////////////////////////////////
+    /**
+     * Construct a new, empty hash index which is serialized into the file
+     * `filename` and stores keys of type `keySchema`. The index starts with a
+     * single bucket.
+     */
+    public HashIndex(String filename, Type keySchema, LockContext lockContext,
+                     BaseTransaction transaction) {
+        if (entriesPerPage(keySchema) < 1) {
+            throw new IllegalArgumentException("Keys of type " + keySchema +
+                                               " are too large for a hash index.");
+        }
+        this.lockContext = lockContext;
+        this.allocator = new PageAllocator(this.lockContext, filename, true, transaction);
+        this.keySchema = keySchema;
+
+        int headerPageNum = allocator.allocPage(transaction);
+        assert(headerPageNum == 0);
+        this.headerPage = allocator.fetchPage(transaction, headerPageNum);
+
+        this.level = 0;
+        this.next = 0;
+        this.numEntries = 0;
+        this.numBucketPages = 0;
+        addBucket(transaction, 0);
+        writeHeader(transaction);
+    }
+
+    /** Read a hash index that was previously serialized to filename. */
+    public HashIndex(String filename, LockContext lockContext, BaseTransaction transaction) {
+        this.lockContext = lockContext;
+        this.allocator = new PageAllocator(this.lockContext, filename, false, transaction);
+        this.headerPage = allocator.fetchPage(transaction, 0);
+
+        Buffer buf = headerPage.getBuffer(transaction);
+        this.keySchema = Type.fromBytes(buf);
+        this.level = buf.getInt();
+        this.next = buf.getInt();
+        this.numEntries = buf.getInt();
+        this.numBucketPages = buf.getInt();
+        int numDirectoryPages = buf.getInt();
+        for (int i = 0; i < numDirectoryPages; ++i) {
+            this.directoryPages.add(buf.getInt());
+        }
+    }
+
+    public void close() {
+        this.allocator.close();
+    }
+
+    // Core API ////////////////////////////////////////////////////////////////
+    /**
+     * Returns an iterator over every record id of `key`, in ascending order,
+     * so that fetching the records they identify reads each data page once
+     * and in order. The matching record ids of the key's bucket are read
+     * eagerly; a bucket is usually a single page.
+     */
+    public Iterator<RecordId> scanEqual(BaseTransaction transaction, DataBox key) {
+        typecheck(key);
+        latch.readLock().lock();
+        try {
+            List<RecordId> rids = new ArrayList<>();
+            for (Pair<DataBox, RecordId> entry : readBucket(transaction, bucketOf(hash(key)))) {
+                if (entry.getFirst().equals(key)) {
+                    rids.add(entry.getSecond());
+                }
+            }
+            rids.sort(null);
+            return rids.iterator();
+        } finally {
+            latch.readLock().unlock();
+        }
+    }
+
+    /**
+     * Inserts the pair (key, rid) into the index. A key may be put any number
+     * of times with different record ids. The entry is appended to the last
+     * page of the key's bucket, which grows a new overflow page if that one
+     * is full. If the index is then too full, one bucket is split.
+     */
+    public void put(BaseTransaction transaction, DataBox key, RecordId rid) {
+        typecheck(key);
+        latch.writeLock().lock();
+        try {
+            int pageNum = getBucketPage(transaction, bucketOf(hash(key)));
+            Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+            while (buf.getInt(Integer.BYTES) != NO_PAGE) {
+                pageNum = buf.getInt(Integer.BYTES);
+                buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+            }
+
+            int count = buf.getInt(0);
+            if (count == entriesPerPage(keySchema)) {
+                int overflow = allocBucketPage(transaction);
+                buf.putInt(Integer.BYTES, overflow);
+                buf = allocator.fetchPage(transaction, overflow).getBuffer(transaction);
+                count = 0;
+            }
+            buf.position(BUCKET_HEADER_SIZE + count * entrySize(keySchema));
+            buf.put(key.toBytes());
+            buf.put(rid.toBytes());
+            buf.putInt(0, count + 1);
+
+            numEntries++;
+            if (numEntries > MAX_LOAD * entriesPerPage(keySchema) * getNumBuckets()) {
+                split(transaction);
+            }
+            writeHeader(transaction);
+        } finally {
+            latch.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the single pair (key, rid) from the index, if it exists. The
+     * rest of the key's bucket is compacted, and overflow pages it no longer
+     * needs are freed.
+     */
+    public void remove(BaseTransaction transaction, DataBox key, RecordId rid) {
+        typecheck(key);
+        latch.writeLock().lock();
+        try {
+            int bucket = bucketOf(hash(key));
+            List<Pair<DataBox, RecordId>> entries = readBucket(transaction, bucket);
+            if (entries.remove(new Pair<>(key, rid))) {
+                writeBucket(transaction, bucket, entries);
+                numEntries--;
+                writeHeader(transaction);
+            }
+        } finally {
+            latch.writeLock().unlock();
+        }
+    }
+
+    // Statistics //////////////////////////////////////////////////////////////
+    /** Returns the number of pages of the index, including its header. */
+    public int getNumPages() {
+        return allocator.getNumPages();
+    }
+
+    /** Returns the number of buckets of the index. */
+    public int getNumBuckets() {
+        return (1 << level) + next;
+    }
+
+    /** Returns the number of (key, rid) pairs in the index. */
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * Returns the average number of pages in a bucket, i.e. the number of
+     * pages an equality lookup reads on average.
+     */
+    public double getAverageBucketLength() {
+        latch.readLock().lock();
+        try {
+            return (double) numBucketPages / getNumBuckets();
+        } finally {
+            latch.readLock().unlock();
+        }
+    }
+
+    public Type getKeySchema() {
+        return keySchema;
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    /**
+     * Splits bucket next into itself and bucket next + 2^level, and moves on
+     * to the following bucket.
+     */
+    private void split(BaseTransaction transaction) {
+        int oldBucket = next;
+        int newBucket = next + (1 << level);
+        addBucket(transaction, newBucket);
+
+        int mask = (2 << level) - 1;
+        List<Pair<DataBox, RecordId>> stay = new ArrayList<>();
+        List<Pair<DataBox, RecordId>> move = new ArrayList<>();
+        for (Pair<DataBox, RecordId> entry : readBucket(transaction, oldBucket)) {
+            if ((hash(entry.getFirst()) & mask) == oldBucket) {
+                stay.add(entry);
+            } else {
+                move.add(entry);
+            }
+        }
+        writeBucket(transaction, oldBucket, stay);
+        writeBucket(transaction, newBucket, move);
+
+        next++;
+        if (next == 1 << level) {
+            level++;
+            next = 0;
+        }
+    }
+
+    /** Returns the bucket that holds keys whose hash is `hash`. */
+    private int bucketOf(int hash) {
+        int bucket = hash & ((1 << level) - 1);
+        if (bucket < next) {
+            bucket = hash & ((2 << level) - 1);
+        }
+        return bucket;
+    }
+
+    /**
+     * Hashes the bytes of key, rather than calling hashCode, so that a key
+     * hashes to the same bucket every time the index is opened. The bits are
+     * mixed so that the low ones, which pick the bucket, depend on all of
+     * them.
+     */
+    private static int hash(DataBox key) {
+        int h = Arrays.hashCode(key.toBytes());
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /** Returns every entry of bucket, in the order they are stored. */
+    private List<Pair<DataBox, RecordId>> readBucket(BaseTransaction transaction, int bucket) {
+        List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+        int pageNum = getBucketPage(transaction, bucket);
+        while (pageNum != NO_PAGE) {
+            Buffer buf = ByteBuffer.wrap(allocator.fetchPage(transaction, pageNum)
+                                         .readBytes(transaction));
+            int count = buf.getInt();
+            pageNum = buf.getInt();
+            for (int i = 0; i < count; ++i) {
+                DataBox key = DataBox.fromBytes(buf, keySchema);
+                entries.add(new Pair<>(key, RecordId.fromBytes(buf)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Replaces the entries of bucket with `entries`, reusing the pages of its
+     * chain, allocating more if needed and freeing those left over.
+     */
+    private void writeBucket(BaseTransaction transaction, int bucket,
+                             List<Pair<DataBox, RecordId>> entries) {
+        int perPage = entriesPerPage(keySchema);
+        int pageNum = getBucketPage(transaction, bucket);
+        int i = 0;
+        while (true) {
+            Page page = allocator.fetchPage(transaction, pageNum);
+            int nextPageNum = page.getBuffer(transaction).getInt(Integer.BYTES);
+            int count = Math.min(perPage, entries.size() - i);
+            boolean last = i + count == entries.size();
+            if (!last && nextPageNum == NO_PAGE) {
+                nextPageNum = allocBucketPage(transaction);
+            }
+
+            byte[] bytes = new byte[Page.pageSize];
+            Buffer buf = ByteBuffer.wrap(bytes);
+            buf.putInt(count);
+            buf.putInt(last ? NO_PAGE : nextPageNum);
+            for (int j = 0; j < count; ++j, ++i) {
+                buf.put(entries.get(i).getFirst().toBytes());
+                buf.put(entries.get(i).getSecond().toBytes());
+            }
+            page.writeBytes(transaction, bytes);
+
+            if (last) {
+                freeChain(transaction, nextPageNum);
+                return;
+            }
+            pageNum = nextPageNum;
+        }
+    }
+
+    /** Frees pageNum and the pages after it in its chain. */
+    private void freeChain(BaseTransaction transaction, int pageNum) {
+        while (pageNum != NO_PAGE) {
+            int nextPageNum = allocator.fetchPage(transaction, pageNum).getBuffer(transaction)
+                              .getInt(Integer.BYTES);
+            allocator.freePage(transaction, pageNum);
+            numBucketPages--;
+            pageNum = nextPageNum;
+        }
+    }
+
+    /** Allocates an empty bucket page that ends its chain. */
+    private int allocBucketPage(BaseTransaction transaction) {
+        int pageNum = allocator.allocPage(transaction);
+        Buffer buf = allocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+        buf.putInt(0, 0);
+        buf.putInt(Integer.BYTES, NO_PAGE);
+        numBucketPages++;
+        return pageNum;
+    }
+
+    /**
+     * Allocates the primary page of bucket, which must be the bucket after
+     * the last one, and records it in the directory.
+     */
+    private void addBucket(BaseTransaction transaction, int bucket) {
+        if (bucket / DIRECTORY_FANOUT == directoryPages.size()) {
+            if (directoryPages.size() == maxDirectoryPages(keySchema)) {
+                throw new IllegalStateException("Hash index has too many buckets.");
+            }
+            directoryPages.add(allocator.allocPage(transaction));
+        }
+        int pageNum = allocBucketPage(transaction);
+        int directoryPage = directoryPages.get(bucket / DIRECTORY_FANOUT);
+        allocator.fetchPage(transaction, directoryPage).getBuffer(transaction)
+        .putInt((bucket % DIRECTORY_FANOUT) * Integer.BYTES, pageNum);
+    }
+
+    /** Returns the page number of the primary page of bucket. */
+    private int getBucketPage(BaseTransaction transaction, int bucket) {
+        int directoryPage = directoryPages.get(bucket / DIRECTORY_FANOUT);
+        return allocator.fetchPage(transaction, directoryPage).getBuffer(transaction)
+               .getInt((bucket % DIRECTORY_FANOUT) * Integer.BYTES);
+    }
+
+    /**
+     * Serializes the header page, which contains:
+     *
+     *   - the key schema of the index,
+     *   - level and next (see the class comment),
+     *   - the number of entries in the index,
+     *   - the number of bucket pages (primary and overflow) of the index, and
+     *   - the number of directory pages, followed by their page numbers.
+     */
+    private void writeHeader(BaseTransaction transaction) {
+        Buffer buf = headerPage.getBuffer(transaction);
+        buf.put(keySchema.toBytes());
+        buf.putInt(level);
+        buf.putInt(next);
+        buf.putInt(numEntries);
+        buf.putInt(numBucketPages);
+        buf.putInt(directoryPages.size());
+        for (int pageNum : directoryPages) {
+            buf.putInt(pageNum);
+        }
+    }
+
+    private void typecheck(DataBox key) {
+        if (!key.type().equals(keySchema)) {
+            String msg = String.format("DataBox %s is not of type %s", key, keySchema);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    private static int entrySize(Type keySchema) {
+        return keySchema.getSizeInBytes() + RecordId.getSizeInBytes();
+    }
+
+    private static int entriesPerPage(Type keySchema) {
+        return (Page.pageSize - BUCKET_HEADER_SIZE) / entrySize(keySchema);
+    }
+
+    private static int maxDirectoryPages(Type keySchema) {
+        return (Page.pageSize - keySchema.toBytes().length - 5 * Integer.BYTES) / Integer.BYTES;
+    }
+}
@@ -9,6 +9,7 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 
 /**
@@ -38,6 +39,11 @@ class InnerNode extends BPlusNode {
     private List<DataBox> keys;
     private List<Integer> children;
 
+    // The order-preserving encodings (see DataBox.toOrderedBytes) of keys, used
+    // to binary search for the child to visit. orderedKeys is built lazily and
+    // thrown away by sync whenever keys may have changed.
+    private byte[][] orderedKeys;
+
     // Constructors //////////////////////////////////////////////////////////////
     /**
      * Construct a brand new inner node. The inner node will be persisted on a
@@ -68,7 +74,7 @@ class InnerNode extends BPlusNode {
     // See BPlusNode.get.
     @Override
     public LeafNode get(BaseTransaction transaction, DataBox key) {
-        int child = numLessThanEqual(key, keys);
+        int child = findChild(key);
         BPlusNode childNode = getChild(transaction, child);
         return childNode.get(transaction, key);
     }
@@ -81,12 +87,13 @@ class InnerNode extends BPlusNode {
 
     // See BPlusNode.put.
     @Override
-    public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid)
+    public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid,
+            Record included)
     throws BPlusTreeException {
        // throw new UnsupportedOperationException("TODO(hw2): implement");
-        int child = numLessThanEqual(key, keys);
+        int child = findChild(key);
         BPlusNode childNode = getChild(transaction, child);
-        Optional<Pair<DataBox, Integer>> result = childNode.put(transaction, key, rid);
+        Optional<Pair<DataBox, Integer>> result = childNode.put(transaction, key, rid, included);
 
         //no leafnode overflow
         if (!result.isPresent()) {
@@ -139,17 +146,18 @@ class InnerNode extends BPlusNode {
         return this.keys.size() > this.metadata.getOrder() * 2;
     }
 
-    // See BPlusNode.bulkLoad.
+    // See BPlusNode.bulkLoadRecords.
     @Override
-    public Optional<Pair<DataBox, Integer>> bulkLoad(BaseTransaction transaction,
-            Iterator<Pair<DataBox, RecordId>> data,
+    public Optional<Pair<DataBox, Integer>> bulkLoadRecords(BaseTransaction transaction,
+            Iterator<Pair<Record, RecordId>> data,
             float fillFactor)
     throws BPlusTreeException {
         //throw new UnsupportedOperationException("TODO(hw2): implement");
         while(data.hasNext()){
             int child = children.size() - 1;
             BPlusNode childNode = getChild(transaction, child);
-            Optional<Pair<DataBox, Integer>> result = childNode.bulkLoad(transaction, data, fillFactor);
+            Optional<Pair<DataBox, Integer>> result = childNode.bulkLoadRecords(transaction, data,
+                    fillFactor);
 
             //leafnode overflow
             if (result.isPresent()) {
@@ -188,12 +196,63 @@ class InnerNode extends BPlusNode {
     // See BPlusNode.remove.
     @Override
     public void remove(BaseTransaction transaction, DataBox key) {
-        int child = numLessThanEqual(key, keys);
+        int child = findChild(key);
         BPlusNode childNode = getChild(transaction, child);
         childNode.remove(transaction, key);
         sync(transaction);
     }
 
+    // Rebalancing ///////////////////////////////////////////////////////////////
+    /**
+     * Moves `separator`, the key that separates this node from its right
+     * sibling `right` in their parent, followed by every key and child of
+     * right to the end of this node. The caller is responsible for removing
+     * right from the parent and freeing its page.
+     */
+    void merge(BaseTransaction transaction, DataBox separator, InnerNode right) {
+        assert(keys.size() + 1 + right.keys.size() <= 2 * metadata.getOrder());
+        keys.add(separator);
+        keys.addAll(right.keys);
+        children.addAll(right.children);
+        sync(transaction);
+    }
+
+    /**
+     * Evens out the keys and children of this node and `right`, its right
+     * sibling, rotating them through `separator`, the key that separates the
+     * two in their parent. Returns the new separator.
+     */
+    DataBox redistribute(BaseTransaction transaction, DataBox separator, InnerNode right) {
+        keys.add(separator);
+        keys.addAll(right.keys);
+        children.addAll(right.children);
+        int mid = keys.size() / 2;
+        DataBox newSeparator = keys.get(mid);
+        right.keys = new ArrayList<>(keys.subList(mid + 1, keys.size()));
+        right.children = new ArrayList<>(children.subList(mid + 1, children.size()));
+        keys.subList(mid, keys.size()).clear();
+        children.subList(mid + 1, children.size()).clear();
+        sync(transaction);
+        right.sync(transaction);
+        return newSeparator;
+    }
+
+    /**
+     * Removes child i, which must not be the first, along with the key to
+     * its left, e.g. after the child was merged into its left sibling.
+     */
+    void removeChild(BaseTransaction transaction, int i) {
+        keys.remove(i - 1);
+        children.remove(i);
+        sync(transaction);
+    }
+
+    /** Replaces key i with `key`. */
+    void setKey(BaseTransaction transaction, int i, DataBox key) {
+        keys.set(i, key);
+        sync(transaction);
+    }
+
     // Helpers ///////////////////////////////////////////////////////////////////
     @Override
     public Page getPage() {
@@ -205,22 +264,37 @@ class InnerNode extends BPlusNode {
         return BPlusNode.fromBytes(transaction, metadata, pageNum);
     }
 
+    /**
+     * Returns the index of the child to visit when searching for `key`. This is
+     * numLessThanEqual(key, keys), computed by binary searching the encoded keys.
+     */
+    private int findChild(DataBox key) {
+        if (orderedKeys == null) {
+            orderedKeys = new byte[keys.size()][];
+            for (int i = 0; i < keys.size(); ++i) {
+                orderedKeys[i] = keys.get(i).toOrderedBytes();
+            }
+        }
+        return numLessThanEqual(key.toOrderedBytes(), orderedKeys);
+    }
+
     private void sync(BaseTransaction transaction) {
+        orderedKeys = null;
         Buffer b = page.getBuffer(transaction);
         byte[] newBytes = toBytes();
         byte[] bytes = new byte[newBytes.length];
         b.get(bytes);
         if (!Arrays.equals(bytes, newBytes)) {
-            page.getBuffer(transaction).put(toBytes());
+            page.getBuffer(transaction).put(newBytes);
         }
+        metadata.getNodeCache().put(page.getPageNum(), this);
     }
 
-    // Just for testing.
+    // The keys and children of this node, which callers must not modify.
     List<DataBox> getKeys() {
         return keys;
     }
 
-    // Just for testing.
     List<Integer> getChildren() {
         return children;
     }
@@ -295,6 +369,24 @@ class InnerNode extends BPlusNode {
         return n;
     }
 
+    /**
+     * Same as numLessThanEqual but for normalized keys (see
+     * DataBox.toOrderedBytes). Since ys is sorted, we binary search it.
+     */
+    static int numLessThanEqual(byte[] x, byte[][] ys) {
+        int lo = 0;
+        int hi = ys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (DataBox.compareOrderedBytes(ys[mid], x) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
     /** Same as numLessThanEqual but for < instead of <= */
     public static <T extends Comparable<T>> int numLessThan(T x, List<T> ys) {
         int n = 0;
@@ -407,6 +499,60 @@ class InnerNode extends BPlusNode {
         return buf.array();
     }
 
+    // In-place access ////////////////////////////////////////////////////////////
+    // The following helpers read an inner node straight from the buffer `buf`
+    // of the page it is serialized on (see toBytes for the layout), so that a
+    // search only reads the keys it compares and the one child pointer it
+    // follows.
+
+    /** Returns the number of keys of an inner node. */
+    static int numKeysInPage(Buffer buf) {
+        return buf.getInt(1);
+    }
+
+    /** Returns the i-th key of an inner node. */
+    static DataBox keyInPage(Buffer buf, Type keySchema, int i) {
+        return DataBox.fromBytes(buf.duplicate().position(keyOffsetInPage(keySchema, i)),
+                                 keySchema);
+    }
+
+    /** Returns the page number of the i-th child of an inner node. */
+    static int childAtInPage(Buffer buf, Type keySchema, int i) {
+        return buf.getInt(keyOffsetInPage(keySchema, numKeysInPage(buf)) + i * Integer.BYTES);
+    }
+
+    /**
+     * Returns numLessThanEqual(key, keys) if `inclusive`, or numLessThan(key,
+     * keys) otherwise, where keys are the keys of an inner node. The keys are
+     * binary searched in place.
+     */
+    static int childIndexInPage(Buffer buf, Type keySchema, DataBox key, boolean inclusive) {
+        int lo = 0;
+        int hi = numKeysInPage(buf);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareKeyInPage(buf, keyOffsetInPage(keySchema, mid), keySchema, key);
+            if (c < 0 || (inclusive && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the page number of the child of an inner node to visit when
+     * searching for `key`.
+     */
+    static int childInPage(Buffer buf, Type keySchema, DataBox key) {
+        return childAtInPage(buf, keySchema, childIndexInPage(buf, keySchema, key, true));
+    }
+
+    private static int keyOffsetInPage(Type keySchema, int i) {
+        return 1 + Integer.BYTES + i * keySchema.getSizeInBytes();
+    }
+
     /**
      * InnerNode.fromBytes(t, meta, p) loads a InnerNode from page p of
      * meta.getAllocator().
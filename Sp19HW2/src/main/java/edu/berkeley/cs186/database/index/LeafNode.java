@@ -9,6 +9,7 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 
 import static java.lang.Math.ceil;
@@ -16,7 +17,11 @@ import static java.lang.Math.ceil;
 /**
  * A leaf of a B+ tree. Every leaf in a B+ tree of order d stores between d and
  * 2d (key, record id) pairs and a pointer to its right sibling (i.e. the page
- * number of its right sibling). Moreover, every leaf node is serialized and
+ * number of its right sibling). In a tree that allows duplicate keys, the
+ * record id of a key with more than one record id points to a posting list of
+ * them instead (see PostingList). In a tree with included columns, every pair
+ * also stores the values of those columns in the record it identifies (again,
+ * a pointer's are stored in its posting list). Moreover, every leaf node is serialized and
  * persisted on a single page; see toBytes and fromBytes for details on how a
  * leaf is serialized. For example, here is an illustration of two order 2
  * leafs connected together:
@@ -96,6 +101,12 @@ class LeafNode extends BPlusNode {
     private List<DataBox> keys;
     private List<RecordId> rids;
 
+    // included.get(i) holds the values of the tree's included columns in the
+    // record rids.get(i), or null if rids.get(i) points to a posting list. In
+    // a tree without included columns, every entry's included values are
+    // metadata.noIncluded().
+    private List<Record> included;
+
     // If this leaf is the rightmost leaf, then rightSibling is Optional.empty().
     // Otherwise, rightSibling is Optional.of(n) where n is the page number of
     // this leaf's right sibling.
@@ -108,7 +119,16 @@ class LeafNode extends BPlusNode {
      */
     public LeafNode(BPlusTreeMetadata metadata, List<DataBox> keys,
                     List<RecordId> rids, Optional<Integer> rightSibling, BaseTransaction transaction) {
-        this(metadata, metadata.getAllocator().allocPage(transaction), keys, rids,
+        this(metadata, keys, rids,
+             new ArrayList<>(Collections.nCopies(keys.size(), metadata.noIncluded())),
+             rightSibling, transaction);
+    }
+
+    /** Like the constructor above, but for a tree with included columns. */
+    public LeafNode(BPlusTreeMetadata metadata, List<DataBox> keys, List<RecordId> rids,
+                    List<Record> included, Optional<Integer> rightSibling,
+                    BaseTransaction transaction) {
+        this(metadata, metadata.getAllocator().allocPage(transaction), keys, rids, included,
              rightSibling, transaction);
     }
 
@@ -117,13 +137,15 @@ class LeafNode extends BPlusNode {
      * metadata.getAllocator().
      */
     private LeafNode(BPlusTreeMetadata metadata, int pageNum, List<DataBox> keys,
-                     List<RecordId> rids, Optional<Integer> rightSibling, BaseTransaction transaction) {
-        assert(keys.size() == rids.size());
+                     List<RecordId> rids, List<Record> included, Optional<Integer> rightSibling,
+                     BaseTransaction transaction) {
+        assert(keys.size() == rids.size() && keys.size() == included.size());
 
         this.metadata = metadata;
         this.page = metadata.getAllocator().fetchPage(transaction, pageNum);
         this.keys = keys;
         this.rids = rids;
+        this.included = included;
         this.rightSibling = rightSibling;
         sync(transaction);
     }
@@ -143,11 +165,21 @@ class LeafNode extends BPlusNode {
 
     // See BPlusNode.put.
     @Override
-    public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid)
-    throws BPlusTreeException {
+    public Optional<Pair<DataBox, Integer>> put(BaseTransaction transaction, DataBox key, RecordId rid,
+            Record included) throws BPlusTreeException {
         //throw new UnsupportedOperationException("TODO(hw2): implement");
-        if (keys.contains(key)) {
-            throw new BPlusTreeException("A duplicate key is inserted.");
+        checkIncluded(included);
+        int index = keys.indexOf(key);
+        if (index != -1) {
+            if (metadata.isUnique()) {
+                throw new BPlusTreeException("A duplicate key is inserted.");
+            }
+            // The key gets one more record id, but the leaf no more entries.
+            rids.set(index, PostingList.add(transaction, metadata, rids.get(index),
+                                            this.included.get(index), rid, included));
+            this.included.set(index, null);
+            sync(transaction);
+            return Optional.empty();
         }
 
         //find the position of key to insert
@@ -164,6 +196,7 @@ class LeafNode extends BPlusNode {
         //insert the key and record
         this.keys.add(pos, key);
         this.rids.add(pos, rid);
+        this.included.add(pos, included);
 
         //first case(no overflow)
         if (!this.isOverflow(1.0f)){
@@ -174,14 +207,16 @@ class LeafNode extends BPlusNode {
             int order = this.metadata.getOrder();
             List<DataBox> rightKeys = new ArrayList<>();
             List<RecordId> rightRids = new ArrayList<>();
+            List<Record> rightIncluded = new ArrayList<>();
 
             while(keys.size() > order){
                 rightKeys.add(this.keys.remove(order));
                 rightRids.add(this.rids.remove(order));
+                rightIncluded.add(this.included.remove(order));
             }
 
-            LeafNode newRight = new LeafNode(this.metadata, rightKeys, rightRids, this.rightSibling,
-                    transaction);
+            LeafNode newRight = new LeafNode(this.metadata, rightKeys, rightRids, rightIncluded,
+                    this.rightSibling, transaction);
             int rightNodePageNum = newRight.getPage().getPageNum();
             this.rightSibling = Optional.of(rightNodePageNum);
             sync(transaction);
@@ -189,24 +224,41 @@ class LeafNode extends BPlusNode {
         }
     }
 
+    private void checkIncluded(Record included) throws BPlusTreeException {
+        int expected = metadata.getIncludedSchema().getFieldTypes().size();
+        if (included.getValues().size() != expected) {
+            String msg = String.format("Expected %d included values but got %s.", expected,
+                                       included);
+            throw new BPlusTreeException(msg);
+        }
+    }
+
     private boolean isOverflow(float fillFactor){
         return this.keys.size() > (int)Math.ceil(this.metadata.getOrder() * fillFactor * 2);
     }
 
-    // See BPlusNode.bulkLoad.
+    // See BPlusNode.bulkLoadRecords.
     @Override
-    public Optional<Pair<DataBox, Integer>> bulkLoad(BaseTransaction transaction,
-            Iterator<Pair<DataBox, RecordId>> data,
+    public Optional<Pair<DataBox, Integer>> bulkLoadRecords(BaseTransaction transaction,
+            Iterator<Pair<Record, RecordId>> data,
             float fillFactor)
     throws BPlusTreeException {
         //throw new UnsupportedOperationException("TODO(hw2): implement");
         while (data.hasNext()) {
-            Pair<DataBox, RecordId> newData = data.next();
-            DataBox key = newData.getFirst();
+            Pair<Record, RecordId> newData = data.next();
+            List<DataBox> values = newData.getFirst().getValues();
+            DataBox key = values.get(0);
             RecordId rid = newData.getSecond();
             //insert the key and record to the end (assuming keys are sorted)
             this.keys.add(key);
             this.rids.add(rid);
+            if (PostingList.isPointer(rid)) {
+                this.included.add(null);
+            } else if (values.size() == 1) {
+                this.included.add(metadata.noIncluded());
+            } else {
+                this.included.add(new Record(new ArrayList<>(values.subList(1, values.size()))));
+            }
 
             //first case(no overflow)
             if (this.isOverflow(fillFactor)) {
@@ -214,13 +266,15 @@ class LeafNode extends BPlusNode {
                 int pos = this.keys.size() - 1;
                 List<DataBox> rightKeys = new ArrayList<>();
                 List<RecordId> rightRids = new ArrayList<>();
+                List<Record> rightIncluded = new ArrayList<>();
 
                 rightKeys.add(this.keys.remove(pos));
                 rightRids.add(this.rids.remove(pos));
+                rightIncluded.add(this.included.remove(pos));
 
 
-                LeafNode newRight = new LeafNode(this.metadata, rightKeys, rightRids, this.rightSibling,
-                        transaction);
+                LeafNode newRight = new LeafNode(this.metadata, rightKeys, rightRids, rightIncluded,
+                        this.rightSibling, transaction);
                 int rightNodePageNum = newRight.getPage().getPageNum();
                 this.rightSibling = Optional.of(rightNodePageNum);
                 sync(transaction);
@@ -234,15 +288,81 @@ class LeafNode extends BPlusNode {
     // See BPlusNode.remove.
     @Override
     public void remove(BaseTransaction transaction, DataBox key) {
-        if (keys.contains(key)){
-            rids.remove(getKey(key).get());
-            keys.remove(key);
+        int index = keys.indexOf(key);
+        if (index != -1) {
+            PostingList.free(transaction, metadata, rids.remove(index));
+            keys.remove(index);
+            included.remove(index);
         }
         sync(transaction);
     }
 
+    /**
+     * Removes the single pair (key, rid) from this leaf, leaving the other
+     * record ids of `key` (if the tree allows duplicate keys) in place. If
+     * there is no such pair, nothing happens.
+     */
+    public void remove(BaseTransaction transaction, DataBox key, RecordId rid) {
+        int index = keys.indexOf(key);
+        if (index == -1) {
+            return;
+        }
+        Optional<Pair<RecordId, Record>> value = PostingList.remove(transaction, metadata,
+                rids.get(index), included.get(index), rid);
+        if (value.isPresent()) {
+            rids.set(index, value.get().getFirst());
+            included.set(index, value.get().getSecond());
+        } else {
+            keys.remove(index);
+            rids.remove(index);
+            included.remove(index);
+        }
+        sync(transaction);
+    }
+
+    // Rebalancing ///////////////////////////////////////////////////////////////
+    /**
+     * Moves every entry of `right`, the right sibling of this leaf, to the end
+     * of this leaf, which takes over right's right sibling. The caller is
+     * responsible for freeing right's page. Posting lists move with their
+     * pointers.
+     */
+    void merge(BaseTransaction transaction, LeafNode right) {
+        assert(keys.size() + right.keys.size() <= 2 * metadata.getOrder());
+        keys.addAll(right.keys);
+        rids.addAll(right.rids);
+        included.addAll(right.included);
+        rightSibling = right.rightSibling;
+        sync(transaction);
+    }
+
+    /**
+     * Evens out the entries of this leaf and `right`, its right sibling, so
+     * that this leaf holds the first half of them (rounded up) and right the
+     * rest. Returns the smallest key of right, which is the new key that
+     * separates the two leaves in their parent.
+     */
+    DataBox redistribute(BaseTransaction transaction, LeafNode right) {
+        keys.addAll(right.keys);
+        rids.addAll(right.rids);
+        included.addAll(right.included);
+        int mid = (keys.size() + 1) / 2;
+        right.keys = new ArrayList<>(keys.subList(mid, keys.size()));
+        right.rids = new ArrayList<>(rids.subList(mid, rids.size()));
+        right.included = new ArrayList<>(included.subList(mid, included.size()));
+        keys.subList(mid, keys.size()).clear();
+        rids.subList(mid, rids.size()).clear();
+        included.subList(mid, included.size()).clear();
+        sync(transaction);
+        right.sync(transaction);
+        return right.keys.get(0);
+    }
+
     // Iterators /////////////////////////////////////////////////////////////////
-    /** Return the record id associated with `key`. */
+    /**
+     * Return the record id associated with `key`. In a tree that allows
+     * duplicate keys, this may be a pointer to the key's posting list.
+     */
     public Optional<RecordId> getKey(DataBox key) {
         int index = keys.indexOf(key);
         return index == -1 ? Optional.empty() : Optional.of(rids.get(index));
@@ -279,7 +399,7 @@ class LeafNode extends BPlusNode {
         }
 
         int pageNum = rightSibling.get();
-        return Optional.of(LeafNode.fromBytes(transaction, metadata, pageNum));
+        return Optional.of((LeafNode) BPlusNode.fromBytes(transaction, metadata, pageNum));
     }
 
     /** Serializes this leaf to its page. */
@@ -289,8 +409,9 @@ class LeafNode extends BPlusNode {
         byte[] bytes = new byte[newBytes.length];
         b.get(bytes);
         if (!Arrays.equals(bytes, newBytes)) {
-            page.getBuffer(transaction).put(toBytes());
+            page.getBuffer(transaction).put(newBytes);
         }
+        metadata.getNodeCache().put(page.getPageNum(), this);
     }
 
     /**
@@ -298,9 +419,17 @@ class LeafNode extends BPlusNode {
      * with 2d entries will fit on a single page of size `pageSizeInBytes`.
      */
     public static int maxOrder(int pageSizeInBytes, Type keySchema) {
+        return maxOrder(pageSizeInBytes, keySchema, 0);
+    }
+
+    /**
+     * Like maxOrder above, but for a tree whose included values take up
+     * `includedSize` bytes per entry.
+     */
+    public static int maxOrder(int pageSizeInBytes, Type keySchema, int includedSize) {
         // A leaf node with n entries takes up the following number of bytes:
         //
-        //   1 + 4 + 4 + n * (keySize + ridSize)
+        //   1 + 4 + 4 + n * (keySize + ridSize + includedSize)
         //
         // where
         //
@@ -313,29 +442,32 @@ class LeafNode extends BPlusNode {
         //
         // Solving the following equation
         //
-        //   n * (keySize + ridSize) + 9 <= pageSizeInBytes
+        //   n * (keySize + ridSize + includedSize) + 9 <= pageSizeInBytes
         //
         // we get
         //
-        //   n = (pageSizeInBytes - 9) / (keySize + ridSize)
+        //   n = (pageSizeInBytes - 9) / (keySize + ridSize + includedSize)
         //
         // The order d is half of n.
         int keySize = keySchema.getSizeInBytes();
         int ridSize = RecordId.getSizeInBytes();
-        int n = (pageSizeInBytes - 9) / (keySize + ridSize);
+        int n = (pageSizeInBytes - 9) / (keySize + ridSize + includedSize);
         return n / 2;
     }
 
-    // For testing only.
+    // The entries of this leaf, which callers must not modify.
     List<DataBox> getKeys() {
         return keys;
     }
 
-    // For testing only.
     List<RecordId> getRids() {
         return rids;
     }
 
+    List<Record> getIncluded() {
+        return included;
+    }
+
     // Pretty Printing ///////////////////////////////////////////////////////////
     @Override
     public String toString() {
@@ -382,7 +514,8 @@ class LeafNode extends BPlusNode {
         //      a right sibling),
         //   c. the number (4 bytes) of (key, rid) pairs this leaf node contains,
         //      and
-        //   d. the (key, rid) pairs themselves.
+        //   d. the (key, rid) pairs themselves, each followed by its included
+        //      values if the tree has included columns.
         //
         // For example, the following bytes:
         //
@@ -401,7 +534,8 @@ class LeafNode extends BPlusNode {
         int lenSize = Integer.BYTES;
         int keySize = metadata.getKeySchema().getSizeInBytes();
         int ridSize = RecordId.getSizeInBytes();
-        int entriesSize = (keySize + ridSize) * keys.size();
+        int includedSize = metadata.getIncludedSize();
+        int entriesSize = (keySize + ridSize + includedSize) * keys.size();
         int size = isLeafSize + siblingSize + lenSize + entriesSize;
 
         ByteBuffer buf = ByteBuffer.allocate(size);
@@ -411,10 +545,106 @@ class LeafNode extends BPlusNode {
         for (int i = 0; i < keys.size(); ++i) {
             buf.put(keys.get(i).toBytes());
             buf.put(rids.get(i).toBytes());
+            if (includedSize > 0) {
+                buf.put(metadata.includedToBytes(included.get(i)));
+            }
         }
         return buf.array();
     }
 
+    // In-place access ////////////////////////////////////////////////////////////
+    // The following helpers read a leaf straight from the buffer `buf` of the
+    // page it is serialized on (see toBytes for the layout), deserializing only
+    // what they return.
+
+    /** Returns the page number of the right sibling of a leaf, or -1. */
+    static int rightSiblingInPage(Buffer buf) {
+        return buf.getInt(1);
+    }
+
+    /** Returns the number of (key, rid) pairs in a leaf. */
+    static int numEntriesInPage(Buffer buf) {
+        return buf.getInt(1 + Integer.BYTES);
+    }
+
+    /** Returns the key of the i-th (key, rid) pair of a leaf. */
+    static DataBox keyInPage(Buffer buf, BPlusTreeMetadata metadata, int i) {
+        return DataBox.fromBytes(buf.duplicate().position(entryOffsetInPage(metadata, i)),
+                                 metadata.getKeySchema());
+    }
+
+    /** Returns the record id of the i-th (key, rid) pair of a leaf. */
+    static RecordId ridInPage(Buffer buf, BPlusTreeMetadata metadata, int i) {
+        int offset = entryOffsetInPage(metadata, i) + metadata.getKeySchema().getSizeInBytes();
+        return new RecordId(buf.getInt(offset), buf.getShort(offset + Integer.BYTES));
+    }
+
+    /**
+     * Returns the included values of the i-th (key, rid) pair of a leaf, or
+     * null if its record id points to a posting list.
+     */
+    static Record includedInPage(Buffer buf, BPlusTreeMetadata metadata, int i) {
+        if (PostingList.isPointer(ridInPage(buf, metadata, i))) {
+            return null;
+        }
+        int offset = entryOffsetInPage(metadata, i) + metadata.getKeySchema().getSizeInBytes() +
+                     RecordId.getSizeInBytes();
+        return metadata.readIncluded(buf.duplicate().position(offset));
+    }
+
+    /**
+     * Returns the number of keys in a leaf that are less than `key` (or less
+     * than or equal to `key` if `inclusive`), found by binary searching the
+     * keys in place.
+     */
+    static int numLessThanInPage(Buffer buf, BPlusTreeMetadata metadata, DataBox key,
+                                 boolean inclusive) {
+        Type keySchema = metadata.getKeySchema();
+        int lo = 0;
+        int hi = numEntriesInPage(buf);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareKeyInPage(buf, entryOffsetInPage(metadata, mid), keySchema, key);
+            if (c < 0 || (inclusive && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    static int numLessThanInPage(Buffer buf, BPlusTreeMetadata metadata, DataBox key) {
+        return numLessThanInPage(buf, metadata, key, false);
+    }
+
+    /**
+     * Returns the index of the (key, rid) pair of `key` in a leaf, or -1 if
+     * the leaf doesn't hold `key`.
+     */
+    static int indexOfKeyInPage(Buffer buf, BPlusTreeMetadata metadata, DataBox key) {
+        int i = numLessThanInPage(buf, metadata, key);
+        if (i < numEntriesInPage(buf) &&
+                compareKeyInPage(buf, entryOffsetInPage(metadata, i), metadata.getKeySchema(),
+                                 key) == 0) {
+            return i;
+        }
+        return -1;
+    }
+
+    /** Like getKey, but for a leaf serialized in `buf`. */
+    static Optional<RecordId> getKeyInPage(Buffer buf, BPlusTreeMetadata metadata, DataBox key) {
+        int i = indexOfKeyInPage(buf, metadata, key);
+        return i == -1 ? Optional.empty() : Optional.of(ridInPage(buf, metadata, i));
+    }
+
+    private static int entryOffsetInPage(BPlusTreeMetadata metadata, int i) {
+        int headerSize = 1 + Integer.BYTES + Integer.BYTES;
+        int entrySize = metadata.getKeySchema().getSizeInBytes() + RecordId.getSizeInBytes() +
+                        metadata.getIncludedSize();
+        return headerSize + i * entrySize;
+    }
+
     /**
      * LeafNode.fromBytes(m, p) loads a LeafNode from page p of
      * meta.getAllocator().
@@ -434,13 +664,23 @@ class LeafNode extends BPlusNode {
 
         int numPairs = b.getInt();
         Type keyType = metadata.getKeySchema();
+        int includedSize = metadata.getIncludedSize();
         List<DataBox> newKeys = new ArrayList<>();
         List<RecordId> newRids = new ArrayList<>();
+        List<Record> newIncluded = new ArrayList<>();
         for (int i = 0; i < numPairs; i++){
             newKeys.add(DataBox.fromBytes(b, keyType));
-            newRids.add(RecordId.fromBytes(b));
+            RecordId rid = RecordId.fromBytes(b);
+            newRids.add(rid);
+            if (PostingList.isPointer(rid)) {
+                b.position(b.position() + includedSize);
+                newIncluded.add(null);
+            } else {
+                newIncluded.add(metadata.readIncluded(b));
+            }
         }
-        return new LeafNode(metadata, pageNum, newKeys, newRids, rightSiblingID, transaction );
+        return new LeafNode(metadata, pageNum, newKeys, newRids, newIncluded, rightSiblingID,
+                            transaction);
     }
 
     // Builtins //////////////////////////////////////////////////////////////////
@@ -456,11 +696,12 @@ class LeafNode extends BPlusNode {
         return page.getPageNum() == n.page.getPageNum() &&
                keys.equals(n.keys) &&
                rids.equals(n.rids) &&
+               included.equals(n.included) &&
                rightSibling.equals(n.rightSibling);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(page.getPageNum(), keys, rids, rightSibling);
+        return Objects.hash(page.getPageNum(), keys, rids, included, rightSibling);
     }
 }
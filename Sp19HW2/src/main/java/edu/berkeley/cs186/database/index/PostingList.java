@@ -0,0 +1,450 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.BaseTransaction;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * The record ids of a key in a B+ tree that allows duplicate keys. Leaves
+ * store one fixed-size (key, value) entry per distinct key, where the value is
+ * a record id. If a key has a single record id, the value is that record id.
+ * Otherwise, the value is a pointer to the first page of a posting list: a
+ * chain of pages holding the key's record ids in ascending order.
+ *
+ *   leaf                                 posting list of k1
+ *   +---------+--------------+           +-------------+    +-------------+
+ *   | k0:(3 1)| k1:ptr(17)   |    -->    | page 17     | -> | page 21     |
+ *   +---------+--------------+           | (1 0) (1 4) |    | (9 2) (9 3) |
+ *                                        | ... (8 7)   |    | ...         |
+ *                                        +-------------+    +-------------+
+ *
+ * Every page of a posting list is laid out as follows:
+ *
+ *   - the page number (4 bytes) of the next page of the list, or -1,
+ *   - the number n (4 bytes) of record ids on the page,
+ *   - the largest record id on the page (8 bytes, as a long; see toLong), and
+ *   - the n record ids, delta encoded, each followed by its included values
+ *     (see BPlusTreeMetadata.getIncludedSchema), if the tree has any.
+ *
+ * Each record id is encoded as the difference between its long and the long of
+ * the record id before it on the page (or 0, for the first), written as a
+ * varint: seven bits per byte, least significant first, with the high bit set
+ * on every byte but the last. Record ids of the same key are usually clustered
+ * on a few data pages, so most take one or two bytes instead of six.
+ *
+ * In a tree with included columns, every record id comes with the values of
+ * those columns in its record. A leaf entry holding a single record id stores
+ * them itself, so every function here that takes or returns the value of a
+ * leaf entry also takes or returns its included values; those of a pointer are
+ * null.
+ *
+ * The record ids are split across pages by value: every record id on a page is
+ * larger than every record id on the pages before it. Pages are never merged,
+ * but an empty page is unlinked and freed, and a list that shrinks to a single
+ * record id is freed and replaced by the record id itself.
+ *
+ * A posting list is only ever read or written by a thread holding a latch on
+ * the leaf that points to it, which also covers the list.
+ */
+class PostingList {
+    // The entry number of a pointer to a posting list. The page number of a
+    // pointer is the page number of the first page of the list.
+    private static final short POINTER_ENTRY_NUM = -1;
+
+    // All sizes are in bytes.
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int MAX_DATA_SIZE = Page.pageSize - HEADER_SIZE;
+
+    // A deserialized page of a posting list. included.get(i) holds the included
+    // values of values.get(i).
+    private static class PostingPage {
+        private int pageNum;
+        private int next;
+        private List<Long> values;
+        private List<Record> included;
+
+        private PostingPage(int pageNum, int next, List<Long> values, List<Record> included) {
+            this.pageNum = pageNum;
+            this.next = next;
+            this.values = values;
+            this.included = included;
+        }
+
+        private long last() {
+            return values.get(values.size() - 1);
+        }
+    }
+
+    private PostingList() {}
+
+    // Values //////////////////////////////////////////////////////////////////
+    /** Returns whether the value of a leaf entry points to a posting list. */
+    static boolean isPointer(RecordId value) {
+        return value.getEntryNum() == POINTER_ENTRY_NUM;
+    }
+
+    /** Returns a pointer to the posting list starting on page `pageNum`. */
+    static RecordId pointer(int pageNum) {
+        return new RecordId(pageNum, POINTER_ENTRY_NUM);
+    }
+
+    // Core API ////////////////////////////////////////////////////////////////
+    /**
+     * Returns the value of a leaf entry holding the record ids `rids`, which
+     * must be sorted, distinct, and nonempty, in a tree without included
+     * columns. If there is more than one record id, a new posting list is
+     * written.
+     */
+    static RecordId create(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                           List<RecordId> rids) {
+        return create(transaction, metadata, rids,
+                      Collections.nCopies(rids.size(), metadata.noIncluded()));
+    }
+
+    /**
+     * Like create above, but included.get(i) holds the included values of
+     * rids.get(i). If there is a single record id, its included values are
+     * stored in the leaf entry instead.
+     */
+    static RecordId create(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                           List<RecordId> rids, List<Record> included) {
+        assert(!rids.isEmpty() && rids.size() == included.size());
+        if (rids.size() == 1) {
+            return rids.get(0);
+        }
+
+        // Greedily fill pages, and then write them back to front so that every
+        // page knows the page number of the next.
+        int includedSize = metadata.getIncludedSize();
+        List<Integer> starts = new ArrayList<>();
+        starts.add(0);
+        int size = 0;
+        long prev = 0;
+        for (int i = 0; i < rids.size(); ++i) {
+            long v = toLong(rids.get(i));
+            if (size + varintSize(v - prev) + includedSize > MAX_DATA_SIZE) {
+                starts.add(i);
+                size = 0;
+                prev = 0;
+            }
+            size += varintSize(v - prev) + includedSize;
+            prev = v;
+        }
+        starts.add(rids.size());
+
+        PageAllocator allocator = metadata.getAllocator();
+        int next = -1;
+        for (int i = starts.size() - 2; i >= 0; --i) {
+            List<Long> values = new ArrayList<>();
+            for (RecordId rid : rids.subList(starts.get(i), starts.get(i + 1))) {
+                values.add(toLong(rid));
+            }
+            List<Record> chunk = new ArrayList<>(included.subList(starts.get(i), starts.get(i + 1)));
+            int pageNum = allocator.allocPage(transaction);
+            write(transaction, metadata, new PostingPage(pageNum, next, values, chunk));
+            next = pageNum;
+        }
+        return pointer(next);
+    }
+
+    /**
+     * Adds `rid`, with included values `included`, to the record ids of a leaf
+     * entry with value `value` (and included values `valueIncluded`) and
+     * returns the entry's new value, which is always a pointer. An exception
+     * is raised if the entry already holds `rid`.
+     */
+    static RecordId add(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                        RecordId value, Record valueIncluded, RecordId rid,
+                        Record included) throws BPlusTreeException {
+        if (!isPointer(value)) {
+            int c = value.compareTo(rid);
+            if (c == 0) {
+                throw new BPlusTreeException("A duplicate (key, rid) pair is inserted.");
+            }
+            return c < 0
+                   ? create(transaction, metadata, Arrays.asList(value, rid),
+                            Arrays.asList(valueIncluded, included))
+                   : create(transaction, metadata, Arrays.asList(rid, value),
+                            Arrays.asList(included, valueIncluded));
+        }
+
+        long v = toLong(rid);
+        PostingPage page = read(transaction, metadata, value.getPageNum());
+        while (page.next != -1 && page.last() < v) {
+            page = read(transaction, metadata, page.next);
+        }
+
+        int i = Collections.binarySearch(page.values, v);
+        if (i >= 0) {
+            throw new BPlusTreeException("A duplicate (key, rid) pair is inserted.");
+        }
+        page.values.add(-i - 1, v);
+        page.included.add(-i - 1, included);
+
+        // If the page overflows, move its upper half to a new page after it.
+        if (encodedSize(metadata, page.values) > MAX_DATA_SIZE) {
+            int n = page.values.size();
+            int mid = n / 2;
+            List<Long> right = new ArrayList<>(page.values.subList(mid, n));
+            List<Record> rightIncluded = new ArrayList<>(page.included.subList(mid, n));
+            page.values.subList(mid, n).clear();
+            page.included.subList(mid, n).clear();
+            int rightPageNum = metadata.getAllocator().allocPage(transaction);
+            write(transaction, metadata, new PostingPage(rightPageNum, page.next, right,
+                  rightIncluded));
+            page.next = rightPageNum;
+        }
+        write(transaction, metadata, page);
+        return value;
+    }
+
+    /**
+     * Removes `rid` from the record ids of a leaf entry with value `value` (and
+     * included values `valueIncluded`). Returns the entry's new value and
+     * included values, or Optional.empty() if the entry no longer holds any
+     * record ids. If the entry doesn't hold `rid`, nothing happens.
+     */
+    static Optional<Pair<RecordId, Record>> remove(BaseTransaction transaction,
+            BPlusTreeMetadata metadata, RecordId value, Record valueIncluded, RecordId rid) {
+        if (!isPointer(value)) {
+            return value.equals(rid) ? Optional.empty()
+                                     : Optional.of(new Pair<>(value, valueIncluded));
+        }
+
+        long v = toLong(rid);
+        PostingPage head = read(transaction, metadata, value.getPageNum());
+        PostingPage prev = null;
+        PostingPage page = head;
+        while (page.next != -1 && page.last() < v) {
+            prev = page;
+            page = read(transaction, metadata, page.next);
+        }
+
+        int i = Collections.binarySearch(page.values, v);
+        if (i < 0) {
+            return Optional.of(new Pair<>(value, null));
+        }
+        page.values.remove(i);
+        page.included.remove(i);
+
+        PageAllocator allocator = metadata.getAllocator();
+        if (page.values.isEmpty() && page.next != -1) {
+            // Unlink the empty page. The first page of the list can't move, so
+            // if it empties, the second page is copied into it instead.
+            PostingPage next = read(transaction, metadata, page.next);
+            allocator.freePage(transaction, next.pageNum);
+            page.values = next.values;
+            page.included = next.included;
+            page.next = next.next;
+        } else if (page.values.isEmpty() && prev != null) {
+            allocator.freePage(transaction, page.pageNum);
+            prev.next = -1;
+            page = prev;
+        }
+        if (page.pageNum == head.pageNum) {
+            head = page;
+        }
+
+        // A list with at most one record id left is replaced by its record id.
+        if (head.next == -1 && head.values.size() <= 1) {
+            allocator.freePage(transaction, head.pageNum);
+            return head.values.isEmpty()
+                   ? Optional.empty()
+                   : Optional.of(new Pair<>(fromLong(head.values.get(0)), head.included.get(0)));
+        }
+        write(transaction, metadata, page);
+        return Optional.of(new Pair<>(value, null));
+    }
+
+    /** Frees the pages of the posting list of `value`, if it has one. */
+    static void free(BaseTransaction transaction, BPlusTreeMetadata metadata, RecordId value) {
+        if (!isPointer(value)) {
+            return;
+        }
+        int pageNum = value.getPageNum();
+        while (pageNum != -1) {
+            int next = read(transaction, metadata, pageNum).next;
+            metadata.getAllocator().freePage(transaction, pageNum);
+            pageNum = next;
+        }
+    }
+
+    /** Returns the smallest record id of a leaf entry with value `value`. */
+    static RecordId first(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                          RecordId value) {
+        if (!isPointer(value)) {
+            return value;
+        }
+        return fromLong(read(transaction, metadata, value.getPageNum()).values.get(0));
+    }
+
+    /**
+     * Returns the record ids, and their included values, of a leaf entry with
+     * value `value` (and included values `valueIncluded`) that are larger than
+     * `after` (or all of them, if `after` is empty), one page at a time: only
+     * the record ids on the first page holding such a record id are returned,
+     * along with whether there may be more after them.
+     *
+     * Scans call this repeatedly, releasing the leaf's latch in between, so a
+     * scan never holds more than one page of a posting list in memory and
+     * never misses a record id that stays in the list, no matter how the list
+     * changes between calls.
+     */
+    static Pair<List<Pair<RecordId, Record>>, Boolean> readAfter(BaseTransaction transaction,
+            BPlusTreeMetadata metadata, RecordId value, Record valueIncluded,
+            Optional<RecordId> after) {
+        if (!isPointer(value)) {
+            boolean isAfter = !after.isPresent() || value.compareTo(after.get()) > 0;
+            List<Pair<RecordId, Record>> entries =
+                isAfter ? Collections.singletonList(new Pair<>(value, valueIncluded))
+                        : Collections.emptyList();
+            return new Pair<>(entries, false);
+        }
+
+        long lo = after.isPresent() ? toLong(after.get()) : Long.MIN_VALUE;
+        int pageNum = value.getPageNum();
+        while (pageNum != -1) {
+            // The header alone tells us whether a page can be skipped.
+            Buffer buf = readBuffer(transaction, metadata, pageNum);
+            int next = buf.getInt(0);
+            long last = buf.getLong(2 * Integer.BYTES);
+            int numValues = buf.getInt(Integer.BYTES);
+            if (numValues > 0 && last > lo) {
+                PostingPage page = decode(metadata, pageNum, buf);
+                List<Pair<RecordId, Record>> entries = new ArrayList<>();
+                for (int i = 0; i < page.values.size(); ++i) {
+                    if (page.values.get(i) > lo) {
+                        entries.add(new Pair<>(fromLong(page.values.get(i)), page.included.get(i)));
+                    }
+                }
+                return new Pair<>(entries, next != -1);
+            }
+            pageNum = next;
+        }
+        return new Pair<>(Collections.emptyList(), false);
+    }
+
+    /**
+     * Returns every record id of a leaf entry with value `value`, in ascending
+     * order.
+     */
+    static List<RecordId> readAll(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                                  RecordId value) {
+        if (!isPointer(value)) {
+            return Collections.singletonList(value);
+        }
+        List<RecordId> rids = new ArrayList<>();
+        int pageNum = value.getPageNum();
+        while (pageNum != -1) {
+            PostingPage page = read(transaction, metadata, pageNum);
+            for (long v : page.values) {
+                rids.add(fromLong(v));
+            }
+            pageNum = page.next;
+        }
+        return rids;
+    }
+
+    // Serialization ///////////////////////////////////////////////////////////
+    /**
+     * Record ids are ordered by page number and then by entry number, which is
+     * the same as the order of the longs (pageNum << 16) | entryNum.
+     */
+    static long toLong(RecordId rid) {
+        return ((long) rid.getPageNum() << 16) | (rid.getEntryNum() & 0xFFFF);
+    }
+
+    static RecordId fromLong(long v) {
+        return new RecordId((int) (v >> 16), (short) (v & 0xFFFF));
+    }
+
+    /** Returns the number of bytes used by the varint encoding of `v` >= 0. */
+    static int varintSize(long v) {
+        int size = 1;
+        while ((v >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes used to delta encode `values`, along with
+     * their included values.
+     */
+    private static int encodedSize(BPlusTreeMetadata metadata, List<Long> values) {
+        int size = values.size() * metadata.getIncludedSize();
+        long prev = 0;
+        for (long v : values) {
+            size += varintSize(v - prev);
+            prev = v;
+        }
+        return size;
+    }
+
+    private static Page fetch(BaseTransaction transaction, BPlusTreeMetadata metadata, int pageNum) {
+        return metadata.getAllocator().fetchPage(transaction, pageNum);
+    }
+
+    private static Buffer readBuffer(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                                     int pageNum) {
+        byte[] bytes = fetch(transaction, metadata, pageNum).readBytes(transaction);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private static PostingPage read(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                                    int pageNum) {
+        return decode(metadata, pageNum, readBuffer(transaction, metadata, pageNum));
+    }
+
+    private static PostingPage decode(BPlusTreeMetadata metadata, int pageNum, Buffer buf) {
+        int next = buf.getInt(0);
+        int numValues = buf.getInt(Integer.BYTES);
+        buf.position(HEADER_SIZE);
+        List<Long> values = new ArrayList<>(numValues);
+        List<Record> included = new ArrayList<>(numValues);
+        long prev = 0;
+        for (int i = 0; i < numValues; ++i) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf.get();
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            prev += delta;
+            values.add(prev);
+            included.add(metadata.readIncluded(buf));
+        }
+        return new PostingPage(pageNum, next, values, included);
+    }
+
+    private static void write(BaseTransaction transaction, BPlusTreeMetadata metadata,
+                              PostingPage page) {
+        assert(encodedSize(metadata, page.values) <= MAX_DATA_SIZE);
+        java.nio.ByteBuffer buf = java.nio.ByteBuffer.allocate(Page.pageSize);
+        buf.putInt(page.next);
+        buf.putInt(page.values.size());
+        buf.putLong(page.values.isEmpty() ? Long.MIN_VALUE : page.last());
+        long prev = 0;
+        for (int i = 0; i < page.values.size(); ++i) {
+            long v = page.values.get(i);
+            long delta = v - prev;
+            while ((delta & ~0x7FL) != 0) {
+                buf.put((byte) ((delta & 0x7F) | 0x80));
+                delta >>>= 7;
+            }
+            buf.put((byte) delta);
+            buf.put(metadata.includedToBytes(page.included.get(i)));
+            prev = v;
+        }
+        fetch(transaction, metadata, page.pageNum).writeBytes(transaction, buf.array());
+    }
+}
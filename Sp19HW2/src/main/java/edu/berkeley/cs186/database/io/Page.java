@@ -64,8 +64,11 @@ public class Page {
      * @param position the offset in the page to read from
      * @param num the number of bytes to read
      * @param buf the buffer to put the bytes into
+     *
+     * Reads and writes move the position of pageData, which is shared by
+     * every buffer of the page, so they are synchronized.
      */
-    private void readBytes(int position, int num, byte[] buf) {
+    private synchronized void readBytes(int position, int num, byte[] buf) {
         if (position < 0 || num < 0) {
             throw new PageException("position or num can't be negative");
         }
@@ -97,7 +100,7 @@ public class Page {
      * @param num the number of bytes to write
      * @param buf the source for the write
      */
-    private void writeBytes(int position, int num, byte[] buf) {
+    private synchronized void writeBytes(int position, int num, byte[] buf) {
         if (buf.length < num) {
             throw new PageException("num bytes to write is longer than buffer");
         }
@@ -0,0 +1,74 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * Yields the records of an operator a batch at a time, rather than a record at
+ * a time like Iterator<Record>. Operators that process batches natively pay
+ * for one nextBatch call per batch instead of a hasNext and a next call per
+ * record, and loop over the records of each batch directly.
+ *
+ * Like the record iterators of operators, nextBatch wraps any
+ * DatabaseException in an IllegalStateException.
+ */
+public interface BatchIterator {
+    /**
+     * Returns the next batch of records, or null if there are none left. The
+     * returned batch is never empty. It may be reused by the next call to
+     * nextBatch, so its records must be consumed (or copied out) first.
+     */
+    RecordBatch nextBatch();
+
+    /**
+     * Tells the iterator that no more batches will be read, so that it can
+     * release what it holds (e.g. stop the workers of an exchange) without
+     * yielding the rest of its batches. nextBatch must not be called after
+     * close.
+     */
+    default void close() {}
+
+    /**
+     * Returns a BatchIterator that yields the records of records in batches
+     * of up to batchSize records.
+     */
+    static BatchIterator fromRecords(Iterator<Record> records, int batchSize) {
+        RecordBatch batch = new RecordBatch(batchSize);
+        return () -> {
+            batch.clear();
+            while (!batch.isFull() && records.hasNext()) {
+                batch.add(records.next());
+            }
+            return batch.isEmpty() ? null : batch;
+        };
+    }
+
+    /**
+     * Returns an Iterator over the records of every batch of batches.
+     */
+    static Iterator<Record> toRecords(BatchIterator batches) {
+        return new Iterator<Record>() {
+            private RecordBatch batch = null;
+            private int next = 0;
+            private boolean done = false;
+
+            public boolean hasNext() {
+                while (!this.done && (this.batch == null || this.next == this.batch.size())) {
+                    this.batch = batches.nextBatch();
+                    this.next = 0;
+                    this.done = this.batch == null;
+                }
+                return !this.done;
+            }
+
+            public Record next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.batch.get(this.next++);
+            }
+        };
+    }
+}
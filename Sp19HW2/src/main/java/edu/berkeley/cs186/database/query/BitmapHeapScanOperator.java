@@ -0,0 +1,330 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordIdBitmap;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.Histogram;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * A bitmap heap scan answers a scan of a range of keys of an index in two
+ * steps. First, it reads the record ids of every matching record from the
+ * index into a RecordIdBitmap, which orders them by page. Then it reads the
+ * pages of the bitmap in order, each of them once, returning every matching
+ * record on the page.
+ *
+ * An IndexScanOperator instead fetches the records in order of key, so on an
+ * unclustered index it reads pages in random order, and reads a page once for
+ * every matching record on it. A bitmap heap scan returns the same records
+ * (in order of record id rather than of key), and is cheaper whenever the
+ * range matches more than a handful of records.
+ *
+ * A bitmap heap scan can also scan ranges of the indexes on several columns
+ * at once, e.g. for the predicates `x < 10 AND y = 3`. The bitmaps read from
+ * the indexes are intersected (or, for `x < 10 OR y = 3`, unioned) before any
+ * page of the table is read, so a page is only read if it holds a record that
+ * matches every range (or any range).
+ */
+public class BitmapHeapScanOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String tableName;
+    private List<IndexRange> ranges;
+    // Whether a record must match any of the ranges, rather than all of them.
+    private boolean union;
+
+    /**
+     * A range of keys of the index on a column. An empty bound leaves the
+     * range unbounded on that side.
+     */
+    public static class IndexRange {
+        private String columnName;
+        private Optional<DataBox> lo;
+        private boolean loInclusive;
+        private Optional<DataBox> hi;
+        private boolean hiInclusive;
+
+        // The index of columnName in the schema of the table.
+        private int columnIndex;
+
+        public IndexRange(String columnName, Optional<DataBox> lo, boolean loInclusive,
+                          Optional<DataBox> hi, boolean hiInclusive) {
+            this.columnName = columnName;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+        }
+
+        public String getColumnName() {
+            return this.columnName;
+        }
+
+        private boolean isEquality() {
+            return this.lo.isPresent() && this.hi.isPresent() && this.loInclusive &&
+                   this.hiInclusive && this.lo.get().equals(this.hi.get());
+        }
+
+        /**
+         * Returns the fraction of the records described by histogram that
+         * lie in this range.
+         */
+        private float reductionFactor(Histogram histogram) {
+            if (this.isEquality()) {
+                return histogram.computeReductionFactor(QueryPlan.PredicateOperator.EQUALS,
+                                                        this.lo.get());
+            }
+            float reductionFactor = 1;
+            if (this.lo.isPresent()) {
+                reductionFactor *= histogram.computeReductionFactor(this.loInclusive
+                                   ? QueryPlan.PredicateOperator.GREATER_THAN_EQUALS
+                                   : QueryPlan.PredicateOperator.GREATER_THAN, this.lo.get());
+            }
+            if (this.hi.isPresent()) {
+                reductionFactor *= histogram.computeReductionFactor(this.hiInclusive
+                                   ? QueryPlan.PredicateOperator.LESS_THAN_EQUALS
+                                   : QueryPlan.PredicateOperator.LESS_THAN, this.hi.get());
+            }
+            return reductionFactor;
+        }
+
+        @Override
+        public String toString() {
+            return this.columnName + " in " + (this.loInclusive ? "[" : "(") +
+                   this.lo.map(DataBox::toString).orElse("") + ", " +
+                   this.hi.map(DataBox::toString).orElse("") + (this.hiInclusive ? "]" : ")");
+        }
+    }
+
+    /**
+     * A bitmap heap scan operator over the records whose column `columnName`
+     * lies between `lo` and `hi`. Either bound may be empty.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @param lo the lower bound of the range, if any
+     * @param loInclusive whether the range includes lo
+     * @param hi the upper bound of the range, if any
+     * @param hiInclusive whether the range includes hi
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public BitmapHeapScanOperator(Database.Transaction transaction,
+                                  String tableName,
+                                  String columnName,
+                                  Optional<DataBox> lo,
+                                  boolean loInclusive,
+                                  Optional<DataBox> hi,
+                                  boolean hiInclusive) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, Collections.singletonList(new IndexRange(columnName, lo,
+                loInclusive, hi, hiInclusive)), false);
+    }
+
+    /**
+     * A bitmap heap scan operator over the records that lie in all of
+     * `ranges`, or in any of them if `union` is true.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param ranges the ranges of the indexes to scan
+     * @param union whether to return the records in any range rather than in all of them
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public BitmapHeapScanOperator(Database.Transaction transaction,
+                                  String tableName,
+                                  List<IndexRange> ranges,
+                                  boolean union) throws QueryPlanException, DatabaseException {
+        super(OperatorType.BITMAPHEAPSCAN);
+        if (ranges.isEmpty()) {
+            throw new QueryPlanException("A bitmap heap scan needs at least one index range.");
+        }
+        this.tableName = tableName;
+        this.transaction = transaction;
+        this.ranges = new ArrayList<>(ranges);
+        this.union = union;
+
+        this.setOutputSchema(this.computeSchema());
+        for (IndexRange range : this.ranges) {
+            range.columnIndex = this.getOutputSchema().getFieldNames().indexOf(
+                                    this.checkSchemaForColumn(this.getOutputSchema(), range.columnName));
+        }
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String str() {
+        String str = "type: " + this.getType() +
+                     "\ntable: " + this.tableName;
+        if (this.ranges.size() > 1) {
+            str += "\ncombine: " + (this.union ? "union" : "intersection");
+        }
+        for (IndexRange range : this.ranges) {
+            str += "\nrange: " + range;
+        }
+        return str;
+    }
+
+    /**
+     * Returns the names of the columns whose indexes the scan reads.
+     *
+     * @return the column names
+     */
+    public List<String> getColumnNames() {
+        List<String> columnNames = new ArrayList<>();
+        for (IndexRange range : this.ranges) {
+            columnNames.add(range.columnName);
+        }
+        return columnNames;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query
+     * operator. The reduction factor of each range is estimated from the
+     * histogram of its column, and the ranges are assumed to be independent:
+     * an intersection keeps a fraction r1 * r2 * ... of the records, and a
+     * union keeps all but a fraction (1 - r1) * (1 - r2) * ... of them.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats;
+        try {
+            stats = this.transaction.getStats(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+
+        float reductionFactor = 1;
+        for (IndexRange range : this.ranges) {
+            float rangeFactor = range.reductionFactor(stats.getHistograms().get(range.columnIndex));
+            reductionFactor *= this.union ? 1 - rangeFactor : rangeFactor;
+        }
+        return stats.copyWithReduction(this.union ? 1 - reductionFactor : reductionFactor);
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator: the cost of
+     * reading the record ids from the indexes, plus one IO per page that holds
+     * at least one of the k matching records. If the records are spread
+     * uniformly over the table's P pages, a page holds none of them with
+     * probability (1 - 1/P)^k, so we expect to read P * (1 - (1 - 1/P)^k)
+     * pages, which is never more than min(k, P).
+     *
+     * Each index is costed as it is for an IndexScanOperator, so a scan of a
+     * single range differs from an index scan only in how it reads the table:
+     * an index scan performs one IO per matching record, which is never fewer
+     * than a bitmap heap scan.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        int indexCost = 0;
+        long numPages;
+        try {
+            for (IndexRange range : this.ranges) {
+                if (range.isEquality() && this.transaction.hashIndexExists(this.tableName,
+                        range.columnName)) {
+                    indexCost += (int) Math.ceil(this.transaction.getHashIndexBucketLength(
+                                                     this.tableName, range.columnName));
+                } else {
+                    indexCost += this.transaction.getNumIndexPages(this.tableName,
+                                 range.columnName);
+                }
+            }
+            numPages = this.transaction.getNumDataPages(this.tableName);
+        } catch (DatabaseException err) {
+            throw new QueryPlanException(err);
+        }
+
+        long numMatches = this.stats.getNumRecords();
+        if (numPages == 0 || numMatches == 0) {
+            return indexCost;
+        }
+        double expectedPages = numPages * (1 - Math.pow(1 - 1.0 / numPages, numMatches));
+        return indexCost + (int) Math.min(Math.ceil(expectedPages), Math.min(numMatches, numPages));
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new BitmapHeapScanIterator();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        try {
+            return this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class BitmapHeapScanIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+
+        public BitmapHeapScanIterator() throws QueryPlanException, DatabaseException {
+            RecordIdBitmap bitmap = null;
+            for (IndexRange range : BitmapHeapScanOperator.this.ranges) {
+                RecordIdBitmap rangeBitmap = BitmapHeapScanOperator.this.transaction.getRecordIdBitmap(
+                                                 BitmapHeapScanOperator.this.tableName,
+                                                 range.columnName,
+                                                 range.lo,
+                                                 range.loInclusive,
+                                                 range.hi,
+                                                 range.hiInclusive);
+                if (bitmap == null) {
+                    bitmap = rangeBitmap;
+                } else if (BitmapHeapScanOperator.this.union) {
+                    bitmap = bitmap.union(rangeBitmap);
+                } else {
+                    bitmap = bitmap.intersect(rangeBitmap);
+                }
+                // Nothing can match the remaining ranges of an empty intersection.
+                if (!BitmapHeapScanOperator.this.union && bitmap.getNumRecords() == 0) {
+                    break;
+                }
+            }
+            this.sourceIterator = BitmapHeapScanOperator.this.transaction.bitmapHeapScan(
+                                      BitmapHeapScanOperator.this.tableName, bitmap);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                return this.sourceIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * A composite index scan uses an index on several columns (see
+ * Database.Transaction.createCompositeIndex) to answer equality predicates on
+ * its first columns together with range predicates on the column after them,
+ * e.g. `a = 1 AND b = 2 AND 3 <= c < 8` with an index on (a, b, c, d). The
+ * matching records are found with one bounded scan of the index.
+ */
+public class CompositeIndexScanOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String tableName;
+    private List<String> columnNames;
+
+    // The values of the first prefix.size() columns of the index.
+    private List<DataBox> prefix;
+
+    // The range of the column after the prefix. An empty bound leaves the
+    // range unbounded on that side.
+    private Optional<DataBox> lo;
+    private boolean loInclusive;
+    private Optional<DataBox> hi;
+    private boolean hiInclusive;
+
+    // The indices in our output schema of the columns of the index.
+    private List<Integer> columnIndices;
+
+    /**
+     * A composite index scan operator over the records whose first columns of
+     * the index on `columnNames` are `prefix`, and whose next column lies
+     * between `lo` and `hi`. Either bound may be empty.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnNames the names of the columns the index is on, in order
+     * @param prefix the values of the first columns of the index
+     * @param lo the lower bound of the next column, if any
+     * @param loInclusive whether the range includes lo
+     * @param hi the upper bound of the next column, if any
+     * @param hiInclusive whether the range includes hi
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public CompositeIndexScanOperator(Database.Transaction transaction,
+                                      String tableName,
+                                      List<String> columnNames,
+                                      List<DataBox> prefix,
+                                      Optional<DataBox> lo,
+                                      boolean loInclusive,
+                                      Optional<DataBox> hi,
+                                      boolean hiInclusive) throws QueryPlanException, DatabaseException {
+        super(OperatorType.INDEXSCAN);
+        this.transaction = transaction;
+        this.tableName = tableName;
+        this.columnNames = columnNames;
+        this.prefix = prefix;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+
+        if (prefix.size() > columnNames.size() ||
+                (prefix.size() == columnNames.size() && (lo.isPresent() || hi.isPresent()))) {
+            throw new QueryPlanException("Too many values for the index on " + columnNames + ".");
+        }
+
+        this.setOutputSchema(this.computeSchema());
+        this.columnIndices = new ArrayList<>();
+        for (String column : columnNames) {
+            String name = this.checkSchemaForColumn(this.getOutputSchema(), column);
+            this.columnIndices.add(this.getOutputSchema().getFieldNames().indexOf(name));
+        }
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String str() {
+        String str = "type: " + this.getType() +
+                     "\ntable: " + this.tableName +
+                     "\ncolumns: " + this.columnNames +
+                     "\nprefix: " + this.prefix;
+        if (!this.lo.isPresent() && !this.hi.isPresent()) {
+            return str;
+        }
+        return str + "\nrange: " + (this.loInclusive ? "[" : "(") +
+               this.lo.map(DataBox::toString).orElse("") + ", " +
+               this.hi.map(DataBox::toString).orElse("") + (this.hiInclusive ? "]" : ")");
+    }
+
+    /**
+     * Returns the names of the columns of the index, in order.
+     *
+     * @return columnNames
+     */
+    public List<String> getColumnNames() {
+        return this.columnNames;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query
+     * operator: the statistics of the table filtered by an equality predicate
+     * on each column of the prefix, and by the range on the next column.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats;
+        try {
+            stats = this.transaction.getStats(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+
+        for (int i = 0; i < this.prefix.size(); ++i) {
+            stats = stats.copyWithPredicate(this.columnIndices.get(i),
+                                            QueryPlan.PredicateOperator.EQUALS,
+                                            this.prefix.get(i));
+        }
+        if (this.prefix.size() == this.columnNames.size()) {
+            return stats;
+        }
+        int next = this.columnIndices.get(this.prefix.size());
+        if (this.lo.isPresent()) {
+            stats = stats.copyWithPredicate(next,
+                                            this.loInclusive
+                                            ? QueryPlan.PredicateOperator.GREATER_THAN_EQUALS
+                                            : QueryPlan.PredicateOperator.GREATER_THAN,
+                                            this.lo.get());
+        }
+        if (this.hi.isPresent()) {
+            stats = stats.copyWithPredicate(next,
+                                            this.hiInclusive
+                                            ? QueryPlan.PredicateOperator.LESS_THAN_EQUALS
+                                            : QueryPlan.PredicateOperator.LESS_THAN,
+                                            this.hi.get());
+        }
+        return stats;
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. Like an
+     * IndexOnlyScanOperator, the scan reads one page on the way down to the
+     * first leaf in the range and then the fraction of the index's pages that
+     * hold matching keys. Like an IndexScanOperator on an unclustered index,
+     * it then performs one IO per matching record.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        long numIndexPages;
+        long numRecords;
+        try {
+            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.columnNames);
+            numRecords = this.transaction.getNumRecords(this.tableName);
+        } catch (DatabaseException err) {
+            throw new QueryPlanException(err);
+        }
+
+        long numMatches = this.stats.getNumRecords();
+        double selectivity = numRecords == 0 ? 0 : (double) numMatches / numRecords;
+        return (int) (Math.ceil(Math.min(selectivity, 1.0) * numIndexPages) + 1 + numMatches);
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new CompositeIndexScanIterator();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        try {
+            return this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class CompositeIndexScanIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+
+        public CompositeIndexScanIterator() throws QueryPlanException, DatabaseException {
+            this.sourceIterator = CompositeIndexScanOperator.this.transaction.sortedScanPrefix(
+                                      CompositeIndexScanOperator.this.tableName,
+                                      CompositeIndexScanOperator.this.columnNames,
+                                      CompositeIndexScanOperator.this.prefix,
+                                      CompositeIndexScanOperator.this.lo,
+                                      CompositeIndexScanOperator.this.loInclusive,
+                                      CompositeIndexScanOperator.this.hi,
+                                      CompositeIndexScanOperator.this.hiInclusive);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                return this.sourceIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
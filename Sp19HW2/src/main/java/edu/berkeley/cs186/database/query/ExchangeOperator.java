@@ -0,0 +1,487 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * An exchange runs sub-plans on worker threads, so that a query can use more
+ * than one core. Every sub-plan is read by its own worker, a batch at a time,
+ * and its batches are handed to the consumer through a bounded queue. There
+ * are two kinds of exchange:
+ *
+ *   - An ExchangeOperator gathers: it returns the records of all of its
+ *     sources, in no particular order. It sits at the top of the parallel
+ *     part of a plan.
+ *   - repartition turns n sources into n partitions that are hashed on some
+ *     columns, so that records with equal values in those columns end up in
+ *     the same partition. This lets each worker join (or aggregate) its own
+ *     partition: a join of the i-th partitions of both inputs finds every
+ *     match of the records in them.
+ *
+ * For example, QueryPlan.setParallelism(2) runs a join of A and B as
+ *
+ *   gather(join(repartition(scan(A, 0), scan(A, 1))[0], repartition(scan(B, 0), scan(B, 1))[0]),
+ *          join(repartition(scan(A, 0), scan(A, 1))[1], repartition(scan(B, 0), scan(B, 1))[1]))
+ *
+ * where scan(A, i) scans the i-th partition of A's pages.
+ *
+ * Workers block when a queue is full and consumers block when one is empty,
+ * so the workers come from a pool that grows as needed: a worker blocked on a
+ * queue never keeps another from running. Workers are daemon threads, so a
+ * query that is abandoned halfway doesn't keep the JVM alive.
+ *
+ * The workers of an exchange stop early if the exchange is cancelled: when its
+ * consumer closes the BatchIterator (see BatchIterator.close), or when one of
+ * the workers fails. Workers hand over their batches with a timed offer and
+ * check for cancellation between attempts and between batches, so no worker
+ * stays blocked on a queue nobody reads. Workers are not interrupted, since an
+ * interrupt during a read of a table's FileChannel closes the channel for
+ * every other reader of the table.
+ */
+public class ExchangeOperator extends QueryOperator {
+    // The number of batches a queue holds per producer.
+    private static final int BATCHES_PER_PRODUCER = 4;
+
+    // How long producers and consumers wait on a queue before checking
+    // whether the exchange was cancelled.
+    private static final long WAIT_MILLIS = 10;
+
+    private static final ExecutorService WORKERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "exchange-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Put on a queue by each producer when it is done.
+    private static final RecordBatch END = new RecordBatch(1);
+
+    private List<QueryOperator> sources;
+
+    /**
+     * Creates a new ExchangeOperator that returns the records of every one of
+     * sources, each of which is read by a separate worker.
+     *
+     * @param sources the sources, which must all have the same schema
+     * @throws QueryPlanException
+     */
+    public ExchangeOperator(List<QueryOperator> sources) throws QueryPlanException {
+        super(OperatorType.EXCHANGE);
+        this.sources = new ArrayList<>(sources);
+        this.setOutputSchema(this.computeSchema());
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    @Override
+    public QueryOperator getSource() throws QueryPlanException {
+        throw new QueryPlanException("There is no single source for exchange operators. Please use " +
+                                     "getSources.");
+    }
+
+    public List<QueryOperator> getSources() {
+        return Collections.unmodifiableList(this.sources);
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        if (this.sources.isEmpty()) {
+            throw new QueryPlanException("An exchange needs at least one source.");
+        }
+        return checkSchemas(this.sources);
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return BatchIterator.toRecords(this.batchIterator());
+    }
+
+    public BatchIterator batchIterator() throws QueryPlanException, DatabaseException {
+        BlockingQueue<RecordBatch> queue = new LinkedBlockingQueue<>(
+            BATCHES_PER_PRODUCER * this.sources.size());
+        Producers producers = new Producers();
+        for (QueryOperator source : this.sources) {
+            WORKERS.execute(() -> {
+                try {
+                    BatchIterator batches = source.batchIterator();
+                    RecordBatch batch;
+                    while (!producers.isCancelled() && (batch = batches.nextBatch()) != null) {
+                        // The source may reuse its batch, so hand over a copy.
+                        producers.offer(queue, copy(batch));
+                    }
+                    batches.close();
+                } catch (Throwable t) {
+                    producers.fail(t);
+                } finally {
+                    producers.offer(queue, END);
+                }
+            });
+        }
+        return new QueueBatchIterator(Collections.singletonList(queue), 0, this.sources.size(),
+                                      producers);
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\nsources: " + this.sources.size();
+    }
+
+    public String toString() {
+        String r = this.str();
+        for (QueryOperator source : this.sources) {
+            r += "\n" + source.toString().replaceAll("(?m)^", "\t");
+        }
+        return r;
+    }
+
+    /**
+     * The sources each hold part of the output, so the records of the output
+     * are estimated to be like those of the first source, only more of them.
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return estimateStats(this.sources, this.sources.size());
+    }
+
+    /**
+     * Every source is read once, and nothing is written.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        int cost = 0;
+        for (QueryOperator source : this.sources) {
+            cost += source.getIOCost();
+        }
+        return cost;
+    }
+
+    /**
+     * Returns sources.size() operators that together return the records of
+     * sources, hashed on columnNames: records with equal values in those
+     * columns are returned by the same operator. Each source is read by a
+     * separate worker as soon as any of the returned operators is read, and
+     * every returned operator can only be read once. Closing the batch
+     * iterator of any of the returned operators cancels the whole exchange.
+     *
+     * @param sources the sources, which must all have the same schema
+     * @param columnNames the columns to hash on
+     * @return the partitions
+     * @throws QueryPlanException
+     */
+    public static List<QueryOperator> repartition(List<QueryOperator> sources,
+            List<String> columnNames) throws QueryPlanException {
+        if (sources.isEmpty()) {
+            throw new QueryPlanException("An exchange needs at least one source.");
+        }
+        Repartitioner repartitioner = new Repartitioner(sources, columnNames);
+        List<QueryOperator> partitions = new ArrayList<>();
+        for (int i = 0; i < sources.size(); i++) {
+            partitions.add(new PartitionOperator(repartitioner, i));
+        }
+        return partitions;
+    }
+
+    private static Schema checkSchemas(List<QueryOperator> sources) throws QueryPlanException {
+        Schema schema = sources.get(0).getOutputSchema();
+        for (QueryOperator source : sources) {
+            if (!source.getOutputSchema().equals(schema)) {
+                throw new QueryPlanException("The sources of an exchange must have the same schema.");
+            }
+        }
+        return schema;
+    }
+
+    private static TableStats estimateStats(List<QueryOperator> sources, float numCopies) {
+        TableStats stats = sources.get(0).getStats();
+        return numCopies == 1 ? stats : stats.copyWithReduction(numCopies);
+    }
+
+    private static RecordBatch copy(RecordBatch batch) {
+        RecordBatch copy = new RecordBatch(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            copy.add(batch.get(i));
+        }
+        return copy;
+    }
+
+    /**
+     * The state shared by the producers of an exchange and its consumers:
+     * whether the exchange was cancelled, and the first error of a producer.
+     */
+    private static class Producers {
+        private AtomicBoolean cancelled = new AtomicBoolean(false);
+        private AtomicReference<Throwable> error = new AtomicReference<>();
+
+        boolean isCancelled() {
+            return this.cancelled.get();
+        }
+
+        void cancel() {
+            this.cancelled.set(true);
+        }
+
+        /**
+         * Records the error of a failed producer, and cancels the others: the
+         * consumer throws the error, so the rest of their output is useless.
+         */
+        void fail(Throwable t) {
+            this.error.compareAndSet(null, t);
+            this.cancel();
+        }
+
+        /**
+         * Puts batch on queue, waiting for room until the exchange is
+         * cancelled. Returns false if the batch was dropped because of that.
+         */
+        boolean offer(BlockingQueue<RecordBatch> queue, RecordBatch batch) {
+            try {
+                while (!this.isCancelled()) {
+                    if (queue.offer(batch, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                this.fail(e);
+            }
+            return false;
+        }
+
+        /**
+         * Throws the error of a failed producer, if any.
+         */
+        void checkError() {
+            Throwable t = this.error.get();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t != null) {
+                throw new IllegalStateException(t);
+            }
+        }
+    }
+
+    /**
+     * Returns the batches of numProducers producers from queues.get(queue),
+     * until every producer has put END on it. If a producer fails, its error
+     * is thrown as soon as the consumer notices. Closing the iterator cancels
+     * the producers and drains all of queues, so that the batches they hold
+     * can be reclaimed.
+     */
+    private static class QueueBatchIterator implements BatchIterator {
+        private List<BlockingQueue<RecordBatch>> queues;
+        private BlockingQueue<RecordBatch> queue;
+        private int numProducersLeft;
+        private Producers producers;
+
+        QueueBatchIterator(List<BlockingQueue<RecordBatch>> queues, int queue, int numProducers,
+                           Producers producers) {
+            this.queues = queues;
+            this.queue = queues.get(queue);
+            this.numProducersLeft = numProducers;
+            this.producers = producers;
+        }
+
+        public RecordBatch nextBatch() {
+            while (this.numProducersLeft > 0) {
+                RecordBatch batch;
+                try {
+                    batch = this.queue.poll(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this.close();
+                    throw new IllegalStateException(e);
+                }
+                if (batch == null) {
+                    if (this.producers.isCancelled()) {
+                        // Cancelled producers may never put END.
+                        this.producers.checkError();
+                        throw new IllegalStateException("The exchange was closed.");
+                    }
+                    continue;
+                }
+                if (batch != END) {
+                    return batch;
+                }
+                this.numProducersLeft--;
+            }
+            this.producers.checkError();
+            return null;
+        }
+
+        public void close() {
+            this.producers.cancel();
+            for (BlockingQueue<RecordBatch> queue : this.queues) {
+                queue.clear();
+            }
+        }
+    }
+
+    /**
+     * Reads the sources of a repartitioning exchange, each on its own worker,
+     * and deals their records out to one queue per partition.
+     */
+    private static class Repartitioner {
+        private List<QueryOperator> sources;
+        private int[] columnIndices;
+        private List<BlockingQueue<RecordBatch>> queues = new ArrayList<>();
+        private Producers producers = new Producers();
+        private AtomicBoolean started = new AtomicBoolean(false);
+
+        Repartitioner(List<QueryOperator> sources, List<String> columnNames) throws QueryPlanException {
+            this.sources = new ArrayList<>(sources);
+            Schema schema = checkSchemas(sources);
+            this.columnIndices = new int[columnNames.size()];
+            for (int i = 0; i < this.columnIndices.length; i++) {
+                String column = sources.get(0).checkSchemaForColumn(schema, columnNames.get(i));
+                this.columnIndices[i] = schema.getFieldNames().indexOf(column);
+            }
+            for (int i = 0; i < sources.size(); i++) {
+                this.queues.add(new LinkedBlockingQueue<>(BATCHES_PER_PRODUCER * sources.size()));
+            }
+        }
+
+        /**
+         * Starts the workers, unless they have already been started.
+         */
+        void start() {
+            if (this.started.getAndSet(true)) {
+                return;
+            }
+            for (QueryOperator source : this.sources) {
+                WORKERS.execute(() -> this.produce(source));
+            }
+        }
+
+        private void produce(QueryOperator source) {
+            int numPartitions = this.queues.size();
+            RecordBatch[] batches = new RecordBatch[numPartitions];
+            try {
+                BatchIterator sourceBatches = source.batchIterator();
+                RecordBatch sourceBatch;
+                while (!this.producers.isCancelled() && (sourceBatch = sourceBatches.nextBatch()) != null) {
+                    for (int r = 0; r < sourceBatch.size(); r++) {
+                        Record record = sourceBatch.get(r);
+                        int partition = Math.floorMod(this.hash(record), numPartitions);
+                        if (batches[partition] == null) {
+                            batches[partition] = new RecordBatch();
+                        }
+                        batches[partition].add(record);
+                        if (batches[partition].isFull()) {
+                            this.producers.offer(this.queues.get(partition), batches[partition]);
+                            batches[partition] = null;
+                        }
+                    }
+                }
+                sourceBatches.close();
+                for (int i = 0; i < numPartitions; i++) {
+                    if (batches[i] != null) {
+                        this.producers.offer(this.queues.get(i), batches[i]);
+                    }
+                }
+            } catch (Throwable t) {
+                this.producers.fail(t);
+            } finally {
+                for (BlockingQueue<RecordBatch> queue : this.queues) {
+                    this.producers.offer(queue, END);
+                }
+            }
+        }
+
+        /**
+         * Hashes the values of the record's partitioning columns. The hash
+         * function differs from those of the partitioning passes of hash joins
+         * and aggregations (see GraceHashJoinOperator.hash), so that the
+         * records of a partition are still spread evenly when a join or an
+         * aggregation partitions them again.
+         */
+        private int hash(Record record) {
+            List<DataBox> values = record.getValues();
+            List<DataBox> key = new ArrayList<>(this.columnIndices.length);
+            for (int index : this.columnIndices) {
+                key.add(values.get(index));
+            }
+            return GraceHashJoinOperator.hash(key, -1);
+        }
+    }
+
+    /**
+     * One of the partitions returned by repartition.
+     */
+    private static class PartitionOperator extends QueryOperator {
+        private Repartitioner repartitioner;
+        private int partition;
+        private AtomicBoolean read = new AtomicBoolean(false);
+
+        PartitionOperator(Repartitioner repartitioner, int partition) throws QueryPlanException {
+            super(OperatorType.EXCHANGE);
+            this.repartitioner = repartitioner;
+            this.partition = partition;
+            this.setOutputSchema(this.computeSchema());
+
+            this.stats = this.estimateStats();
+            this.cost = this.estimateIOCost();
+        }
+
+        protected Schema computeSchema() throws QueryPlanException {
+            return checkSchemas(this.repartitioner.sources);
+        }
+
+        public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+            return BatchIterator.toRecords(this.batchIterator());
+        }
+
+        public BatchIterator batchIterator() throws QueryPlanException, DatabaseException {
+            if (this.read.getAndSet(true)) {
+                throw new QueryPlanException("A partition of an exchange can only be read once.");
+            }
+            this.repartitioner.start();
+            return new QueueBatchIterator(this.repartitioner.queues, this.partition,
+                                          this.repartitioner.sources.size(),
+                                          this.repartitioner.producers);
+        }
+
+        public String str() {
+            return "type: " + this.getType() +
+                   "\npartition: " + this.partition + " of " + this.repartitioner.sources.size() +
+                   "\ncolumns: " + this.repartitioner.columnIndices.length;
+        }
+
+        public String toString() {
+            String r = this.str();
+            for (QueryOperator source : this.repartitioner.sources) {
+                r += "\n" + source.toString().replaceAll("(?m)^", "\t");
+            }
+            return r;
+        }
+
+        /**
+         * The records are spread evenly over the partitions, so each holds
+         * about as many as a source.
+         */
+        public TableStats estimateStats() throws QueryPlanException {
+            return ExchangeOperator.estimateStats(this.repartitioner.sources, 1);
+        }
+
+        /**
+         * The sources are read once in all, which is charged evenly to the
+         * partitions.
+         */
+        public int estimateIOCost() throws QueryPlanException {
+            int cost = 0;
+            for (QueryOperator source : this.repartitioner.sources) {
+                cost += source.getIOCost();
+            }
+            int numPartitions = this.repartitioner.sources.size();
+            return (cost + numPartitions - 1 - this.partition) / numPartitions;
+        }
+    }
+}
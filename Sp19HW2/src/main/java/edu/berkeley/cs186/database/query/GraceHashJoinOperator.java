@@ -0,0 +1,314 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Table;
+
+/**
+ * Grace hash join. With B buffer pages, both inputs are first hashed on their
+ * join column into B - 1 partitions, which are written to temporary tables.
+ * Records with equal join values land in partitions with the same number, so
+ * each pair of partitions can then be joined on its own: the smaller of the
+ * two (the build side) is loaded into an in-memory hash table, and the other
+ * (the probe side) is scanned once, looking up every record in the table.
+ *
+ * A build partition must fit in the B - 2 pages that are left after reserving
+ * a page for the probe side and a page for the output. A pair of partitions
+ * whose build side is too large is partitioned again, with a different hash
+ * function. If partitioning doesn't split a partition at all (e.g. because all
+ * of its records have the same join value), the partition is instead loaded
+ * B - 2 pages at a time, and the probe side is scanned once per load.
+ *
+ * Partitions are SpillPartitions, so they are read back page by page through
+ * the record ids they remember.
+ */
+public class GraceHashJoinOperator extends JoinOperator {
+    private int numBuffers;
+
+    public GraceHashJoinOperator(QueryOperator leftSource,
+                                 QueryOperator rightSource,
+                                 String leftColumnName,
+                                 String rightColumnName,
+                                 Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction,
+              JoinType.GRACEHASH);
+
+        this.numBuffers = transaction.getNumMemoryPages();
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new GraceHashJoinIterator();
+    }
+
+    /**
+     * Every partitioning pass reads and writes both inputs, and the final
+     * build and probe phase reads them once more, so with M left pages and N
+     * right pages a join that needs p partitioning passes costs
+     * 2p(M + N) + (M + N) IOs. Each pass divides the smaller input into B - 1
+     * partitions, so one pass (for a total of 3(M + N)) is enough unless the
+     * smaller input has more than (B - 1)(B - 2) pages.
+     */
+    public int estimateIOCost() {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+
+        int numPasses = 1;
+        double buildPages = (double) Math.min(numLeftPages, numRightPages) / (numBuffers - 1);
+        while (buildPages > numBuffers - 2) {
+            buildPages /= numBuffers - 1;
+            numPasses++;
+        }
+        return (2 * numPasses + 1) * (numLeftPages + numRightPages);
+    }
+
+    /**
+     * Returns the hash of value used by partitioning pass `pass`. Each pass
+     * uses a different hash function, so that a partition that is too large
+     * is split when it is partitioned again.
+     */
+    static int hash(Object value, int pass) {
+        int h = value.hashCode() ^ (pass * 0x9e3779b9);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * A left and a right partition whose records are to be joined, along with
+     * the number of partitioning passes that produced them.
+     */
+    private class PartitionPair {
+        private SpillPartition left;
+        private SpillPartition right;
+        private int pass;
+        // Whether partitioning split the records of the input this pair was
+        // partitioned from, i.e. whether partitioning it again could help.
+        private boolean split;
+
+        PartitionPair(SpillPartition left, SpillPartition right, int pass, boolean split) {
+            this.left = left;
+            this.right = right;
+            this.pass = pass;
+            this.split = split;
+        }
+
+        void delete() {
+            this.left.delete();
+            this.right.delete();
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     * The sources are read a batch at a time rather than materialized, so this iterator does
+     * not extend JoinIterator.
+     */
+    private class GraceHashJoinIterator implements Iterator<Record> {
+        // The number of records of the left and right inputs that fit on a page.
+        private int numLeftRecordsPerPage;
+        private int numRightRecordsPerPage;
+
+        // The pairs of partitions left to join.
+        private Deque<PartitionPair> pairs = new ArrayDeque<>();
+
+        // The pair being joined, whether its left partition is the build side,
+        // the records of the build side that have not been loaded yet, and the
+        // hash table of the records that are loaded.
+        private PartitionPair pair = null;
+        private boolean buildLeft;
+        private Iterator<Record> buildIterator;
+        private Map<DataBox, List<Record>> hashTable = new HashMap<>();
+
+        // The probe side of the pair, the probe record being joined, and its
+        // matches in the hash table.
+        private Iterator<Record> probeIterator = Collections.emptyIterator();
+        private Record probeRecord = null;
+        private List<Record> matches = Collections.emptyList();
+        private int matchIndex = 0;
+
+        private Record nextRecord = null;
+
+        public GraceHashJoinIterator() throws QueryPlanException, DatabaseException {
+            this.numLeftRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize,
+                                         getLeftSource().getOutputSchema());
+            this.numRightRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize,
+                                          getRightSource().getOutputSchema());
+            this.partition(BatchIterator.toRecords(getLeftSource().batchIterator()),
+                           BatchIterator.toRecords(getRightSource().batchIterator()), 0, 0);
+        }
+
+        /**
+         * Hashes the left and right records into numBuffers - 1 pairs of
+         * partitions with the hash function of pass `pass`, and queues the
+         * pairs with records on both sides. numBuildRecords is the number of
+         * records of the smaller input, or 0 on the first pass.
+         */
+        private void partition(Iterator<Record> leftRecords, Iterator<Record> rightRecords,
+                               int pass, int numBuildRecords) throws DatabaseException {
+            int numPartitions = numBuffers - 1;
+            List<SpillPartition> leftPartitions = new ArrayList<>();
+            List<SpillPartition> rightPartitions = new ArrayList<>();
+            for (int i = 0; i < numPartitions; i++) {
+                leftPartitions.add(new SpillPartition(getTransaction(), getLeftSource().getOutputSchema()));
+                rightPartitions.add(new SpillPartition(getTransaction(), getRightSource().getOutputSchema()));
+            }
+            while (leftRecords.hasNext()) {
+                Record record = leftRecords.next();
+                DataBox value = record.getValues().get(getLeftColumnIndex());
+                leftPartitions.get(Math.floorMod(hash(value, pass), numPartitions)).addRecord(record);
+            }
+            while (rightRecords.hasNext()) {
+                Record record = rightRecords.next();
+                DataBox value = record.getValues().get(getRightColumnIndex());
+                rightPartitions.get(Math.floorMod(hash(value, pass), numPartitions)).addRecord(record);
+            }
+
+            for (int i = 0; i < numPartitions; i++) {
+                SpillPartition left = leftPartitions.get(i);
+                SpillPartition right = rightPartitions.get(i);
+                if (left.getNumRecords() == 0 || right.getNumRecords() == 0) {
+                    left.delete();
+                    right.delete();
+                    continue;
+                }
+                int numRecords = Math.min(left.getNumRecords(), right.getNumRecords());
+                boolean split = numBuildRecords == 0 || numRecords < numBuildRecords;
+                this.pairs.push(new PartitionPair(left, right, pass + 1, split));
+            }
+        }
+
+        /**
+         * Starts joining the next pair of partitions, partitioning pairs that
+         * are too large to join first. Returns false if there are no pairs
+         * left.
+         */
+        private boolean nextPair() throws DatabaseException {
+            if (this.pair != null) {
+                this.pair.delete();
+                this.pair = null;
+            }
+            while (!this.pairs.isEmpty()) {
+                PartitionPair pair = this.pairs.pop();
+                this.buildLeft = pair.left.getNumRecords() <= pair.right.getNumRecords();
+                SpillPartition build = this.buildLeft ? pair.left : pair.right;
+                if (build.getNumRecords() > this.maxBuildRecords() && pair.split) {
+                    this.partition(pair.left.iterator(), pair.right.iterator(), pair.pass,
+                                   build.getNumRecords());
+                    pair.delete();
+                    continue;
+                }
+                this.pair = pair;
+                this.buildIterator = build.iterator();
+                return this.loadBuildRecords();
+            }
+            return false;
+        }
+
+        /**
+         * Returns the number of records of the build side that fit in
+         * numBuffers - 2 pages.
+         */
+        private int maxBuildRecords() {
+            int numRecordsPerPage = this.buildLeft ? this.numLeftRecordsPerPage : this.numRightRecordsPerPage;
+            return Math.max(1, numBuffers - 2) * numRecordsPerPage;
+        }
+
+        /**
+         * Loads the next numBuffers - 2 pages of records of the build side
+         * into the hash table, and restarts the scan of the probe side.
+         * Returns false if every build record has already been loaded.
+         */
+        private boolean loadBuildRecords() throws DatabaseException {
+            this.hashTable.clear();
+            if (!this.buildIterator.hasNext()) {
+                return false;
+            }
+            SpillPartition probe = this.buildLeft ? this.pair.right : this.pair.left;
+            int columnIndex = this.buildLeft ? getLeftColumnIndex() : getRightColumnIndex();
+            int maxRecords = this.maxBuildRecords();
+            for (int i = 0; i < maxRecords && this.buildIterator.hasNext(); i++) {
+                Record record = this.buildIterator.next();
+                this.hashTable.computeIfAbsent(record.getValues().get(columnIndex),
+                                               v -> new ArrayList<>()).add(record);
+            }
+            this.probeIterator = probe.iterator();
+            this.probeRecord = null;
+            this.matches = Collections.emptyList();
+            this.matchIndex = 0;
+            return true;
+        }
+
+        private Record fetchNextRecord() throws DatabaseException {
+            while (true) {
+                if (this.matchIndex < this.matches.size()) {
+                    Record match = this.matches.get(this.matchIndex++);
+                    Record leftRecord = this.buildLeft ? match : this.probeRecord;
+                    Record rightRecord = this.buildLeft ? this.probeRecord : match;
+                    List<DataBox> values = new ArrayList<>(leftRecord.getValues());
+                    values.addAll(rightRecord.getValues());
+                    return new Record(values);
+                }
+                if (this.probeIterator.hasNext()) {
+                    this.probeRecord = this.probeIterator.next();
+                    int columnIndex = this.buildLeft ? getRightColumnIndex() : getLeftColumnIndex();
+                    this.matches = this.hashTable.getOrDefault(
+                                       this.probeRecord.getValues().get(columnIndex),
+                                       Collections.emptyList());
+                    this.matchIndex = 0;
+                    continue;
+                }
+                // The probe side is done with the loaded build records: load
+                // the rest of the build side, or move on to the next pair.
+                if ((this.pair == null || !this.loadBuildRecords()) && !this.nextPair()) {
+                    return null;
+                }
+            }
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextRecord == null) {
+                try {
+                    this.nextRecord = this.fetchNextRecord();
+                } catch (DatabaseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return this.nextRecord != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record nextRecord = this.nextRecord;
+            this.nextRecord = null;
+            return nextRecord;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,662 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.Histogram;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * Groups the records of its source by any number of columns and computes any
+ * number of aggregates (COUNT(*), SUM, AVG, MIN and MAX) of every group in a
+ * single pass, returning one record per group: the group by columns that are
+ * projected, followed by the aggregates in the order they were asked for.
+ * Without group by columns, all of the source's records form a single group.
+ *
+ * The running aggregates of every group are kept in an in-memory hash table,
+ * which may hold as many groups as fit in B - 2 pages. Once the table is full,
+ * the records of the groups that are not in it are hashed into B - 1
+ * partitions and spilled to temporary tables; the groups in the table keep
+ * aggregating. When the source is exhausted, the groups in the table are
+ * returned, and then every spilled partition is aggregated the same way (with
+ * a different hash function). Since every group in the table is finished by
+ * then, no group is ever returned twice.
+ *
+ * An aggregation can also be split in two phases (see Phase), so that every
+ * worker of a parallel plan aggregates its own records and only the states of
+ * its groups are gathered and merged.
+ */
+public class HashAggregateOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private List<String> groupByColumns;
+    private List<Integer> groupByColumnIndices;
+    private List<String> columns;
+    // The indices into groupByColumns of the columns to return.
+    private List<Integer> projectedGroupByColumns;
+    private List<Aggregate> aggregates;
+    // The index of the column of each aggregate, or -1 for COUNT(*).
+    private int[] aggregateColumnIndices;
+    private Type[] aggregateColumnTypes;
+    private Phase phase;
+    private int numBuffers;
+
+    /**
+     * The part of an aggregation an operator computes. A COMPLETE operator
+     * computes the aggregates of its source. A PARTIAL operator returns, for
+     * every group of its source, all of the group by columns followed by the
+     * state of each aggregate: the aggregate itself, except for AVG, whose
+     * state is the sum and the count of its values. A FINAL operator reads the
+     * output of any number of PARTIAL operators with the same group by columns
+     * and aggregates, merges the states of each group (summing sums and counts,
+     * and taking the min of mins and the max of maxes), and returns what a
+     * COMPLETE operator over all of their sources would have.
+     */
+    public enum Phase {
+        COMPLETE,
+        PARTIAL,
+        FINAL
+    }
+
+    /**
+     * An aggregate function, applied to a column (or, for COUNT, to every
+     * record). Its value is returned in a column named countAgg, sumAgg,
+     * averageAgg, minAgg, or maxAgg. If a query has several aggregates of the
+     * same function, their columns are named after the columns they
+     * aggregate, e.g. sumAgg(T.int) and sumAgg(T.float).
+     */
+    public static class Aggregate {
+        public enum Function {
+            COUNT,
+            SUM,
+            AVERAGE,
+            MIN,
+            MAX
+        }
+
+        private Function function;
+        private String columnName;
+
+        private Aggregate(Function function, String columnName) {
+            this.function = function;
+            this.columnName = columnName;
+        }
+
+        public static Aggregate count() {
+            return new Aggregate(Function.COUNT, null);
+        }
+
+        public static Aggregate sum(String columnName) {
+            return new Aggregate(Function.SUM, columnName);
+        }
+
+        public static Aggregate average(String columnName) {
+            return new Aggregate(Function.AVERAGE, columnName);
+        }
+
+        public static Aggregate min(String columnName) {
+            return new Aggregate(Function.MIN, columnName);
+        }
+
+        public static Aggregate max(String columnName) {
+            return new Aggregate(Function.MAX, columnName);
+        }
+
+        public Function getFunction() {
+            return this.function;
+        }
+
+        /** Returns the aggregated column, or null for COUNT(*). */
+        public String getColumnName() {
+            return this.columnName;
+        }
+
+        @Override
+        public String toString() {
+            return this.function + "(" + (this.columnName == null ? "*" : this.columnName) + ")";
+        }
+    }
+
+    /**
+     * Creates a new HashAggregateOperator that groups the records of source by
+     * groupByColumn and computes the aggregates of every group.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param groupByColumn the column to group on
+     * @param columns the columns to project, which may only be groupByColumn
+     * @param count whether to count the records of every group
+     * @param averageColumn the column to average, or null
+     * @param sumColumn the column to sum, or null
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public HashAggregateOperator(QueryOperator source,
+                                 Database.Transaction transaction,
+                                 String groupByColumn,
+                                 List<String> columns,
+                                 boolean count,
+                                 String averageColumn,
+                                 String sumColumn) throws QueryPlanException, DatabaseException {
+        this(source, transaction, Collections.singletonList(groupByColumn), columns,
+             toAggregates(count, averageColumn, sumColumn));
+    }
+
+    /**
+     * Creates a new HashAggregateOperator that groups the records of source by
+     * groupByColumns and computes aggregates of every group.
+     *
+     * @param source the source operator of this operator
+     * @param transaction the transaction containing this operator
+     * @param groupByColumns the columns to group on, which may be empty
+     * @param columns the columns to project, which must all be in groupByColumns
+     * @param aggregates the aggregates to compute
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public HashAggregateOperator(QueryOperator source,
+                                 Database.Transaction transaction,
+                                 List<String> groupByColumns,
+                                 List<String> columns,
+                                 List<Aggregate> aggregates) throws QueryPlanException, DatabaseException {
+        this(source, transaction, groupByColumns, columns, aggregates, Phase.COMPLETE,
+             transaction.getNumMemoryPages());
+    }
+
+    /**
+     * Like HashAggregateOperator(source, transaction, groupByColumns, columns,
+     * aggregates), but computes the given phase of the aggregation, and uses
+     * numBuffers pages of memory rather than all of the transaction's, e.g.
+     * because it runs alongside other aggregates in a parallel plan. A FINAL
+     * operator takes the same groupByColumns, columns and aggregates as the
+     * PARTIAL operators whose output it reads.
+     */
+    public HashAggregateOperator(QueryOperator source,
+                                 Database.Transaction transaction,
+                                 List<String> groupByColumns,
+                                 List<String> columns,
+                                 List<Aggregate> aggregates,
+                                 Phase phase,
+                                 int numBuffers) throws QueryPlanException, DatabaseException {
+        super(OperatorType.HASHAGGREGATE);
+        this.transaction = transaction;
+        this.groupByColumns = new ArrayList<>(groupByColumns);
+        this.columns = new ArrayList<>(columns);
+        this.aggregates = new ArrayList<>(aggregates);
+        this.phase = phase;
+        this.numBuffers = numBuffers;
+
+        this.setSource(source);
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    private static List<Aggregate> toAggregates(boolean count, String averageColumn,
+            String sumColumn) {
+        List<Aggregate> aggregates = new ArrayList<>();
+        if (count) {
+            aggregates.add(Aggregate.count());
+        }
+        if (sumColumn != null) {
+            aggregates.add(Aggregate.sum(sumColumn));
+        }
+        if (averageColumn != null) {
+            aggregates.add(Aggregate.average(averageColumn));
+        }
+        return aggregates;
+    }
+
+    protected Schema computeSchema() throws QueryPlanException {
+        Schema sourceSchema = this.getSource().getOutputSchema();
+        List<String> sourceColumnNames = sourceSchema.getFieldNames();
+        List<Type> sourceColumnTypes = sourceSchema.getFieldTypes();
+
+        this.groupByColumnIndices = new ArrayList<>();
+        for (int i = 0; i < this.groupByColumns.size(); i++) {
+            String column = this.checkSchemaForColumn(sourceSchema, this.groupByColumns.get(i));
+            this.groupByColumns.set(i, column);
+            this.groupByColumnIndices.add(sourceColumnNames.indexOf(column));
+        }
+
+        // Without any aggregates, the query returns the distinct values of
+        // the group by columns. A partial aggregate returns all of them, since
+        // the final one groups on them again.
+        List<String> columnNames = new ArrayList<>();
+        List<Type> columnTypes = new ArrayList<>();
+        this.projectedGroupByColumns = new ArrayList<>();
+        List<String> projected = this.phase == Phase.PARTIAL ||
+                                 (this.columns.isEmpty() && this.aggregates.isEmpty())
+                                 ? this.groupByColumns : this.columns;
+        for (String column : projected) {
+            int index = this.groupByColumns.indexOf(this.checkSchemaForColumn(sourceSchema, column));
+            if (index == -1) {
+                throw new QueryPlanException("Can only project columns specified in the GROUP BY clause.");
+            }
+            this.projectedGroupByColumns.add(index);
+            columnNames.add(this.groupByColumns.get(index));
+            columnTypes.add(sourceColumnTypes.get(this.groupByColumnIndices.get(index)));
+        }
+
+        Map<Aggregate.Function, Integer> numAggregates = new EnumMap<>(Aggregate.Function.class);
+        for (Aggregate aggregate : this.aggregates) {
+            numAggregates.merge(aggregate.function, 1, Integer::sum);
+        }
+        this.aggregateColumnIndices = new int[this.aggregates.size()];
+        this.aggregateColumnTypes = new Type[this.aggregates.size()];
+        // In a final aggregate, the index of the state of the next aggregate.
+        int stateIndex = this.groupByColumns.size();
+        for (int i = 0; i < this.aggregates.size(); i++) {
+            Aggregate aggregate = this.aggregates.get(i);
+            if (this.phase == Phase.FINAL) {
+                // The partial aggregate has already checked the aggregate, and
+                // named its state after it.
+                Type type = sourceColumnTypes.get(stateIndex);
+                this.aggregateColumnIndices[i] = stateIndex;
+                this.aggregateColumnTypes[i] = type;
+                columnNames.add(sourceColumnNames.get(stateIndex));
+                columnTypes.add(aggregate.function == Aggregate.Function.AVERAGE ? Type.floatType() : type);
+                stateIndex += aggregate.function == Aggregate.Function.AVERAGE ? 2 : 1;
+                continue;
+            }
+
+            String name = aggregate.function.name().toLowerCase() + "Agg";
+            if (aggregate.function == Aggregate.Function.COUNT) {
+                this.aggregateColumnIndices[i] = -1;
+                columnNames.add(name);
+                columnTypes.add(Type.intType());
+                continue;
+            }
+
+            String column = this.checkSchemaForColumn(sourceSchema, aggregate.columnName);
+            Type type = sourceColumnTypes.get(sourceColumnNames.indexOf(column));
+            this.aggregateColumnIndices[i] = sourceColumnNames.indexOf(column);
+            this.aggregateColumnTypes[i] = type;
+            columnNames.add(numAggregates.get(aggregate.function) > 1 ? name + "(" + column + ")" : name);
+            switch (aggregate.function) {
+            case SUM:
+            case AVERAGE:
+                if (type.getTypeId() != TypeId.INT && type.getTypeId() != TypeId.FLOAT) {
+                    throw new QueryPlanException("Cannot compute " + aggregate.function.name().toLowerCase() +
+                                                 " over a non-integer column: " + column + ".");
+                }
+                if (aggregate.function == Aggregate.Function.AVERAGE && this.phase == Phase.PARTIAL) {
+                    columnTypes.add(type);
+                    columnNames.add(columnNames.get(columnNames.size() - 1) + "Count");
+                    columnTypes.add(Type.intType());
+                } else {
+                    columnTypes.add(aggregate.function == Aggregate.Function.SUM ? type : Type.floatType());
+                }
+                break;
+            default:
+                columnTypes.add(type);
+            }
+        }
+        return new Schema(columnNames, columnTypes);
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new HashAggregateIterator();
+    }
+
+    public BatchIterator batchIterator() throws QueryPlanException, DatabaseException {
+        return new HashAggregateIterator();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               (this.phase == Phase.COMPLETE ? "" : "\nphase: " + this.phase) +
+               "\ncolumns: " + this.groupByColumns +
+               "\naggregates: " + this.aggregates;
+    }
+
+    public Phase getPhase() {
+        return this.phase;
+    }
+
+    /**
+     * Returns the number of groups the in-memory hash table can hold: the
+     * number of output records that fit in B - 2 pages.
+     */
+    private int getNumGroupsInMemory() {
+        return Math.max(1, this.numBuffers - 2) *
+               Table.computeNumRecordsPerPage(Page.pageSize, this.getOutputSchema());
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query operator.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        return this.getSource().getStats();
+    }
+
+    /**
+     * Reads the source once. The number of groups is estimated as the product
+     * of the number of distinct values of the group by columns, but no more
+     * than the number of records. If there are more groups than the hash table
+     * holds, the records of the groups that don't fit are written to
+     * partitions and read back once.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        TableStats sourceStats = this.getSource().getStats();
+        int cost = this.getSource().getIOCost();
+
+        List<Histogram> histograms = sourceStats.getHistograms();
+        long numGroups = 1;
+        for (int index : this.groupByColumnIndices) {
+            numGroups *= index < histograms.size() ? histograms.get(index).getNumDistinct() : 0;
+            numGroups = Math.min(numGroups, sourceStats.getNumRecords());
+        }
+        int numGroupsInMemory = this.getNumGroupsInMemory();
+        if (numGroups > numGroupsInMemory) {
+            double spilledFraction = 1 - (double) numGroupsInMemory / numGroups;
+            cost += 2 * (int) Math.ceil(spilledFraction * sourceStats.getNumPages());
+        }
+        return cost;
+    }
+
+    /**
+     * The running value of an aggregate of a group.
+     */
+    private interface Accumulator {
+        /** Adds value (which is null for COUNT(*)) to the aggregate. */
+        void add(DataBox value);
+
+        /**
+         * Merges the state of a partial aggregate, which starts at
+         * values.get(index), into the aggregate.
+         */
+        void merge(List<DataBox> values, int index);
+
+        DataBox getResult();
+
+        /** Appends the state of the aggregate to values. */
+        default void addState(List<DataBox> values) {
+            values.add(this.getResult());
+        }
+    }
+
+    private static class CountAccumulator implements Accumulator {
+        private int count = 0;
+
+        public void add(DataBox value) {
+            this.count++;
+        }
+
+        public void merge(List<DataBox> values, int index) {
+            this.count += values.get(index).getInt();
+        }
+
+        public DataBox getResult() {
+            return new IntDataBox(this.count);
+        }
+    }
+
+    private static class IntSumAccumulator implements Accumulator {
+        private int sum = 0;
+
+        public void add(DataBox value) {
+            this.sum += value.getInt();
+        }
+
+        public void merge(List<DataBox> values, int index) {
+            this.add(values.get(index));
+        }
+
+        public DataBox getResult() {
+            return new IntDataBox(this.sum);
+        }
+    }
+
+    private static class FloatSumAccumulator implements Accumulator {
+        private double sum = 0;
+
+        public void add(DataBox value) {
+            this.sum += value.getFloat();
+        }
+
+        public void merge(List<DataBox> values, int index) {
+            this.add(values.get(index));
+        }
+
+        public DataBox getResult() {
+            return new FloatDataBox((float) this.sum);
+        }
+    }
+
+    private static class AverageAccumulator implements Accumulator {
+        private boolean isFloat;
+        private double sum = 0;
+        private int count = 0;
+
+        AverageAccumulator(boolean isFloat) {
+            this.isFloat = isFloat;
+        }
+
+        public void add(DataBox value) {
+            this.sum += this.isFloat ? value.getFloat() : value.getInt();
+            this.count++;
+        }
+
+        public void merge(List<DataBox> values, int index) {
+            DataBox sum = values.get(index);
+            this.sum += this.isFloat ? sum.getFloat() : sum.getInt();
+            this.count += values.get(index + 1).getInt();
+        }
+
+        public DataBox getResult() {
+            return new FloatDataBox((float) (this.sum / this.count));
+        }
+
+        /** The state of an average is the sum and the count of its values. */
+        public void addState(List<DataBox> values) {
+            values.add(this.isFloat ? new FloatDataBox((float) this.sum) : new IntDataBox((int) this.sum));
+            values.add(new IntDataBox(this.count));
+        }
+    }
+
+    private static class MinMaxAccumulator implements Accumulator {
+        // 1 to keep the largest value, -1 to keep the smallest.
+        private int sign;
+        private DataBox result = null;
+
+        MinMaxAccumulator(int sign) {
+            this.sign = sign;
+        }
+
+        public void add(DataBox value) {
+            if (this.result == null || this.sign * value.compareTo(this.result) > 0) {
+                this.result = value;
+            }
+        }
+
+        public void merge(List<DataBox> values, int index) {
+            this.add(values.get(index));
+        }
+
+        public DataBox getResult() {
+            return this.result;
+        }
+    }
+
+    /**
+     * Returns new accumulators for the aggregates of a group.
+     */
+    private Accumulator[] newAccumulators() {
+        Accumulator[] accumulators = new Accumulator[this.aggregates.size()];
+        for (int i = 0; i < accumulators.length; i++) {
+            Type type = this.aggregateColumnTypes[i];
+            switch (this.aggregates.get(i).function) {
+            case COUNT:
+                accumulators[i] = new CountAccumulator();
+                break;
+            case SUM:
+                accumulators[i] = type.getTypeId() == TypeId.INT
+                                  ? new IntSumAccumulator() : new FloatSumAccumulator();
+                break;
+            case AVERAGE:
+                accumulators[i] = new AverageAccumulator(type.getTypeId() == TypeId.FLOAT);
+                break;
+            case MIN:
+                accumulators[i] = new MinMaxAccumulator(-1);
+                break;
+            case MAX:
+                accumulators[i] = new MinMaxAccumulator(1);
+                break;
+            }
+        }
+        return accumulators;
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     * It reads its source a batch at a time, and can also return the groups in batches.
+     */
+    private class HashAggregateIterator implements Iterator<Record>, BatchIterator {
+        private Schema sourceSchema;
+        // The spilled partitions left to aggregate, with the number of times
+        // their records have been partitioned.
+        private Deque<Pair<SpillPartition, Integer>> partitions = new ArrayDeque<>();
+        // The finished groups that have not been returned yet.
+        private Iterator<Map.Entry<List<DataBox>, Accumulator[]>> groupIterator;
+        private RecordBatch batch = new RecordBatch();
+
+        public HashAggregateIterator() throws QueryPlanException, DatabaseException {
+            this.sourceSchema = HashAggregateOperator.this.getSource().getOutputSchema();
+            this.aggregate(HashAggregateOperator.this.getSource().batchIterator(), 0);
+        }
+
+        /**
+         * Aggregates records into the hash table, spilling the records of the
+         * groups that don't fit into partitions hashed with the hash function
+         * of pass `pass`.
+         */
+        private void aggregate(BatchIterator records, int pass) throws DatabaseException {
+            int numGroupsInMemory = HashAggregateOperator.this.getNumGroupsInMemory();
+            int numPartitions = Math.max(2, numBuffers - 1);
+            Map<List<DataBox>, Accumulator[]> groups = new HashMap<>();
+            SpillPartition[] spilled = new SpillPartition[numPartitions];
+
+            RecordBatch batch;
+            while ((batch = records.nextBatch()) != null) {
+                for (int r = 0; r < batch.size(); r++) {
+                    Record record = batch.get(r);
+                    List<DataBox> values = record.getValues();
+                    List<DataBox> group = new ArrayList<>(groupByColumnIndices.size());
+                    for (int index : groupByColumnIndices) {
+                        group.add(values.get(index));
+                    }
+                    Accumulator[] accumulators = groups.get(group);
+                    if (accumulators == null) {
+                        if (groups.size() >= numGroupsInMemory) {
+                            int partition = Math.floorMod(GraceHashJoinOperator.hash(group, pass),
+                                                          numPartitions);
+                            if (spilled[partition] == null) {
+                                spilled[partition] = new SpillPartition(transaction, this.sourceSchema);
+                            }
+                            spilled[partition].addRecord(record);
+                            continue;
+                        }
+                        accumulators = HashAggregateOperator.this.newAccumulators();
+                        groups.put(group, accumulators);
+                    }
+                    for (int i = 0; i < accumulators.length; i++) {
+                        int index = aggregateColumnIndices[i];
+                        if (phase == Phase.FINAL) {
+                            accumulators[i].merge(values, index);
+                        } else {
+                            accumulators[i].add(index == -1 ? null : values.get(index));
+                        }
+                    }
+                }
+            }
+
+            for (SpillPartition partition : spilled) {
+                if (partition != null) {
+                    this.partitions.push(new Pair<>(partition, pass + 1));
+                }
+            }
+            this.groupIterator = groups.entrySet().iterator();
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            while (!this.groupIterator.hasNext() && !this.partitions.isEmpty()) {
+                Pair<SpillPartition, Integer> partition = this.partitions.pop();
+                try {
+                    this.aggregate(BatchIterator.fromRecords(partition.getFirst().iterator(),
+                                   RecordBatch.DEFAULT_SIZE), partition.getSecond());
+                } catch (DatabaseException e) {
+                    throw new IllegalStateException(e);
+                }
+                partition.getFirst().delete();
+            }
+            return this.groupIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.nextGroup();
+        }
+
+        public RecordBatch nextBatch() {
+            if (!this.hasNext()) {
+                return null;
+            }
+            // Only the groups of one hash table go in a batch; the next
+            // partition is aggregated by the next call.
+            this.batch.clear();
+            while (!this.batch.isFull() && this.groupIterator.hasNext()) {
+                this.batch.add(this.nextGroup());
+            }
+            return this.batch;
+        }
+
+        /**
+         * Returns the record of the next group of the hash table.
+         */
+        private Record nextGroup() {
+            Map.Entry<List<DataBox>, Accumulator[]> group = this.groupIterator.next();
+            List<DataBox> values = new ArrayList<>();
+            for (int index : projectedGroupByColumns) {
+                values.add(group.getKey().get(index));
+            }
+            for (Accumulator accumulator : group.getValue()) {
+                if (phase == Phase.PARTIAL) {
+                    accumulator.addState(values);
+                } else {
+                    values.add(accumulator.getResult());
+                }
+            }
+            return new Record(values);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
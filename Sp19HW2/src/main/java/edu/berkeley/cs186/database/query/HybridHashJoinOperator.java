@@ -0,0 +1,453 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+
+/**
+ * Hybrid hash join. The input that is expected to be smaller (the build side)
+ * is hashed on its join column into B - 1 partitions, and every partition
+ * starts out as an in-memory hash table. Whenever the records in memory no
+ * longer fit in the B - 2 pages left after reserving pages for the input and
+ * the output, the largest partition in memory is spilled to a temporary
+ * table, and the rest of its records are written there too. Each spilled
+ * partition takes a page of memory as its output buffer.
+ *
+ * The other input (the probe side) is then read once. A probe record whose
+ * partition is in memory is joined right away, and the others are written to
+ * a temporary table of their own. Finally, each pair of spilled partitions is
+ * joined the same way, hashing with a different hash function.
+ *
+ * So when the build side fits in memory, the join reads both inputs once and
+ * writes nothing, and when it is much larger than memory, every partition is
+ * spilled and the join behaves like a GraceHashJoinOperator. A pair of spilled
+ * partitions that hashing doesn't split (e.g. because all of its records have
+ * the same join value) is instead joined B - 2 pages of build records at a
+ * time, reading the probe partition once per load.
+ */
+public class HybridHashJoinOperator extends JoinOperator {
+    private int numBuffers;
+    // Whether the left source is the build side.
+    private boolean buildLeft;
+
+    public HybridHashJoinOperator(QueryOperator leftSource,
+                                  QueryOperator rightSource,
+                                  String leftColumnName,
+                                  String rightColumnName,
+                                  Database.Transaction transaction) throws QueryPlanException, DatabaseException {
+        this(leftSource, rightSource, leftColumnName, rightColumnName, transaction,
+             transaction.getNumMemoryPages());
+    }
+
+    /**
+     * Creates a HybridHashJoinOperator that uses numBuffers pages of memory
+     * rather than all of the transaction's, e.g. because it runs alongside
+     * other joins in a parallel plan.
+     */
+    public HybridHashJoinOperator(QueryOperator leftSource,
+                                  QueryOperator rightSource,
+                                  String leftColumnName,
+                                  String rightColumnName,
+                                  Database.Transaction transaction,
+                                  int numBuffers) throws QueryPlanException, DatabaseException {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction,
+              JoinType.HYBRIDHASH);
+
+        this.numBuffers = numBuffers;
+        this.buildLeft = leftSource.getStats().getNumPages() < rightSource.getStats().getNumPages();
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new HybridHashJoinIterator();
+    }
+
+    public BatchIterator batchIterator() throws QueryPlanException, DatabaseException {
+        return new HybridHashJoinIterator();
+    }
+
+    /**
+     * Reads both inputs once, plus the IOs of the spilled partitions. With
+     * P = B - 1 partitions of the build side's pages, s of them must be spilled
+     * for the remaining P - s to fit in the B - 2 - s pages that are left.
+     * Spilled partitions make up a fraction s / P of both inputs, which is
+     * written out and read back once per partitioning pass (as in
+     * GraceHashJoinOperator) before the last pass joins it in memory.
+     */
+    public int estimateIOCost() {
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numRightPages = getRightSource().getStats().getNumPages();
+        int numBuildPages = this.buildLeft ? numLeftPages : numRightPages;
+        int numPartitions = numBuffers - 1;
+
+        int numSpilled = 0;
+        while (numSpilled < numPartitions &&
+                (double) (numPartitions - numSpilled) * numBuildPages / numPartitions >
+                numBuffers - 2 - numSpilled) {
+            numSpilled++;
+        }
+        if (numSpilled == 0) {
+            return numLeftPages + numRightPages;
+        }
+
+        int numPasses = 1;
+        double partitionPages = (double) numBuildPages / numPartitions;
+        while (partitionPages > numBuffers - 2) {
+            partitionPages /= numPartitions;
+            numPasses++;
+        }
+        double spilledFraction = (double) numSpilled / numPartitions;
+        return (int) Math.ceil((numLeftPages + numRightPages) *
+                               (1 + 2 * numPasses * spilledFraction));
+    }
+
+    private QueryOperator getBuildSource() {
+        return this.buildLeft ? getLeftSource() : getRightSource();
+    }
+
+    private QueryOperator getProbeSource() {
+        return this.buildLeft ? getRightSource() : getLeftSource();
+    }
+
+    private int getBuildColumnIndex() {
+        return this.buildLeft ? getLeftColumnIndex() : getRightColumnIndex();
+    }
+
+    private int getProbeColumnIndex() {
+        return this.buildLeft ? getRightColumnIndex() : getLeftColumnIndex();
+    }
+
+    /**
+     * A join of a build input and a probe input: either the sources of this
+     * operator, or a pair of spilled partitions.
+     */
+    private class Task {
+        // The partitions to join, or null to join the sources.
+        private SpillPartition build;
+        private SpillPartition probe;
+        // The number of times the records have been partitioned.
+        private int pass;
+        // Whether to join the build input B - 2 pages at a time rather than
+        // partitioning it.
+        private boolean chunked;
+
+        Task(SpillPartition build, SpillPartition probe, int pass, boolean chunked) {
+            this.build = build;
+            this.probe = probe;
+            this.pass = pass;
+            this.chunked = chunked;
+        }
+
+        BatchIterator buildBatches() throws QueryPlanException, DatabaseException {
+            if (this.build == null) {
+                return getBuildSource().batchIterator();
+            }
+            return BatchIterator.fromRecords(this.build.iterator(), RecordBatch.DEFAULT_SIZE);
+        }
+
+        BatchIterator probeBatches() throws QueryPlanException, DatabaseException {
+            if (this.probe == null) {
+                return getProbeSource().batchIterator();
+            }
+            return BatchIterator.fromRecords(this.probe.iterator(), RecordBatch.DEFAULT_SIZE);
+        }
+
+        void delete() {
+            if (this.build != null) {
+                this.build.delete();
+                this.probe.delete();
+            }
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     * The sources are not materialized, so this iterator does not extend JoinIterator.
+     * It reads both inputs a batch at a time, and can also return the joined records in batches.
+     */
+    private class HybridHashJoinIterator implements Iterator<Record>, BatchIterator {
+        private Schema buildSchema;
+        private Schema probeSchema;
+        private Type keyType;
+        private int numRecordsPerPage;
+
+        // The tasks left, and the task being joined.
+        private Deque<Task> tasks = new ArrayDeque<>();
+        private Task task = null;
+        private int numBuildRecords;
+
+        // For each partition of the task's build input, its hash table if it
+        // is in memory, or its build and probe partitions if it was spilled.
+        private JoinHashTable[] tables;
+        private SpillPartition[] buildPartitions;
+        private SpillPartition[] probePartitions;
+
+        // For a chunked task, the build records that have not been loaded yet
+        // and the hash table of those that are loaded.
+        private Iterator<Record> buildIterator;
+        private JoinHashTable chunkTable;
+
+        // The probe input, its batch being joined and the index of the probe
+        // record being joined, and the next entry of matchTable that the probe
+        // record matches (or -1).
+        private BatchIterator probeBatches = () -> null;
+        private RecordBatch probeBatch = null;
+        private int probeIndex = 0;
+        private Record probeRecord = null;
+        private JoinHashTable matchTable = null;
+        private int matchEntry = -1;
+
+        private Record nextRecord = null;
+        private RecordBatch batch = new RecordBatch();
+
+        public HybridHashJoinIterator() throws QueryPlanException, DatabaseException {
+            this.buildSchema = getBuildSource().getOutputSchema();
+            this.probeSchema = getProbeSource().getOutputSchema();
+            this.keyType = this.buildSchema.getFieldTypes().get(getBuildColumnIndex());
+            this.numRecordsPerPage = Table.computeNumRecordsPerPage(Page.pageSize, this.buildSchema);
+            this.tasks.push(new Task(null, null, 0, false));
+        }
+
+        private void startTask(Task task) throws QueryPlanException, DatabaseException {
+            this.task = task;
+            this.probeRecord = null;
+            this.matchEntry = -1;
+            if (task.chunked) {
+                this.buildIterator = BatchIterator.toRecords(task.buildBatches());
+                this.loadChunk();
+                return;
+            }
+            this.build();
+            this.startProbe();
+        }
+
+        /**
+         * Hashes the task's build input into partitions, spilling the largest
+         * partition in memory whenever memory runs out.
+         */
+        private void build() throws QueryPlanException, DatabaseException {
+            int numPartitions = numBuffers - 1;
+            this.tables = new JoinHashTable[numPartitions];
+            this.buildPartitions = new SpillPartition[numPartitions];
+            this.probePartitions = new SpillPartition[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                this.tables[i] = new JoinHashTable(this.keyType);
+            }
+
+            this.numBuildRecords = 0;
+            int numResident = 0;
+            int numSpilled = 0;
+            int columnIndex = getBuildColumnIndex();
+            BatchIterator batches = this.task.buildBatches();
+            RecordBatch batch;
+            while ((batch = batches.nextBatch()) != null) {
+                for (int r = 0; r < batch.size(); r++) {
+                    Record record = batch.get(r);
+                    DataBox value = record.getValues().get(columnIndex);
+                    int partition = Math.floorMod(GraceHashJoinOperator.hash(value, this.task.pass),
+                                                  numPartitions);
+                    this.numBuildRecords++;
+                    if (this.tables[partition] == null) {
+                        this.buildPartitions[partition].addRecord(record);
+                        continue;
+                    }
+                    this.tables[partition].add(value, record);
+                    numResident++;
+
+                    while (numResident > 0 &&
+                            numResident > (numBuffers - 2 - numSpilled) * this.numRecordsPerPage) {
+                        int largest = -1;
+                        for (int i = 0; i < numPartitions; i++) {
+                            if (this.tables[i] != null &&
+                                    (largest == -1 || this.tables[i].size() > this.tables[largest].size())) {
+                                largest = i;
+                            }
+                        }
+                        JoinHashTable table = this.tables[largest];
+                        this.buildPartitions[largest] = new SpillPartition(getTransaction(), this.buildSchema);
+                        for (int entry = 0; entry < table.size(); entry++) {
+                            this.buildPartitions[largest].addRecord(table.getRecord(entry));
+                        }
+                        numResident -= table.size();
+                        this.tables[largest] = null;
+                        numSpilled++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Loads the next B - 2 pages of the chunked task's build input into
+         * memory, and restarts the scan of its probe input. Returns false if
+         * every build record has already been loaded.
+         */
+        private boolean loadChunk() throws QueryPlanException, DatabaseException {
+            this.chunkTable = new JoinHashTable(this.keyType);
+            int maxRecords = Math.max(1, numBuffers - 2) * this.numRecordsPerPage;
+            while (this.chunkTable.size() < maxRecords && this.buildIterator.hasNext()) {
+                Record record = this.buildIterator.next();
+                this.chunkTable.add(record.getValues().get(getBuildColumnIndex()), record);
+            }
+            if (this.chunkTable.size() == 0) {
+                this.probeBatches = () -> null;
+                this.probeBatch = null;
+                return false;
+            }
+            this.startProbe();
+            return true;
+        }
+
+        /**
+         * Starts (or restarts) the scan of the task's probe input.
+         */
+        private void startProbe() throws QueryPlanException, DatabaseException {
+            this.probeBatches = this.task.probeBatches();
+            this.probeBatch = null;
+            this.probeIndex = 0;
+        }
+
+        /**
+         * Returns the next record of the probe input, or null if there are
+         * none left.
+         */
+        private Record nextProbeRecord() {
+            while (this.probeBatch == null || this.probeIndex == this.probeBatch.size()) {
+                this.probeBatch = this.probeBatches.nextBatch();
+                this.probeIndex = 0;
+                if (this.probeBatch == null) {
+                    this.probeBatches = () -> null;
+                    return null;
+                }
+            }
+            return this.probeBatch.get(this.probeIndex++);
+        }
+
+        /**
+         * Queues the pairs of spilled partitions of the task that can have
+         * matches, and deletes the task's own partitions.
+         */
+        private void finishTask() throws DatabaseException {
+            if (!this.task.chunked) {
+                for (int i = 0; i < this.buildPartitions.length; i++) {
+                    SpillPartition build = this.buildPartitions[i];
+                    if (build == null) {
+                        continue;
+                    }
+                    SpillPartition probe = this.probePartitions[i];
+                    if (probe == null) {
+                        build.delete();
+                        continue;
+                    }
+                    // Partitioning again only helps if the last pass split
+                    // the records.
+                    boolean split = this.task.pass == 0 || build.getNumRecords() < this.numBuildRecords;
+                    this.tasks.push(new Task(build, probe, this.task.pass + 1, !split));
+                }
+                this.tables = null;
+                this.buildPartitions = null;
+                this.probePartitions = null;
+            }
+            this.task.delete();
+            this.task = null;
+        }
+
+        private Record fetchNextRecord() throws QueryPlanException, DatabaseException {
+            while (true) {
+                if (this.matchEntry != -1) {
+                    Record match = this.matchTable.getRecord(this.matchEntry);
+                    this.matchEntry = this.matchTable.nextMatch(this.matchEntry);
+                    List<DataBox> values = new ArrayList<>();
+                    values.addAll((buildLeft ? match : this.probeRecord).getValues());
+                    values.addAll((buildLeft ? this.probeRecord : match).getValues());
+                    return new Record(values);
+                }
+                this.probeRecord = this.nextProbeRecord();
+                if (this.probeRecord != null) {
+                    DataBox value = this.probeRecord.getValues().get(getProbeColumnIndex());
+                    if (this.task.chunked) {
+                        this.matchTable = this.chunkTable;
+                    } else {
+                        int partition = Math.floorMod(GraceHashJoinOperator.hash(value, this.task.pass),
+                                                      this.tables.length);
+                        this.matchTable = this.tables[partition];
+                        if (this.matchTable == null) {
+                            if (this.probePartitions[partition] == null) {
+                                this.probePartitions[partition] = new SpillPartition(getTransaction(),
+                                        this.probeSchema);
+                            }
+                            this.probePartitions[partition].addRecord(this.probeRecord);
+                            continue;
+                        }
+                    }
+                    this.matchEntry = this.matchTable.find(value);
+                    continue;
+                }
+                if (this.task != null) {
+                    if (this.task.chunked && this.loadChunk()) {
+                        continue;
+                    }
+                    this.finishTask();
+                }
+                if (this.tasks.isEmpty()) {
+                    return null;
+                }
+                this.startTask(this.tasks.pop());
+            }
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextRecord == null) {
+                try {
+                    this.nextRecord = this.fetchNextRecord();
+                } catch (QueryPlanException | DatabaseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return this.nextRecord != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record nextRecord = this.nextRecord;
+            this.nextRecord = null;
+            return nextRecord;
+        }
+
+        public RecordBatch nextBatch() {
+            if (!this.hasNext()) {
+                return null;
+            }
+            this.batch.clear();
+            while (!this.batch.isFull() && this.hasNext()) {
+                this.batch.add(this.next());
+            }
+            return this.batch;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
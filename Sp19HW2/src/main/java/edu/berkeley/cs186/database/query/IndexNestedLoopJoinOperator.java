@@ -0,0 +1,213 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+/**
+ * An index nested loop join. The right source must be a sequential scan over
+ * a table with an index (a B+ tree or a hash index) on the right column. For
+ * every left record, the join looks up the records of the right table whose
+ * right column equals the left record's join value, so the right table is
+ * never scanned.
+ *
+ * Rather than probing the index once per left record, the join reads the left
+ * source in blocks of B - 2 pages and probes the index for all the join
+ * values of a block at once (see Database.Transaction.lookupKeys). A B+ tree
+ * answers such a batch with a single descent and a walk along its leaves, so
+ * a block of keys that are close together costs about as much as one probe.
+ */
+public class IndexNestedLoopJoinOperator extends JoinOperator {
+    private String rightTableName;
+    private int numBuffers;
+
+    public IndexNestedLoopJoinOperator(QueryOperator leftSource,
+                                       QueryOperator rightSource,
+                                       String leftColumnName,
+                                       String rightColumnName,
+                                       Database.Transaction transaction) throws QueryPlanException,
+        DatabaseException {
+        super(leftSource,
+              rightSource,
+              leftColumnName,
+              rightColumnName,
+              transaction,
+              JoinType.INDEXNL);
+
+        if (!isEligible(rightSource, rightColumnName, transaction)) {
+            throw new QueryPlanException("An index nested loop join needs an index on " +
+                                         rightColumnName + ".");
+        }
+        this.rightTableName = ((SequentialScanOperator) rightSource).getTableName();
+        this.numBuffers = transaction.getNumMemoryPages();
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    /**
+     * Returns whether an index nested loop join can look up the records of
+     * rightSource by rightColumnName, i.e. whether rightSource is a sequential
+     * scan over a table with an index on rightColumnName.
+     */
+    public static boolean isEligible(QueryOperator rightSource, String rightColumnName,
+                                     Database.Transaction transaction) {
+        if (!rightSource.isSequentialScan()) {
+            return false;
+        }
+        String tableName = ((SequentialScanOperator) rightSource).getTableName();
+        return transaction.indexExists(tableName, rightColumnName) ||
+               transaction.hashIndexExists(tableName, rightColumnName);
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new IndexNestedLoopJoinIterator();
+    }
+
+    /**
+     * Reads the left source once. A B+ tree index is read at most once per
+     * block of B - 2 left pages (and never more than once per left record); a
+     * hash index is read once per left record. Every matching right record
+     * then takes one IO, since the index is unclustered.
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        TableStats leftStats = getLeftSource().getStats();
+        int numLeftPages = leftStats.getNumPages();
+        int numLeftRecords = leftStats.getNumRecords();
+        int numOutputRecords = this.stats.getNumRecords();
+
+        Database.Transaction transaction = getTransaction();
+        try {
+            if (transaction.hashIndexExists(this.rightTableName, getRightColumnName())) {
+                double bucketLength = transaction.getHashIndexBucketLength(this.rightTableName,
+                                      getRightColumnName());
+                return (int) (numLeftPages + numLeftRecords * Math.ceil(bucketLength) +
+                              numOutputRecords);
+            }
+            int numIndexPages = transaction.getNumIndexPages(this.rightTableName,
+                                getRightColumnName());
+            int numBlocks = (int) Math.ceil((double) numLeftPages / (this.numBuffers - 2));
+            return numLeftPages + Math.min(numLeftRecords, numBlocks * numIndexPages) +
+                   numOutputRecords;
+        } catch (DatabaseException e) {
+            throw new QueryPlanException(e);
+        }
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     * The right source is not materialized, so this iterator does not extend JoinIterator.
+     */
+    private class IndexNestedLoopJoinIterator implements Iterator<Record> {
+        private Iterator<Record> leftIterator;
+        // The number of left records read per block.
+        private int blockSize;
+
+        // The current block of left records and the record ids of the right
+        // records that match each of them.
+        private List<Record> leftRecords = new ArrayList<>();
+        private List<List<RecordId>> matches = new ArrayList<>();
+        // The right records of the current block, so that a right record that
+        // matches several left records is only fetched once.
+        private Map<RecordId, Record> rightRecords = new HashMap<>();
+        private int leftIndex;
+        private int matchIndex;
+
+        private Record nextRecord;
+
+        public IndexNestedLoopJoinIterator() throws QueryPlanException, DatabaseException {
+            this.leftIterator = getLeftSource().iterator();
+
+            TableStats leftStats = getLeftSource().getStats();
+            int recordsPerPage = leftStats.getNumPages() == 0 ? 1 :
+                                 (int) Math.ceil((double) leftStats.getNumRecords() / leftStats.getNumPages());
+            this.blockSize = Math.max(1, (numBuffers - 2) * Math.max(1, recordsPerPage));
+        }
+
+        /**
+         * Reads the next block of left records and looks up their matches.
+         * Returns false if there are no more left records.
+         */
+        private boolean fetchNextBlock() throws DatabaseException {
+            this.leftRecords.clear();
+            this.rightRecords.clear();
+            this.leftIndex = 0;
+            this.matchIndex = 0;
+
+            List<DataBox> keys = new ArrayList<>();
+            while (this.leftIterator.hasNext() && this.leftRecords.size() < this.blockSize) {
+                Record leftRecord = this.leftIterator.next();
+                this.leftRecords.add(leftRecord);
+                keys.add(leftRecord.getValues().get(getLeftColumnIndex()));
+            }
+            if (this.leftRecords.isEmpty()) {
+                return false;
+            }
+            this.matches = getTransaction().lookupKeys(rightTableName, getRightColumnName(), keys);
+            return true;
+        }
+
+        private Record fetchNextRecord() throws DatabaseException {
+            while (true) {
+                if (this.leftIndex >= this.leftRecords.size() && !this.fetchNextBlock()) {
+                    return null;
+                }
+                List<RecordId> rids = this.matches.get(this.leftIndex);
+                if (this.matchIndex >= rids.size()) {
+                    this.leftIndex++;
+                    this.matchIndex = 0;
+                    continue;
+                }
+                RecordId rid = rids.get(this.matchIndex++);
+                Record rightRecord = this.rightRecords.get(rid);
+                if (rightRecord == null) {
+                    rightRecord = IndexNestedLoopJoinOperator.this.getRecord(rightTableName, rid);
+                    this.rightRecords.put(rid, rightRecord);
+                }
+                List<DataBox> values = new ArrayList<>(this.leftRecords.get(this.leftIndex).getValues());
+                values.addAll(rightRecord.getValues());
+                return new Record(values);
+            }
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            if (this.nextRecord == null) {
+                try {
+                    this.nextRecord = this.fetchNextRecord();
+                } catch (DatabaseException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return this.nextRecord != null;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record nextRecord = this.nextRecord;
+            this.nextRecord = null;
+            return nextRecord;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * An index-only scan answers a scan of a range of keys of a covering index
+ * (see Database.Transaction.createIndex) from the index alone. Unlike an
+ * IndexScanOperator, it never fetches the records of the table: its records
+ * hold only the indexed column followed by the index's included columns,
+ * which are read straight from the leaves of the index.
+ */
+public class IndexOnlyScanOperator extends QueryOperator {
+    private Database.Transaction transaction;
+    private String tableName;
+    private String columnName;
+
+    // The range of keys scanned. An empty bound leaves the range unbounded on
+    // that side.
+    private Optional<DataBox> lo;
+    private boolean loInclusive;
+    private Optional<DataBox> hi;
+    private boolean hiInclusive;
+
+    // The indices in the table's schema of the indexed column followed by the
+    // included columns, i.e. of the columns of our output schema.
+    private List<Integer> columnIndices;
+
+    /**
+     * An index-only scan operator over the records whose column `columnName`
+     * lies between `lo` and `hi`. Either bound may be empty.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @param lo the lower bound of the range, if any
+     * @param loInclusive whether the range includes lo
+     * @param hi the upper bound of the range, if any
+     * @param hiInclusive whether the range includes hi
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexOnlyScanOperator(Database.Transaction transaction,
+                                 String tableName,
+                                 String columnName,
+                                 Optional<DataBox> lo,
+                                 boolean loInclusive,
+                                 Optional<DataBox> hi,
+                                 boolean hiInclusive) throws QueryPlanException, DatabaseException {
+        super(OperatorType.INDEXONLYSCAN);
+        this.tableName = tableName;
+        this.transaction = transaction;
+        this.columnName = columnName;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+
+        Schema tableSchema = transaction.getFullyQualifiedSchema(tableName);
+        this.columnIndices = new ArrayList<>();
+        this.columnIndices.add(tableSchema.getFieldNames().indexOf(
+                                   this.checkSchemaForColumn(tableSchema, columnName)));
+        for (String included : transaction.getIndexIncludedColumns(tableName, columnName)) {
+            this.columnIndices.add(tableSchema.getFieldNames().indexOf(
+                                       this.checkSchemaForColumn(tableSchema, included)));
+        }
+
+        this.setOutputSchema(this.computeSchema());
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    public String str() {
+        return "type: " + this.getType() +
+               "\ntable: " + this.tableName +
+               "\ncolumn: " + this.columnName +
+               "\nrange: " + (this.loInclusive ? "[" : "(") +
+               this.lo.map(DataBox::toString).orElse("") + ", " +
+               this.hi.map(DataBox::toString).orElse("") + (this.hiInclusive ? "]" : ")");
+    }
+
+    /**
+     * Returns the column name that the index scan is on
+     *
+     * @return columnName
+     */
+    public String getColumnName() {
+        return this.columnName;
+    }
+
+    /**
+     * Estimates the table statistics for the result of executing this query
+     * operator: the statistics of the table filtered to the range, keeping
+     * only the columns stored in the index.
+     *
+     * @return estimated TableStats
+     */
+    public TableStats estimateStats() throws QueryPlanException {
+        TableStats stats = this.tableStats();
+        int keyIndex = this.columnIndices.get(0);
+        if (this.lo.isPresent()) {
+            stats = stats.copyWithPredicate(keyIndex,
+                                            this.loInclusive
+                                            ? QueryPlan.PredicateOperator.GREATER_THAN_EQUALS
+                                            : QueryPlan.PredicateOperator.GREATER_THAN,
+                                            this.lo.get());
+        }
+        if (this.hi.isPresent()) {
+            stats = stats.copyWithPredicate(keyIndex,
+                                            this.hiInclusive
+                                            ? QueryPlan.PredicateOperator.LESS_THAN_EQUALS
+                                            : QueryPlan.PredicateOperator.LESS_THAN,
+                                            this.hi.get());
+        }
+        return stats.copyWithProjection(this.getOutputSchema(), this.columnIndices);
+    }
+
+    /**
+     * Estimates the IO cost of executing this query operator. An index-only
+     * scan reads one page per level on the way down to the first leaf in the
+     * range (which we approximate as a single IO, since the inner nodes of an
+     * index are few and usually cached), followed by the fraction of the
+     * index's pages that hold keys in the range. Unlike an IndexScanOperator,
+     * it performs no IOs per matching record.
+     *
+     * @return estimate IO cost
+     * @throws QueryPlanException
+     */
+    public int estimateIOCost() throws QueryPlanException {
+        long numIndexPages;
+        long numRecords;
+        try {
+            numIndexPages = this.transaction.getNumIndexPages(this.tableName, this.columnName);
+            numRecords = this.transaction.getNumRecords(this.tableName);
+        } catch (DatabaseException err) {
+            throw new QueryPlanException(err);
+        }
+
+        double selectivity = numRecords == 0 ? 0 : (double) this.stats.getNumRecords() / numRecords;
+        return (int) Math.ceil(Math.min(selectivity, 1.0) * numIndexPages) + 1;
+    }
+
+    private TableStats tableStats() throws QueryPlanException {
+        try {
+            return this.transaction.getStats(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    public Iterator<Record> iterator() throws QueryPlanException, DatabaseException {
+        return new IndexOnlyScanIterator();
+    }
+
+    public Schema computeSchema() throws QueryPlanException {
+        Schema tableSchema;
+        try {
+            tableSchema = this.transaction.getFullyQualifiedSchema(this.tableName);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+        List<String> names = new ArrayList<>();
+        List<Type> types = new ArrayList<>();
+        for (int i : this.columnIndices) {
+            names.add(tableSchema.getFieldNames().get(i));
+            types.add(tableSchema.getFieldTypes().get(i));
+        }
+        return new Schema(names, types);
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class IndexOnlyScanIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+
+        public IndexOnlyScanIterator() throws QueryPlanException, DatabaseException {
+            this.sourceIterator = IndexOnlyScanOperator.this.transaction.indexOnlyScanRange(
+                                      IndexOnlyScanOperator.this.tableName,
+                                      IndexOnlyScanOperator.this.columnName,
+                                      IndexOnlyScanOperator.this.lo,
+                                      IndexOnlyScanOperator.this.loInclusive,
+                                      IndexOnlyScanOperator.this.hi,
+                                      IndexOnlyScanOperator.this.hiInclusive,
+                                      false);
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        public boolean hasNext() {
+            return this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        public Record next() {
+            if (this.hasNext()) {
+                return this.sourceIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 
 public class IndexScanOperator extends QueryOperator {
     private Database.Transaction transaction;
@@ -22,6 +23,13 @@ public class IndexScanOperator extends QueryOperator {
     private QueryPlan.PredicateOperator predicate;
     private DataBox value;
 
+    // The range of keys scanned. An empty bound leaves the range unbounded on
+    // that side.
+    private Optional<DataBox> lo = Optional.empty();
+    private boolean loInclusive;
+    private Optional<DataBox> hi = Optional.empty();
+    private boolean hiInclusive;
+
     private int columnIndex;
 
     /**
@@ -44,6 +52,65 @@ public class IndexScanOperator extends QueryOperator {
         this.columnName = columnName;
         this.predicate = predicate;
         this.value = value;
+
+        switch (predicate) {
+        case EQUALS:
+            this.lo = Optional.of(value);
+            this.loInclusive = true;
+            this.hi = Optional.of(value);
+            this.hiInclusive = true;
+            break;
+        case LESS_THAN:
+        case LESS_THAN_EQUALS:
+            this.hi = Optional.of(value);
+            this.hiInclusive = predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS;
+            break;
+        case GREATER_THAN:
+        case GREATER_THAN_EQUALS:
+            this.lo = Optional.of(value);
+            this.loInclusive = predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS;
+            break;
+        default:
+            throw new QueryPlanException("An index scan cannot evaluate " + predicate + ".");
+        }
+        this.initialize();
+    }
+
+    /**
+     * An index scan operator over the records whose column `columnName` lies
+     * between `lo` and `hi`, e.g. for a query with the predicates
+     * `lo <= columnName AND columnName < hi`. Either bound may be empty.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @param lo the lower bound of the range, if any
+     * @param loInclusive whether the range includes lo
+     * @param hi the upper bound of the range, if any
+     * @param hiInclusive whether the range includes hi
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public IndexScanOperator(Database.Transaction transaction,
+                             String tableName,
+                             String columnName,
+                             Optional<DataBox> lo,
+                             boolean loInclusive,
+                             Optional<DataBox> hi,
+                             boolean hiInclusive) throws QueryPlanException, DatabaseException {
+        super(OperatorType.INDEXSCAN);
+        this.tableName = tableName;
+        this.transaction = transaction;
+        this.columnName = columnName;
+        this.lo = lo;
+        this.loInclusive = loInclusive;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.initialize();
+    }
+
+    private void initialize() throws QueryPlanException, DatabaseException {
+        String columnName = this.columnName;
         this.setOutputSchema(this.computeSchema());
         columnName = this.checkSchemaForColumn(this.getOutputSchema(), columnName);
         this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(columnName);
@@ -53,11 +120,16 @@ public class IndexScanOperator extends QueryOperator {
     }
 
     public String str() {
-        return "type: " + this.getType() +
-               "\ntable: " + this.tableName +
-               "\ncolumn: " + this.columnName +
-               "\noperator: " + this.predicate +
-               "\nvalue: " + this.value;
+        String str = "type: " + this.getType() +
+                     "\ntable: " + this.tableName +
+                     "\ncolumn: " + this.columnName;
+        if (this.predicate != null) {
+            return str + "\noperator: " + this.predicate +
+                   "\nvalue: " + this.value;
+        }
+        return str + "\nrange: " + (this.loInclusive ? "[" : "(") +
+               this.lo.map(DataBox::toString).orElse("") + ", " +
+               this.hi.map(DataBox::toString).orElse("") + (this.hiInclusive ? "]" : ")");
     }
 
     /**
@@ -83,9 +155,26 @@ public class IndexScanOperator extends QueryOperator {
             throw new QueryPlanException(de);
         }
 
-        return stats.copyWithPredicate(this.columnIndex,
-                                       this.predicate,
-                                       this.value);
+        if (this.predicate != null) {
+            return stats.copyWithPredicate(this.columnIndex,
+                                           this.predicate,
+                                           this.value);
+        }
+        if (this.lo.isPresent()) {
+            stats = stats.copyWithPredicate(this.columnIndex,
+                                            this.loInclusive
+                                            ? QueryPlan.PredicateOperator.GREATER_THAN_EQUALS
+                                            : QueryPlan.PredicateOperator.GREATER_THAN,
+                                            this.lo.get());
+        }
+        if (this.hi.isPresent()) {
+            stats = stats.copyWithPredicate(this.columnIndex,
+                                            this.hiInclusive
+                                            ? QueryPlan.PredicateOperator.LESS_THAN_EQUALS
+                                            : QueryPlan.PredicateOperator.LESS_THAN,
+                                            this.hi.get());
+        }
+        return stats;
     }
 
     /**
@@ -102,10 +191,25 @@ public class IndexScanOperator extends QueryOperator {
      * this.transaction.getNumRecords, this.transaction.getNumIndexPages,
      * and tableStats.getReductionFactor.
      *
+     * An equality lookup on a column with a hash index instead reads the
+     * pages of one bucket, then performs one IO per matching record.
+     *
      * @return estimate IO cost
      * @throws QueryPlanException
      */
     public int estimateIOCost() throws QueryPlanException {
+        if (this.predicate == QueryPlan.PredicateOperator.EQUALS &&
+                this.transaction.hashIndexExists(this.tableName, this.columnName)) {
+            double bucketLength;
+            try {
+                bucketLength = this.transaction.getHashIndexBucketLength(this.tableName,
+                               this.columnName);
+            } catch (DatabaseException err) {
+                throw new QueryPlanException(err);
+            }
+            return (int) (Math.ceil(bucketLength) + this.stats.getNumRecords());
+        }
+
         long numRecords;
         long numIndexPages;
         TableStats tableStats;
@@ -140,39 +244,24 @@ public class IndexScanOperator extends QueryOperator {
      */
     private class IndexScanIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
-        private Record nextRecord;
 
         public IndexScanIterator() throws QueryPlanException, DatabaseException {
-            this.nextRecord = null;
             if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.EQUALS) {
                 this.sourceIterator = IndexScanOperator.this.transaction.lookupKey(
                                           IndexScanOperator.this.tableName,
                                           IndexScanOperator.this.columnName,
                                           IndexScanOperator.this.value);
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN ||
-                       IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScan(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName);
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-                while (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
-                        this.nextRecord = r;
-                        break;
-                    }
-                }
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.GREATER_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
+            } else {
+                // The index only reads the leaves that overlap the range, so
+                // there is nothing left to filter.
+                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanRange(
                                           IndexScanOperator.this.tableName,
                                           IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
+                                          IndexScanOperator.this.lo,
+                                          IndexScanOperator.this.loInclusive,
+                                          IndexScanOperator.this.hi,
+                                          IndexScanOperator.this.hiInclusive,
+                                          false);
             }
         }
 
@@ -182,37 +271,7 @@ public class IndexScanOperator extends QueryOperator {
          * @return true if this iterator has another record to yield, otherwise false
          */
         public boolean hasNext() {
-            if (this.nextRecord != null) {
-                return true;
-            }
-            if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN) {
-                if (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) >= 0) {
-                        return false;
-                    }
-                    this.nextRecord = r;
-                    return true;
-                }
-                return false;
-            } else if (IndexScanOperator.this.predicate == QueryPlan.PredicateOperator.LESS_THAN_EQUALS) {
-                if (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
-                        return false;
-                    }
-                    this.nextRecord = r;
-                    return true;
-                }
-                return false;
-            }
-            if (this.sourceIterator.hasNext()) {
-                this.nextRecord = this.sourceIterator.next();
-                return true;
-            }
-            return false;
+            return this.sourceIterator.hasNext();
         }
 
         /**
@@ -223,9 +282,7 @@ public class IndexScanOperator extends QueryOperator {
          */
         public Record next() {
             if (this.hasNext()) {
-                Record r = this.nextRecord;
-                this.nextRecord = null;
-                return r;
+                return this.sourceIterator.next();
             }
             throw new NoSuchElementException();
         }
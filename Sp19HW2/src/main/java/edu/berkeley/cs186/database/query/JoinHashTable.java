@@ -0,0 +1,154 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * The in-memory hash table of a hash join, mapping join values to the records
+ * that have them. Records are stored as numbered entries, and the entries with
+ * the same join value are chained together:
+ *
+ *   JoinHashTable table = new JoinHashTable(Type.intType());
+ *   table.add(new IntDataBox(1), r1);
+ *   table.add(new IntDataBox(1), r2);
+ *   for (int e = table.find(new IntDataBox(1)); e != -1; e = table.nextMatch(e)) {
+ *       table.getRecord(e); // r2, then r1
+ *   }
+ *
+ * When the join column is an INT, the table keys on the primitive ints: the
+ * heads of the chains are kept in an open addressing table of int keys, so
+ * neither adding nor probing a record allocates, boxes, or calls equals. Join
+ * values of other types are kept in a HashMap.
+ */
+class JoinHashTable {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // For INT join values: an open addressing table (with linear probing) of
+    // the distinct join values, and the entry that heads the chain of each.
+    private boolean intKeys;
+    private int[] slotKeys;
+    private int[] slotHeads;
+    private boolean[] slotUsed;
+    private int numKeys;
+
+    // For join values of other types: the entry that heads the chain of each.
+    private Map<DataBox, Integer> heads;
+
+    // The entries: the record of each, and the next entry in its chain (or -1).
+    private Record[] records = new Record[INITIAL_CAPACITY];
+    private int[] next = new int[INITIAL_CAPACITY];
+    private int size = 0;
+
+    JoinHashTable(Type keyType) {
+        this.intKeys = keyType.getTypeId() == TypeId.INT;
+        if (this.intKeys) {
+            this.slotKeys = new int[INITIAL_CAPACITY];
+            this.slotHeads = new int[INITIAL_CAPACITY];
+            this.slotUsed = new boolean[INITIAL_CAPACITY];
+        } else {
+            this.heads = new HashMap<>();
+        }
+    }
+
+    /** Adds record, whose join value is key, to the table. */
+    void add(DataBox key, Record record) {
+        if (this.size == this.records.length) {
+            this.records = Arrays.copyOf(this.records, 2 * this.size);
+            this.next = Arrays.copyOf(this.next, 2 * this.size);
+        }
+        int entry = this.size++;
+        this.records[entry] = record;
+
+        if (!this.intKeys) {
+            Integer head = this.heads.put(key, entry);
+            this.next[entry] = head == null ? -1 : head;
+            return;
+        }
+        int k = key.getInt();
+        int slot = this.findSlot(k);
+        if (this.slotUsed[slot]) {
+            this.next[entry] = this.slotHeads[slot];
+        } else {
+            this.next[entry] = -1;
+            this.slotUsed[slot] = true;
+            this.slotKeys[slot] = k;
+            this.numKeys++;
+        }
+        this.slotHeads[slot] = entry;
+        // Keep the table at most half full.
+        if (2 * this.numKeys > this.slotKeys.length) {
+            this.resize();
+        }
+    }
+
+    /**
+     * Returns the first entry whose join value is key, or -1 if there is none.
+     */
+    int find(DataBox key) {
+        if (!this.intKeys) {
+            Integer head = this.heads.get(key);
+            return head == null ? -1 : head;
+        }
+        int slot = this.findSlot(key.getInt());
+        return this.slotUsed[slot] ? this.slotHeads[slot] : -1;
+    }
+
+    /**
+     * Returns the next entry with the same join value as entry, or -1 if there
+     * is none.
+     */
+    int nextMatch(int entry) {
+        return this.next[entry];
+    }
+
+    Record getRecord(int entry) {
+        return this.records[entry];
+    }
+
+    /** Returns the number of entries, which are numbered 0 to size() - 1. */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the slot that holds k, or the empty slot where k belongs if no
+     * slot holds it.
+     */
+    private int findSlot(int k) {
+        int mask = this.slotKeys.length - 1;
+        int slot = mix(k) & mask;
+        while (this.slotUsed[slot] && this.slotKeys[slot] != k) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = this.slotKeys;
+        int[] oldHeads = this.slotHeads;
+        boolean[] oldUsed = this.slotUsed;
+        this.slotKeys = new int[2 * oldKeys.length];
+        this.slotHeads = new int[2 * oldKeys.length];
+        this.slotUsed = new boolean[2 * oldKeys.length];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = this.findSlot(oldKeys[i]);
+                this.slotUsed[slot] = true;
+                this.slotKeys[slot] = oldKeys[i];
+                this.slotHeads[slot] = oldHeads[i];
+            }
+        }
+    }
+
+    // Consecutive ints would otherwise fill runs of consecutive slots.
+    private static int mix(int k) {
+        int h = k * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -22,7 +22,9 @@ public abstract class JoinOperator extends QueryOperator {
         PNLJ,
         BNLJ,
         GRACEHASH,
-        SORTMERGE
+        SORTMERGE,
+        INDEXNL,
+        HYBRIDHASH
     }
 
     private JoinType joinType;
@@ -127,6 +127,44 @@ public class ProjectOperator extends QueryOperator {
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new ProjectIterator(); }
 
+    /**
+     * Projects the source's batches a batch at a time. Aggregates are computed
+     * by the record iterator, so their batches are filled from it.
+     */
+    public BatchIterator batchIterator() throws QueryPlanException, DatabaseException {
+        if (this.hasAggregate) {
+            return super.batchIterator();
+        }
+        BatchIterator sourceBatches = this.getSource().batchIterator();
+        MarkerRecord markerRecord = MarkerRecord.getMarker();
+        int[] indices = new int[this.indices.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = this.indices.get(i);
+        }
+        RecordBatch batch = new RecordBatch();
+        return () -> {
+            RecordBatch sourceBatch = sourceBatches.nextBatch();
+            if (sourceBatch == null) {
+                return null;
+            }
+            batch.clear();
+            for (int i = 0; i < sourceBatch.size(); i++) {
+                Record r = sourceBatch.get(i);
+                if (r == markerRecord) {
+                    batch.add(r);
+                    continue;
+                }
+                List<DataBox> recordValues = r.getValues();
+                List<DataBox> newValues = new ArrayList<>(indices.length);
+                for (int index : indices) {
+                    newValues.add(recordValues.get(index));
+                }
+                batch.add(new Record(newValues));
+            }
+            return batch;
+        };
+    }
+
     private void addToCount() {
         this.countValue++;
     }
@@ -21,7 +21,11 @@ public abstract class QueryOperator {
         SELECT,
         GROUPBY,
         SEQSCAN,
-        INDEXSCAN
+        INDEXSCAN,
+        INDEXONLYSCAN,
+        BITMAPHEAPSCAN,
+        HASHAGGREGATE,
+        EXCHANGE
     }
 
     private OperatorType type;
@@ -68,6 +72,18 @@ public abstract class QueryOperator {
         return this.type.equals(OperatorType.INDEXSCAN);
     }
 
+    public boolean isIndexOnlyScan() {
+        return this.type.equals(OperatorType.INDEXONLYSCAN);
+    }
+
+    public boolean isBitmapHeapScan() {
+        return this.type.equals(OperatorType.BITMAPHEAPSCAN);
+    }
+
+    public boolean isExchange() {
+        return this.type.equals(OperatorType.EXCHANGE);
+    }
+
     public QueryOperator getSource() throws QueryPlanException {
         return this.source;
     }
@@ -101,6 +117,16 @@ public abstract class QueryOperator {
 
     public abstract Iterator<Record> iterator() throws QueryPlanException, DatabaseException;
 
+    /**
+     * Returns the records of this operator in batches of up to
+     * RecordBatch.DEFAULT_SIZE records. By default, the batches are filled
+     * from iterator(); operators that can produce whole batches at once
+     * override this.
+     */
+    public BatchIterator batchIterator() throws QueryPlanException, DatabaseException {
+        return BatchIterator.fromRecords(this.iterator(), RecordBatch.DEFAULT_SIZE);
+    }
+
     /**
      * Utility method that checks to see if a column is found in a schema using dot notation.
      *
@@ -4,6 +4,7 @@ import java.util.*;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
@@ -34,10 +35,9 @@ public class QueryPlan {
     private List<PredicateOperator> selectOperators;
     private List<DataBox> selectDataBoxes;
     private List<String> projectColumns;
-    private String groupByColumn;
-    private boolean hasCount;
-    private String averageColumnName;
-    private String sumColumnName;
+    private List<String> groupByColumns;
+    private List<HashAggregateOperator.Aggregate> aggregates;
+    private int parallelism;
 
     /**
      * Creates a new QueryPlan within transaction. The base table is startTableName.
@@ -58,11 +58,11 @@ public class QueryPlan {
         this.selectOperators = new ArrayList<PredicateOperator>();
         this.selectDataBoxes = new ArrayList<DataBox>();
 
-        this.hasCount = false;
-        this.averageColumnName = null;
-        this.sumColumnName = null;
+        this.aggregates = new ArrayList<HashAggregateOperator.Aggregate>();
 
-        this.groupByColumn = null;
+        this.groupByColumns = new ArrayList<String>();
+
+        this.parallelism = 1;
 
         this.finalOperator = null;
     }
@@ -107,13 +107,13 @@ public class QueryPlan {
     }
 
     /**
-     * Set the group by column for this query.
+     * Set the group by columns for this query.
      *
-     * @param column the column to group by
+     * @param columns the columns to group by
      * @throws QueryPlanException
      */
-    public void groupBy(String column) throws QueryPlanException {
-        this.groupByColumn = column;
+    public void groupBy(String... columns) throws QueryPlanException {
+        this.groupByColumns = new ArrayList<String>(Arrays.asList(columns));
     }
 
     /**
@@ -122,7 +122,12 @@ public class QueryPlan {
      * @throws QueryPlanException
      */
     public void count() throws QueryPlanException {
-        this.hasCount = true;
+        for (HashAggregateOperator.Aggregate aggregate : this.aggregates) {
+            if (aggregate.getFunction() == HashAggregateOperator.Aggregate.Function.COUNT) {
+                return;
+            }
+        }
+        this.aggregates.add(HashAggregateOperator.Aggregate.count());
     }
 
     /**
@@ -132,7 +137,7 @@ public class QueryPlan {
      * @throws QueryPlanException
      */
     public void average(String column) throws QueryPlanException {
-        this.averageColumnName = column;
+        this.aggregates.add(HashAggregateOperator.Aggregate.average(column));
     }
 
     /**
@@ -142,7 +147,27 @@ public class QueryPlan {
      * @throws QueryPlanException
      */
     public void sum(String column) throws QueryPlanException {
-        this.sumColumnName = column;
+        this.aggregates.add(HashAggregateOperator.Aggregate.sum(column));
+    }
+
+    /**
+     * Add a minimum on column.
+     *
+     * @param column the column to take the minimum of
+     * @throws QueryPlanException
+     */
+    public void min(String column) throws QueryPlanException {
+        this.aggregates.add(HashAggregateOperator.Aggregate.min(column));
+    }
+
+    /**
+     * Add a maximum on column.
+     *
+     * @param column the column to take the maximum of
+     * @throws QueryPlanException
+     */
+    public void max(String column) throws QueryPlanException {
+        this.aggregates.add(HashAggregateOperator.Aggregate.max(column));
     }
 
     /**
@@ -159,6 +184,22 @@ public class QueryPlan {
         this.joinRightColumnNames.add(rightColumnName);
     }
 
+    /**
+     * Sets the number of workers that execute runs a plan without indices
+     * on. With more than one, the plan is split up by ExchangeOperators: each
+     * worker scans part of every table, and joins and groups are
+     * repartitioned so that each worker computes part of the result.
+     *
+     * @param parallelism the number of workers
+     * @throws QueryPlanException
+     */
+    public void setParallelism(int parallelism) throws QueryPlanException {
+        if (parallelism < 1) {
+            throw new QueryPlanException("A query needs at least one worker.");
+        }
+        this.parallelism = parallelism;
+    }
+
     //Returns a 2-array of table name, column name
     public String [] getJoinLeftColumnNameByIndex(int i) {
         return this.joinLeftColumnNames.get(i).split("\\.");
@@ -179,9 +220,17 @@ public class QueryPlan {
      */
     public Iterator<Record> execute() throws DatabaseException, QueryPlanException {
         String indexColumn = this.checkIndexEligible();
-
-        if (indexColumn != null) {
+        CompositeIndexMatch compositeMatch = this.checkCompositeIndexEligible();
+
+        // A composite index is preferred when it answers predicates on more
+        // than one of its columns.
+        if (compositeMatch != null &&
+                (indexColumn == null || compositeMatch.getNumColumns() > 1)) {
+            this.generateCompositeIndexPlan(compositeMatch);
+        } else if (indexColumn != null) {
             this.generateIndexPlan(indexColumn);
+        } else if (this.parallelism > 1) {
+            this.generateParallelPlan();
         } else {
             // start off with the start table scan as the source
             this.finalOperator = new SequentialScanOperator(this.transaction, this.startTableName);
@@ -209,7 +258,8 @@ public class QueryPlan {
 
     /**
      * Gets all SELECT predicates for which there exists an index on the column
-     * referenced in that predicate for the given table.
+     * referenced in that predicate for the given table that can answer it
+     * (see isIndexEligible).
      *
      * @return an ArrayList of SELECT predicates
      */
@@ -219,8 +269,7 @@ public class QueryPlan {
         for (int i = 0; i < this.selectColumnNames.size(); i++) {
             String column = this.selectColumnNames.get(i);
 
-            if (this.transaction.indexExists(table, column) &&
-                    this.selectOperators.get(i) != PredicateOperator.NOT_EQUALS) {
+            if (this.isIndexEligible(table, column, this.selectOperators.get(i))) {
                 selectIndices.add(i);
             }
         }
@@ -228,6 +277,56 @@ public class QueryPlan {
         return selectIndices;
     }
 
+    /**
+     * Gets, for every composite index on the given table that can answer at
+     * least one SELECT predicate, the predicates it answers (see
+     * CompositeIndexMatch).
+     *
+     * @return a List of matches, one per eligible composite index
+     */
+    private List<CompositeIndexMatch> getEligibleCompositeIndices(String table) {
+        List<CompositeIndexMatch> matches = new ArrayList<>();
+        for (List<String> columns : this.transaction.getCompositeIndices(table)) {
+            CompositeIndexMatch match = new CompositeIndexMatch(columns);
+            for (String column : columns) {
+                int equality = -1;
+                List<Integer> range = new ArrayList<>();
+                for (int i = 0; i < this.selectColumnNames.size(); i++) {
+                    if (!this.isColumnOf(this.selectColumnNames.get(i), table, column)) {
+                        continue;
+                    }
+                    PredicateOperator operator = this.selectOperators.get(i);
+                    if (operator == PredicateOperator.EQUALS) {
+                        equality = i;
+                        break;
+                    }
+                    if (operator != PredicateOperator.NOT_EQUALS) {
+                        range.add(i);
+                    }
+                }
+                if (equality == -1) {
+                    match.rangeIndices = range;
+                    break;
+                }
+                match.prefixIndices.add(equality);
+            }
+            if (match.getNumColumns() > 0) {
+                matches.add(match);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Returns whether the (possibly qualified) column name `name` refers to
+     * the column `column` of table.
+     */
+    private boolean isColumnOf(String name, String table, String column) {
+        String[] parts = name.split("\\.");
+        return parts[parts.length - 1].equals(column) &&
+               (parts.length == 1 || parts[0].equals(table));
+    }
+
     /**
      * Gets all columns for which there exists an index for that table
      *
@@ -252,34 +351,42 @@ public class QueryPlan {
 
     /**
      * Applies all eligible SELECT predicates to a given source, except for the
-     * predicate at index except. The purpose of except is because there might
-     * be one SELECT predicate that was already used for an index scan, so no
-     * point applying it again. A SELECT predicate is represented as elements of
+     * predicates at the indices in except. The purpose of except is because
+     * there might be SELECT predicates that were already used for an index
+     * scan, so no point applying them again. A SELECT predicate is represented as elements of
      * this.selectColumnNames, this.selectOperators, and this.selectDataBoxes that
      * correspond to the same index of these lists.
      *
+     * All of the eligible predicates are checked by a single SelectOperator.
+     *
      * @return a new QueryOperator after SELECT has been applied
      * @throws DatabaseException
      * @throws QueryPlanException
      */
     private QueryOperator addEligibleSelections(QueryOperator source,
-            int except) throws QueryPlanException, DatabaseException {
+            List<Integer> except) throws QueryPlanException, DatabaseException {
+        List<String> columnNames = new ArrayList<>();
+        List<PredicateOperator> operators = new ArrayList<>();
+        List<DataBox> values = new ArrayList<>();
         for (int i = 0; i < this.selectColumnNames.size(); i++) {
-            if (i == except) {
+            if (except.contains(i)) {
                 continue;
             }
 
-            PredicateOperator curPred = this.selectOperators.get(i);
-            DataBox curValue = this.selectDataBoxes.get(i);
             try {
-                String colName = source.checkSchemaForColumn(source.getOutputSchema(), selectColumnNames.get(i));
-                source = new SelectOperator(source, colName, curPred, curValue);
+                columnNames.add(source.checkSchemaForColumn(source.getOutputSchema(),
+                                selectColumnNames.get(i)));
             } catch (QueryPlanException err) {
                 continue;
             }
+            operators.add(this.selectOperators.get(i));
+            values.add(this.selectDataBoxes.get(i));
         }
 
-        return source;
+        if (columnNames.isEmpty()) {
+            return source;
+        }
+        return new SelectOperator(source, columnNames, operators, values);
     }
 
     /**
@@ -291,9 +398,19 @@ public class QueryPlan {
      * pushing down selects. This method will be called during the first pass of the search
      * algorithm to determine the most efficient way to access each single table.
      *
+     * An index that covers the query (see isCoveredByIndex) is costed as an
+     * IndexOnlyScanOperator, which never fetches the table's records. Every
+     * composite index that can answer some of the predicates is costed as a
+     * CompositeIndexScanOperator, which excludes all of those predicates.
+     *
+     * An index that doesn't cover the query is costed as either an
+     * IndexScanOperator or a BitmapHeapScanOperator (see indexScan). When
+     * indexes on several columns answer predicates, a BitmapHeapScanOperator
+     * that intersects them is costed too (see indexIntersection).
+     *
      * @return a QueryOperator that has the lowest cost of scanning the given table which is
-     * either a SequentialScanOperator or an IndexScanOperator nested within any possible
-     * pushed down select operators
+     * either a SequentialScanOperator, an IndexScanOperator, a BitmapHeapScanOperator, or an
+     * IndexOnlyScanOperator nested within any possible pushed down select operators
      * @throws DatabaseException
      * @throws QueryPlanException
      */
@@ -303,8 +420,35 @@ public class QueryPlan {
 
         // Find the cost of a sequential scan of the table
         minOp = new SequentialScanOperator(this.transaction, table);
+        int minCost = minOp.getIOCost();
+        List<Integer> except = Collections.emptyList();
+
+        // Find the cost of a scan of every eligible index
+        for (int i : this.getEligibleIndexColumns(table)) {
+            QueryOperator indexOp = this.indexScan(table, this.selectColumnNames.get(i),
+                                                   Collections.singletonList(i));
+            if (indexOp.getIOCost() < minCost) {
+                minOp = indexOp;
+                minCost = indexOp.getIOCost();
+                except = Collections.singletonList(i);
+            }
+        }
+        for (CompositeIndexMatch match : this.getEligibleCompositeIndices(table)) {
+            QueryOperator indexOp = this.compositeIndexScan(table, match);
+            if (indexOp.getIOCost() < minCost) {
+                minOp = indexOp;
+                minCost = indexOp.getIOCost();
+                except = match.getSelectIndices();
+            }
+        }
+        Pair<QueryOperator, List<Integer>> intersection = this.indexIntersection(table);
+        if (intersection != null && intersection.getFirst().getIOCost() < minCost) {
+            minOp = intersection.getFirst();
+            minCost = minOp.getIOCost();
+            except = intersection.getSecond();
+        }
 
-        return minOp;
+        return this.addEligibleSelections(minOp, except);
     }
 
     /**
@@ -326,6 +470,16 @@ public class QueryPlan {
         List<QueryOperator> allJoins = new ArrayList<QueryOperator>();
         allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        // A hybrid hash join never costs more than a Grace hash join, and it
+        // comes first so that it wins ties.
+        allJoins.add(new HybridHashJoinOperator(leftOp, rightOp, leftColumn, rightColumn,
+                     this.transaction));
+        allJoins.add(new GraceHashJoinOperator(leftOp, rightOp, leftColumn, rightColumn,
+                     this.transaction));
+        if (IndexNestedLoopJoinOperator.isEligible(rightOp, rightColumn, this.transaction)) {
+            allJoins.add(new IndexNestedLoopJoinOperator(leftOp, rightOp, leftColumn, rightColumn,
+                         this.transaction));
+        }
 
         for (QueryOperator join : allJoins) {
             int joinCost = join.estimateIOCost();
@@ -386,14 +540,13 @@ public class QueryPlan {
 
     private String checkIndexEligible() {
         if (this.selectColumnNames.size() > 0
-                && this.groupByColumn == null
+                && this.groupByColumns.isEmpty()
                 && this.joinTableNames.size() == 0) {
             int index = 0;
             for (String column : selectColumnNames) {
-                if (this.transaction.indexExists(this.startTableName, column)) {
-                    if (this.selectOperators.get(index) != PredicateOperator.NOT_EQUALS) {
-                        return column;
-                    }
+                if (this.isIndexEligible(this.startTableName, column,
+                                         this.selectOperators.get(index))) {
+                    return column;
                 }
 
                 index++;
@@ -403,72 +556,462 @@ public class QueryPlan {
         return null;
     }
 
-    private void generateIndexPlan(String indexColumn) throws QueryPlanException, DatabaseException {
-        int selectIndex = this.selectColumnNames.indexOf(indexColumn);
-        PredicateOperator operator = this.selectOperators.get(selectIndex);
-        DataBox value = this.selectDataBoxes.get(selectIndex);
+    /**
+     * Returns whether an index on column of table can answer a predicate
+     * with the given operator: a B+ tree index answers all but NOT_EQUALS,
+     * and a hash index answers EQUALS.
+     */
+    private boolean isIndexEligible(String table, String column, PredicateOperator operator) {
+        if (this.transaction.indexExists(table, column)) {
+            return operator != PredicateOperator.NOT_EQUALS;
+        }
+        return operator == PredicateOperator.EQUALS &&
+               this.transaction.hashIndexExists(table, column);
+    }
 
-        this.finalOperator = new IndexScanOperator(this.transaction, this.startTableName, indexColumn,
-                operator,
-                value);
+    /**
+     * Returns the composite index on the start table that answers predicates
+     * on the most of its columns, if the query is eligible for an index scan
+     * (see checkIndexEligible) and there is one.
+     */
+    private CompositeIndexMatch checkCompositeIndexEligible() {
+        if (this.selectColumnNames.isEmpty() || !this.groupByColumns.isEmpty() ||
+                !this.joinTableNames.isEmpty()) {
+            return null;
+        }
+        CompositeIndexMatch best = null;
+        for (CompositeIndexMatch match : this.getEligibleCompositeIndices(this.startTableName)) {
+            if (best == null || match.getNumColumns() > best.getNumColumns()) {
+                best = match;
+            }
+        }
+        return best;
+    }
 
-        this.selectColumnNames.remove(selectIndex);
-        this.selectOperators.remove(selectIndex);
-        this.selectDataBoxes.remove(selectIndex);
+    /**
+     * Scans the start table using the composite index of match, which answers
+     * the equality predicates on a prefix of its columns and the range
+     * predicates on the next one. All other predicates are applied on top of
+     * the scan.
+     */
+    private void generateCompositeIndexPlan(CompositeIndexMatch match) throws QueryPlanException,
+        DatabaseException {
+        this.finalOperator = this.compositeIndexScan(this.startTableName, match);
+
+        // Remove the predicates answered by the index, from last to first so
+        // that the remaining indices stay valid.
+        List<Integer> answered = new ArrayList<>(match.getSelectIndices());
+        answered.sort(Collections.reverseOrder());
+        for (int selectIndex : answered) {
+            this.selectColumnNames.remove(selectIndex);
+            this.selectOperators.remove(selectIndex);
+            this.selectDataBoxes.remove(selectIndex);
+        }
 
         this.addSelects();
+        this.addGroupBy();
         this.addProjects();
     }
 
+    /**
+     * Scans the start table using the index on indexColumn. An equality
+     * predicate on indexColumn is answered with a single lookup. Otherwise,
+     * all of the range predicates on indexColumn (e.g. `x > 3`, `x <= 10`,
+     * and `x < 8`) are combined into the tightest range they allow (here,
+     * `3 < x < 8`), which is answered with one bounded scan of the index.
+     * If intersecting the indexes on several columns is estimated to be
+     * cheaper (see indexIntersection), the start table is scanned that way
+     * instead. All other predicates are applied on top of the scan.
+     */
+    private void generateIndexPlan(String indexColumn) throws QueryPlanException, DatabaseException {
+        List<Integer> rangeIndices = this.getIndexPredicates(indexColumn);
+        this.finalOperator = this.indexScan(this.startTableName, indexColumn, rangeIndices);
+
+        Pair<QueryOperator, List<Integer>> intersection = this.indexIntersection(
+                    this.startTableName);
+        if (intersection != null &&
+                intersection.getFirst().getIOCost() < this.finalOperator.getIOCost()) {
+            this.finalOperator = intersection.getFirst();
+            rangeIndices = new ArrayList<>(intersection.getSecond());
+            Collections.sort(rangeIndices);
+        }
+
+        // Remove the predicates answered by the index, from last to first so
+        // that the remaining indices stay valid.
+        for (int j = rangeIndices.size() - 1; j >= 0; j--) {
+            int selectIndex = rangeIndices.get(j);
+            this.selectColumnNames.remove(selectIndex);
+            this.selectOperators.remove(selectIndex);
+            this.selectDataBoxes.remove(selectIndex);
+        }
+
+        this.addSelects();
+        this.addGroupBy();
+        this.addProjects();
+    }
+
+    /**
+     * Returns a scan of table using the index on indexColumn that answers the
+     * select predicates at rangeIndices, which must all be on indexColumn and
+     * must either be a single equality predicate or be range predicates (see
+     * generateIndexPlan). If the index covers the query, the scan is an
+     * IndexOnlyScanOperator. Otherwise, it is whichever of an
+     * IndexScanOperator and a BitmapHeapScanOperator is estimated to be
+     * cheaper: the more records the predicates match, the more pages a
+     * bitmap heap scan saves by reading each of them once.
+     */
+    private QueryOperator indexScan(String table, String indexColumn,
+                                    List<Integer> rangeIndices) throws QueryPlanException,
+        DatabaseException {
+        boolean covered = this.isCoveredByIndex(table, indexColumn);
+        QueryOperator indexOp;
+        Range range;
+        if (rangeIndices.size() == 1 &&
+                this.selectOperators.get(rangeIndices.get(0)) == PredicateOperator.EQUALS) {
+            DataBox value = this.selectDataBoxes.get(rangeIndices.get(0));
+            range = this.combineRange(rangeIndices);
+            if (covered) {
+                return new IndexOnlyScanOperator(this.transaction, table, indexColumn,
+                                                 range.lo, true, range.hi, true);
+            }
+            indexOp = new IndexScanOperator(this.transaction, table, indexColumn,
+                                            PredicateOperator.EQUALS, value);
+        } else {
+            range = this.combineRange(rangeIndices);
+            if (covered) {
+                return new IndexOnlyScanOperator(this.transaction, table, indexColumn,
+                                                 range.lo, range.loInclusive, range.hi,
+                                                 range.hiInclusive);
+            }
+            indexOp = new IndexScanOperator(this.transaction, table, indexColumn,
+                                            range.lo, range.loInclusive, range.hi,
+                                            range.hiInclusive);
+        }
+
+        QueryOperator bitmapOp = new BitmapHeapScanOperator(this.transaction, table, indexColumn,
+                range.lo, range.loInclusive, range.hi, range.hiInclusive);
+        return bitmapOp.getIOCost() < indexOp.getIOCost() ? bitmapOp : indexOp;
+    }
+
+    /**
+     * Returns the select predicates on column that an index on column
+     * answers: a single equality predicate if there is one, and all of the
+     * range predicates on column otherwise.
+     */
+    private List<Integer> getIndexPredicates(String column) {
+        List<Integer> rangeIndices = new ArrayList<>();
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            if (!this.selectColumnNames.get(i).equals(column)) {
+                continue;
+            }
+            PredicateOperator operator = this.selectOperators.get(i);
+            if (operator == PredicateOperator.EQUALS) {
+                return Collections.singletonList(i);
+            }
+            if (operator != PredicateOperator.NOT_EQUALS) {
+                rangeIndices.add(i);
+            }
+        }
+        return rangeIndices;
+    }
+
+    /**
+     * Returns the cheapest bitmap heap scan of table that intersects the
+     * record ids read from the indexes on two or more columns with select
+     * predicates, paired with the select predicates it answers, or null if
+     * fewer than two such columns have an index that answers them.
+     *
+     * The estimated number of matches of an intersection is the product of
+     * the reduction factors of its ranges (see BitmapHeapScanOperator), so
+     * the columns are added to the intersection in order of increasing
+     * matches: we cost the intersection of the two most selective columns,
+     * then of the three most selective, and so on. Adding a column costs a
+     * scan of its index but can only shrink the number of pages read.
+     */
+    private Pair<QueryOperator, List<Integer>> indexIntersection(String table) throws
+        QueryPlanException, DatabaseException {
+        Set<String> columns = new LinkedHashSet<>();
+        for (int i : this.getEligibleIndexColumns(table)) {
+            columns.add(this.selectColumnNames.get(i));
+        }
+        if (columns.size() < 2) {
+            return null;
+        }
+
+        List<BitmapHeapScanOperator.IndexRange> ranges = new ArrayList<>();
+        Map<BitmapHeapScanOperator.IndexRange, List<Integer>> answered = new HashMap<>();
+        Map<BitmapHeapScanOperator.IndexRange, Integer> matches = new HashMap<>();
+        for (String column : columns) {
+            List<Integer> rangeIndices = this.getIndexPredicates(column);
+            Range range = this.combineRange(rangeIndices);
+            BitmapHeapScanOperator.IndexRange indexRange = new BitmapHeapScanOperator.IndexRange(
+                column, range.lo, range.loInclusive, range.hi, range.hiInclusive);
+            QueryOperator scan = new BitmapHeapScanOperator(this.transaction, table,
+                    Collections.singletonList(indexRange), false);
+            ranges.add(indexRange);
+            answered.put(indexRange, rangeIndices);
+            matches.put(indexRange, scan.getStats().getNumRecords());
+        }
+        ranges.sort(Comparator.comparing(matches::get));
+
+        QueryOperator minOp = null;
+        List<Integer> minAnswered = null;
+        List<Integer> selectIndices = new ArrayList<>(answered.get(ranges.get(0)));
+        for (int n = 2; n <= ranges.size(); n++) {
+            selectIndices.addAll(answered.get(ranges.get(n - 1)));
+            QueryOperator op = new BitmapHeapScanOperator(this.transaction, table,
+                    ranges.subList(0, n), false);
+            if (minOp == null || op.getIOCost() < minOp.getIOCost()) {
+                minOp = op;
+                minAnswered = new ArrayList<>(selectIndices);
+            }
+        }
+        return new Pair<>(minOp, minAnswered);
+    }
+
+    /**
+     * Returns a scan of table using the composite index of match that answers
+     * the predicates of match.
+     */
+    private QueryOperator compositeIndexScan(String table,
+            CompositeIndexMatch match) throws QueryPlanException, DatabaseException {
+        List<DataBox> prefix = new ArrayList<>();
+        for (int i : match.prefixIndices) {
+            prefix.add(this.selectDataBoxes.get(i));
+        }
+        Range range = this.combineRange(match.rangeIndices);
+        return new CompositeIndexScanOperator(this.transaction, table, match.columns, prefix,
+                                              range.lo, range.loInclusive, range.hi,
+                                              range.hiInclusive);
+    }
+
+    /**
+     * Returns the tightest range allowed by the range predicates at
+     * rangeIndices, which must all be on the same column, or of the single
+     * equality predicate at rangeIndices.
+     */
+    private Range combineRange(List<Integer> rangeIndices) {
+        Range range = new Range();
+        for (int i : rangeIndices) {
+            PredicateOperator operator = this.selectOperators.get(i);
+            DataBox value = this.selectDataBoxes.get(i);
+            if (operator == PredicateOperator.EQUALS) {
+                range.lo = Optional.of(value);
+                range.loInclusive = true;
+                range.hi = Optional.of(value);
+                range.hiInclusive = true;
+                break;
+            }
+            boolean inclusive = operator == PredicateOperator.GREATER_THAN_EQUALS ||
+                                operator == PredicateOperator.LESS_THAN_EQUALS;
+            if (operator == PredicateOperator.GREATER_THAN ||
+                    operator == PredicateOperator.GREATER_THAN_EQUALS) {
+                int c = range.lo.isPresent() ? value.compareTo(range.lo.get()) : 1;
+                if (c > 0 || (c == 0 && !inclusive)) {
+                    range.lo = Optional.of(value);
+                    range.loInclusive = inclusive;
+                }
+            } else {
+                int c = range.hi.isPresent() ? value.compareTo(range.hi.get()) : -1;
+                if (c < 0 || (c == 0 && !inclusive)) {
+                    range.hi = Optional.of(value);
+                    range.hiInclusive = inclusive;
+                }
+            }
+        }
+        return range;
+    }
+
+    /**
+     * Returns whether the index on indexColumn of table stores every column of
+     * table that the query reads: the columns of its select predicates,
+     * projections, aggregates, group by, and joins. A query without
+     * projections or aggregates returns every column of table in order, so it
+     * is never covered. Columns qualified with another table's name are
+     * ignored, but unqualified columns are assumed to be columns of table.
+     */
+    private boolean isCoveredByIndex(String table, String indexColumn) throws DatabaseException {
+        if (!this.transaction.indexExists(table, indexColumn)) {
+            // Only a hash index is on indexColumn, and it includes no columns.
+            return false;
+        }
+        if (this.projectColumns.isEmpty() && this.aggregates.isEmpty()) {
+            return false;
+        }
+
+        Set<String> covered = new HashSet<>(this.transaction.getIndexIncludedColumns(table,
+                                            indexColumn));
+        String[] indexParts = indexColumn.split("\\.");
+        covered.add(indexParts[indexParts.length - 1]);
+
+        List<String> referenced = new ArrayList<>();
+        referenced.addAll(this.selectColumnNames);
+        referenced.addAll(this.projectColumns);
+        referenced.addAll(this.joinLeftColumnNames);
+        referenced.addAll(this.joinRightColumnNames);
+        referenced.addAll(this.groupByColumns);
+        for (HashAggregateOperator.Aggregate aggregate : this.aggregates) {
+            if (aggregate.getColumnName() != null) {
+                referenced.add(aggregate.getColumnName());
+            }
+        }
+        for (String column : referenced) {
+            String[] parts = column.split("\\.");
+            if (parts.length == 2 && !parts[0].equals(table)) {
+                continue;
+            }
+            if (!covered.contains(parts[parts.length - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Joins every join table to finalOperator in turn. A join table with an
+     * index on its join column is joined with an index nested loop join, so it
+     * is never scanned; any other join table is joined with a simple nested
+     * loop join.
+     */
     private void addJoins() throws QueryPlanException, DatabaseException {
         int index = 0;
 
         for (String joinTable : this.joinTableNames) {
             SequentialScanOperator scanOperator = new SequentialScanOperator(this.transaction, joinTable);
-
-            SNLJOperator joinOperator = new SNLJOperator(finalOperator, scanOperator,
-                    this.joinLeftColumnNames.get(index), this.joinRightColumnNames.get(index),
-                    this.transaction); //changed from new JoinOperator
+            String leftColumn = this.joinLeftColumnNames.get(index);
+            String rightColumn = this.joinRightColumnNames.get(index);
+
+            JoinOperator joinOperator;
+            if (IndexNestedLoopJoinOperator.isEligible(scanOperator, rightColumn, this.transaction)) {
+                joinOperator = new IndexNestedLoopJoinOperator(finalOperator, scanOperator, leftColumn,
+                        rightColumn, this.transaction);
+            } else {
+                joinOperator = new SNLJOperator(finalOperator, scanOperator, leftColumn, rightColumn,
+                                                this.transaction); //changed from new JoinOperator
+            }
 
             this.finalOperator = joinOperator;
             index++;
         }
     }
 
+    /**
+     * Adds a single SelectOperator that checks all of the query's SELECT
+     * predicates at once.
+     */
     private void addSelects() throws QueryPlanException, DatabaseException {
-        int index = 0;
-
-        for (String selectColumn : this.selectColumnNames) {
-            PredicateOperator operator = this.selectOperators.get(index);
-            DataBox value = this.selectDataBoxes.get(index);
+        if (this.selectColumnNames.isEmpty()) {
+            return;
+        }
+        this.finalOperator = new SelectOperator(this.finalOperator, this.selectColumnNames,
+                                                this.selectOperators, this.selectDataBoxes);
+    }
 
-            SelectOperator selectOperator = new SelectOperator(this.finalOperator, selectColumn,
-                    operator, value);
+    /**
+     * Adds an operator that computes all of the query's aggregates, for every
+     * group if the query has a group by, in a single pass. The operator also
+     * projects the group by columns, so such a query needs no ProjectOperator.
+     */
+    private void addGroupBy() throws QueryPlanException, DatabaseException {
+        if (!this.groupByColumns.isEmpty() || !this.aggregates.isEmpty()) {
+            HashAggregateOperator aggregateOperator = new HashAggregateOperator(this.finalOperator,
+                    this.transaction, this.groupByColumns, this.projectColumns, this.aggregates);
 
-            this.finalOperator = selectOperator;
-            index++;
+            this.finalOperator = aggregateOperator;
         }
     }
 
-    private void addGroupBy() throws QueryPlanException, DatabaseException {
-        if (this.groupByColumn != null) {
-            if (this.projectColumns.size() > 2 || (this.projectColumns.size() == 1 &&
-                                                   !this.projectColumns.get(0).equals(this.groupByColumn))) {
-                throw new QueryPlanException("Can only project columns specified in the GROUP BY clause.");
+    /**
+     * Generates the plan of execute for this.parallelism workers. Each worker
+     * scans its partition of the start table's pages, and the streams of
+     * records are repartitioned on the join columns before each join, so that
+     * every worker joins its own partitions with a HybridHashJoinOperator.
+     * SELECT predicates are checked on every stream. Aggregates are computed in
+     * two phases: every worker partially aggregates its own stream, so only
+     * one record per group and worker is passed on. With a group by, the
+     * partial aggregates are repartitioned on the group by columns and every
+     * worker merges the groups of its partition before they are gathered;
+     * without one, the gathered partial aggregates are merged at the top.
+     *
+     * The workers' joins and aggregates run at the same time, so each of them
+     * gets an equal share of the transaction's memory pages (but at least the
+     * 3 pages a hash join needs).
+     */
+    private void generateParallelPlan() throws QueryPlanException, DatabaseException {
+        int numBuffers = Math.max(3, this.transaction.getNumMemoryPages() / this.parallelism);
+        List<QueryOperator> streams = this.parallelScans(this.startTableName);
+
+        for (int i = 0; i < this.joinTableNames.size(); i++) {
+            String leftColumnName = this.joinLeftColumnNames.get(i);
+            String rightColumnName = this.joinRightColumnNames.get(i);
+            List<QueryOperator> leftStreams = ExchangeOperator.repartition(streams,
+                    Collections.singletonList(leftColumnName));
+            List<QueryOperator> rightStreams = ExchangeOperator.repartition(
+                    this.parallelScans(this.joinTableNames.get(i)),
+                    Collections.singletonList(rightColumnName));
+            streams = new ArrayList<>();
+            for (int p = 0; p < this.parallelism; p++) {
+                streams.add(new HybridHashJoinOperator(leftStreams.get(p), rightStreams.get(p),
+                                                       leftColumnName, rightColumnName,
+                                                       this.transaction, numBuffers));
             }
+        }
+
+        if (!this.selectColumnNames.isEmpty()) {
+            for (int p = 0; p < this.parallelism; p++) {
+                streams.set(p, new SelectOperator(streams.get(p), this.selectColumnNames,
+                                                  this.selectOperators, this.selectDataBoxes));
+            }
+        }
+
+        if (!this.groupByColumns.isEmpty() || !this.aggregates.isEmpty()) {
+            for (int p = 0; p < this.parallelism; p++) {
+                streams.set(p, new HashAggregateOperator(streams.get(p), this.transaction,
+                            this.groupByColumns, this.projectColumns, this.aggregates,
+                            HashAggregateOperator.Phase.PARTIAL, numBuffers));
+            }
+        }
 
-            GroupByOperator groupByOperator = new GroupByOperator(this.finalOperator, this.transaction,
-                    this.groupByColumn);
+        if (!this.groupByColumns.isEmpty()) {
+            streams = ExchangeOperator.repartition(streams, this.groupByColumns);
+            for (int p = 0; p < this.parallelism; p++) {
+                streams.set(p, new HashAggregateOperator(streams.get(p), this.transaction,
+                            this.groupByColumns, this.projectColumns, this.aggregates,
+                            HashAggregateOperator.Phase.FINAL, numBuffers));
+            }
+            this.finalOperator = new ExchangeOperator(streams);
+        } else if (!this.aggregates.isEmpty()) {
+            this.finalOperator = new HashAggregateOperator(new ExchangeOperator(streams),
+                    this.transaction, this.groupByColumns, this.projectColumns, this.aggregates,
+                    HashAggregateOperator.Phase.FINAL, this.transaction.getNumMemoryPages());
+        } else {
+            if (!this.projectColumns.isEmpty()) {
+                for (int p = 0; p < this.parallelism; p++) {
+                    streams.set(p, new ProjectOperator(streams.get(p), this.projectColumns,
+                                                       false, null, null));
+                }
+            }
+            this.finalOperator = new ExchangeOperator(streams);
+        }
+    }
 
-            this.finalOperator = groupByOperator;
+    /**
+     * Returns this.parallelism scans that each read a partition of table.
+     */
+    private List<QueryOperator> parallelScans(String table) throws QueryPlanException,
+        DatabaseException {
+        List<QueryOperator> scans = new ArrayList<>();
+        for (int p = 0; p < this.parallelism; p++) {
+            scans.add(new SequentialScanOperator(this.transaction, table, p, this.parallelism));
         }
+        return scans;
     }
 
     private void addProjects() throws QueryPlanException, DatabaseException {
-        if (!this.projectColumns.isEmpty() || this.hasCount || this.sumColumnName != null
-                || this.averageColumnName != null) {
+        if (this.groupByColumns.isEmpty() && this.aggregates.isEmpty() &&
+                !this.projectColumns.isEmpty()) {
             ProjectOperator projectOperator = new ProjectOperator(this.finalOperator, this.projectColumns,
-                    this.hasCount, this.averageColumnName, this.sumColumnName);
+                    false, null, null);
 
             this.finalOperator = projectOperator;
         }
@@ -487,4 +1030,42 @@ public class QueryPlan {
         DatabaseException, QueryPlanException {
         return Collections.emptyMap();
     }
+
+    /**
+     * A range of values of a column. An empty bound leaves the range unbounded
+     * on that side.
+     */
+    private static class Range {
+        private Optional<DataBox> lo = Optional.empty();
+        private boolean loInclusive = true;
+        private Optional<DataBox> hi = Optional.empty();
+        private boolean hiInclusive = true;
+    }
+
+    /**
+     * The SELECT predicates that a composite index on columns answers: one
+     * equality predicate on each of its first prefixIndices.size() columns,
+     * followed by the range predicates on the next column, if any.
+     */
+    private static class CompositeIndexMatch {
+        private List<String> columns;
+        private List<Integer> prefixIndices = new ArrayList<>();
+        private List<Integer> rangeIndices = new ArrayList<>();
+
+        private CompositeIndexMatch(List<String> columns) {
+            this.columns = columns;
+        }
+
+        /** Returns the number of columns of the index with a predicate. */
+        private int getNumColumns() {
+            return this.prefixIndices.size() + (this.rangeIndices.isEmpty() ? 0 : 1);
+        }
+
+        /** Returns the indices of all of the predicates answered. */
+        private List<Integer> getSelectIndices() {
+            List<Integer> indices = new ArrayList<>(this.prefixIndices);
+            indices.addAll(this.rangeIndices);
+            return indices;
+        }
+    }
 }
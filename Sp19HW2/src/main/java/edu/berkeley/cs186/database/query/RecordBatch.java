@@ -0,0 +1,95 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * A batch of records passed between operators by a BatchIterator. The records
+ * are kept in an array, so an operator can process a whole batch in a tight
+ * loop:
+ *
+ *   for (int i = 0; i < batch.size(); i++) {
+ *       Record record = batch.get(i);
+ *       ...
+ *   }
+ *
+ * An operator usually reuses a single batch for its output, clearing and
+ * refilling it on every call to nextBatch.
+ */
+public class RecordBatch implements Iterable<Record> {
+    public static final int DEFAULT_SIZE = 1024;
+
+    private Record[] records;
+    private int size = 0;
+
+    public RecordBatch() {
+        this(DEFAULT_SIZE);
+    }
+
+    public RecordBatch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("A batch must hold at least one record.");
+        }
+        this.records = new Record[capacity];
+    }
+
+    /**
+     * Adds record to the end of the batch, which must not be full.
+     */
+    public void add(Record record) {
+        if (this.isFull()) {
+            throw new IllegalStateException("The batch is full.");
+        }
+        this.records[this.size++] = record;
+    }
+
+    public Record get(int i) {
+        if (i < 0 || i >= this.size) {
+            throw new IndexOutOfBoundsException("Index " + i + " of a batch of " + this.size);
+        }
+        return this.records[i];
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.records.length;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean isFull() {
+        return this.size == this.records.length;
+    }
+
+    public void clear() {
+        // Drop the references, so that the records can be collected.
+        for (int i = 0; i < this.size; i++) {
+            this.records[i] = null;
+        }
+        this.size = 0;
+    }
+
+    public Iterator<Record> iterator() {
+        return new Iterator<Record>() {
+            private int next = 0;
+
+            public boolean hasNext() {
+                return this.next < RecordBatch.this.size;
+            }
+
+            public Record next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return RecordBatch.this.records[this.next++];
+            }
+        };
+    }
+}
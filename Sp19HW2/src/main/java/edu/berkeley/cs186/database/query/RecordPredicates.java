@@ -0,0 +1,128 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * Compiles SELECT predicates into evaluators over records. The column, the
+ * comparison, and the value of a predicate are all resolved once, when it is
+ * compiled, rather than on every record: the evaluator of `T.int < 5` reads the
+ * int out of the record with Record.getInt and compares it with 5, without
+ * going through DataBox.compareTo or deciding which comparison to make.
+ *
+ * Predicates over INT and FLOAT columns get such specialized evaluators;
+ * predicates over other columns compare DataBoxes, as SelectOperator used to.
+ */
+class RecordPredicates {
+    private RecordPredicates() {}
+
+    /**
+     * Returns an evaluator of `column operator value`, where the column is at
+     * columnIndex in the records and has type columnType.
+     */
+    static Predicate<Record> compile(int columnIndex, Type columnType,
+                                     QueryPlan.PredicateOperator operator, DataBox value) {
+        if (columnType.getTypeId() == TypeId.INT && value instanceof IntDataBox) {
+            return compileInt(columnIndex, operator, value.getInt());
+        }
+        if (columnType.getTypeId() == TypeId.FLOAT && value instanceof FloatDataBox) {
+            return compileFloat(columnIndex, operator, value.getFloat());
+        }
+        return compileDataBox(columnIndex, operator, value);
+    }
+
+    /**
+     * Returns an evaluator of the conjunction of predicates, which evaluates
+     * them in order and stops at the first one that fails.
+     */
+    static Predicate<Record> and(List<Predicate<Record>> predicates) {
+        switch (predicates.size()) {
+        case 0:
+            return r -> true;
+        case 1:
+            return predicates.get(0);
+        case 2:
+            Predicate<Record> first = predicates.get(0);
+            Predicate<Record> second = predicates.get(1);
+            return r -> first.test(r) && second.test(r);
+        default:
+            List<Predicate<Record>> all = new ArrayList<>(predicates);
+            return r -> {
+                for (Predicate<Record> predicate : all) {
+                    if (!predicate.test(r)) {
+                        return false;
+                    }
+                }
+                return true;
+            };
+        }
+    }
+
+    private static Predicate<Record> compileInt(int i, QueryPlan.PredicateOperator operator, int v) {
+        switch (operator) {
+        case EQUALS:
+            return r -> r.getInt(i) == v;
+        case NOT_EQUALS:
+            return r -> r.getInt(i) != v;
+        case LESS_THAN:
+            return r -> r.getInt(i) < v;
+        case LESS_THAN_EQUALS:
+            return r -> r.getInt(i) <= v;
+        case GREATER_THAN:
+            return r -> r.getInt(i) > v;
+        case GREATER_THAN_EQUALS:
+            return r -> r.getInt(i) >= v;
+        default:
+            return r -> false;
+        }
+    }
+
+    // Matches FloatDataBox: equality is ==, and order is Float.compare.
+    private static Predicate<Record> compileFloat(int i, QueryPlan.PredicateOperator operator,
+            float v) {
+        switch (operator) {
+        case EQUALS:
+            return r -> r.getFloat(i) == v;
+        case NOT_EQUALS:
+            return r -> r.getFloat(i) != v;
+        case LESS_THAN:
+            return r -> Float.compare(r.getFloat(i), v) < 0;
+        case LESS_THAN_EQUALS:
+            return r -> Float.compare(r.getFloat(i), v) <= 0;
+        case GREATER_THAN:
+            return r -> Float.compare(r.getFloat(i), v) > 0;
+        case GREATER_THAN_EQUALS:
+            return r -> Float.compare(r.getFloat(i), v) >= 0;
+        default:
+            return r -> false;
+        }
+    }
+
+    private static Predicate<Record> compileDataBox(int i, QueryPlan.PredicateOperator operator,
+            DataBox v) {
+        switch (operator) {
+        case EQUALS:
+            return r -> r.getValue(i).equals(v);
+        case NOT_EQUALS:
+            return r -> !r.getValue(i).equals(v);
+        case LESS_THAN:
+            return r -> r.getValue(i).compareTo(v) < 0;
+        case LESS_THAN_EQUALS:
+            return r -> r.getValue(i).compareTo(v) <= 0;
+        case GREATER_THAN:
+            return r -> r.getValue(i).compareTo(v) > 0;
+        case GREATER_THAN_EQUALS:
+            return r -> r.getValue(i).compareTo(v) >= 0;
+        default:
+            return r -> false;
+        }
+    }
+}
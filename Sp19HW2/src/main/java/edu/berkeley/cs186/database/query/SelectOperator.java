@@ -1,7 +1,11 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Predicate;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
@@ -10,11 +14,18 @@ import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
+/**
+ * Returns the records of its source that satisfy every one of its predicates.
+ * The predicates are compiled (see RecordPredicates) into a single evaluator
+ * when the operator is created, so a conjunction of predicates is checked in
+ * one operator rather than in a chain of SelectOperators.
+ */
 public class SelectOperator extends QueryOperator {
-    private int columnIndex;
-    private String columnName;
-    private QueryPlan.PredicateOperator operator;
-    private DataBox value;
+    private List<Integer> columnIndices;
+    private List<String> columnNames;
+    private List<QueryPlan.PredicateOperator> operators;
+    private List<DataBox> values;
+    private Predicate<Record> predicate;
 
     /**
      * Creates a new SelectOperator that pulls from source and only returns tuples for which the
@@ -30,12 +41,48 @@ public class SelectOperator extends QueryOperator {
                           String columnName,
                           QueryPlan.PredicateOperator operator,
                           DataBox value) throws QueryPlanException {
-        super(OperatorType.SELECT, source);
-        this.operator = operator;
-        this.value = value;
+        this(source, Collections.singletonList(columnName), Collections.singletonList(operator),
+             Collections.singletonList(value));
+    }
 
-        this.columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnName);
-        this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(this.columnName);
+    /**
+     * Creates a new SelectOperator that pulls from source and only returns tuples for which all
+     * of the predicates are satisfied. Predicate i compares the column columnNames[i] to
+     * values[i] with operators[i].
+     *
+     * @param source the source of this operator
+     * @param columnNames the names of the columns to evaluate the predicates on
+     * @param operators the actual comparators
+     * @param values the values to compare against
+     * @throws QueryPlanException
+     */
+    public SelectOperator(QueryOperator source,
+                          List<String> columnNames,
+                          List<QueryPlan.PredicateOperator> operators,
+                          List<DataBox> values) throws QueryPlanException {
+        super(OperatorType.SELECT, source);
+        if (columnNames.isEmpty() || columnNames.size() != operators.size() ||
+                columnNames.size() != values.size()) {
+            throw new QueryPlanException("A selection needs a column, an operator and a value for " +
+                                         "each of its predicates.");
+        }
+        this.operators = new ArrayList<>(operators);
+        this.values = new ArrayList<>(values);
+
+        Schema schema = this.getOutputSchema();
+        this.columnNames = new ArrayList<>();
+        this.columnIndices = new ArrayList<>();
+        List<Predicate<Record>> predicates = new ArrayList<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            String columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnNames.get(i));
+            int columnIndex = schema.getFieldNames().indexOf(columnName);
+            this.columnNames.add(columnName);
+            this.columnIndices.add(columnIndex);
+            predicates.add(RecordPredicates.compile(columnIndex,
+                                                    schema.getFieldTypes().get(columnIndex),
+                                                    this.operators.get(i), this.values.get(i)));
+        }
+        this.predicate = RecordPredicates.and(predicates);
 
         this.stats = this.estimateStats();
         this.cost = this.estimateIOCost();
@@ -46,10 +93,19 @@ public class SelectOperator extends QueryOperator {
     }
 
     public String str() {
+        if (this.columnNames.size() == 1) {
+            return "type: " + this.getType() +
+                   "\ncolumn: " + this.columnNames.get(0) +
+                   "\noperator: " + this.operators.get(0) +
+                   "\nvalue: " + this.values.get(0);
+        }
+        StringBuilder predicates = new StringBuilder();
+        for (int i = 0; i < this.columnNames.size(); i++) {
+            predicates.append(i == 0 ? "" : " AND ").append(this.columnNames.get(i)).append(' ')
+            .append(this.operators.get(i)).append(' ').append(this.values.get(i));
+        }
         return "type: " + this.getType() +
-               "\ncolumn: " + this.columnName +
-               "\noperator: " + this.operator +
-               "\nvalue: " + this.value;
+               "\npredicates: " + predicates;
     }
 
     /**
@@ -59,9 +115,12 @@ public class SelectOperator extends QueryOperator {
      */
     public TableStats estimateStats() throws QueryPlanException {
         TableStats stats = this.getSource().getStats();
-        return stats.copyWithPredicate(this.columnIndex,
-                                       this.operator,
-                                       this.value);
+        for (int i = 0; i < this.columnIndices.size(); i++) {
+            stats = stats.copyWithPredicate(this.columnIndices.get(i),
+                                            this.operators.get(i),
+                                            this.values.get(i));
+        }
+        return stats;
     }
 
     public int estimateIOCost() throws QueryPlanException {
@@ -70,6 +129,30 @@ public class SelectOperator extends QueryOperator {
 
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new SelectIterator(); }
 
+    public BatchIterator batchIterator() throws QueryPlanException, DatabaseException {
+        BatchIterator sourceBatches = this.getSource().batchIterator();
+        MarkerRecord markerRecord = MarkerRecord.getMarker();
+        RecordBatch batch = new RecordBatch();
+        return () -> {
+            batch.clear();
+            // Keep pulling source batches until one has a match, so that an
+            // empty batch is never returned.
+            while (batch.isEmpty()) {
+                RecordBatch sourceBatch = sourceBatches.nextBatch();
+                if (sourceBatch == null) {
+                    return null;
+                }
+                for (int i = 0; i < sourceBatch.size(); i++) {
+                    Record r = sourceBatch.get(i);
+                    if (r == markerRecord || this.predicate.test(r)) {
+                        batch.add(r);
+                    }
+                }
+            }
+            return batch;
+        };
+    }
+
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
      */
@@ -99,51 +182,9 @@ public class SelectOperator extends QueryOperator {
                     this.nextRecord = r;
                     return true;
                 }
-                switch (SelectOperator.this.operator) {
-                case EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case NOT_EQUALS:
-                    if (!r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case LESS_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                case GREATER_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
-                        this.nextRecord = r;
-                        return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
-                        this.nextRecord = r;
-                        return true;
-                    }
-                    break;
-                default:
-                    break;
+                if (SelectOperator.this.predicate.test(r)) {
+                    this.nextRecord = r;
+                    return true;
                 }
             }
             return false;
@@ -1,9 +1,12 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -11,6 +14,10 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
 public class SequentialScanOperator extends QueryOperator {
     private Database.Transaction transaction;
     private String tableName;
+    // This scan reads the data pages whose index (counting from 0) modulo
+    // numPartitions is partition.
+    private int partition;
+    private int numPartitions;
 
     /**
      * Creates a new SequentialScanOperator that provides an iterator on all tuples in a table.
@@ -25,9 +32,33 @@ public class SequentialScanOperator extends QueryOperator {
      */
     public SequentialScanOperator(Database.Transaction transaction,
                                   String tableName) throws QueryPlanException, DatabaseException {
+        this(transaction, tableName, 0, 1);
+    }
+
+    /**
+     * Creates a new SequentialScanOperator that scans one of numPartitions
+     * disjoint sets of the table's data pages, so that the table can be
+     * scanned by numPartitions threads at once (see ExchangeOperator). The
+     * data pages are dealt out to the partitions in turn.
+     *
+     * @param transaction
+     * @param tableName
+     * @param partition the partition to scan, from 0 to numPartitions - 1
+     * @param numPartitions the number of partitions
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public SequentialScanOperator(Database.Transaction transaction, String tableName, int partition,
+                                  int numPartitions) throws QueryPlanException, DatabaseException {
         super(OperatorType.SEQSCAN);
+        if (partition < 0 || partition >= numPartitions) {
+            throw new QueryPlanException("Partition " + partition + " of " + numPartitions +
+                                         " does not exist.");
+        }
         this.transaction = transaction;
         this.tableName = tableName;
+        this.partition = partition;
+        this.numPartitions = numPartitions;
         this.setOutputSchema(this.computeSchema());
 
         this.stats = this.estimateStats();
@@ -39,9 +70,20 @@ public class SequentialScanOperator extends QueryOperator {
     }
 
     public Iterator<Record> iterator() throws DatabaseException {
+        if (this.numPartitions > 1) {
+            return BatchIterator.toRecords(this.batchIterator());
+        }
         return this.transaction.getRecordIterator(tableName);
     }
 
+    /**
+     * Scans the table a page at a time, filling each batch with the records of
+     * as many pages as fit.
+     */
+    public BatchIterator batchIterator() throws DatabaseException {
+        return new PageBatchIterator();
+    }
+
     public Schema computeSchema() throws QueryPlanException {
         try {
             return this.transaction.getFullyQualifiedSchema(this.tableName);
@@ -52,7 +94,8 @@ public class SequentialScanOperator extends QueryOperator {
 
     public String str() {
         return "type: " + this.getType() +
-               "\ntable: " + this.tableName;
+               "\ntable: " + this.tableName +
+               (this.numPartitions > 1 ? "\npartition: " + this.partition + " of " + this.numPartitions : "");
     }
 
     /**
@@ -62,7 +105,8 @@ public class SequentialScanOperator extends QueryOperator {
      */
     public TableStats estimateStats() throws QueryPlanException {
         try {
-            return this.transaction.getStats(this.tableName);
+            TableStats stats = this.transaction.getStats(this.tableName);
+            return this.numPartitions > 1 ? stats.copyWithReduction(1.0f / this.numPartitions) : stats;
         } catch (DatabaseException de) {
             throw new QueryPlanException(de);
         }
@@ -70,9 +114,63 @@ public class SequentialScanOperator extends QueryOperator {
 
     public int estimateIOCost() throws QueryPlanException {
         try {
-            return this.transaction.getNumDataPages(this.tableName);
+            int numDataPages = this.transaction.getNumDataPages(this.tableName);
+            return (numDataPages + this.numPartitions - 1 - this.partition) / this.numPartitions;
         } catch (DatabaseException de) {
             throw new QueryPlanException(de);
         }
     }
+
+    /**
+     * A BatchIterator that reads the data pages of this scan's partition.
+     */
+    private class PageBatchIterator implements BatchIterator {
+        private Iterator<Page> pages;
+        // The index of the next data page, counting from 0.
+        private int pageIndex = 0;
+        // The records of the last page read that did not fit in the last batch.
+        private Deque<Record> pending = new ArrayDeque<>();
+        private RecordBatch batch = new RecordBatch();
+
+        PageBatchIterator() throws DatabaseException {
+            this.pages = transaction.getPageIterator(tableName);
+            if (this.pages.hasNext()) {
+                this.pages.next(); // Skip the header page.
+            }
+        }
+
+        public RecordBatch nextBatch() {
+            this.batch.clear();
+            while (!this.batch.isFull()) {
+                if (this.pending.isEmpty()) {
+                    Page page = this.nextPage();
+                    if (page == null) {
+                        break;
+                    }
+                    try {
+                        this.pending.addAll(transaction.getPageRecords(tableName, page));
+                    } catch (DatabaseException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    continue;
+                }
+                this.batch.add(this.pending.poll());
+            }
+            return this.batch.isEmpty() ? null : this.batch;
+        }
+
+        /**
+         * Returns the next data page of this partition, or null if there are
+         * none left.
+         */
+        private Page nextPage() {
+            while (this.pages.hasNext()) {
+                Page page = this.pages.next();
+                if (this.pageIndex++ % numPartitions == partition) {
+                    return page;
+                }
+            }
+            return null;
+        }
+    }
 }
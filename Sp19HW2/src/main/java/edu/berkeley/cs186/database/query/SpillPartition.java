@@ -0,0 +1,44 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordIdBitmap;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A partition of records that a hash-based operator spilled to a temporary
+ * table because they did not fit in memory. The partition remembers the
+ * record ids of its records, so it is read back with a bitmap heap scan, one
+ * page at a time.
+ */
+class SpillPartition {
+    private Database.Transaction transaction;
+    private String tempTableName;
+    private RecordIdBitmap recordIds = new RecordIdBitmap();
+    private int numRecords = 0;
+
+    SpillPartition(Database.Transaction transaction, Schema schema) throws DatabaseException {
+        this.transaction = transaction;
+        this.tempTableName = transaction.createTempTable(schema);
+    }
+
+    void addRecord(Record record) throws DatabaseException {
+        this.recordIds.add(this.transaction.addRecord(this.tempTableName, record.getValues()));
+        this.numRecords++;
+    }
+
+    int getNumRecords() {
+        return this.numRecords;
+    }
+
+    Iterator<Record> iterator() throws DatabaseException {
+        return this.transaction.bitmapHeapScan(this.tempTableName, this.recordIds);
+    }
+
+    void delete() {
+        this.transaction.deleteTempTable(this.tempTableName);
+    }
+}
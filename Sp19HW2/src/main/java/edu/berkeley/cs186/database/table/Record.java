@@ -20,6 +20,19 @@ public class Record {
         return this.values;
     }
 
+    /** Returns field i of this record. */
+    public DataBox getValue(int i) {
+        return this.values.get(i);
+    }
+
+    public int getInt(int i) {
+        return this.values.get(i).getInt();
+    }
+
+    public float getFloat(int i) {
+        return this.values.get(i).getFloat();
+    }
+
     public byte[] toBytes(Schema schema) {
         ByteBuffer byteBuffer = ByteBuffer.allocate(schema.getSizeInBytes());
         for (DataBox value : values) {
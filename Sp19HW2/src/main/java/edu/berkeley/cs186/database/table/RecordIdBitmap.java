@@ -0,0 +1,144 @@
+package edu.berkeley.cs186.database.table;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * A set of record ids of a table, kept as one bitmap of entry numbers per
+ * data page, in order of page number:
+ *
+ *   RecordIdBitmap bitmap = new RecordIdBitmap();
+ *   bitmap.add(new RecordId(3, (short) 1));
+ *   bitmap.add(new RecordId(1, (short) 7));
+ *   bitmap.add(new RecordId(3, (short) 0));
+ *   bitmap.getPageNums();  // [1, 3]
+ *   bitmap.getEntries(3);  // {0, 1}
+ *   bitmap.iterator();     // (1, 7), (3, 0), (3, 1)
+ *
+ * Record ids read from an unclustered index come in order of key, not of
+ * page, so fetching their records one at a time reads pages in random order
+ * and reads a page once per matching record on it. Collecting the record ids
+ * into a bitmap first lets us read every page once, in order (see
+ * Table.getRecords). Bitmaps collected from different indexes can be
+ * intersected and unioned without touching the table.
+ */
+public class RecordIdBitmap implements Iterable<RecordId> {
+    private TreeMap<Integer, BitSet> pages = new TreeMap<>();
+
+    public void add(RecordId rid) {
+        this.pages.computeIfAbsent(rid.getPageNum(), p -> new BitSet()).set(rid.getEntryNum());
+    }
+
+    public boolean contains(RecordId rid) {
+        BitSet entries = this.pages.get(rid.getPageNum());
+        return entries != null && entries.get(rid.getEntryNum());
+    }
+
+    /** Returns the page numbers of the record ids, in ascending order. */
+    public Iterable<Integer> getPageNums() {
+        return this.pages.keySet();
+    }
+
+    /** Returns the entry numbers of the record ids on page pageNum. */
+    public BitSet getEntries(int pageNum) {
+        BitSet entries = this.pages.get(pageNum);
+        return entries == null ? new BitSet() : (BitSet) entries.clone();
+    }
+
+    public int getNumPages() {
+        return this.pages.size();
+    }
+
+    public int getNumRecords() {
+        int numRecords = 0;
+        for (BitSet entries : this.pages.values()) {
+            numRecords += entries.cardinality();
+        }
+        return numRecords;
+    }
+
+    /** Returns the record ids that are in both this bitmap and other. */
+    public RecordIdBitmap intersect(RecordIdBitmap other) {
+        RecordIdBitmap result = new RecordIdBitmap();
+        for (Map.Entry<Integer, BitSet> page : this.pages.entrySet()) {
+            BitSet otherEntries = other.pages.get(page.getKey());
+            if (otherEntries == null) {
+                continue;
+            }
+            BitSet entries = (BitSet) page.getValue().clone();
+            entries.and(otherEntries);
+            if (!entries.isEmpty()) {
+                result.pages.put(page.getKey(), entries);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the record ids that are in this bitmap, other, or both. */
+    public RecordIdBitmap union(RecordIdBitmap other) {
+        RecordIdBitmap result = new RecordIdBitmap();
+        for (Map.Entry<Integer, BitSet> page : this.pages.entrySet()) {
+            result.pages.put(page.getKey(), (BitSet) page.getValue().clone());
+        }
+        for (Map.Entry<Integer, BitSet> page : other.pages.entrySet()) {
+            result.pages.computeIfAbsent(page.getKey(), p -> new BitSet()).or(page.getValue());
+        }
+        return result;
+    }
+
+    /** Returns the record ids in ascending order. */
+    @Override
+    public Iterator<RecordId> iterator() {
+        return new Iterator<RecordId>() {
+            private Iterator<Map.Entry<Integer, BitSet>> pageIterator = pages.entrySet().iterator();
+            private Map.Entry<Integer, BitSet> page = null;
+            private int entryNum = -1;
+
+            @Override
+            public boolean hasNext() {
+                while (this.entryNum < 0) {
+                    if (!this.pageIterator.hasNext()) {
+                        return false;
+                    }
+                    this.page = this.pageIterator.next();
+                    this.entryNum = this.page.getValue().nextSetBit(0);
+                }
+                return true;
+            }
+
+            @Override
+            public RecordId next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                RecordId rid = new RecordId(this.page.getKey(), (short) this.entryNum);
+                this.entryNum = this.page.getValue().nextSetBit(this.entryNum + 1);
+                return rid;
+            }
+        };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof RecordIdBitmap)) {
+            return false;
+        }
+        return this.pages.equals(((RecordIdBitmap) o).pages);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.pages.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "RecordIdBitmap" + this.pages;
+    }
+}
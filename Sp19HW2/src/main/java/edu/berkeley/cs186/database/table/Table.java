@@ -9,6 +9,8 @@ import edu.berkeley.cs186.database.common.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
@@ -332,6 +334,50 @@ public class Table implements Closeable {
         return Record.fromBytes(buf, schema);
     }
 
+    /**
+     * Returns the records stored on data page `page`, paired with their record
+     * ids, in order of entry number. The page is read with a single copy and
+     * the table is not locked, so different threads can read different pages of
+     * the table at once, as long as no thread is modifying the table.
+     */
+    public List<Pair<RecordId, Record>> getPageRecords(BaseTransaction transaction, Page page) {
+        BitSet entries = new BitSet(numRecordsPerPage);
+        entries.set(0, numRecordsPerPage);
+        return getPageRecords(transaction, page, entries);
+    }
+
+    /**
+     * Returns the records stored on data page `pageNum` whose entry numbers
+     * are in `entries`, paired with their record ids, in order of entry
+     * number. Entries that hold no record are skipped. Like getPageRecords,
+     * the page is read once, however many records are returned.
+     */
+    public List<Pair<RecordId, Record>> getRecords(BaseTransaction transaction, int pageNum,
+            BitSet entries) throws DatabaseException {
+        if (pageNum == 0) {
+            throw new DatabaseException("Page 0 is a header page, not a data page.");
+        }
+        return getPageRecords(transaction, allocator.fetchPage(transaction, pageNum), entries);
+    }
+
+    private List<Pair<RecordId, Record>> getPageRecords(BaseTransaction transaction, Page page,
+            BitSet entries) {
+        Buffer buf = ByteBuffer.wrap(page.readBytes(transaction));
+        byte[] bitmap = new byte[bitmapSizeInBytes];
+        buf.get(bitmap);
+
+        List<Pair<RecordId, Record>> records = new ArrayList<>();
+        for (int i = entries.nextSetBit(0); i >= 0 && i < numRecordsPerPage;
+                i = entries.nextSetBit(i + 1)) {
+            if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
+                buf.position(bitmapSizeInBytes + (i * schema.getSizeInBytes()));
+                RecordId rid = new RecordId(page.getPageNum(), (short) i);
+                records.add(new Pair<>(rid, Record.fromBytes(buf, schema)));
+            }
+        }
+        return records;
+    }
+
     /**
      * Overwrites an existing record with new values and returns the existing
      * record. stats is updated accordingly. An exception is thrown if rid does
@@ -467,6 +513,14 @@ public class Table implements Closeable {
         return new RecordIterator(transaction, this, ridIterator(transaction));
     }
 
+    /**
+     * Returns the records whose record ids are in bitmap, in order of record
+     * id, reading each of their pages once (see getRecords).
+     */
+    public Iterator<Record> bitmapIterator(BaseTransaction transaction, RecordIdBitmap bitmap) {
+        return new BitmapRecordIterator(transaction, bitmap);
+    }
+
     public BacktrackingIterator<Record> blockIterator(BaseTransaction transaction, Page[] block) {
         return new RecordIterator(transaction, this, new RIDBlockIterator(transaction, block));
     }
@@ -683,6 +737,45 @@ public class Table implements Closeable {
         }
     }
 
+    /**
+     * BitmapRecordIterator is an Iterator over the records of a RecordIdBitmap.
+     * It reads one page of the bitmap at a time.
+     */
+    private class BitmapRecordIterator implements Iterator<Record> {
+        private BaseTransaction transaction;
+        private RecordIdBitmap bitmap;
+        private Iterator<Integer> pageNums;
+        private Iterator<Pair<RecordId, Record>> pageRecords = Collections.emptyIterator();
+
+        BitmapRecordIterator(BaseTransaction transaction, RecordIdBitmap bitmap) {
+            this.transaction = transaction;
+            this.bitmap = bitmap;
+            this.pageNums = bitmap.getPageNums().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!this.pageRecords.hasNext() && this.pageNums.hasNext()) {
+                int pageNum = this.pageNums.next();
+                try {
+                    this.pageRecords = getRecords(this.transaction, pageNum,
+                                                  this.bitmap.getEntries(pageNum)).iterator();
+                } catch (DatabaseException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return this.pageRecords.hasNext();
+        }
+
+        @Override
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.pageRecords.next().getSecond();
+        }
+    }
+
     /* ******************************************************************************** */
     /* Every that follows is solely for the purpose of testing certain homeworks without
        requiring that previous homeworks be properly implemented. You should not change anything
@@ -177,6 +177,34 @@ public class TableStats {
         return new TableStats(this.tableSchema, numRecords, copyHistograms);
     }
 
+    /**
+     * Estimates the table statistics for the table that would be produced after
+     * keeping a fraction reductionFactor of the records of this table, chosen
+     * independently of their values, e.g. by predicates on several columns
+     * whose combined reduction factor is reductionFactor.
+     */
+    public TableStats copyWithReduction(float reductionFactor) {
+        List<Histogram> copyHistograms = new ArrayList<>();
+        for (Histogram histogram : histograms) {
+            copyHistograms.add(histogram.copyWithReduction(reductionFactor));
+        }
+        int numRecords = Math.round(this.numRecords * reductionFactor);
+        return new TableStats(this.tableSchema, numRecords, copyHistograms);
+    }
+
+    /**
+     * Estimates the table statistics for the table that would be produced after
+     * keeping only the columns `columns` of this table, in that order. The
+     * resulting table has schema `schema` and the same number of records.
+     */
+    public TableStats copyWithProjection(Schema schema, List<Integer> columns) {
+        List<Histogram> copyHistograms = new ArrayList<>();
+        for (int column : columns) {
+            copyHistograms.add(histograms.get(column));
+        }
+        return new TableStats(schema, this.numRecords, copyHistograms);
+    }
+
     /**
      * Creates a new TableStats which is the statistics for the table
      * that results from this TableStats joined with the given TableStats.
@@ -13,6 +13,28 @@ import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.index.BPlusTree;
+import edu.berkeley.cs186.database.index.BPlusTreeStats;
+import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.query.BitmapHeapScanOperator;
+import edu.berkeley.cs186.database.query.IndexScanOperator;
+import edu.berkeley.cs186.database.query.QueryOperator;
+import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+import edu.berkeley.cs186.database.query.QueryPlanException;
 
 @Category({HW99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -64,6 +86,515 @@ public class TestDatabase {
         t1.end();
     }
 
+    @Test
+    public void testIndexRangeSelect() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("int"));
+        for (int i = 0; i < 100; ++i) {
+            Record r = TestUtils.createRecordWithAllTypes();
+            r.getValues().set(1, new IntDataBox(i));
+            t1.addRecord(tableName, r.getValues());
+        }
+        db.getTable(tableName).buildStatistics(t1, 10);
+        t1.end();
+
+        // The predicates on int are combined into one scan of [10, 20).
+        Database.Transaction t2 = db.beginTransaction();
+        QueryPlan query = t2.query(tableName);
+        query.select("int", PredicateOperator.GREATER_THAN, new IntDataBox(5));
+        query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(20));
+        query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(10));
+        query.select("int", PredicateOperator.LESS_THAN_EQUALS, new IntDataBox(30));
+        Iterator<Record> records = query.execute();
+
+        assertTrue(query.getFinalOperator().toString().contains("range: [10, 20)"));
+        for (int i = 10; i < 20; ++i) {
+            assertTrue(records.hasNext());
+            assertEquals(new IntDataBox(i), records.next().getValues().get(1));
+        }
+        assertFalse(records.hasNext());
+        t2.end();
+    }
+
+    @Test
+    public void testCreateIndex() throws DatabaseException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        // Enough records for pass 0 to produce more runs than can be merged at
+        // once, inserted in a shuffled order.
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 10000; ++i) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(42));
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+        for (int key : keys) {
+            Record r = TestUtils.createRecordWithAllTypes();
+            r.getValues().set(1, new IntDataBox(key));
+            t1.addRecord(tableName, r.getValues());
+        }
+        t1.createIndex(tableName, "int", 0.75f);
+        assertTrue(t1.indexExists(tableName, "int"));
+
+        Iterator<Record> records = t1.sortedScan(tableName, "int");
+        for (int i = 0; i < 10000; ++i) {
+            assertTrue(records.hasNext());
+            assertEquals(new IntDataBox(i), records.next().getValues().get(1));
+        }
+        assertFalse(records.hasNext());
+
+        // The index is maintained like any other once it has been built.
+        Record r = TestUtils.createRecordWithAllTypes();
+        r.getValues().set(1, new IntDataBox(-1));
+        t1.addRecord(tableName, r.getValues());
+        assertTrue(t1.contains(tableName, "int", new IntDataBox(-1)));
+        assertTrue(t1.contains(tableName, "int", new IntDataBox(9999)));
+        t1.end();
+    }
+
+    @Test
+    public void testCreateIndexErrors() throws DatabaseException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+
+        try {
+            t1.createIndex(tableName, "nonexistent");
+            fail();
+        } catch (DatabaseException e) {
+            // The column does not exist.
+        }
+
+        t1.createTableWithIndices(s, "testTable2", Arrays.asList("int"));
+        try {
+            t1.createIndex("testTable2", "int");
+            fail();
+        } catch (DatabaseException e) {
+            // The index already exists.
+        }
+
+        try {
+            t1.createIndex(tableName, "int", Arrays.asList("nonexistent"));
+            fail();
+        } catch (DatabaseException e) {
+            // The included column does not exist.
+        }
+
+        try {
+            t1.createIndex(tableName, "int", Arrays.asList("int"));
+            fail();
+        } catch (DatabaseException e) {
+            // The indexed column can't also be included.
+        }
+        t1.end();
+    }
+
+    @Test
+    public void testDuplicateKeys() throws DatabaseException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+
+        // Every key appears twice in the indexed table and three times in the
+        // table indexed afterwards.
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, "testTable1", Arrays.asList("int"));
+        t1.createTable(s, "testTable2");
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 150; ++i) {
+            Record r = TestUtils.createRecordWithAllTypes();
+            r.getValues().set(1, new IntDataBox(i % 50));
+            if (i < 100) {
+                rids.add(t1.addRecord("testTable1", r.getValues()));
+            }
+            t1.addRecord("testTable2", r.getValues());
+        }
+        t1.createIndex("testTable2", "int");
+
+        Iterator<Record> records = t1.lookupKey("testTable1", "int", new IntDataBox(7));
+        for (int i = 0; i < 2; ++i) {
+            assertTrue(records.hasNext());
+            assertEquals(new IntDataBox(7), records.next().getValues().get(1));
+        }
+        assertFalse(records.hasNext());
+
+        records = t1.lookupKey("testTable2", "int", new IntDataBox(7));
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(records.hasNext());
+            assertEquals(new IntDataBox(7), records.next().getValues().get(1));
+        }
+        assertFalse(records.hasNext());
+
+        // Deleting a record only removes its own entry from the index.
+        t1.deleteRecord("testTable1", rids.get(7));
+        records = t1.lookupKey("testTable1", "int", new IntDataBox(7));
+        assertTrue(records.hasNext());
+        records.next();
+        assertFalse(records.hasNext());
+        t1.deleteRecord("testTable1", rids.get(57));
+        assertFalse(t1.contains("testTable1", "int", new IntDataBox(7)));
+        t1.end();
+    }
+
+    @Test
+    public void testIndexOnlyScan() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            Record r = TestUtils.createRecordWithAllTypes();
+            r.getValues().set(1, new IntDataBox(i));
+            r.getValues().set(3, new FloatDataBox(i / 2.0f));
+            rids.add(t1.addRecord(tableName, r.getValues()));
+        }
+        t1.createIndex(tableName, "int", Arrays.asList("float"));
+        assertEquals(Arrays.asList("float"), t1.getIndexIncludedColumns(tableName, "int"));
+
+        // The included values are kept up to date as records change.
+        Record r = TestUtils.createRecordWithAllTypes();
+        r.getValues().set(1, new IntDataBox(15));
+        r.getValues().set(3, new FloatDataBox(-1.0f));
+        t1.updateRecord(tableName, r.getValues(), rids.get(15));
+        t1.deleteRecord(tableName, rids.get(16));
+        db.getTable(tableName).buildStatistics(t1, 10);
+        t1.end();
+
+        // A query reading only int and float is answered from the index alone.
+        Database.Transaction t2 = db.beginTransaction();
+        QueryPlan query = t2.query(tableName);
+        query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(10));
+        query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(20));
+        query.project(Arrays.asList("float", "int"));
+        Iterator<Record> records = query.execute();
+
+        assertTrue(query.getFinalOperator().getSource().isIndexOnlyScan());
+        for (int i = 10; i < 20; ++i) {
+            if (i == 16) {
+                continue;
+            }
+            float f = i == 15 ? -1.0f : i / 2.0f;
+            assertTrue(records.hasNext());
+            assertEquals(Arrays.asList(new FloatDataBox(f), new IntDataBox(i)),
+                         records.next().getValues());
+        }
+        assertFalse(records.hasNext());
+
+        // A query reading other columns still fetches the records.
+        query = t2.query(tableName);
+        query.select("int", PredicateOperator.EQUALS, new IntDataBox(15));
+        query.project(Arrays.asList("string"));
+        query.execute();
+        assertTrue(query.getFinalOperator().getSource().isIndexScan());
+        t2.end();
+    }
+
+    @Test
+    public void testCompositeIndex() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i);
+            r.getValues().set(1, new IntDataBox(i % 5));
+            rids.add(t1.addRecord(tableName, r.getValues()));
+        }
+        t1.createCompositeIndex(tableName, Arrays.asList("int", "float"));
+        assertEquals(Collections.singletonList(Arrays.asList("int", "float")),
+                     t1.getCompositeIndices(tableName));
+
+        // The index is kept up to date as records change.
+        Record r = TestUtils.createRecordWithAllTypesWithValue(43);
+        r.getValues().set(1, new IntDataBox(2));
+        t1.updateRecord(tableName, r.getValues(), rids.get(43));
+        t1.deleteRecord(tableName, rids.get(47));
+        db.getTable(tableName).buildStatistics(t1, 10);
+        t1.end();
+
+        // The index answers an equality predicate on int together with range
+        // predicates on float.
+        Database.Transaction t2 = db.beginTransaction();
+        QueryPlan query = t2.query(tableName);
+        query.select("int", PredicateOperator.EQUALS, new IntDataBox(2));
+        query.select("float", PredicateOperator.GREATER_THAN, new FloatDataBox(20));
+        query.select("float", PredicateOperator.LESS_THAN_EQUALS, new FloatDataBox(62));
+        query.select("bool", PredicateOperator.EQUALS, new BoolDataBox(true));
+        Iterator<Record> records = query.execute();
+
+        assertTrue(query.getFinalOperator().getSource().isIndexScan());
+        for (int i : Arrays.asList(22, 27, 32, 37, 42, 43, 52, 57, 62)) {
+            assertTrue(records.hasNext());
+            assertEquals(new FloatDataBox(i), records.next().getValues().get(3));
+        }
+        assertFalse(records.hasNext());
+
+        // A prefix of the columns can be looked up on its own.
+        records = t2.sortedScanPrefix(tableName, Arrays.asList("int", "float"),
+                                      Collections.singletonList(new IntDataBox(4)),
+                                      Optional.empty(), true, Optional.empty(), true);
+        for (int i = 4; i < 100; i += 5) {
+            assertTrue(records.hasNext());
+            assertEquals(new FloatDataBox(i), records.next().getValues().get(3));
+        }
+        assertFalse(records.hasNext());
+        t2.end();
+
+        // The index is reopened with the database.
+        db.close();
+        db = new Database(this.filename);
+        Database.Transaction t3 = db.beginTransaction();
+        assertEquals(Collections.singletonList(Arrays.asList("int", "float")),
+                     t3.getCompositeIndices(tableName));
+        records = t3.sortedScanPrefix(tableName, Arrays.asList("int", "float"),
+                                      Collections.singletonList(new IntDataBox(2)),
+                                      Optional.of(new FloatDataBox(43)), true,
+                                      Optional.of(new FloatDataBox(43)), true);
+        assertTrue(records.hasNext());
+        assertEquals(r, records.next());
+        assertFalse(records.hasNext());
+        t3.end();
+    }
+
+    // The float columns of records, which must be whole numbers, in ascending order.
+    private static List<Integer> sortedFloats(Iterator<Record> records) {
+        List<Integer> floats = new ArrayList<>();
+        while (records.hasNext()) {
+            floats.add((int) records.next().getValues().get(3).getFloat());
+        }
+        Collections.sort(floats);
+        return floats;
+    }
+
+    @Test
+    public void testHashIndex() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTable(s, tableName);
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i);
+            r.getValues().set(1, new IntDataBox(i % 100));
+            rids.add(t1.addRecord(tableName, r.getValues()));
+        }
+        t1.createHashIndex(tableName, "int");
+        assertTrue(t1.hashIndexExists(tableName, "int"));
+        assertFalse(t1.indexExists(tableName, "int"));
+
+        // The index is kept up to date as records change.
+        Record r = TestUtils.createRecordWithAllTypesWithValue(1000);
+        r.getValues().set(1, new IntDataBox(7));
+        rids.add(t1.addRecord(tableName, r.getValues()));
+        r = TestUtils.createRecordWithAllTypesWithValue(107);
+        r.getValues().set(1, new IntDataBox(8));
+        t1.updateRecord(tableName, r.getValues(), rids.get(107));
+        t1.deleteRecord(tableName, rids.get(207));
+        db.getTable(tableName).buildStatistics(t1, 10);
+        t1.end();
+
+        // The index answers an equality predicate, but not a range predicate.
+        Database.Transaction t2 = db.beginTransaction();
+        QueryPlan query = t2.query(tableName);
+        query.select("int", PredicateOperator.EQUALS, new IntDataBox(7));
+        Iterator<Record> records = query.execute();
+        assertTrue(query.getFinalOperator().isIndexScan());
+        assertEquals(Arrays.asList(7, 307, 407, 507, 607, 707, 807, 907, 1000),
+                     sortedFloats(records));
+
+        query = t2.query(tableName);
+        query.select("int", PredicateOperator.GREATER_THAN, new IntDataBox(7));
+        query.execute();
+        assertFalse(query.getFinalOperator().getSource().isIndexScan());
+
+        // A lookup is costed as one bucket plus one IO per matching record.
+        QueryOperator op = new IndexScanOperator(t2, tableName, "int", PredicateOperator.EQUALS,
+                new IntDataBox(8));
+        assertTrue(op.getIOCost() <= 2 + op.getStats().getNumRecords());
+        t2.end();
+
+        // The index is reopened with the database.
+        db.close();
+        db = new Database(this.filename);
+        Database.Transaction t3 = db.beginTransaction();
+        assertTrue(t3.hashIndexExists(tableName, "int"));
+        records = t3.lookupKey(tableName, "int", new IntDataBox(8));
+        assertEquals(Arrays.asList(8, 107, 108, 208, 308, 408, 508, 608, 708, 808, 908),
+                     sortedFloats(records));
+        assertFalse(t3.contains(tableName, "int", new IntDataBox(100)));
+        t3.end();
+    }
+
+    @Test
+    public void testBitmapHeapScan() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        // Every value of int is spread over every page of the table.
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("int"));
+        for (int i = 0; i < 5000; ++i) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i);
+            r.getValues().set(1, new IntDataBox(i % 100));
+            t1.addRecord(tableName, r.getValues());
+        }
+        db.getTable(tableName).buildStatistics(t1, 10);
+        t1.end();
+
+        Database.Transaction t2 = db.beginTransaction();
+        RecordIdBitmap bitmap = t2.getRecordIdBitmap(tableName, "int",
+                                Optional.of(new IntDataBox(10)), true,
+                                Optional.of(new IntDataBox(13)), false);
+        assertEquals(150, bitmap.getNumRecords());
+        assertEquals(t2.getNumDataPages(tableName), bitmap.getNumPages());
+
+        // The records come back in order of record id, i.e. in the order they
+        // were added, and each page is read once.
+        QueryOperator op = new BitmapHeapScanOperator(t2, tableName, "int",
+                Optional.of(new IntDataBox(10)), true, Optional.of(new IntDataBox(13)), false);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; ++i) {
+            if (i % 100 >= 10 && i % 100 < 13) {
+                expected.add(i);
+            }
+        }
+        List<Integer> floats = new ArrayList<>();
+        Iterator<Record> records = op.iterator();
+        while (records.hasNext()) {
+            floats.add((int) records.next().getValues().get(3).getFloat());
+        }
+        assertEquals(expected, floats);
+
+        // Reading each page once never costs more than fetching every record,
+        // nor more than reading the index and then the whole table.
+        QueryOperator indexOp = new IndexScanOperator(t2, tableName, "int",
+                Optional.of(new IntDataBox(10)), true, Optional.of(new IntDataBox(13)), false);
+        assertTrue(op.getIOCost() <= indexOp.getIOCost());
+        assertTrue(op.getIOCost() <= t2.getNumIndexPages(tableName, "int") +
+                   t2.getNumDataPages(tableName));
+
+        QueryPlan query = t2.query(tableName);
+        query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(10));
+        query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(13));
+        assertEquals(expected, sortedFloats(query.execute()));
+        t2.end();
+    }
+
+    @Test
+    public void testIndexIntersection() throws DatabaseException, QueryPlanException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("int", "string"));
+        for (int i = 0; i < 3000; ++i) {
+            Record r = TestUtils.createRecordWithAllTypesWithValue(i);
+            r.getValues().set(1, new IntDataBox(i % 10));
+            r.getValues().set(2, new StringDataBox(Integer.toString(i % 7), 5));
+            t1.addRecord(tableName, r.getValues());
+        }
+        db.getTable(tableName).buildStatistics(t1, 10);
+        t1.end();
+
+        // int in [3, 5) AND string = "4", then int in [3, 5) OR string = "4".
+        Database.Transaction t2 = db.beginTransaction();
+        List<BitmapHeapScanOperator.IndexRange> ranges = Arrays.asList(
+                    new BitmapHeapScanOperator.IndexRange("int", Optional.of(new IntDataBox(3)), true,
+                            Optional.of(new IntDataBox(5)), false),
+                    new BitmapHeapScanOperator.IndexRange("string",
+                            Optional.of(new StringDataBox("4", 5)), true,
+                            Optional.of(new StringDataBox("4", 5)), true));
+        List<Integer> intersection = new ArrayList<>();
+        List<Integer> union = new ArrayList<>();
+        for (int i = 0; i < 3000; ++i) {
+            boolean inInt = i % 10 >= 3 && i % 10 < 5;
+            boolean inString = i % 7 == 4;
+            if (inInt && inString) {
+                intersection.add(i);
+            }
+            if (inInt || inString) {
+                union.add(i);
+            }
+        }
+
+        QueryOperator op = new BitmapHeapScanOperator(t2, tableName, ranges, false);
+        assertTrue(op.isBitmapHeapScan());
+        List<Integer> floats = new ArrayList<>();
+        Iterator<Record> records = op.iterator();
+        while (records.hasNext()) {
+            floats.add((int) records.next().getValues().get(3).getFloat());
+        }
+        assertEquals(intersection, floats);
+
+        op = new BitmapHeapScanOperator(t2, tableName, ranges, true);
+        floats.clear();
+        records = op.iterator();
+        while (records.hasNext()) {
+            floats.add((int) records.next().getValues().get(3).getFloat());
+        }
+        assertEquals(union, floats);
+
+        // Whichever indexes the planner reads, it answers every predicate.
+        QueryPlan query = t2.query(tableName);
+        query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(3));
+        query.select("string", PredicateOperator.EQUALS, new StringDataBox("4", 5));
+        query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(5));
+        assertEquals(intersection, sortedFloats(query.execute()));
+        t2.end();
+    }
+
+    @Test
+    public void testRebuildIndex() throws DatabaseException {
+        Schema s = TestUtils.createSchemaWithAllTypes();
+        String tableName = "testTable1";
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createTableWithIndices(s, tableName, Arrays.asList("int"));
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 4000; ++i) {
+            Record r = TestUtils.createRecordWithAllTypes();
+            r.getValues().set(1, new IntDataBox(i));
+            rids.add(t1.addRecord(tableName, r.getValues()));
+        }
+        int numPages = t1.getNumIndexPages(tableName, "int");
+
+        // Deleting records merges the index's leaves as they empty out.
+        for (int i = 0; i < 4000; ++i) {
+            if (i % 8 != 0) {
+                t1.deleteRecord(tableName, rids.get(i));
+            }
+        }
+        BPlusTreeStats stats = t1.getIndexStats(tableName, "int");
+        assertEquals(500, stats.getNumEntries());
+        assertTrue(stats.getFillFactor() >= 0.5);
+        assertTrue(t1.getNumIndexPages(tableName, "int") < numPages);
+
+        t1.rebuildIndex(tableName, "int", 1.0f);
+        stats = t1.getIndexStats(tableName, "int");
+        // Every leaf is full, except maybe the last.
+        int leafSize = 2 * BPlusTree.maxOrder(Page.pageSize, Type.intType());
+        assertEquals(500, stats.getNumEntries());
+        assertEquals((500 + leafSize - 1) / leafSize, stats.getNumLeaves());
+
+        Iterator<Record> records = t1.sortedScan(tableName, "int");
+        for (int i = 0; i < 4000; i += 8) {
+            assertEquals(new IntDataBox(i), records.next().getValues().get(1));
+        }
+        assertFalse(records.hasNext());
+        t1.end();
+    }
+
     @Test
     public void testTransactionTempTable() throws DatabaseException {
         Schema s = TestUtils.createSchemaWithAllTypes();
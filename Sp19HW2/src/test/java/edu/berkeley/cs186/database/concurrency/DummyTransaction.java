@@ -2,17 +2,20 @@ package edu.berkeley.cs186.database.concurrency;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.LoggingLockManager;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.index.BPlusTreeStats;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.RecordIdBitmap;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -56,6 +59,30 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public void createIndex(String tableName, String columnName,
+                            float fillFactor) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public void createIndex(String tableName, String columnName, List<String> includedColumns,
+                            float fillFactor) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public void createCompositeIndex(String tableName, List<String> columnNames,
+                                     float fillFactor) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public void createHashIndex(String tableName, String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public void rebuildIndex(String tableName, String columnName,
+                             float fillFactor) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public boolean deleteTable(String tableName) {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -84,6 +111,10 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public boolean hashIndexExists(String tableName, String columnName) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Iterator<Record> sortedScan(String tableName, String columnName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -98,6 +129,51 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public List<List<RecordId>> lookupKeys(String tableName, String columnName,
+                                           List<DataBox> keys) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public RecordIdBitmap getRecordIdBitmap(String tableName, String columnName,
+                                            Optional<DataBox> lo, boolean loInclusive,
+                                            Optional<DataBox> hi, boolean hiInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> bitmapHeapScan(String tableName,
+                                           RecordIdBitmap bitmap) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> sortedScanRange(String tableName, String columnName,
+                                            Optional<DataBox> lo, boolean loInclusive,
+                                            Optional<DataBox> hi, boolean hiInclusive,
+                                            boolean descending) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> indexOnlyScanRange(String tableName, String columnName,
+                                               Optional<DataBox> lo, boolean loInclusive,
+                                               Optional<DataBox> hi, boolean hiInclusive,
+                                               boolean descending) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public List<String> getIndexIncludedColumns(String tableName,
+                                                String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Record> sortedScanPrefix(String tableName, List<String> columnNames,
+            List<DataBox> prefix, Optional<DataBox> lo, boolean loInclusive,
+            Optional<DataBox> hi, boolean hiInclusive) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public List<List<String>> getCompositeIndices(String tableName) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -183,6 +259,21 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public int getNumIndexPages(String tableName,
+                                List<String> columnNames) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public double getHashIndexBucketLength(String tableName,
+                                           String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public BPlusTreeStats getIndexStats(String tableName,
+                                        String columnName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public Schema getSchema(String tableName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
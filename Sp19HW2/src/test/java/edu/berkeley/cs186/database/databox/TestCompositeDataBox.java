@@ -0,0 +1,106 @@
+package edu.berkeley.cs186.database.databox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({HW99Tests.class, SystemTests.class})
+public class TestCompositeDataBox {
+    private static final Type TYPE = Type.compositeType(Arrays.asList(Type.intType(),
+                                     Type.stringType(2)));
+
+    private static CompositeDataBox key(int i, String s) {
+        return new CompositeDataBox(Arrays.asList(new IntDataBox(i), new StringDataBox(s, 2)));
+    }
+
+    @Test
+    public void testType() {
+        assertEquals(TYPE, key(1, "ab").type());
+        assertEquals(TypeId.COMPOSITE, TYPE.getTypeId());
+        assertEquals(6, TYPE.getSizeInBytes());
+        assertEquals(Arrays.asList(Type.intType(), Type.stringType(2)), TYPE.getFieldTypes());
+
+        Buffer buf = ByteBuffer.wrap(TYPE.toBytes());
+        assertEquals(TYPE, Type.fromBytes(buf));
+        assertNotEquals(TYPE, Type.compositeType(Arrays.asList(Type.intType(),
+                        Type.stringType(3))));
+        assertNotEquals(TYPE, Type.compositeType(Arrays.asList(Type.stringType(2),
+                        Type.intType())));
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testEmptyType() {
+        Type.compositeType(Collections.emptyList());
+    }
+
+    @Test
+    public void testToAndFromBytes() {
+        CompositeDataBox d = key(-7, "xy");
+        assertEquals(d, DataBox.fromBytes(ByteBuffer.wrap(d.toBytes()), TYPE));
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testBoundToBytes() {
+        CompositeDataBox.lowerBound(TYPE, Collections.singletonList(new IntDataBox(1))).toBytes();
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testFullBound() {
+        CompositeDataBox.lowerBound(TYPE, key(1, "ab").getValues());
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testCompareDifferentTypes() {
+        key(1, "ab").compareTo(new CompositeDataBox(Collections.singletonList(new IntDataBox(1))));
+    }
+
+    @Test
+    public void testCompareTo() {
+        // Keys are ordered by their first field, then by their second.
+        List<DataBox> sorted = new ArrayList<>();
+        for (int i = -2; i <= 2; ++i) {
+            List<DataBox> prefix = Collections.singletonList(new IntDataBox(i));
+            sorted.add(CompositeDataBox.lowerBound(TYPE, prefix));
+            for (String s : Arrays.asList("a", "ab", "b", "zz")) {
+                sorted.add(key(i, s));
+            }
+            sorted.add(CompositeDataBox.upperBound(TYPE, prefix));
+        }
+        sorted.add(0, CompositeDataBox.lowerBound(TYPE, Collections.emptyList()));
+        sorted.add(CompositeDataBox.upperBound(TYPE, Collections.emptyList()));
+
+        for (int i = 0; i < sorted.size(); ++i) {
+            for (int j = 0; j < sorted.size(); ++j) {
+                int expected = Integer.compare(i, j);
+                DataBox x = sorted.get(i);
+                DataBox y = sorted.get(j);
+                assertEquals(expected, Integer.signum(x.compareTo(y)));
+                assertEquals(expected, Integer.signum(
+                                 DataBox.compareOrderedBytes(x.toOrderedBytes(), y.toOrderedBytes())));
+            }
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        assertEquals(key(1, "ab"), key(1, "ab"));
+        assertNotEquals(key(1, "ab"), key(1, "ba"));
+        assertNotEquals(key(1, "ab"), key(2, "ab"));
+        List<DataBox> prefix = Collections.singletonList(new IntDataBox(1));
+        assertNotEquals(CompositeDataBox.lowerBound(TYPE, prefix),
+                        CompositeDataBox.upperBound(TYPE, prefix));
+        assertTrue(key(1, "ab").getBound() == 0);
+    }
+}
@@ -65,4 +65,20 @@ public class TestFloatDataBox {
         assertTrue(one.compareTo(one) == 0);
         assertTrue(one.compareTo(zero) > 0);
     }
+
+    @Test
+    public void testToOrderedBytes() {
+        float[] values = new float[] {Float.NEGATIVE_INFINITY, -100f, -1.5f, -0f, 0f, 1e-10f, 1.5f,
+                                      100f, Float.POSITIVE_INFINITY};
+        for (float x : values) {
+            for (float y : values) {
+                FloatDataBox dx = new FloatDataBox(x);
+                FloatDataBox dy = new FloatDataBox(y);
+                int expected = Integer.signum(dx.compareTo(dy));
+                int actual = Integer.signum(DataBox.compareOrderedBytes(dx.toOrderedBytes(),
+                                            dy.toOrderedBytes()));
+                assertEquals(expected, actual);
+            }
+        }
+    }
 }
@@ -65,4 +65,19 @@ public class TestIntDataBox {
         assertTrue(one.compareTo(one) == 0);
         assertTrue(one.compareTo(zero) > 0);
     }
+
+    @Test
+    public void testToOrderedBytes() {
+        int[] values = new int[] {-2147483648, -100, -1, 0, 1, 100, 2147483647};
+        for (int x : values) {
+            for (int y : values) {
+                IntDataBox dx = new IntDataBox(x);
+                IntDataBox dy = new IntDataBox(y);
+                int expected = Integer.signum(dx.compareTo(dy));
+                int actual = Integer.signum(DataBox.compareOrderedBytes(dx.toOrderedBytes(),
+                                            dy.toOrderedBytes()));
+                assertEquals(expected, actual);
+            }
+        }
+    }
 }
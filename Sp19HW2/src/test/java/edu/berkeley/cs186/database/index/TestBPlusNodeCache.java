@@ -0,0 +1,98 @@
+package edu.berkeley.cs186.database.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestBPlusNodeCache {
+    public static final String testFile = "TestBPlusNodeCache";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    private BPlusTreeMetadata getBPlusTreeMetadata(Type keySchema, int order, int capacity)
+    throws IOException {
+        File file = tempFolder.newFile(testFile);
+        String path = file.getAbsolutePath();
+        PageAllocator allocator = new PageAllocator(path, false, null);
+        return new BPlusTreeMetadata(allocator, keySchema, order, capacity);
+    }
+
+    private LeafNode getEmptyLeaf(BPlusTreeMetadata meta) {
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        return new LeafNode(meta, keys, rids, Optional.empty(), null);
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testFromBytesReturnsCachedNode() throws BPlusTreeException, IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), 2, 8);
+        LeafNode leaf = getEmptyLeaf(meta);
+        int pageNum = leaf.getPage().getPageNum();
+        assertSame(leaf, BPlusNode.fromBytes(null, meta, pageNum));
+
+        // Modifications are visible through the cache...
+        leaf.put(null, new IntDataBox(1), new RecordId(1, (short) 1));
+        LeafNode cached = (LeafNode) BPlusNode.fromBytes(null, meta, pageNum);
+        assertSame(leaf, cached);
+
+        // ...and on the page, so an evicted node is simply read back.
+        meta.getNodeCache().invalidate(pageNum);
+        LeafNode reloaded = (LeafNode) BPlusNode.fromBytes(null, meta, pageNum);
+        assertNotSame(leaf, reloaded);
+        assertEquals(leaf, reloaded);
+        assertSame(reloaded, BPlusNode.fromBytes(null, meta, pageNum));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), 2, 2);
+        BPlusNodeCache cache = meta.getNodeCache();
+        LeafNode a = getEmptyLeaf(meta);
+        LeafNode b = getEmptyLeaf(meta);
+        assertEquals(2, cache.size());
+
+        // Touch a so that b is the least recently used node.
+        assertSame(a, cache.get(a.getPage().getPageNum()));
+        LeafNode c = getEmptyLeaf(meta);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(b.getPage().getPageNum()));
+        assertSame(a, cache.get(a.getPage().getPageNum()));
+        assertSame(c, cache.get(c.getPage().getPageNum()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDisabledCache() throws IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.intType(), 2, 0);
+        LeafNode leaf = getEmptyLeaf(meta);
+        assertEquals(0, meta.getNodeCache().size());
+
+        LeafNode reloaded = (LeafNode) BPlusNode.fromBytes(null, meta, leaf.getPage().getPageNum());
+        assertNotSame(leaf, reloaded);
+        assertEquals(leaf, reloaded);
+    }
+}
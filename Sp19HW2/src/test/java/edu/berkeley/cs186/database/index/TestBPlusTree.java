@@ -1,14 +1,25 @@
 package edu.berkeley.cs186.database.index;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import edu.berkeley.cs186.database.TimeoutScaling;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
@@ -21,10 +32,14 @@ import org.junit.rules.Timeout;
 
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
 
 @Category(HW2Tests.class)
 public class TestBPlusTree {
@@ -49,6 +64,12 @@ public class TestBPlusTree {
         return new BPlusTree(file.getAbsolutePath(), keySchema, order, new DummyLockContext(), null);
     }
 
+    private BPlusTree getNonUniqueBPlusTree(Type keySchema, int order)
+    throws BPlusTreeException, IOException {
+        return new BPlusTree(file.getAbsolutePath(), keySchema, order, false,
+                             new DummyLockContext(), null);
+    }
+
     private static <T> List<T> iteratorToList(Iterator<T> iter) {
         List<T> xs = new ArrayList<>();
         while (iter.hasNext()) {
@@ -394,6 +415,795 @@ public class TestBPlusTree {
         }
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testScanRange() throws BPlusTreeException, IOException {
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 200; i += 2) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(42));
+        for (int i : keys) {
+            tree.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+        }
+
+        // Remove a stretch of keys to leave some empty leaves behind.
+        for (int i = 60; i < 100; i += 2) {
+            tree.remove(null, new IntDataBox(i));
+        }
+
+        for (int lo = -3; lo < 205; lo += 7) {
+            for (int hi = lo - 2; hi < 205; hi += 11) {
+                for (int inclusive = 0; inclusive < 4; ++inclusive) {
+                    boolean loInclusive = (inclusive & 1) != 0;
+                    boolean hiInclusive = (inclusive & 2) != 0;
+                    List<RecordId> expected = new ArrayList<>();
+                    for (int i = 0; i < 200; i += 2) {
+                        boolean aboveLo = loInclusive ? i >= lo : i > lo;
+                        boolean belowHi = hiInclusive ? i <= hi : i < hi;
+                        if (aboveLo && belowHi && (i < 60 || i >= 100)) {
+                            expected.add(new RecordId(i, (short) i));
+                        }
+                    }
+
+                    DataBox loKey = new IntDataBox(lo);
+                    DataBox hiKey = new IntDataBox(hi);
+                    assertEquals(expected, iteratorToList(
+                                     tree.scanRange(null, loKey, loInclusive, hiKey, hiInclusive)));
+                    Collections.reverse(expected);
+                    assertEquals(expected, iteratorToList(
+                                     tree.scanRangeDescending(null, loKey, loInclusive, hiKey,
+                                                              hiInclusive)));
+                }
+            }
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testScanDescending() throws BPlusTreeException, IOException {
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        assertEquals(Collections.emptyList(), iteratorToList(tree.scanAllDescending(null)));
+
+        List<RecordId> expected = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            tree.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+            expected.add(0, new RecordId(i, (short) i));
+            assertEquals(expected, iteratorToList(tree.scanAllDescending(null)));
+        }
+
+        // Unbounded on one side.
+        assertEquals(expected.subList(0, 50), iteratorToList(
+                         tree.scanRange(null, Optional.of(new IntDataBox(50)), true,
+                                        Optional.empty(), true, true)));
+        assertEquals(expected.subList(50, 100), iteratorToList(
+                         tree.scanRange(null, Optional.empty(), true,
+                                        Optional.of(new IntDataBox(50)), false, true)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNonUniqueKeys() throws BPlusTreeException, IOException {
+        BPlusTree tree = getNonUniqueBPlusTree(Type.intType(), 2);
+
+        // Key i has i + 1 record ids, except for key 7, which has enough to
+        // overflow several posting list pages.
+        List<Pair<Integer, RecordId>> pairs = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            int n = i == 7 ? 3000 : i + 1;
+            for (int j = 0; j < n; ++j) {
+                pairs.add(new Pair<>(i, new RecordId(j / 5, (short) (i * 10 + j % 5))));
+            }
+        }
+        Collections.shuffle(pairs, new Random(42));
+        for (Pair<Integer, RecordId> p : pairs) {
+            tree.put(null, new IntDataBox(p.getFirst()), p.getSecond());
+        }
+
+        List<RecordId> all = new ArrayList<>();
+        List<RecordId> allDescending = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            List<RecordId> expected = new ArrayList<>();
+            for (Pair<Integer, RecordId> p : pairs) {
+                if (p.getFirst() == i) {
+                    expected.add(p.getSecond());
+                }
+            }
+            Collections.sort(expected);
+            DataBox key = new IntDataBox(i);
+            assertEquals(expected, iteratorToList(tree.scanEqual(null, key)));
+            assertEquals(Optional.of(expected.get(0)), tree.get(null, key));
+            all.addAll(expected);
+            allDescending.addAll(0, expected);
+        }
+        assertEquals(all, iteratorToList(tree.scanAll(null)));
+        assertEquals(allDescending, iteratorToList(tree.scanAllDescending(null)));
+
+        // Only the same (key, rid) pair can't be put twice.
+        try {
+            tree.put(null, new IntDataBox(7), new RecordId(0, (short) 70));
+            Assert.fail();
+        } catch (BPlusTreeException e) {
+            // Expected.
+        }
+
+        // Remove the record ids of key 7 one at a time, and all the record ids
+        // of key 3 at once.
+        for (Pair<Integer, RecordId> p : pairs) {
+            if (p.getFirst() == 7) {
+                tree.remove(null, new IntDataBox(7), p.getSecond());
+            }
+        }
+        tree.remove(null, new IntDataBox(3));
+        assertEquals(Optional.empty(), tree.get(null, new IntDataBox(7)));
+        assertEquals(Optional.empty(), tree.get(null, new IntDataBox(3)));
+        assertEquals(Collections.emptyList(), iteratorToList(tree.scanEqual(null, new IntDataBox(7))));
+        assertEquals(all.size() - 3000 - 4, iteratorToList(tree.scanAll(null)).size());
+
+        // The tree still allows duplicate keys after being read back from disk.
+        BPlusTree fromDisk = new BPlusTree(file.getAbsolutePath(), new DummyLockContext(), null);
+        fromDisk.put(null, new IntDataBox(0), new RecordId(100, (short) 0));
+        assertEquals(2, iteratorToList(fromDisk.scanEqual(null, new IntDataBox(0))).size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGetBatch() throws BPlusTreeException, IOException {
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        for (int i = 0; i < 1000; i += 2) {
+            tree.put(null, new IntDataBox(i), new RecordId(i, (short) 0));
+        }
+
+        // Dense keys share leaves, sparse keys don't, and odd keys are missing.
+        // Keys may repeat and come in any order.
+        List<Integer> keys = Arrays.asList(998, 4, 5, 2, 500, 4, 0, 1001, -1, 6, 8, 10, 996, 2);
+        List<DataBox> boxes = new ArrayList<>();
+        List<List<RecordId>> expected = new ArrayList<>();
+        for (int key : keys) {
+            boxes.add(new IntDataBox(key));
+            expected.add(iteratorToList(tree.scanEqual(null, new IntDataBox(key))));
+        }
+        assertEquals(expected, tree.getBatch(null, boxes));
+        assertEquals(Collections.emptyList(), tree.getBatch(null, Collections.emptyList()));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNonUniqueGetBatch() throws BPlusTreeException, IOException {
+        BPlusTree tree = getNonUniqueBPlusTree(Type.intType(), 2);
+        // Key 7 has enough record ids to overflow its posting list.
+        for (int i = 0; i < 50; ++i) {
+            int n = i == 7 ? 2000 : i % 3;
+            for (int j = 0; j < n; ++j) {
+                tree.put(null, new IntDataBox(i), new RecordId(j, (short) i));
+            }
+        }
+
+        List<DataBox> boxes = new ArrayList<>();
+        List<List<RecordId>> expected = new ArrayList<>();
+        for (int i = 49; i >= 0; --i) {
+            boxes.add(new IntDataBox(i));
+            expected.add(iteratorToList(tree.scanEqual(null, new IntDataBox(i))));
+        }
+        assertEquals(expected, tree.getBatch(null, boxes));
+        assertEquals(2000, tree.getBatch(null, Collections.singletonList(new IntDataBox(7))).get(0).size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNonUniqueBulkLoad() throws BPlusTreeException, IOException {
+        BPlusTree tree = getNonUniqueBPlusTree(Type.intType(), 2);
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        List<RecordId> expected = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            // Within a key, record ids are given out of order.
+            for (int j = i % 4; j >= 0; --j) {
+                RecordId rid = new RecordId(i, (short) j);
+                data.add(new Pair<>(new IntDataBox(i), rid));
+                expected.add(expected.size() - (i % 4 - j), rid);
+            }
+        }
+        tree.bulkLoad(null, data.iterator(), 0.75f);
+
+        assertEquals(expected, iteratorToList(tree.scanAll(null)));
+        assertEquals(Arrays.asList(new RecordId(3, (short) 0), new RecordId(3, (short) 1),
+                                   new RecordId(3, (short) 2), new RecordId(3, (short) 3)),
+                     iteratorToList(tree.scanEqual(null, new IntDataBox(3))));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCoveringIndex() throws BPlusTreeException, IOException {
+        // An index on x of a table T(x, y, z) including z and y.
+        Schema included = new Schema(Arrays.asList("z", "y"),
+                                     Arrays.asList(Type.stringType(4), Type.intType()));
+        BPlusTree tree = new BPlusTree(file.getAbsolutePath(), Type.intType(), 2, false, included,
+                                       new DummyLockContext(), null);
+
+        // Key 7 has enough record ids to overflow several posting list pages.
+        List<Record> rows = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            int n = i == 7 ? 2000 : i % 3 + 1;
+            for (int j = 0; j < n; ++j) {
+                rows.add(new Record(Arrays.asList(new IntDataBox(i), new StringDataBox("z" + j % 10, 4),
+                                                  new IntDataBox(i * j))));
+                rids.add(new RecordId(j / 5, (short) (i * 10 + j % 5)));
+            }
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < rows.size(); ++i) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+        for (int i : order) {
+            List<DataBox> values = rows.get(i).getValues();
+            tree.put(null, values.get(0), rids.get(i), new Record(values.subList(1, 3)));
+        }
+
+        // Within a key, records come in the order of their record ids.
+        List<Integer> sorted = new ArrayList<>(order);
+        sorted.sort(Comparator.comparing((Integer i) -> rows.get(i).getValues().get(0))
+                    .thenComparing(i -> rids.get(i)));
+        List<Record> expected = new ArrayList<>();
+        for (int i : sorted) {
+            expected.add(rows.get(i));
+        }
+        assertEquals(expected, iteratorToList(tree.scanRangeRecords(null, Optional.empty(), true,
+                     Optional.empty(), true, false)));
+        List<Record> sevens = new ArrayList<>();
+        for (Record r : expected) {
+            if (r.getValues().get(0).equals(new IntDataBox(7))) {
+                sevens.add(r);
+            }
+        }
+        Optional<DataBox> seven = Optional.of(new IntDataBox(7));
+        assertEquals(sevens, iteratorToList(tree.scanRangeRecords(null, seven, true, seven, true,
+                     false)));
+
+        // Removing record ids keeps the included values of the rest.
+        for (int i = 0; i < rows.size(); i += 2) {
+            tree.remove(null, rows.get(i).getValues().get(0), rids.get(i));
+        }
+        expected.clear();
+        for (int i : sorted) {
+            if (i % 2 == 1) {
+                expected.add(rows.get(i));
+            }
+        }
+        assertEquals(expected, iteratorToList(tree.scanRangeRecords(null, Optional.empty(), true,
+                     Optional.empty(), true, false)));
+
+        // The included columns survive being read back from disk.
+        BPlusTree fromDisk = new BPlusTree(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(included, fromDisk.getIncludedSchema());
+        assertEquals(expected, iteratorToList(fromDisk.scanRangeRecords(null, Optional.empty(),
+                     true, Optional.empty(), true, false)));
+
+        // Records must have the right number of included values.
+        try {
+            fromDisk.put(null, new IntDataBox(100), new RecordId(100, (short) 0));
+            Assert.fail();
+        } catch (BPlusTreeException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCoveringBulkLoad() throws BPlusTreeException, IOException {
+        Schema included = new Schema(Collections.singletonList("y"),
+                                     Collections.singletonList(Type.intType()));
+        BPlusTree tree = new BPlusTree(file.getAbsolutePath(), Type.intType(), 2, false, included,
+                                       new DummyLockContext(), null);
+        List<Pair<Record, RecordId>> data = new ArrayList<>();
+        List<Record> expected = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            for (int j = 0; j <= i % 3; ++j) {
+                Record r = new Record(Arrays.asList(new IntDataBox(i), new IntDataBox(-i - j)));
+                data.add(new Pair<>(r, new RecordId(i, (short) j)));
+                expected.add(r);
+            }
+        }
+        tree.bulkLoadRecords(null, data.iterator(), 0.75f);
+
+        assertEquals(expected, iteratorToList(tree.scanRangeRecords(null, Optional.empty(), true,
+                     Optional.empty(), true, false)));
+
+        // Descending scans return the keys in descending order, but the
+        // records of a key still in the order of their record ids.
+        List<Record> descending = new ArrayList<>();
+        for (int i = 99; i >= 97; --i) {
+            for (Pair<Record, RecordId> p : data) {
+                if (p.getFirst().getValues().get(0).equals(new IntDataBox(i))) {
+                    descending.add(p.getFirst());
+                }
+            }
+        }
+        assertEquals(descending,
+                     iteratorToList(tree.scanRangeRecords(null, Optional.of(new IntDataBox(97)),
+                                    true, Optional.empty(), true, true)));
+    }
+
+    /**
+     * Returns the record ids of the keys (x, y, z) among entries with the
+     * given x and y and with zLo <= z <= zHi, in order. A null x or y matches
+     * any value.
+     */
+    private static List<RecordId> prefixRids(List<Pair<CompositeDataBox, RecordId>> entries,
+            Integer x, String y, int zLo, int zHi) {
+        List<RecordId> rids = new ArrayList<>();
+        for (Pair<CompositeDataBox, RecordId> entry : entries) {
+            List<DataBox> values = entry.getFirst().getValues();
+            int z = values.get(2).getInt();
+            if ((x == null || values.get(0).getInt() == x) &&
+                    (y == null || values.get(1).getString().equals(y)) &&
+                    zLo <= z && z <= zHi) {
+                rids.add(entry.getSecond());
+            }
+        }
+        return rids;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCompositeKeys() throws BPlusTreeException, IOException {
+        // An index on (x, y, z).
+        Type keySchema = Type.compositeType(Arrays.asList(Type.intType(), Type.stringType(1),
+                                            Type.intType()));
+        BPlusTree tree = getBPlusTree(keySchema, 2);
+        List<Pair<CompositeDataBox, RecordId>> entries = new ArrayList<>();
+        for (int x = -3; x < 3; ++x) {
+            for (String y : Arrays.asList("a", "b", "c")) {
+                for (int z = 0; z < 5; ++z) {
+                    CompositeDataBox key = new CompositeDataBox(Arrays.asList(
+                                               new IntDataBox(x), new StringDataBox(y, 1), new IntDataBox(z)));
+                    entries.add(new Pair<>(key, new RecordId(x + 3, (short) (y.charAt(0) * 5 + z))));
+                }
+            }
+        }
+        Collections.shuffle(entries, new Random(42));
+        for (Pair<CompositeDataBox, RecordId> entry : entries) {
+            tree.put(null, entry.getFirst(), entry.getSecond());
+        }
+        entries.sort(Comparator.comparing(Pair::getFirst));
+
+        DataBox a = new StringDataBox("a", 1);
+        DataBox b = new StringDataBox("b", 1);
+        DataBox c = new StringDataBox("c", 1);
+
+        assertEquals(prefixRids(entries, null, null, 0, 4), iteratorToList(tree.scanAll(null)));
+        assertEquals(prefixRids(entries, -1, null, 0, 4),
+                     iteratorToList(tree.scanPrefix(null, Arrays.asList(new IntDataBox(-1)))));
+        assertEquals(prefixRids(entries, 0, "b", 0, 4),
+                     iteratorToList(tree.scanPrefix(null, Arrays.asList(new IntDataBox(0), b))));
+        assertEquals(Collections.emptyList(),
+                     iteratorToList(tree.scanPrefix(null, Arrays.asList(new IntDataBox(3)))));
+
+        // A range on the column after the prefix.
+        List<RecordId> bc = new ArrayList<>(prefixRids(entries, 1, "b", 0, 4));
+        bc.addAll(prefixRids(entries, 1, "c", 0, 4));
+        assertEquals(bc, iteratorToList(tree.scanPrefix(null, Arrays.asList(new IntDataBox(1)),
+                                        Optional.of(b), true, Optional.empty(), true, false)));
+        assertEquals(prefixRids(entries, 1, "b", 0, 4),
+                     iteratorToList(tree.scanPrefix(null, Arrays.asList(new IntDataBox(1)),
+                                    Optional.of(a), false, Optional.of(c), false, false)));
+        assertEquals(prefixRids(entries, 2, "c", 2, 3),
+                     iteratorToList(tree.scanPrefix(null, Arrays.asList(new IntDataBox(2), c),
+                                    Optional.of(new IntDataBox(1)), false,
+                                    Optional.of(new IntDataBox(3)), true, false)));
+        List<RecordId> descending = new ArrayList<>(bc);
+        Collections.reverse(descending);
+        assertEquals(descending, iteratorToList(tree.scanPrefix(null,
+                     Arrays.asList(new IntDataBox(1)), Optional.of(b), true, Optional.empty(), true,
+                     true)));
+
+        // A range on the first column.
+        List<RecordId> ones = new ArrayList<>(prefixRids(entries, -2, null, 0, 4));
+        ones.addAll(prefixRids(entries, -1, null, 0, 4));
+        assertEquals(ones, iteratorToList(tree.scanPrefix(null, Collections.emptyList(),
+                                          Optional.of(new IntDataBox(-2)), true,
+                                          Optional.of(new IntDataBox(0)), false, false)));
+
+        // Load the tree from disk.
+        BPlusTree fromDisk = new BPlusTree(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(prefixRids(entries, 0, "b", 0, 4),
+                     iteratorToList(fromDisk.scanPrefix(null, Arrays.asList(new IntDataBox(0), b))));
+    }
+
+    /**
+     * Runs `task(t)` on `numThreads` threads t = 0, 1, ..., numThreads - 1 at
+     * once, and rethrows the first exception or assertion failure of any of
+     * them.
+     */
+    private static void runConcurrently(int numThreads, ThreadTask task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; ++t) {
+                final int thread = t;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    task.run(thread);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    throw (Exception) e.getCause();
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentPutsGetsAndRemoves() throws Exception {
+        // A small order makes for lots of splits, all the way up to the root.
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        int numThreads = 8;
+        int n = 4000;
+
+        // Every thread puts its own keys, in a shuffled order so that the
+        // threads split leaves all over the tree, and checks that it can read
+        // them back while the other threads are still writing.
+        runConcurrently(numThreads, (t) -> {
+            List<Integer> keys = new ArrayList<>();
+            for (int i = t; i < n; i += numThreads) {
+                keys.add(i);
+            }
+            Collections.shuffle(keys, new Random(t));
+            for (int i : keys) {
+                tree.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+                assertEquals(Optional.of(new RecordId(i, (short) i)),
+                             tree.get(null, new IntDataBox(i)));
+
+                // Scans must always be sorted, even across concurrent splits.
+                Iterator<RecordId> iter = tree.scanGreaterEqual(null, new IntDataBox(i - 20));
+                int prev = Integer.MIN_VALUE;
+                for (int j = 0; j < 40 && iter.hasNext(); ++j) {
+                    int pageNum = iter.next().getPageNum();
+                    assertTrue(prev < pageNum);
+                    prev = pageNum;
+                }
+            }
+        });
+
+        List<RecordId> expected = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            expected.add(new RecordId(i, (short) i));
+        }
+        assertEquals(expected, iteratorToList(tree.scanAll(null)));
+
+        // Every thread removes the odd keys it put, while the even keys stay
+        // visible throughout.
+        runConcurrently(numThreads, (t) -> {
+            for (int i = t; i < n; i += numThreads) {
+                if (i % 2 == 1) {
+                    tree.remove(null, new IntDataBox(i));
+                    assertEquals(Optional.empty(), tree.get(null, new IntDataBox(i)));
+                } else {
+                    assertEquals(Optional.of(new RecordId(i, (short) i)),
+                                 tree.get(null, new IntDataBox(i)));
+                }
+            }
+        });
+
+        expected.removeIf(rid -> rid.getPageNum() % 2 == 1);
+        assertEquals(expected, iteratorToList(tree.scanAll(null)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentDuplicatePuts() throws Exception {
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        int numThreads = 4;
+        int n = 1000;
+
+        // Every thread tries to put every key, so exactly one put of each key
+        // succeeds.
+        AtomicInteger numPuts = new AtomicInteger();
+        runConcurrently(numThreads, (t) -> {
+            for (int i = 0; i < n; ++i) {
+                try {
+                    tree.put(null, new IntDataBox(i), new RecordId(i, (short) t));
+                    numPuts.incrementAndGet();
+                } catch (BPlusTreeException e) {
+                    // Another thread put the key first.
+                }
+            }
+        });
+
+        assertEquals(n, numPuts.get());
+        assertEquals(n, iteratorToList(tree.scanAll(null)).size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRebalanceOnRemove() throws BPlusTreeException, IOException {
+        BPlusTree tree = getBPlusTree(Type.intType(), 1);
+        tree.setRebalanceOnRemove(true);
+        for (int i = 1; i <= 7; ++i) {
+            tree.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+        }
+        String l1 = "((1 (1 1)))";
+        String l2 = "((2 (2 2)))";
+        String l3 = "((3 (3 3)))";
+        String l4 = "((4 (4 4)))";
+        String l5 = "((5 (5 5)))";
+        String l6 = "((6 (6 6)))";
+        String l67 = "((6 (6 6)) (7 (7 7)))";
+        String sexp = String.format("((%s 2 %s) 3 (%s 4 %s) 5 (%s 6 %s))",
+                                    l1, l2, l3, l4, l5, l67);
+        assertEquals(sexp, tree.toSexp(null));
+
+        // (3) merges into (4), and their parent, left without keys, merges
+        // into its right sibling.
+        tree.remove(null, new IntDataBox(3));
+        sexp = String.format("((%s 2 %s) 3 (%s 5 %s 6 %s))", l1, l2, l4, l5, l67);
+        assertEquals(sexp, tree.toSexp(null));
+
+        // (5) merges into (6 7).
+        tree.remove(null, new IntDataBox(5));
+        sexp = String.format("((%s 2 %s) 3 (%s 5 %s))", l1, l2, l4, l67);
+        assertEquals(sexp, tree.toSexp(null));
+
+        // (2) merges into (1), and the merge of their parent leaves the root
+        // with a single child, which becomes the new root.
+        tree.remove(null, new IntDataBox(2));
+        sexp = String.format("(%s 3 %s 5 %s)", l1, l4, l67);
+        assertEquals(sexp, tree.toSexp(null));
+
+        tree.remove(null, new IntDataBox(7));
+        sexp = String.format("(%s 3 %s 5 %s)", l1, l4, l6);
+        assertEquals(sexp, tree.toSexp(null));
+        tree.remove(null, new IntDataBox(6));
+        assertEquals(String.format("(%s 3 %s)", l1, l4), tree.toSexp(null));
+        tree.remove(null, new IntDataBox(4));
+        assertEquals(l1, tree.toSexp(null));
+        tree.remove(null, new IntDataBox(1));
+        assertEquals("()", tree.toSexp(null));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRedistributeOnRemove() throws BPlusTreeException, IOException {
+        // (1) underflows, but (2 3 4 5 6) doesn't fit in one leaf, so the
+        // entries are split evenly between the two leaves instead.
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        tree.setRebalanceOnRemove(true);
+        for (int i = 1; i <= 6; ++i) {
+            tree.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+        }
+        assertEquals("(((1 (1 1)) (2 (2 2))) 3 ((3 (3 3)) (4 (4 4)) (5 (5 5)) (6 (6 6))))",
+                     tree.toSexp(null));
+        tree.remove(null, new IntDataBox(1));
+        assertEquals("(((2 (2 2)) (3 (3 3)) (4 (4 4))) 5 ((5 (5 5)) (6 (6 6))))",
+                     tree.toSexp(null));
+
+        // Likewise for an inner node: after (1) merges into (2) and their
+        // parent merges into (3 4), the node above is left without keys and
+        // takes one from (7 9) through the root.
+        this.file = tempFolder.newFile(filename + "1");
+        tree = getBPlusTree(Type.intType(), 1);
+        tree.setRebalanceOnRemove(true);
+        for (int i = 1; i <= 11; ++i) {
+            tree.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+        }
+        List<String> l = new ArrayList<>();
+        for (int i = 0; i <= 9; ++i) {
+            l.add(String.format("((%d (%d %d)))", i, i, i));
+        }
+        String l1011 = "((10 (10 10)) (11 (11 11)))";
+        String sexp = String.format("(((%s 2 %s) 3 (%s 4 %s)) 5 " +
+                                    "((%s 6 %s) 7 (%s 8 %s) 9 (%s 10 %s)))",
+                                    l.get(1), l.get(2), l.get(3), l.get(4), l.get(5), l.get(6),
+                                    l.get(7), l.get(8), l.get(9), l1011);
+        assertEquals(sexp, tree.toSexp(null));
+        tree.remove(null, new IntDataBox(1));
+        sexp = String.format("(((%s 3 %s 4 %s) 5 (%s 6 %s)) 7 " +
+                             "((%s 8 %s) 9 (%s 10 %s)))",
+                             l.get(2), l.get(3), l.get(4), l.get(5), l.get(6),
+                             l.get(7), l.get(8), l.get(9), l1011);
+        assertEquals(sexp, tree.toSexp(null));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRandomRemovesWithRebalancing() throws BPlusTreeException, IOException {
+        BPlusTree tree = getNonUniqueBPlusTree(Type.intType(), 2);
+        tree.setRebalanceOnRemove(true);
+        int n = 3000;
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys, new Random(42));
+        for (int i : keys) {
+            tree.put(null, new IntDataBox(i % 500), new RecordId(i, (short) 0));
+        }
+        int numPages = tree.getNumPages();
+
+        // Remove all but every tenth key, including every record id of most
+        // keys with a posting list.
+        Collections.shuffle(keys, new Random(43));
+        for (int i : keys) {
+            if (i % 500 % 10 != 0) {
+                tree.remove(null, new IntDataBox(i % 500), new RecordId(i, (short) 0));
+            }
+        }
+        List<RecordId> expected = new ArrayList<>();
+        for (int k = 0; k < 500; k += 10) {
+            for (int i = k; i < n; i += 500) {
+                expected.add(new RecordId(i, (short) 0));
+            }
+        }
+        assertEquals(expected, iteratorToList(tree.scanAll(null)));
+        assertEquals(expected.subList(6, 12), iteratorToList(tree.scanEqual(null,
+                     new IntDataBox(10))));
+        assertEquals(expected.size(), iteratorToList(tree.scanAllDescending(null)).size());
+
+        // Every leaf but the root is at least half full.
+        BPlusTreeStats stats = tree.getStats(null);
+        assertEquals(50, stats.getNumEntries());
+        assertTrue(stats.getNumLeaves() <= 50 / 2);
+        assertTrue(stats.getFillFactor() >= 0.5);
+        assertTrue(tree.getNumPages() < numPages);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRebuild() throws BPlusTreeException, IOException {
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        int n = 2000;
+        for (int i = 0; i < n; ++i) {
+            tree.put(null, new IntDataBox(i), new RecordId(i, (short) i));
+        }
+        // Without rebalancing, removes leave the leaves sparse.
+        for (int i = 0; i < n; ++i) {
+            if (i % 4 != 0) {
+                tree.remove(null, new IntDataBox(i));
+            }
+        }
+        BPlusTreeStats before = tree.getStats(null);
+        assertEquals(n / 4, before.getNumEntries());
+        assertTrue(before.getFillFactor() < 0.5);
+
+        tree.rebuild(null, 1.0f);
+        BPlusTreeStats after = tree.getStats(null);
+        assertEquals(n / 4, after.getNumEntries());
+        assertEquals(n / 4 / 4, after.getNumLeaves());
+        assertEquals(1.0f, after.getFillFactor(), 1e-6);
+        assertTrue(after.getHeight() < before.getHeight());
+        assertTrue(after.getNumPages() < before.getNumPages());
+
+        List<RecordId> expected = new ArrayList<>();
+        for (int i = 0; i < n; i += 4) {
+            expected.add(new RecordId(i, (short) i));
+        }
+        assertEquals(expected, iteratorToList(tree.scanAll(null)));
+
+        // The rebuilt tree can be written to, and is persisted.
+        tree.put(null, new IntDataBox(1), new RecordId(1, (short) 1));
+        expected.add(1, new RecordId(1, (short) 1));
+        BPlusTree fromDisk = new BPlusTree(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(expected, iteratorToList(fromDisk.scanAll(null)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConcurrentScansDuringRebalancing() throws Exception {
+        BPlusTree tree = getBPlusTree(Type.intType(), 2);
+        tree.setRebalanceOnRemove(true);
+        int n = 4000;
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) 0)));
+        }
+        tree.bulkLoad(null, data.iterator(), 0.5f);
+
+        // Half of the threads remove the odd keys, merging leaves all over the
+        // tree, and one of them also rebuilds it halfway through. The other
+        // threads scan, and must see every even key exactly once, in order.
+        int numThreads = 6;
+        int numRemovers = numThreads / 2;
+        runConcurrently(numThreads, (t) -> {
+            if (t < numRemovers) {
+                for (int i = 2 * t + 1; i < n; i += 2 * numRemovers) {
+                    tree.remove(null, new IntDataBox(i));
+                    if (t == 0 && i == n / 2 + 1) {
+                        tree.rebuild(null, 0.75f);
+                    }
+                }
+                return;
+            }
+            for (int scan = 0; scan < 20; ++scan) {
+                Iterator<RecordId> iter = tree.scanAll(null);
+                int prev = -1;
+                int numEven = 0;
+                while (iter.hasNext()) {
+                    int i = iter.next().getPageNum();
+                    assertTrue(prev < i);
+                    prev = i;
+                    numEven += i % 2 == 0 ? 1 : 0;
+                }
+                assertEquals(n / 2, numEven);
+            }
+        });
+
+        List<RecordId> expected = new ArrayList<>();
+        for (int i = 0; i < n; i += 2) {
+            expected.add(new RecordId(i, (short) 0));
+        }
+        assertEquals(expected, iteratorToList(tree.scanAll(null)));
+        assertTrue(tree.getStats(null).getFillFactor() >= 0.5);
+    }
+
+    /**
+     * Runs a mixed workload of mostly gets and some puts on one thread and on
+     * several, and checks that the tree is intact afterwards and that every
+     * put key can be found.
+     */
+    @Test
+    @Category(SystemTests.class)
+    public void testConcurrentGetsAndPuts() throws Exception {
+        int n = 20000;
+        int opsPerThread = 20000;
+        for (int numThreads : new int[] {1, 4}) {
+            this.file = tempFolder.newFile(filename + numThreads);
+            BPlusTree tree = getBPlusTree(Type.intType(), 32);
+            List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+            for (int i = 0; i < n; i += 2) {
+                data.add(new Pair<>(new IntDataBox(i), new RecordId(i, (short) 0)));
+            }
+            tree.bulkLoad(null, data.iterator(), 0.75f);
+
+            Set<Integer> putKeys = Collections.synchronizedSet(new HashSet<>());
+            runConcurrently(numThreads, (t) -> {
+                Random r = new Random(t);
+                for (int i = 0; i < opsPerThread; ++i) {
+                    int key = r.nextInt(n);
+                    if (key % 2 == 1 && key % numThreads == t && r.nextInt(5) == 0) {
+                        // Odd keys are only ever put by the thread they belong
+                        // to, so a put only fails if that thread put it before.
+                        try {
+                            tree.put(null, new IntDataBox(key), new RecordId(key, (short) 0));
+                            putKeys.add(key);
+                        } catch (BPlusTreeException e) {
+                            // Already put.
+                        }
+                    } else {
+                        tree.get(null, new IntDataBox(key));
+                    }
+                }
+            });
+
+            for (int i = 0; i < n; i += 2) {
+                assertEquals(Optional.of(new RecordId(i, (short) 0)),
+                             tree.get(null, new IntDataBox(i)));
+            }
+            for (int key : putKeys) {
+                assertEquals(Optional.of(new RecordId(key, (short) 0)),
+                             tree.get(null, new IntDataBox(key)));
+            }
+            tree.close();
+        }
+    }
+
     @Test
     @Category(SystemTests.class)
     public void testMaxOrder() {
@@ -0,0 +1,199 @@
+package edu.berkeley.cs186.database.index;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordId;
+
+@Category(HW2Tests.class)
+public class TestHashIndex {
+    public static final String filename = "TestHashIndex";
+    private File file;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 40 seconds max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (40000 * TimeoutScaling.factor)));
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    @Before
+    public void initFile() throws IOException {
+        this.file = tempFolder.newFile(filename);
+    }
+
+    private HashIndex getHashIndex(Type keySchema) {
+        return new HashIndex(file.getAbsolutePath(), keySchema, new DummyLockContext(), null);
+    }
+
+    private static <T> List<T> iteratorToList(Iterator<T> iter) {
+        List<T> xs = new ArrayList<>();
+        while (iter.hasNext()) {
+            xs.add(iter.next());
+        }
+        return xs;
+    }
+
+    // The record ids of key i among n keys put by putKeys.
+    private static List<RecordId> rids(int i, int n, int numKeys) {
+        List<RecordId> rids = new ArrayList<>();
+        for (int j = i; j < n; j += numKeys) {
+            rids.add(new RecordId(j, (short) 0));
+        }
+        return rids;
+    }
+
+    // Puts key j % numKeys with record id (j, 0) for every j < n.
+    private static void putKeys(HashIndex index, int n, int numKeys) {
+        for (int j = 0; j < n; ++j) {
+            index.put(null, new IntDataBox(j % numKeys), new RecordId(j, (short) 0));
+        }
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testEmpty() {
+        HashIndex index = getHashIndex(Type.intType());
+        assertFalse(index.scanEqual(null, new IntDataBox(1)).hasNext());
+        assertEquals(1, index.getNumBuckets());
+        assertEquals(0, index.getNumEntries());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testPutAndScanEqual() {
+        // Enough entries to split buckets and wrap around several levels.
+        int n = 20000;
+        int numKeys = 5000;
+        HashIndex index = getHashIndex(Type.intType());
+        putKeys(index, n, numKeys);
+
+        assertEquals(n, index.getNumEntries());
+        assertTrue(index.getNumBuckets() > 1);
+        assertTrue(index.getAverageBucketLength() < 2);
+        for (int i = 0; i < numKeys; ++i) {
+            assertEquals(rids(i, n, numKeys),
+                         iteratorToList(index.scanEqual(null, new IntDataBox(i))));
+        }
+        assertFalse(index.scanEqual(null, new IntDataBox(numKeys)).hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDuplicatesOverflow() {
+        // Every entry has the same key, so the one bucket they hash to grows a
+        // long chain of overflow pages.
+        HashIndex index = getHashIndex(Type.intType());
+        int n = 2000;
+        putKeys(index, n, 1);
+        assertEquals(rids(0, n, 1), iteratorToList(index.scanEqual(null, new IntDataBox(0))));
+
+        for (int j = 0; j < n; j += 2) {
+            index.remove(null, new IntDataBox(0), new RecordId(j, (short) 0));
+        }
+        List<RecordId> expected = new ArrayList<>();
+        for (int j = 1; j < n; j += 2) {
+            expected.add(new RecordId(j, (short) 0));
+        }
+        assertEquals(expected, iteratorToList(index.scanEqual(null, new IntDataBox(0))));
+        assertEquals(n / 2, index.getNumEntries());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRemove() {
+        int n = 5000;
+        int numKeys = 1000;
+        HashIndex index = getHashIndex(Type.intType());
+        putKeys(index, n, numKeys);
+        int numPages = index.getNumPages();
+
+        for (int j = 0; j < n; ++j) {
+            if (j % numKeys % 2 == 0) {
+                index.remove(null, new IntDataBox(j % numKeys), new RecordId(j, (short) 0));
+            }
+        }
+        // Removing a pair that isn't in the index does nothing.
+        index.remove(null, new IntDataBox(1), new RecordId(0, (short) 0));
+
+        assertEquals(n / 2, index.getNumEntries());
+        assertTrue(index.getNumPages() <= numPages);
+        for (int i = 0; i < numKeys; ++i) {
+            List<RecordId> expected = i % 2 == 0 ? Collections.emptyList() : rids(i, n, numKeys);
+            assertEquals(expected, iteratorToList(index.scanEqual(null, new IntDataBox(i))));
+        }
+
+        // Removed keys can be put again.
+        index.put(null, new IntDataBox(0), new RecordId(0, (short) 0));
+        assertEquals(Collections.singletonList(new RecordId(0, (short) 0)),
+                     iteratorToList(index.scanEqual(null, new IntDataBox(0))));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testStringKeys() {
+        HashIndex index = getHashIndex(Type.stringType(4));
+        for (int j = 0; j < 3000; ++j) {
+            index.put(null, new StringDataBox(Integer.toString(j % 1000), 4),
+                      new RecordId(j, (short) 0));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertEquals(rids(i, 3000, 1000), iteratorToList(index.scanEqual(null,
+                         new StringDataBox(Integer.toString(i), 4))));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReadFromDisk() {
+        int n = 10000;
+        int numKeys = 2500;
+        HashIndex index = getHashIndex(Type.intType());
+        putKeys(index, n, numKeys);
+        int numBuckets = index.getNumBuckets();
+        index.close();
+
+        HashIndex fromDisk = new HashIndex(file.getAbsolutePath(), new DummyLockContext(), null);
+        assertEquals(Type.intType(), fromDisk.getKeySchema());
+        assertEquals(numBuckets, fromDisk.getNumBuckets());
+        assertEquals(n, fromDisk.getNumEntries());
+        for (int i = 0; i < numKeys; ++i) {
+            assertEquals(rids(i, n, numKeys),
+                         iteratorToList(fromDisk.scanEqual(null, new IntDataBox(i))));
+        }
+
+        // The index keeps growing where it left off.
+        fromDisk.put(null, new IntDataBox(numKeys), new RecordId(n, (short) 0));
+        assertEquals(Collections.singletonList(new RecordId(n, (short) 0)),
+                     iteratorToList(fromDisk.scanEqual(null, new IntDataBox(numKeys))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    @Category(PublicTests.class)
+    public void testWrongKeyType() {
+        HashIndex index = getHashIndex(Type.intType());
+        index.put(null, new StringDataBox("a", 1), new RecordId(0, (short) 0));
+    }
+}
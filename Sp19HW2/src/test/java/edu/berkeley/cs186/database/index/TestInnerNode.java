@@ -19,6 +19,7 @@ import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
@@ -376,6 +377,37 @@ public class TestInnerNode {
         assertEquals(5, InnerNode.numLessThan(7, sparseWithDuplicates));
     }
 
+    @Test
+    @Category(SystemTests.class)
+    public void testnumLessThanEqualOrderedBytes() {
+        assertEquals(0, InnerNode.numLessThanEqual(new IntDataBox(0).toOrderedBytes(), new byte[0][]));
+
+        int[] sparseWithDuplicates = new int[] {-3, 1, 1, 1, 5};
+        byte[][] ys = new byte[sparseWithDuplicates.length][];
+        for (int i = 0; i < ys.length; ++i) {
+            ys[i] = new IntDataBox(sparseWithDuplicates[i]).toOrderedBytes();
+        }
+        for (int x = -5; x <= 7; ++x) {
+            List<Integer> expected = new ArrayList<>();
+            for (int y : sparseWithDuplicates) {
+                expected.add(y);
+            }
+            assertEquals(InnerNode.numLessThanEqual(x, expected),
+                         InnerNode.numLessThanEqual(new IntDataBox(x).toOrderedBytes(), ys));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testChildInPage() {
+        Buffer buf = inner.getPage().getBuffer(null);
+        for (int i = -5; i < 30; ++i) {
+            DataBox key = new IntDataBox(i);
+            int expected = inner.getChildren().get(InnerNode.numLessThanEqual(key, inner.getKeys()));
+            assertEquals(expected, InnerNode.childInPage(buf, Type.intType(), key));
+        }
+    }
+
     @Test
     @Category(SystemTests.class)
     public void testToSexp() {
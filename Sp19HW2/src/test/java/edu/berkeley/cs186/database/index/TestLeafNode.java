@@ -23,9 +23,12 @@ import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
@@ -274,6 +277,49 @@ public class TestLeafNode {
         assertEquals("((1 (1 1)) (2 (2 2)) (3 (3 3)) (4 (4 4)))", leaf.toSexp(null));
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testInPageAccess() throws BPlusTreeException, IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.stringType(3), 5);
+        LeafNode leaf = getEmptyLeaf(meta, Optional.of(42));
+        String[] strings = {"a", "ab", "b", "ba", "bb", "c"};
+        for (int i = 0; i < strings.length; i += 2) {
+            leaf.put(null, new StringDataBox(strings[i], 3), new RecordId(i, (short) -i));
+        }
+
+        Buffer buf = leaf.getPage().getBuffer(null);
+        assertEquals(42, LeafNode.rightSiblingInPage(buf));
+        assertEquals(3, LeafNode.numEntriesInPage(buf));
+        for (int i = 0; i < strings.length; ++i) {
+            DataBox key = new StringDataBox(strings[i], 3);
+            assertEquals(leaf.getKey(key), LeafNode.getKeyInPage(buf, meta, key));
+            assertEquals((i + 1) / 2, LeafNode.numLessThanInPage(buf, meta, key));
+        }
+        assertEquals(new RecordId(4, (short) -4), LeafNode.ridInPage(buf, meta, 2));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCompareKeyInPage() throws BPlusTreeException, IOException {
+        BPlusTreeMetadata meta = getBPlusTreeMetadata(Type.floatType(), 5);
+        LeafNode leaf = getEmptyLeaf(meta, Optional.empty());
+        float[] floats = {Float.NEGATIVE_INFINITY, -2.5f, 0.0f, 1.0f, Float.POSITIVE_INFINITY};
+        for (int i = 0; i < floats.length; ++i) {
+            leaf.put(null, new FloatDataBox(floats[i]), new RecordId(i, (short) i));
+        }
+
+        Buffer buf = leaf.getPage().getBuffer(null);
+        int entrySize = Type.floatType().getSizeInBytes() + RecordId.getSizeInBytes();
+        for (int i = 0; i < floats.length; ++i) {
+            for (float f : floats) {
+                DataBox key = new FloatDataBox(f);
+                int offset = 9 + i * entrySize;
+                assertEquals(Integer.signum(leaf.getKeys().get(i).compareTo(key)),
+                             Integer.signum(BPlusNode.compareKeyInPage(buf, offset, Type.floatType(), key)));
+            }
+        }
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testToAndFromBytes() throws BPlusTreeException, IOException {
@@ -0,0 +1,202 @@
+package edu.berkeley.cs186.database.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+
+@Category(HW2Tests.class)
+public class TestPostingList {
+    public static final String testFile = "TestPostingList";
+    private BPlusTreeMetadata metadata;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    @Before
+    public void setup() throws IOException {
+        File file = tempFolder.newFile(testFile);
+        PageAllocator allocator = new PageAllocator(file.getAbsolutePath(), false, null);
+        this.metadata = new BPlusTreeMetadata(allocator, Type.intType(), 2, false);
+    }
+
+    private static List<RecordId> rids(int n) {
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            rids.add(new RecordId(i / 10, (short) (i % 10)));
+        }
+        return rids;
+    }
+
+    // Tests ///////////////////////////////////////////////////////////////////
+    @Test
+    @Category(PublicTests.class)
+    public void testLongEncoding() {
+        List<RecordId> rids = Arrays.asList(new RecordId(0, (short) 0),
+                                            new RecordId(0, (short) 1),
+                                            new RecordId(0, Short.MAX_VALUE),
+                                            new RecordId(1, (short) 0),
+                                            new RecordId(Integer.MAX_VALUE, (short) 7));
+        for (int i = 0; i < rids.size(); ++i) {
+            assertEquals(rids.get(i), PostingList.fromLong(PostingList.toLong(rids.get(i))));
+            if (i > 0) {
+                assertTrue(PostingList.toLong(rids.get(i - 1)) < PostingList.toLong(rids.get(i)));
+            }
+        }
+
+        assertEquals(1, PostingList.varintSize(0));
+        assertEquals(1, PostingList.varintSize(127));
+        assertEquals(2, PostingList.varintSize(128));
+        assertEquals(3, PostingList.varintSize(1 << 14));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCreate() {
+        RecordId single = new RecordId(3, (short) 4);
+        assertEquals(single, PostingList.create(null, metadata, Collections.singletonList(single)));
+
+        // Enough record ids to fill several pages.
+        List<RecordId> rids = rids(10000);
+        RecordId value = PostingList.create(null, metadata, rids);
+        assertTrue(PostingList.isPointer(value));
+        assertEquals(rids, PostingList.readAll(null, metadata, value));
+        assertEquals(rids.get(0), PostingList.first(null, metadata, value));
+        assertTrue(metadata.getAllocator().getNumPages() > 1);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAddAndRemove() throws BPlusTreeException {
+        List<RecordId> rids = rids(5000);
+        List<RecordId> shuffled = new ArrayList<>(rids);
+        Collections.shuffle(shuffled, new Random(42));
+
+        RecordId value = shuffled.get(0);
+        for (int i = 1; i < shuffled.size(); ++i) {
+            value = PostingList.add(null, metadata, value, metadata.noIncluded(), shuffled.get(i),
+                                    metadata.noIncluded());
+        }
+        assertEquals(rids, PostingList.readAll(null, metadata, value));
+
+        // Remove all but one record id, checking the list as we go.
+        List<RecordId> expected = new ArrayList<>(rids);
+        for (int i = 0; i < shuffled.size() - 1; ++i) {
+            Optional<Pair<RecordId, Record>> removed =
+                PostingList.remove(null, metadata, value, null, shuffled.get(i));
+            assertTrue(removed.isPresent());
+            value = removed.get().getFirst();
+            expected.remove(shuffled.get(i));
+            if (i % 500 == 0) {
+                assertEquals(expected, PostingList.readAll(null, metadata, value));
+            }
+        }
+
+        // The last record id is stored in place of the list.
+        RecordId last = shuffled.get(shuffled.size() - 1);
+        assertEquals(last, value);
+        assertFalse(PostingList.remove(null, metadata, value, metadata.noIncluded(), last)
+                    .isPresent());
+    }
+
+    @Test(expected = BPlusTreeException.class)
+    @Category(PublicTests.class)
+    public void testAddDuplicate() throws BPlusTreeException {
+        RecordId value = PostingList.create(null, metadata, rids(3));
+        PostingList.add(null, metadata, value, null, new RecordId(0, (short) 1),
+                        metadata.noIncluded());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testReadAfter() {
+        List<RecordId> rids = rids(10000);
+        RecordId value = PostingList.create(null, metadata, rids);
+
+        // Reading a page at a time returns every record id once, in order.
+        List<RecordId> read = new ArrayList<>();
+        Optional<RecordId> after = Optional.empty();
+        boolean more = true;
+        while (more) {
+            Pair<List<Pair<RecordId, Record>>, Boolean> page =
+                PostingList.readAfter(null, metadata, value, null, after);
+            assertFalse(page.getFirst().isEmpty());
+            for (Pair<RecordId, Record> entry : page.getFirst()) {
+                read.add(entry.getFirst());
+            }
+            after = Optional.of(read.get(read.size() - 1));
+            more = page.getSecond();
+        }
+        assertEquals(rids, read);
+
+        // Starting in the middle of a page returns the rest of the page.
+        Pair<List<Pair<RecordId, Record>>, Boolean> page =
+            PostingList.readAfter(null, metadata, value, null, Optional.of(rids.get(41)));
+        assertEquals(rids.get(42), page.getFirst().get(0).getFirst());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testIncluded() throws BPlusTreeException {
+        Schema schema = new Schema(Collections.singletonList("y"),
+                                   Collections.singletonList(Type.intType()));
+        BPlusTreeMetadata metadata = new BPlusTreeMetadata(this.metadata.getAllocator(),
+                Type.intType(), 2, false, schema);
+        List<RecordId> rids = rids(5000);
+        List<Record> included = new ArrayList<>();
+        for (int i = 0; i < rids.size(); ++i) {
+            included.add(new Record(Collections.singletonList(new IntDataBox(-i))));
+        }
+
+        // Every record id is read back along with its own included values.
+        RecordId value = PostingList.create(null, metadata, rids, included);
+        List<Pair<RecordId, Record>> read = new ArrayList<>();
+        Optional<RecordId> after = Optional.empty();
+        boolean more = true;
+        while (more) {
+            Pair<List<Pair<RecordId, Record>>, Boolean> page =
+                PostingList.readAfter(null, metadata, value, null, after);
+            read.addAll(page.getFirst());
+            after = Optional.of(read.get(read.size() - 1).getFirst());
+            more = page.getSecond();
+        }
+        assertEquals(rids.size(), read.size());
+        for (int i = 0; i < rids.size(); ++i) {
+            assertEquals(new Pair<>(rids.get(i), included.get(i)), read.get(i));
+        }
+
+        // Adding and removing keep the included values of every record id, and
+        // the last one is moved back into the leaf entry with its values.
+        RecordId extra = new RecordId(1000, (short) 0);
+        Record extraIncluded = new Record(Collections.singletonList(new IntDataBox(42)));
+        value = PostingList.add(null, metadata, value, null, extra, extraIncluded);
+        Pair<RecordId, Record> entry = null;
+        for (RecordId rid : rids) {
+            entry = PostingList.remove(null, metadata, value, null, rid).get();
+            value = entry.getFirst();
+        }
+        assertEquals(new Pair<>(extra, extraIncluded), entry);
+    }
+}
@@ -7,7 +7,9 @@ import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Arrays;
 
 import edu.berkeley.cs186.database.table.Schema;
@@ -194,4 +196,94 @@ public class TestBasicQuery {
 
         assertEquals(count, 10);
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGroupByMultipleAggregates() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME);
+        BaseTransaction transaction = db.beginTransaction();
+
+        //creates 100 records; record i has bool i % 2 == 0, int i % 5 and float i
+        try {
+            for (int i = 0; i < 100; ++i) {
+                Record r = createRecordWithAllTypes(i % 2 == 0, i % 5, "test", (float) i);
+                table.addRecord(transaction, r.getValues());
+            }
+        } catch(DatabaseException e) {}
+
+        table.buildStatistics(transaction, 10);
+
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        // group by both columns and compute several aggregates in one pass
+        QueryPlan query = transaction.query("T");
+        query.project(Arrays.asList("T.bool", "T.int"));
+        query.groupBy("T.bool", "T.int");
+        query.count();
+        query.average("T.float");
+        query.min("T.float");
+        query.max("T.float");
+
+        Iterator<Record> queryOutput = query.executeOptimal();
+
+        QueryOperator finalOperator = query.getFinalOperator();
+        assertEquals(QueryOperator.OperatorType.HASHAGGREGATE, finalOperator.getType());
+        assertEquals(Arrays.asList("T.bool", "T.int", "countAgg", "averageAgg", "minAgg", "maxAgg"),
+                     finalOperator.getOutputSchema().getFieldNames());
+
+        // the records of a group are the ones with the same i % 10
+        int count = 0;
+        while(queryOutput.hasNext()) {
+            Record r = queryOutput.next();
+            int remainder = (int) r.getValues().get(4).getFloat();
+            assertEquals(remainder % 2 == 0, r.getValues().get(0).getBool());
+            assertEquals(remainder % 5, r.getValues().get(1).getInt());
+            assertEquals(10, r.getValues().get(2).getInt());
+            assertEquals(remainder + 45, r.getValues().get(3).getFloat(), 0.0001);
+            assertEquals(remainder + 90, r.getValues().get(5).getFloat(), 0.0001);
+            count++;
+        }
+
+        assertEquals(10, count);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testMultipleSelects() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME);
+        BaseTransaction transaction = db.beginTransaction();
+
+        //creates 10 records; record i has int i and float i
+        try {
+            for (int i = 0; i < 10; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "test", (float) i);
+                table.addRecord(transaction, r.getValues());
+            }
+        } catch(DatabaseException e) {}
+
+        table.buildStatistics(transaction, 10);
+
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        // 3 <= int < 8 and float != 5
+        QueryPlan query = transaction.query("T");
+        query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(3));
+        query.select("int", PredicateOperator.LESS_THAN, new IntDataBox(8));
+        query.select("float", PredicateOperator.NOT_EQUALS, new FloatDataBox(5.0f));
+
+        Iterator<Record> queryOutput = query.execute();
+
+        // all three predicates are checked by a single operator
+        QueryOperator finalOperator = query.getFinalOperator();
+        assertTrue(finalOperator.isSelect());
+        assertTrue(finalOperator.getSource().isSequentialScan());
+
+        List<Integer> values = new ArrayList<>();
+        while(queryOutput.hasNext()) {
+            values.add(queryOutput.next().getValues().get(1).getInt());
+        }
+        assertEquals(Arrays.asList(3, 4, 6, 7), values);
+    }
 }
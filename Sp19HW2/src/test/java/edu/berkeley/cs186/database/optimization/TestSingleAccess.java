@@ -187,9 +187,9 @@ public class TestSingleAccess {
 
         QueryOperator op = query.minCostSingleAccess("t1");
 
+        // Both predicates are checked by a single operator.
         assert(op.isSelect());
-        assert(op.getSource().isSelect());
-        assert(op.getSource().getSource().isSequentialScan());
+        assert(op.getSource().isSequentialScan());
     }
 
     @Test
@@ -0,0 +1,201 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.table.MarkerRecord;
+import edu.berkeley.cs186.database.table.Record;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestBatchIterator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    /**
+     * Returns a source of numRecords records where record i has int i % mod.
+     */
+    private TestSourceOperator createSource(int numRecords, int mod) throws QueryPlanException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            records.add(TestUtils.createRecordWithAllTypesWithValue(i % mod));
+        }
+        return new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes());
+    }
+
+    /**
+     * Returns the records of every batch of batches, checking that no batch
+     * is empty or larger than RecordBatch.DEFAULT_SIZE.
+     */
+    private List<Record> drain(BatchIterator batches) {
+        List<Record> records = new ArrayList<>();
+        RecordBatch batch;
+        while ((batch = batches.nextBatch()) != null) {
+            assertFalse(batch.isEmpty());
+            assertTrue(batch.size() <= RecordBatch.DEFAULT_SIZE);
+            for (Record record : batch) {
+                records.add(record);
+            }
+        }
+        assertNull(batches.nextBatch());
+        return records;
+    }
+
+    private List<Record> drain(Iterator<Record> records) {
+        List<Record> list = new ArrayList<>();
+        records.forEachRemaining(list::add);
+        return list;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAdapters() {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(new Record(Collections.singletonList(new IntDataBox(i))));
+        }
+
+        BatchIterator batches = BatchIterator.fromRecords(records.iterator(), 4);
+        int[] sizes = {4, 4, 2};
+        List<Record> batched = new ArrayList<>();
+        for (int size : sizes) {
+            RecordBatch batch = batches.nextBatch();
+            assertEquals(size, batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batched.add(batch.get(i));
+            }
+        }
+        assertNull(batches.nextBatch());
+        assertEquals(records, batched);
+
+        assertEquals(records, drain(BatchIterator.toRecords(
+                                        BatchIterator.fromRecords(records.iterator(), 3))));
+        assertNull(BatchIterator.fromRecords(Collections.emptyIterator(), 4).nextBatch());
+        assertFalse(BatchIterator.toRecords(() -> null).hasNext());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSelectAndProject() throws QueryPlanException, DatabaseException {
+        // Most source batches have no match at all.
+        QueryOperator select = new SelectOperator(createSource(5000, 2500), "int",
+                QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(2498));
+        QueryOperator project = new ProjectOperator(select, new ArrayList<>(Arrays.asList("int")),
+                false, null, null);
+
+        List<Record> records = drain(project.batchIterator());
+        assertEquals(drain(project.iterator()), records);
+        assertEquals(4, records.size());
+        for (Record record : records) {
+            assertEquals(1, record.getValues().size());
+            assertTrue(record.getValues().get(0).getInt() >= 2498);
+        }
+
+        QueryOperator lessThan = new SelectOperator(createSource(100, 10), "int",
+                QueryPlan.PredicateOperator.LESS_THAN, new IntDataBox(3));
+        assertEquals(30, drain(lessThan.batchIterator()).size());
+        assertEquals(30, drain(lessThan.iterator()).size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testMarkerRecords() throws QueryPlanException, DatabaseException {
+        List<Record> records = new ArrayList<>();
+        records.add(TestUtils.createRecordWithAllTypesWithValue(1));
+        records.add(MarkerRecord.getMarker());
+        records.add(TestUtils.createRecordWithAllTypesWithValue(2));
+        QueryOperator source = new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes());
+        QueryOperator select = new SelectOperator(source, "int", QueryPlan.PredicateOperator.EQUALS,
+                new IntDataBox(2));
+        QueryOperator project = new ProjectOperator(select, new ArrayList<>(Arrays.asList("int")),
+                false, null, null);
+
+        List<Record> output = drain(project.batchIterator());
+        assertEquals(2, output.size());
+        assertSame(MarkerRecord.getMarker(), output.get(0));
+        assertEquals(new IntDataBox(2), output.get(1).getValues().get(0));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSequentialScan() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("batchTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "table");
+        // More than a batch, spread over several pages.
+        int numRecords = RecordBatch.DEFAULT_SIZE + 200;
+        for (int i = 0; i < numRecords; i++) {
+            transaction.addRecord("table", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+
+        QueryOperator scan = new SequentialScanOperator(transaction, "table");
+        BatchIterator batches = scan.batchIterator();
+        assertEquals(RecordBatch.DEFAULT_SIZE, batches.nextBatch().size());
+        assertEquals(200, batches.nextBatch().size());
+        assertNull(batches.nextBatch());
+
+        List<Record> records = drain(scan.batchIterator());
+        for (int i = 0; i < numRecords; i++) {
+            assertEquals(i, records.get(i).getValues().get(1).getInt());
+        }
+
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "emptyTable");
+        assertNull(new SequentialScanOperator(transaction, "emptyTable").batchIterator().nextBatch());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testHashAggregate() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("batchTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator aggregate = new HashAggregateOperator(createSource(3000, 1500), transaction,
+                "int", new ArrayList<>(Arrays.asList("int")), true, null, null);
+
+        Set<DataBox> groups = new HashSet<>();
+        for (Record record : drain(aggregate.batchIterator())) {
+            assertTrue(groups.add(record.getValues().get(0)));
+            assertEquals(2, record.getValues().get(1).getInt());
+        }
+        assertEquals(1500, groups.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testHybridHashJoin() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("batchTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        // Every right record matches two left records.
+        QueryOperator join = new HybridHashJoinOperator(createSource(600, 300),
+                createSource(300, 300), "int", "int", transaction);
+
+        List<Record> records = drain(join.batchIterator());
+        assertEquals(600, records.size());
+        for (Record record : records) {
+            List<DataBox> values = record.getValues();
+            assertEquals(values.subList(0, 4), values.subList(4, 8));
+        }
+        assertEquals(600, drain(join.iterator()).size());
+    }
+}
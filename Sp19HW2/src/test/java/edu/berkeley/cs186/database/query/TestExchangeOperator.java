@@ -0,0 +1,277 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.table.Record;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestExchangeOperator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    /**
+     * Returns a transaction of a new database with a table called name, of
+     * numRecords records where record i has int i % mod.
+     */
+    private Database.Transaction createTable(String name, int numRecords,
+            int mod) throws DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("exchangeTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), name);
+        for (int i = 0; i < numRecords; i++) {
+            transaction.addRecord(name, TestUtils.createRecordWithAllTypesWithValue(i % mod).getValues());
+        }
+        return transaction;
+    }
+
+    /**
+     * Returns the ints of the records of operator, in order.
+     */
+    private List<Integer> getInts(QueryOperator operator) throws QueryPlanException,
+        DatabaseException {
+        List<Integer> ints = new ArrayList<>();
+        Iterator<Record> records = operator.iterator();
+        while (records.hasNext()) {
+            ints.add(records.next().getValues().get(1).getInt());
+        }
+        return ints;
+    }
+
+    private List<QueryOperator> scans(Database.Transaction transaction, String table,
+                                      int numPartitions) throws QueryPlanException, DatabaseException {
+        List<QueryOperator> scans = new ArrayList<>();
+        for (int p = 0; p < numPartitions; p++) {
+            scans.add(new SequentialScanOperator(transaction, table, p, numPartitions));
+        }
+        return scans;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testPartitionedScans() throws QueryPlanException, DatabaseException, IOException {
+        // Spread over several pages.
+        int numRecords = 1500;
+        Database.Transaction transaction = createTable("table", numRecords, numRecords);
+
+        // Every record is in exactly one partition.
+        List<Integer> scanned = new ArrayList<>();
+        for (QueryOperator scan : scans(transaction, "table", 3)) {
+            List<Integer> ints = getInts(scan);
+            assertFalse(ints.isEmpty());
+            scanned.addAll(ints);
+        }
+        Collections.sort(scanned);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, scanned);
+
+        // So the exchange returns every record once.
+        QueryOperator exchange = new ExchangeOperator(scans(transaction, "table", 3));
+        assertTrue(exchange.isExchange());
+        List<Integer> gathered = getInts(exchange);
+        Collections.sort(gathered);
+        assertEquals(expected, gathered);
+
+        try {
+            new SequentialScanOperator(transaction, "table", 3, 3);
+            fail();
+        } catch (QueryPlanException e) {
+            // Expected: there is no fourth partition.
+        }
+    }
+
+    /**
+     * Returns a source that never runs out of records, and counts down closed
+     * when its batch iterator is closed.
+     */
+    private QueryOperator endlessSource(CountDownLatch closed) throws QueryPlanException {
+        return new TestSourceOperator() {
+            @Override
+            public BatchIterator batchIterator() {
+                RecordBatch batch = new RecordBatch(1);
+                batch.add(TestUtils.createRecordWithAllTypes());
+                return new BatchIterator() {
+                    public RecordBatch nextBatch() {
+                        return batch;
+                    }
+
+                    public void close() {
+                        closed.countDown();
+                    }
+                };
+            }
+        };
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCloseStopsWorkers() throws QueryPlanException, DatabaseException,
+        InterruptedException {
+        CountDownLatch closed = new CountDownLatch(2);
+        QueryOperator exchange = new ExchangeOperator(Arrays.asList(endlessSource(closed),
+                                 endlessSource(closed)));
+        BatchIterator batches = exchange.batchIterator();
+        assertNotNull(batches.nextBatch());
+        batches.close();
+
+        // Both workers stop reading their endless sources and close them.
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testWorkerFailure() throws QueryPlanException, DatabaseException,
+        InterruptedException {
+        QueryOperator failing = new TestSourceOperator() {
+            @Override
+            public BatchIterator batchIterator() {
+                return () -> {
+                    throw new IllegalStateException("failed");
+                };
+            }
+        };
+        CountDownLatch closed = new CountDownLatch(1);
+        List<QueryOperator> sources = Arrays.asList(endlessSource(closed), failing);
+
+        // The failure stops the other worker, so the error is thrown even
+        // though the other source never runs out.
+        Iterator<Record> records = new ExchangeOperator(sources).iterator();
+        try {
+            while (records.hasNext()) {
+                records.next();
+            }
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testRepartition() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable("table", 1500, 50);
+        List<QueryOperator> partitions = ExchangeOperator.repartition(scans(transaction, "table", 4),
+                                                                      Arrays.asList("int"));
+        assertEquals(4, partitions.size());
+
+        // Each value is in exactly one partition, 30 times.
+        Map<Integer, Integer> partitionOf = new HashMap<>();
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int p = 0; p < partitions.size(); p++) {
+            for (int value : getInts(partitions.get(p))) {
+                assertEquals(p, (int) partitionOf.getOrDefault(value, p));
+                partitionOf.put(value, p);
+                counts.merge(value, 1, Integer::sum);
+            }
+        }
+        assertEquals(50, counts.size());
+        for (int count : counts.values()) {
+            assertEquals(30, count);
+        }
+
+        try {
+            partitions.get(0).iterator();
+            fail();
+        } catch (QueryPlanException e) {
+            // Expected: the partition has already been read.
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelJoin() throws QueryPlanException, DatabaseException, IOException {
+        // Every int below 100 of leftTable matches 3 records of rightTable.
+        Database.Transaction transaction = createTable("leftTable", 600, 600);
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "rightTable");
+        for (int i = 0; i < 300; i++) {
+            transaction.addRecord("rightTable",
+                                  TestUtils.createRecordWithAllTypesWithValue(i % 100).getValues());
+        }
+
+        QueryPlan query = transaction.query("leftTable");
+        query.join("rightTable", "leftTable.int", "rightTable.int");
+        query.select("leftTable.int", QueryPlan.PredicateOperator.LESS_THAN,
+                     new IntDataBox(50));
+        query.project(Arrays.asList("rightTable.int"));
+        query.groupBy("rightTable.int");
+        query.count();
+        query.setParallelism(4);
+
+        Iterator<Record> records = query.execute();
+        assertTrue(query.getFinalOperator().isExchange());
+        // Every worker merges the partial counts of its partition of groups.
+        for (QueryOperator source : ((ExchangeOperator) query.getFinalOperator()).getSources()) {
+            assertEquals(HashAggregateOperator.Phase.FINAL, ((HashAggregateOperator) source).getPhase());
+        }
+        Set<Integer> groups = new HashSet<>();
+        while (records.hasNext()) {
+            Record record = records.next();
+            assertTrue(groups.add(record.getValues().get(0).getInt()));
+            assertEquals(3, record.getValues().get(1).getInt());
+        }
+        assertEquals(50, groups.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testParallelAggregate() throws QueryPlanException, DatabaseException, IOException {
+        Database.Transaction transaction = createTable("table", 1000, 1000);
+
+        QueryPlan query = transaction.query("table");
+        query.average("table.int");
+        query.count();
+        query.sum("table.int");
+        query.min("table.int");
+        query.max("table.int");
+        query.setParallelism(3);
+
+        // Every worker aggregates its own records, and the partial aggregates
+        // are merged over the exchange.
+        Iterator<Record> records = query.execute();
+        QueryOperator finalOperator = query.getFinalOperator();
+        assertEquals(QueryOperator.OperatorType.HASHAGGREGATE, finalOperator.getType());
+        assertEquals(HashAggregateOperator.Phase.FINAL, ((HashAggregateOperator) finalOperator).getPhase());
+        assertTrue(finalOperator.getSource().isExchange());
+        for (QueryOperator source : ((ExchangeOperator) finalOperator.getSource()).getSources()) {
+            assertEquals(HashAggregateOperator.Phase.PARTIAL, ((HashAggregateOperator) source).getPhase());
+        }
+        assertEquals(Arrays.asList("averageAgg", "countAgg", "sumAgg", "minAgg", "maxAgg"),
+                     finalOperator.getOutputSchema().getFieldNames());
+
+        Record record = records.next();
+        assertEquals(499.5f, record.getValues().get(0).getFloat(), 0.0001);
+        assertEquals(1000, record.getValues().get(1).getInt());
+        assertEquals(499500, record.getValues().get(2).getInt());
+        assertEquals(0, record.getValues().get(3).getInt());
+        assertEquals(999, record.getValues().get(4).getInt());
+        assertFalse(records.hasNext());
+    }
+}
@@ -0,0 +1,220 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestHashAggregateOperator {
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    /**
+     * Returns a source of numRecords records where record i has int i %
+     * numGroups and float i.
+     */
+    private TestSourceOperator createSource(int numRecords, int numGroups) throws QueryPlanException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            List<DataBox> values = new ArrayList<>();
+            values.add(new BoolDataBox(true));
+            values.add(new IntDataBox(i % numGroups));
+            values.add(new StringDataBox("abcde", 5));
+            values.add(new FloatDataBox((float) i));
+            records.add(new Record(values));
+        }
+        return new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testAggregates() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator aggregate = new HashAggregateOperator(createSource(100, 10), transaction, "int",
+                new ArrayList<>(Arrays.asList("int")), true, "float", "float");
+
+        Schema expectedSchema = new Schema(Arrays.asList("int", "countAgg", "sumAgg", "averageAgg"),
+                                           Arrays.asList(Type.intType(), Type.intType(),
+                                                   Type.floatType(), Type.floatType()));
+        assertEquals(expectedSchema, aggregate.getOutputSchema());
+
+        // Group g holds the floats g, g + 10, ..., g + 90.
+        Set<Integer> groups = new HashSet<>();
+        Iterator<Record> outputIterator = aggregate.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            int group = values.get(0).getInt();
+            assertTrue(groups.add(group));
+            assertEquals(10, values.get(1).getInt());
+            assertEquals(10 * group + 450, values.get(2).getFloat(), 0.0001);
+            assertEquals(group + 45, values.get(3).getFloat(), 0.0001);
+        }
+        assertEquals(10, groups.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testPartialAggregates() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        List<String> groupByColumns = Arrays.asList("int");
+        List<HashAggregateOperator.Aggregate> aggregates = Arrays.asList(
+                    HashAggregateOperator.Aggregate.average("float"),
+                    HashAggregateOperator.Aggregate.count(),
+                    HashAggregateOperator.Aggregate.max("float"));
+
+        // The state of an average is its sum and count.
+        List<QueryOperator> partials = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            partials.add(new HashAggregateOperator(createSource(100, 10), transaction, groupByColumns,
+                                                   new ArrayList<>(), aggregates,
+                                                   HashAggregateOperator.Phase.PARTIAL, 3));
+        }
+        assertEquals(Arrays.asList("int", "averageAgg", "averageAggCount", "countAgg", "maxAgg"),
+                     partials.get(0).getOutputSchema().getFieldNames());
+
+        QueryOperator aggregate = new HashAggregateOperator(new ExchangeOperator(partials),
+                transaction, groupByColumns, groupByColumns, aggregates,
+                HashAggregateOperator.Phase.FINAL, 3);
+        Schema expectedSchema = new Schema(Arrays.asList("int", "averageAgg", "countAgg", "maxAgg"),
+                                           Arrays.asList(Type.intType(), Type.floatType(),
+                                                   Type.intType(), Type.floatType()));
+        assertEquals(expectedSchema, aggregate.getOutputSchema());
+
+        // Group g holds the floats g, g + 10, ..., g + 90 of both sources.
+        Set<Integer> groups = new HashSet<>();
+        Iterator<Record> outputIterator = aggregate.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            int group = values.get(0).getInt();
+            assertTrue(groups.add(group));
+            assertEquals(group + 45, values.get(1).getFloat(), 0.0001);
+            assertEquals(20, values.get(2).getInt());
+            assertEquals(group + 90, values.get(3).getFloat(), 0.0001);
+        }
+        assertEquals(10, groups.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDistinctValues() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        QueryOperator aggregate = new HashAggregateOperator(createSource(100, 7), transaction, "int",
+                new ArrayList<>(), false, null, null);
+
+        assertEquals(Arrays.asList("int"), aggregate.getOutputSchema().getFieldNames());
+        Set<DataBox> values = new HashSet<>();
+        Iterator<Record> outputIterator = aggregate.iterator();
+        while (outputIterator.hasNext()) {
+            assertTrue(values.add(outputIterator.next().getValues().get(0)));
+        }
+        assertEquals(7, values.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testSpilledGroups() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        // With 3 buffer pages, only one page of groups fits in memory.
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath(),
+                3).beginTransaction();
+        QueryOperator aggregate = new HashAggregateOperator(createSource(3000, 1500), transaction,
+                "int", new ArrayList<>(Arrays.asList("int")), true, null, null);
+
+        Set<Integer> groups = new HashSet<>();
+        Iterator<Record> outputIterator = aggregate.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertTrue(groups.add(values.get(0).getInt()));
+            assertEquals(2, values.get(1).getInt());
+        }
+        assertEquals(1500, groups.size());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testProjectOtherColumn() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        try {
+            new HashAggregateOperator(createSource(10, 10), transaction, "int",
+                                      new ArrayList<>(Arrays.asList("string")), true, null, null);
+            fail();
+        } catch (QueryPlanException e) {
+            // Expected: string is not in the GROUP BY clause.
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testMultipleAggregates() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("aggregateTest");
+        Database.Transaction transaction = new Database(tempDir.getAbsolutePath()).beginTransaction();
+        List<HashAggregateOperator.Aggregate> aggregates = Arrays.asList(
+                    HashAggregateOperator.Aggregate.sum("int"),
+                    HashAggregateOperator.Aggregate.sum("float"),
+                    HashAggregateOperator.Aggregate.min("int"),
+                    HashAggregateOperator.Aggregate.max("float"),
+                    HashAggregateOperator.Aggregate.count());
+        QueryOperator aggregate = new HashAggregateOperator(createSource(100, 10), transaction,
+                Arrays.asList("bool", "string"), new ArrayList<>(), aggregates);
+
+        Schema expectedSchema = new Schema(Arrays.asList("sumAgg(int)", "sumAgg(float)", "minAgg",
+                                           "maxAgg", "countAgg"),
+                                           Arrays.asList(Type.intType(), Type.floatType(),
+                                                   Type.intType(), Type.floatType(), Type.intType()));
+        assertEquals(expectedSchema, aggregate.getOutputSchema());
+
+        // Every record has the same bool and string, so there is one group.
+        Iterator<Record> outputIterator = aggregate.iterator();
+        assertTrue(outputIterator.hasNext());
+        List<DataBox> values = outputIterator.next().getValues();
+        assertEquals(450, values.get(0).getInt());
+        assertEquals(4950, values.get(1).getFloat(), 0.0001);
+        assertEquals(0, values.get(2).getInt());
+        assertEquals(99, values.get(3).getFloat(), 0.0001);
+        assertEquals(100, values.get(4).getInt());
+        assertFalse(outputIterator.hasNext());
+
+        // A sum over a string column is rejected.
+        try {
+            new HashAggregateOperator(createSource(10, 10), transaction, new ArrayList<>(),
+                                      new ArrayList<>(),
+                                      Arrays.asList(HashAggregateOperator.Aggregate.sum("string")));
+            fail();
+        } catch (QueryPlanException e) {
+            // Expected.
+        }
+    }
+}
@@ -456,4 +456,334 @@ public class TestJoinOperator {
         }
         assertTrue(count == 82944);
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testIndexNestedLoopJoin() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new Database(tempDir.getAbsolutePath());
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "leftTable");
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "rightTable");
+
+        // Every right record matches three left records, and a third of the
+        // left records match nothing.
+        List<Record> leftRecords = new ArrayList<>();
+        for (int i = 0; i < 900; i++) {
+            leftRecords.add(TestUtils.createRecordWithAllTypesWithValue(i % 300));
+        }
+        for (int i = 0; i < 200; i++) {
+            transaction.addRecord("rightTable",
+                                  TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        transaction.createIndex("rightTable", "int");
+
+        QueryOperator s1 = new SequentialScanOperator(transaction, "leftTable");
+        QueryOperator s2 = new SequentialScanOperator(transaction, "rightTable");
+        assertTrue(IndexNestedLoopJoinOperator.isEligible(s2, "int", transaction));
+        assertFalse(IndexNestedLoopJoinOperator.isEligible(s1, "int", transaction));
+        // The left records come from a source operator, so that they are read
+        // through the operator rather than from a table.
+        QueryOperator leftSource = new TestSourceOperator(leftRecords,
+                TestUtils.createSchemaWithAllTypes());
+        QueryOperator joinOperator = new IndexNestedLoopJoinOperator(leftSource, s2, "int", "int",
+                transaction);
+
+        int count = 0;
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertEquals(8, values.size());
+            assertEquals(values.subList(0, 4), values.subList(4, 8));
+            assertTrue(values.get(1).getInt() < 200);
+            count++;
+        }
+        assertEquals(600, count);
+
+        try {
+            new IndexNestedLoopJoinOperator(s2, s1, "int", "int", transaction);
+            fail();
+        } catch (QueryPlanException e) {
+            // Expected: leftTable has no index.
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testQueryPlanUsesIndexNestedLoopJoin() throws QueryPlanException, DatabaseException,
+        IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new Database(tempDir.getAbsolutePath());
+        Database.Transaction transaction = d.beginTransaction();
+        for (String table : Arrays.asList("leftTable", "indexedTable", "plainTable")) {
+            transaction.createTable(TestUtils.createSchemaWithAllTypes(), table);
+            for (int i = 0; i < 100; i++) {
+                transaction.addRecord(table, TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+            }
+        }
+        transaction.createIndex("indexedTable", "int");
+
+        // Only the join with the table with an index on its join column is an
+        // index nested loop join.
+        QueryPlan query = transaction.query("leftTable");
+        query.join("indexedTable", "leftTable.int", "indexedTable.int");
+        query.join("plainTable", "leftTable.int", "plainTable.int");
+        query.execute();
+        JoinOperator plainJoin = (JoinOperator) query.getFinalOperator();
+        assertEquals(JoinOperator.JoinType.SNLJ, plainJoin.getJoinType());
+        JoinOperator indexedJoin = (JoinOperator) plainJoin.getLeftSource();
+        assertEquals(JoinOperator.JoinType.INDEXNL, indexedJoin.getJoinType());
+        assertTrue(indexedJoin.getLeftSource().isSequentialScan());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashJoinIOCost() throws QueryPlanException, DatabaseException,
+        IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 5);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "smallTable");
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "largeTable");
+        for (int i = 0; i < 1000; i++) {
+            transaction.addRecord("smallTable",
+                                  TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        for (int i = 0; i < 5000; i++) {
+            transaction.addRecord("largeTable",
+                                  TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+
+        QueryOperator small = new SequentialScanOperator(transaction, "smallTable");
+        QueryOperator large = new SequentialScanOperator(transaction, "largeTable");
+        int numSmallPages = small.getStats().getNumPages();
+        int numLargePages = large.getStats().getNumPages();
+        assertTrue(numSmallPages <= 4 * 3);
+        assertTrue(numLargePages > 4 * 3 && numLargePages <= 4 * 4 * 3);
+
+        // With 5 buffer pages, every pass splits an input into 4 partitions,
+        // and a build partition may have at most 3 pages. The small table
+        // needs one pass, so joining it costs 3(M + N) IOs.
+        JoinOperator joinOperator = new GraceHashJoinOperator(large, small, "int", "int",
+                transaction);
+        assertEquals(3 * (numLargePages + numSmallPages), joinOperator.estimateIOCost());
+
+        // The large table's partitions need to be partitioned once more.
+        joinOperator = new GraceHashJoinOperator(large, large, "int", "int", transaction);
+        assertEquals(5 * (2 * numLargePages), joinOperator.estimateIOCost());
+    }
+
+    /**
+     * Joins leftValues to rightValues on columnName with a hybrid hash join
+     * and returns the number of output records, checking that each output
+     * record joins two records with the same values.
+     */
+    private int hybridHashJoin(Database.Transaction transaction, List<Integer> leftValues,
+                               List<Integer> rightValues, String columnName)
+    throws QueryPlanException, DatabaseException {
+        return hashJoin(JoinOperator.JoinType.HYBRIDHASH, transaction, leftValues, rightValues,
+                        columnName);
+    }
+
+    /** Like hybridHashJoin, but joins with a Grace hash join. */
+    private int graceHashJoin(Database.Transaction transaction, List<Integer> leftValues,
+                              List<Integer> rightValues, String columnName)
+    throws QueryPlanException, DatabaseException {
+        return hashJoin(JoinOperator.JoinType.GRACEHASH, transaction, leftValues, rightValues,
+                        columnName);
+    }
+
+    private int hashJoin(JoinOperator.JoinType joinType, Database.Transaction transaction,
+                         List<Integer> leftValues, List<Integer> rightValues, String columnName)
+    throws QueryPlanException, DatabaseException {
+        List<Record> leftRecords = new ArrayList<>();
+        for (int value : leftValues) {
+            leftRecords.add(TestUtils.createRecordWithAllTypesWithValue(value));
+        }
+        List<Record> rightRecords = new ArrayList<>();
+        for (int value : rightValues) {
+            rightRecords.add(TestUtils.createRecordWithAllTypesWithValue(value));
+        }
+        QueryOperator leftSource = new TestSourceOperator(leftRecords,
+                TestUtils.createSchemaWithAllTypes());
+        QueryOperator rightSource = new TestSourceOperator(rightRecords,
+                TestUtils.createSchemaWithAllTypes());
+        JoinOperator joinOperator;
+        if (joinType == JoinOperator.JoinType.HYBRIDHASH) {
+            joinOperator = new HybridHashJoinOperator(leftSource, rightSource, columnName, columnName,
+                    transaction);
+        } else {
+            joinOperator = new GraceHashJoinOperator(leftSource, rightSource, columnName, columnName,
+                    transaction);
+        }
+
+        int count = 0;
+        Iterator<Record> outputIterator = joinOperator.iterator();
+        while (outputIterator.hasNext()) {
+            List<DataBox> values = outputIterator.next().getValues();
+            assertEquals(8, values.size());
+            assertEquals(values.subList(0, 4), values.subList(4, 8));
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testHybridHashJoin() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        // A build side of at most 3 pages fits in memory.
+        Database d = new Database(tempDir.getAbsolutePath(), 5);
+        Database.Transaction transaction = d.beginTransaction();
+        int numRecordsPerPage = transaction.getNumEntriesPerPage(
+                                    transaction.createTempTable(TestUtils.createSchemaWithAllTypes()));
+
+        // Every right record matches three left records, and a third of the
+        // left records match nothing.
+        List<Integer> leftValues = new ArrayList<>();
+        for (int i = 0; i < 900; i++) {
+            leftValues.add(i % 300);
+        }
+        List<Integer> rightValues = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            rightValues.add(i);
+        }
+        assertEquals(600, hybridHashJoin(transaction, leftValues, rightValues, "int"));
+        assertEquals(600, hybridHashJoin(transaction, leftValues, rightValues, "string"));
+
+        // A build side of 4 pages spills some of its partitions.
+        leftValues.clear();
+        rightValues.clear();
+        for (int i = 0; i < 4 * numRecordsPerPage; i++) {
+            leftValues.add(i);
+            rightValues.add(4 * numRecordsPerPage - i - 1);
+        }
+        assertEquals(4 * numRecordsPerPage,
+                     hybridHashJoin(transaction, leftValues, rightValues, "int"));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testHybridHashJoinSkew() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 5);
+        Database.Transaction transaction = d.beginTransaction();
+        int numRecordsPerPage = transaction.getNumEntriesPerPage(
+                                    transaction.createTempTable(TestUtils.createSchemaWithAllTypes()));
+
+        // The build side doesn't fit in memory, and no hash function splits
+        // it, so it is joined a few pages at a time.
+        List<Integer> leftValues = Arrays.asList(7, 7, 8);
+        List<Integer> rightValues = new ArrayList<>();
+        for (int i = 0; i < 5 * numRecordsPerPage; i++) {
+            rightValues.add(7);
+        }
+        assertEquals(10 * numRecordsPerPage,
+                     hybridHashJoin(transaction, leftValues, rightValues, "int"));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashJoin() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        // Each pass makes 4 partitions, and a build partition of at most 3
+        // pages fits in memory.
+        Database d = new Database(tempDir.getAbsolutePath(), 5);
+        Database.Transaction transaction = d.beginTransaction();
+
+        // One partitioning pass. Every right record matches three left
+        // records, and a third of the left records match nothing.
+        List<Integer> leftValues = new ArrayList<>();
+        for (int i = 0; i < 900; i++) {
+            leftValues.add(i % 300);
+        }
+        List<Integer> rightValues = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            rightValues.add(i);
+        }
+        assertEquals(600, graceHashJoin(transaction, leftValues, rightValues, "int"));
+        assertEquals(600, graceHashJoin(transaction, leftValues, rightValues, "string"));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashJoinRepartition() throws QueryPlanException, DatabaseException,
+        IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        // Each pass makes 2 partitions, and a build partition must fit in 1
+        // page.
+        Database d = new Database(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        int numRecordsPerPage = transaction.getNumEntriesPerPage(
+                                    transaction.createTempTable(TestUtils.createSchemaWithAllTypes()));
+
+        // The partitions of 3 pages are about 1.5 pages each, so they are
+        // partitioned again.
+        List<Integer> leftValues = new ArrayList<>();
+        List<Integer> rightValues = new ArrayList<>();
+        for (int i = 0; i < 3 * numRecordsPerPage; i++) {
+            leftValues.add(i);
+            rightValues.add(3 * numRecordsPerPage - i - 1);
+        }
+        assertEquals(3 * numRecordsPerPage,
+                     graceHashJoin(transaction, leftValues, rightValues, "int"));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testGraceHashJoinSkew() throws QueryPlanException, DatabaseException, IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 5);
+        Database.Transaction transaction = d.beginTransaction();
+        int numRecordsPerPage = transaction.getNumEntriesPerPage(
+                                    transaction.createTempTable(TestUtils.createSchemaWithAllTypes()));
+
+        // Both sides are larger than the 3 pages left for the build side, and
+        // no hash function splits them, so the build side is loaded 3 pages at
+        // a time.
+        int numLeftRecords = 3 * numRecordsPerPage + 1;
+        int numRightRecords = 3 * numRecordsPerPage + 2;
+        List<Integer> leftValues = new ArrayList<>(Collections.nCopies(numLeftRecords, 7));
+        leftValues.add(8);
+        List<Integer> rightValues = new ArrayList<>(Collections.nCopies(numRightRecords, 7));
+        rightValues.add(9);
+        assertEquals(numLeftRecords * numRightRecords,
+                     graceHashJoin(transaction, leftValues, rightValues, "int"));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testHybridHashJoinIOCost() throws QueryPlanException, DatabaseException,
+        IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database d = new Database(tempDir.getAbsolutePath(), 3);
+        Database.Transaction transaction = d.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "smallTable");
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "largeTable");
+        int numRecordsPerPage = transaction.getNumEntriesPerPage("smallTable");
+        for (int i = 0; i < numRecordsPerPage; i++) {
+            transaction.addRecord("smallTable",
+                                  TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        for (int i = 0; i < 8 * numRecordsPerPage; i++) {
+            transaction.addRecord("largeTable",
+                                  TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+
+        QueryOperator small = new SequentialScanOperator(transaction, "smallTable");
+        QueryOperator large = new SequentialScanOperator(transaction, "largeTable");
+
+        // The small table fits in memory, so both inputs are read once.
+        JoinOperator joinOperator = new HybridHashJoinOperator(large, small, "int", "int",
+                transaction);
+        assertEquals(9, joinOperator.estimateIOCost());
+
+        // Neither of the large table's 2 partitions of 4 pages fits in memory,
+        // so it takes three partitioning passes, as in a Grace hash join.
+        joinOperator = new HybridHashJoinOperator(large, large, "int", "int", transaction);
+        assertEquals(new GraceHashJoinOperator(large, large, "int", "int",
+                                               transaction).estimateIOCost(),
+                     joinOperator.estimateIOCost());
+        assertEquals(7 * 16, joinOperator.estimateIOCost());
+    }
 }
@@ -0,0 +1,131 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.TimeoutScaling;
+import edu.berkeley.cs186.database.categories.*;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.table.Record;
+
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import static org.junit.Assert.*;
+
+@Category(HW3Tests.class)
+public class TestSelectOperator {
+    // 10 second max per method tested.
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis((long) (10000 * TimeoutScaling.factor)));
+
+    /**
+     * Returns a source of 10 records where record i has bool i % 2 == 0, int
+     * i, string "s" + i % 3, and float i / 2.
+     */
+    private TestSourceOperator createSource() throws QueryPlanException {
+        List<Record> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            List<DataBox> values = new ArrayList<>();
+            values.add(new BoolDataBox(i % 2 == 0));
+            values.add(new IntDataBox(i));
+            values.add(new StringDataBox("s" + i % 3, 5));
+            values.add(new FloatDataBox(i / 2.0f));
+            records.add(new Record(values));
+        }
+        return new TestSourceOperator(records, TestUtils.createSchemaWithAllTypes());
+    }
+
+    /**
+     * Returns the ints of the records of operator, checking that its record
+     * and batch iterators agree.
+     */
+    private List<Integer> getInts(QueryOperator operator) throws QueryPlanException,
+        DatabaseException {
+        List<Integer> ints = new ArrayList<>();
+        Iterator<Record> records = operator.iterator();
+        while (records.hasNext()) {
+            ints.add(records.next().getValues().get(1).getInt());
+        }
+        List<Integer> batchInts = new ArrayList<>();
+        Iterator<Record> batchRecords = BatchIterator.toRecords(operator.batchIterator());
+        while (batchRecords.hasNext()) {
+            batchInts.add(batchRecords.next().getValues().get(1).getInt());
+        }
+        assertEquals(ints, batchInts);
+        return ints;
+    }
+
+    private QueryOperator select(String column, QueryPlan.PredicateOperator operator,
+                                 DataBox value) throws QueryPlanException {
+        return new SelectOperator(createSource(), column, operator, value);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testOperators() throws QueryPlanException, DatabaseException {
+        IntDataBox four = new IntDataBox(4);
+        assertEquals(Arrays.asList(4), getInts(select("int", QueryPlan.PredicateOperator.EQUALS, four)));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 5, 6, 7, 8, 9),
+                     getInts(select("int", QueryPlan.PredicateOperator.NOT_EQUALS, four)));
+        assertEquals(Arrays.asList(0, 1, 2, 3),
+                     getInts(select("int", QueryPlan.PredicateOperator.LESS_THAN, four)));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4),
+                     getInts(select("int", QueryPlan.PredicateOperator.LESS_THAN_EQUALS, four)));
+        assertEquals(Arrays.asList(5, 6, 7, 8, 9),
+                     getInts(select("int", QueryPlan.PredicateOperator.GREATER_THAN, four)));
+        assertEquals(Arrays.asList(4, 5, 6, 7, 8, 9),
+                     getInts(select("int", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS, four)));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testColumnTypes() throws QueryPlanException, DatabaseException {
+        assertEquals(Arrays.asList(6, 7, 8, 9),
+                     getInts(select("float", QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                                    new FloatDataBox(3.0f))));
+        assertEquals(Arrays.asList(3),
+                     getInts(select("float", QueryPlan.PredicateOperator.EQUALS, new FloatDataBox(1.5f))));
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9),
+                     getInts(select("bool", QueryPlan.PredicateOperator.EQUALS, new BoolDataBox(false))));
+        assertEquals(Arrays.asList(1, 2, 4, 5, 7, 8),
+                     getInts(select("string", QueryPlan.PredicateOperator.GREATER_THAN,
+                                    new StringDataBox("s0", 5))));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testConjunction() throws QueryPlanException, DatabaseException {
+        // 2 <= int < 9, bool is true, and string != s2
+        QueryOperator select = new SelectOperator(createSource(),
+                Arrays.asList("int", "int", "bool", "string"),
+                Arrays.asList(QueryPlan.PredicateOperator.GREATER_THAN_EQUALS,
+                              QueryPlan.PredicateOperator.LESS_THAN,
+                              QueryPlan.PredicateOperator.EQUALS,
+                              QueryPlan.PredicateOperator.NOT_EQUALS),
+                Arrays.asList(new IntDataBox(2), new IntDataBox(9), new BoolDataBox(true),
+                              new StringDataBox("s2", 5)));
+        assertEquals(Arrays.asList(4, 6), getInts(select));
+        assertEquals(Arrays.asList("bool", "int", "string", "float"),
+                     select.getOutputSchema().getFieldNames());
+
+        try {
+            new SelectOperator(createSource(), Arrays.asList("int", "bool"),
+                               Arrays.asList(QueryPlan.PredicateOperator.EQUALS),
+                               Arrays.asList(new IntDataBox(2), new BoolDataBox(true)));
+            fail();
+        } catch (QueryPlanException e) {
+            // Expected: the bool predicate has no operator.
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package edu.berkeley.cs186.database.table;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import edu.berkeley.cs186.database.categories.*;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({HW99Tests.class, SystemTests.class})
+public class TestRecordIdBitmap {
+    private static RecordIdBitmap bitmapOf(RecordId... rids) {
+        RecordIdBitmap bitmap = new RecordIdBitmap();
+        for (RecordId rid : rids) {
+            bitmap.add(rid);
+        }
+        return bitmap;
+    }
+
+    private static List<RecordId> toList(RecordIdBitmap bitmap) {
+        List<RecordId> rids = new ArrayList<>();
+        bitmap.forEach(rids::add);
+        return rids;
+    }
+
+    @Test
+    public void testEmpty() {
+        RecordIdBitmap bitmap = new RecordIdBitmap();
+        assertEquals(0, bitmap.getNumPages());
+        assertEquals(0, bitmap.getNumRecords());
+        assertFalse(bitmap.iterator().hasNext());
+        assertFalse(bitmap.contains(new RecordId(1, (short) 0)));
+        assertEquals(new BitSet(), bitmap.getEntries(1));
+    }
+
+    @Test
+    public void testPageOrder() {
+        // Add record ids in random order; they come back sorted by page, then
+        // by entry number, without duplicates.
+        List<RecordId> rids = new ArrayList<>();
+        for (int p = 1; p <= 20; ++p) {
+            for (short e = 0; e < 50; e += 3) {
+                rids.add(new RecordId(p, e));
+            }
+        }
+        List<RecordId> shuffled = new ArrayList<>(rids);
+        shuffled.addAll(rids.subList(0, 10));
+        Collections.shuffle(shuffled, new Random(42));
+
+        RecordIdBitmap bitmap = new RecordIdBitmap();
+        shuffled.forEach(bitmap::add);
+        assertEquals(rids, toList(bitmap));
+        assertEquals(20, bitmap.getNumPages());
+        assertEquals(rids.size(), bitmap.getNumRecords());
+        assertTrue(bitmap.contains(new RecordId(7, (short) 3)));
+        assertFalse(bitmap.contains(new RecordId(7, (short) 4)));
+
+        List<Integer> pageNums = new ArrayList<>();
+        bitmap.getPageNums().forEach(pageNums::add);
+        assertEquals(20, pageNums.size());
+        assertEquals(Integer.valueOf(1), pageNums.get(0));
+        assertEquals(Integer.valueOf(20), pageNums.get(19));
+    }
+
+    @Test
+    public void testIntersectAndUnion() {
+        RecordIdBitmap a = bitmapOf(new RecordId(1, (short) 0), new RecordId(1, (short) 5),
+                                    new RecordId(2, (short) 1), new RecordId(4, (short) 2));
+        RecordIdBitmap b = bitmapOf(new RecordId(1, (short) 5), new RecordId(2, (short) 2),
+                                    new RecordId(3, (short) 0), new RecordId(4, (short) 2));
+
+        assertEquals(Arrays.asList(new RecordId(1, (short) 5), new RecordId(4, (short) 2)),
+                     toList(a.intersect(b)));
+        // Pages without common record ids are dropped from the intersection.
+        assertEquals(2, a.intersect(b).getNumPages());
+
+        assertEquals(Arrays.asList(new RecordId(1, (short) 0), new RecordId(1, (short) 5),
+                                   new RecordId(2, (short) 1), new RecordId(2, (short) 2),
+                                   new RecordId(3, (short) 0), new RecordId(4, (short) 2)),
+                     toList(a.union(b)));
+        assertEquals(a.union(b), b.union(a));
+
+        // Neither operand is modified.
+        assertEquals(4, a.getNumRecords());
+        assertEquals(4, b.getNumRecords());
+    }
+}
@@ -4,6 +4,7 @@ import java.util.Iterator;
 import java.util.List;
 
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
@@ -28,6 +29,17 @@ public abstract class BaseTransaction implements AutoCloseable {
      */
     public abstract void createTable(Schema s, String tableName) throws DatabaseException;
 
+    /**
+     * Create a new table in this database in which each of the given string
+     * columns is dictionary-encoded.
+     * @param s the table schema
+     * @param tableName the name of the table
+     * @param dictionaryColumns the list of unique string columnNames to dictionary-encode
+     * @throws DatabaseException
+     */
+    public abstract void createDictionaryEncodedTable(Schema s, String tableName,
+                                List<String> dictionaryColumns) throws DatabaseException;
+
     /**
      * Create a new table in this database with an index on each of the given column names.
      * @param s the table schema
@@ -109,6 +121,8 @@ public abstract class BaseTransaction implements AutoCloseable {
 
     public abstract RecordId addRecord(String tableName, List<DataBox> values) throws DatabaseException;
 
+    public abstract RecordId addRecord(String tableName, Record record) throws DatabaseException;
+
     public abstract int getNumMemoryPages() throws DatabaseException;
 
     public abstract RecordId deleteRecord(String tableName, RecordId rid)  throws DatabaseException;
@@ -117,6 +131,14 @@ public abstract class BaseTransaction implements AutoCloseable {
 
     public abstract RecordIterator getRecordIterator(String tableName) throws DatabaseException;
 
+    public abstract RecordIterator getRecordIterator(String tableName, int column,
+            DataBox value) throws DatabaseException;
+
+    public abstract Iterator<Pair<Integer, Record>> getCodedRecordIterator(String tableName,
+            int column) throws DatabaseException;
+
+    public abstract boolean isDictionaryEncoded(String tableName, int column) throws DatabaseException;
+
     public abstract RecordId updateRecord(String tableName, List<DataBox> values,
                           RecordId rid)  throws DatabaseException;
 
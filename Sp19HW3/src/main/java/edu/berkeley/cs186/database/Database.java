@@ -13,11 +13,13 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.*;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeException;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryPlanException;
+import edu.berkeley.cs186.database.query.RecordColumnComparator;
 import edu.berkeley.cs186.database.query.SortOperator;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
@@ -221,6 +223,47 @@ public class Database {
             Database.this.tableIndices.put(tableName, new ArrayList<>());
         }
 
+        /**
+         * Create a new table in this database in which each of the given string
+         * columns is dictionary-encoded. Dictionary encoding is meant for columns
+         * with few distinct values; see Table for details.
+         *
+         * @param s the table schema
+         * @param tableName the name of the table
+         * @param dictionaryColumns the list of unique string columnNames to dictionary-encode
+         * @throws DatabaseException
+         */
+        public void createDictionaryEncodedTable(Schema s, String tableName,
+                List<String> dictionaryColumns) throws DatabaseException {
+            LockContext tableContext = getTableContext(tableName);
+
+            List<String> schemaColNames = s.getFieldNames();
+            List<Integer> schemaColIndex = new ArrayList<Integer>();
+            for (String col : dictionaryColumns) {
+                int i = schemaColNames.indexOf(col);
+                if (i == -1) {
+                    throw new DatabaseException("Column desired for dictionary encoding does not exist");
+                }
+                if (schemaColIndex.contains(i)) {
+                    throw new DatabaseException("Column desired for dictionary encoding has been duplicated");
+                }
+                Type colType = s.getFieldTypes().get(i);
+                if (colType.getTypeId() != TypeId.STRING) {
+                    throw new DatabaseException("Only strings can be dictionary encoded");
+                }
+                schemaColIndex.add(i);
+            }
+
+            if (Database.this.tableLookup.containsKey(tableName)) {
+                throw new DatabaseException("Table name already exists");
+            }
+
+            Path path = Paths.get(fileDir, tableName + Table.FILENAME_EXTENSION);
+            Database.this.tableLookup.put(tableName, newTable(tableName, s, path.toString(), tableContext,
+                                          this, schemaColIndex));
+            Database.this.tableIndices.put(tableName, new ArrayList<>());
+        }
+
         /**
          * Create a new table in this database with an index on each of the given column names.
          * @param s the table schema
@@ -289,6 +332,9 @@ public class Database {
 
             File f = new File(fileDir + tableName + Table.FILENAME_EXTENSION);
             f.delete();
+            File dictionaryFile = new File(fileDir + tableName + Table.FILENAME_EXTENSION +
+                                           Table.DICTIONARY_FILENAME_EXTENSION);
+            dictionaryFile.delete();
 
             Iterator<String> indices = Database.this.tableIndices.get(tableName).iterator();
             while (indices.hasNext()) {
@@ -385,7 +431,7 @@ public class Database {
                 int offset = getTable(tableName).getSchema().getFieldNames().indexOf(columnName);
                 try {
                     return new SortOperator(this, tableName,
-                                            Comparator.comparing((Record r) -> r.getValues().get(offset))).iterator();
+                                            new RecordColumnComparator(offset)).iterator();
                 } catch (QueryPlanException e2) {
                     throw new DatabaseException(e2);
                 }
@@ -412,10 +458,14 @@ public class Database {
         }
 
         public RecordId addRecord(String tableName, List<DataBox> values) throws DatabaseException {
+            return addRecord(tableName, new Record(values));
+        }
+
+        public RecordId addRecord(String tableName, Record record) throws DatabaseException {
             assert(this.active);
 
             Table tab = getTable(tableName);
-            RecordId rid = tab.addRecord(this, values);
+            RecordId rid = tab.addRecord(this, record);
             Schema s = tab.getSchema();
             List<String> colNames = s.getFieldNames();
 
@@ -423,7 +473,7 @@ public class Database {
                 String col = colNames.get(i);
                 if (indexExists(tableName, col)) {
                     try {
-                        resolveIndexFromName(tableName, col).getSecond().put(this, values.get(i), rid);
+                        resolveIndexFromName(tableName, col).getSecond().put(this, record.getValue(i), rid);
                     } catch (BPlusTreeException e) {
                         throw new DatabaseException(e.getMessage());
                     }
@@ -466,6 +516,31 @@ public class Database {
             return getTable(tableName).iterator(this);
         }
 
+        public RecordIterator getRecordIterator(String tableName, int column,
+                                                DataBox value) throws DatabaseException {
+            assert(this.active);
+            Table tab = getTable(tableName);
+            if (!tab.isDictionaryEncoded(column)) {
+                throw new DatabaseException("Column is not dictionary encoded");
+            }
+            return tab.iterator(this, column, value);
+        }
+
+        public Iterator<Pair<Integer, Record>> getCodedRecordIterator(String tableName,
+                int column) throws DatabaseException {
+            assert(this.active);
+            Table tab = getTable(tableName);
+            if (!tab.isDictionaryEncoded(column)) {
+                throw new DatabaseException("Column is not dictionary encoded");
+            }
+            return tab.codedIterator(this, column);
+        }
+
+        public boolean isDictionaryEncoded(String tableName, int column) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).isDictionaryEncoded(column);
+        }
+
         public RecordId updateRecord(String tableName, List<DataBox> values,
                                      RecordId rid)  throws DatabaseException {
             return runUpdateRecord(tableName, values, rid);
@@ -570,7 +645,7 @@ public class Database {
 
         public int getEntrySize(String tableName) throws DatabaseException {
             assert(this.active);
-            return getTable(tableName).getSchema().getSizeInBytes();
+            return getTable(tableName).getStorageSchema().getSizeInBytes();
         }
 
         public long getNumRecords(String tableName) throws DatabaseException {
@@ -697,6 +772,11 @@ public class Database {
         return new Table(name, schema, filename, lockContext, transaction);
     }
 
+    protected Table newTable(String name, Schema schema, String filename, LockContext lockContext,
+                             BaseTransaction transaction, List<Integer> dictionaryColumns) {
+        return new Table(name, schema, filename, lockContext, transaction, dictionaryColumns);
+    }
+
     protected Table newTable(String name, String filename, LockContext lockContext,
                              BaseTransaction transaction) throws DatabaseException {
         return new Table(name, filename, lockContext, transaction);
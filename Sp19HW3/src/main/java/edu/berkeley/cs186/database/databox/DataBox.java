@@ -57,6 +57,59 @@ public abstract class DataBox implements Comparable<DataBox> {
     // of a Databox in order to parse it.
     public abstract byte[] toBytes();
 
+    // Databoxes can also be encoded into an order-preserving "normalized key":
+    // a byte[] such that for two DataBoxes x and y of the same type,
+    //
+    //   x.compareTo(y) < 0  iff  compareOrderedBytes(x.toOrderedBytes(), y.toOrderedBytes()) < 0
+    //
+    // where compareOrderedBytes compares bytes as unsigned numbers. This lets
+    // sorts and index searches compare keys with a tight loop over raw bytes
+    // (or a single long comparison, see orderedPrefix) instead of virtual calls
+    // to compareTo. The encodings are:
+    //
+    //   - BoolDataBox: the single byte 0 or 1.
+    //   - IntDataBox: the 4 big-endian bytes of the int with its sign bit
+    //     flipped, so negative numbers sort before positive ones.
+    //   - FloatDataBox: the 4 big-endian bytes of Float.floatToIntBits with the
+    //     sign bit flipped for positive floats and every bit flipped for
+    //     negative floats. This orders floats exactly like Float.compare.
+    //   - StringDataBox: the bytes of the string. Every allowed character is
+    //     ASCII, so unsigned byte order is String.compareTo order.
+    public abstract byte[] toOrderedBytes();
+
+    /**
+     * Compares two normalized keys (see toOrderedBytes) as unsigned bytes,
+     * returning a negative number, zero, or a positive number.
+     */
+    public static int compareOrderedBytes(byte[] a, byte[] b) {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; ++i) {
+            int x = a[i] & 0xFF;
+            int y = b[i] & 0xFF;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * Packs the first 8 bytes of a normalized key into a long, padding with
+     * zeros. If orderedPrefix(a) and orderedPrefix(b) differ, then
+     * Long.compareUnsigned on them agrees with compareOrderedBytes(a, b); if they
+     * are equal and both keys are at most 8 bytes long, the keys are equal.
+     */
+    public static long orderedPrefix(byte[] key) {
+        long prefix = 0;
+        for (int i = 0; i < Long.BYTES; ++i) {
+            prefix <<= 8;
+            if (i < key.length) {
+                prefix |= key[i] & 0xFF;
+            }
+        }
+        return prefix;
+    }
+
     public static DataBox fromBytes(Buffer buf, Type type) {
         switch (type.getTypeId()) {
         case BOOL: {
@@ -62,6 +62,11 @@ public class StringDataBox extends DataBox {
         return s.getBytes(Charset.forName("UTF-8"));
     }
 
+    @Override
+    public byte[] toOrderedBytes() {
+        return toBytes();
+    }
+
     @Override
     public String toString() {
         return s;
@@ -138,13 +138,10 @@ public class BNLJOperator extends JoinOperator {
             do {
                 if (this.rightRecord != null) {
                     //compare join values
-                    DataBox leftJoinValue = this.leftRecord.getValues().get(BNLJOperator.this.getLeftColumnIndex());
-                    DataBox rightJoinValue = rightRecord.getValues().get(BNLJOperator.this.getRightColumnIndex());
-                    if (leftJoinValue.equals(rightJoinValue)) {
-                        List<DataBox> leftValues = new ArrayList<>(this.leftRecord.getValues());
-                        List<DataBox> rightValues = new ArrayList<>(rightRecord.getValues());
-                        leftValues.addAll(rightValues);
-                        this.nextRecord = new Record(leftValues);
+                    if (this.leftRecord.fieldEquals(BNLJOperator.this.getLeftColumnIndex(),
+                            rightRecord, BNLJOperator.this.getRightColumnIndex())) {
+                        this.nextRecord = Record.concat(this.leftRecord, rightRecord,
+                                                        BNLJOperator.this.getOutputSchema());
                     }
                     this.rightRecord = rightRecordIterator.hasNext() ? rightRecordIterator.next() : null;
                 } else if (this.leftRecordIterator.hasNext()) {
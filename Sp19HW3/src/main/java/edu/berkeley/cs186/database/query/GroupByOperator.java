@@ -7,6 +7,7 @@ import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
@@ -72,35 +73,66 @@ public class GroupByOperator extends QueryOperator {
     private class GroupByIterator implements Iterator<Record> {
         private Iterator<Record> sourceIterator;
         private MarkerRecord markerRecord;
-        private Map<String, String> hashGroupTempTables;
+        // Maps the key of each group to its temp table. The key is the group's
+        // dictionary code (an Integer) when the table can supply one, and the
+        // string form of the group's value otherwise.
+        private Map<Object, String> hashGroupTempTables;
         private int currCount;
-        private Iterator<String> keyIter;
+        private Iterator<Object> keyIter;
         private Iterator<Record> rIter;
 
         public GroupByIterator() throws QueryPlanException, DatabaseException {
-            this.sourceIterator = GroupByOperator.this.getSource().iterator();
             this.markerRecord = MarkerRecord.getMarker();
-            this.hashGroupTempTables = new HashMap<String, String>();
+            this.hashGroupTempTables = new HashMap<Object, String>();
             this.currCount = 0;
             this.rIter = null;
-            while (this.sourceIterator.hasNext()) {
-                Record record = this.sourceIterator.next();
-                DataBox groupByColumn = record.getValues().get(GroupByOperator.this.groupByColumnIndex);
-                String tableName;
-                if (!this.hashGroupTempTables.containsKey(groupByColumn.toString())) {
-                    tableName = "Temp" + GroupByOperator.this.groupByColumn + "GroupBy" +
-                                this.hashGroupTempTables.size();
-                    GroupByOperator.this.transaction.createTempTable(GroupByOperator.this.getSource().getOutputSchema(),
-                            tableName);
-                    this.hashGroupTempTables.put(groupByColumn.toString(), tableName);
-                } else {
-                    tableName = this.hashGroupTempTables.get(groupByColumn.toString());
+            QueryOperator source = GroupByOperator.this.getSource();
+            int columnIndex = GroupByOperator.this.groupByColumnIndex;
+            if (source instanceof SequentialScanOperator &&
+                    ((SequentialScanOperator) source).isDictionaryEncoded(columnIndex)) {
+                // Group on dictionary codes rather than on the string form of
+                // every tuple's value. Only values without a code fall back to
+                // their string form.
+                Iterator<Pair<Integer, Record>> codedIterator =
+                    ((SequentialScanOperator) source).codedIterator(columnIndex);
+                while (codedIterator.hasNext()) {
+                    Pair<Integer, Record> coded = codedIterator.next();
+                    Record record = coded.getSecond();
+                    Object key = coded.getFirst();
+                    if (key == null) {
+                        key = record.getValue(columnIndex).toString();
+                    }
+                    this.addToGroup(key, record);
+                }
+            } else {
+                this.sourceIterator = source.iterator();
+                while (this.sourceIterator.hasNext()) {
+                    Record record = this.sourceIterator.next();
+                    DataBox groupByColumn = record.getValue(columnIndex);
+                    this.addToGroup(groupByColumn.toString(), record);
                 }
-                GroupByOperator.this.transaction.addRecord(tableName, record.getValues());
             }
             this.keyIter = hashGroupTempTables.keySet().iterator();
         }
 
+        /**
+         * Adds record to the temp table of the group with key `key`, creating
+         * the temp table if this is the group's first record.
+         */
+        private void addToGroup(Object key, Record record) throws QueryPlanException, DatabaseException {
+            String tableName;
+            if (!this.hashGroupTempTables.containsKey(key)) {
+                tableName = "Temp" + GroupByOperator.this.groupByColumn + "GroupBy" +
+                            this.hashGroupTempTables.size();
+                GroupByOperator.this.transaction.createTempTable(GroupByOperator.this.getSource().getOutputSchema(),
+                        tableName);
+                this.hashGroupTempTables.put(key, tableName);
+            } else {
+                tableName = this.hashGroupTempTables.get(key);
+            }
+            GroupByOperator.this.transaction.addRecord(tableName, record);
+        }
+
         /**
          * Checks if there are more record(s) to yield
          *
@@ -121,7 +153,7 @@ public class GroupByOperator extends QueryOperator {
                 if (this.rIter != null && this.rIter.hasNext()) {
                     return this.rIter.next();
                 } else if (this.keyIter.hasNext()) {
-                    String key = this.keyIter.next();
+                    Object key = this.keyIter.next();
                     String tableName = this.hashGroupTempTables.get(key);
                     Iterator<Record> prevIter = this.rIter;
                     try {
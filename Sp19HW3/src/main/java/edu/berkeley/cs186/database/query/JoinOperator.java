@@ -225,6 +225,10 @@ public abstract class JoinOperator extends QueryOperator {
         return this.transaction.addRecord(tableName, values);
     }
 
+    public RecordId addRecord(String tableName, Record record) throws DatabaseException {
+        return this.transaction.addRecord(tableName, record);
+    }
+
     public JoinType getJoinType() {
         return this.joinType;
     }
@@ -246,7 +250,7 @@ public abstract class JoinOperator extends QueryOperator {
                                          JoinOperator.this.getLeftSource().getOutputSchema());
                 Iterator<Record> leftIter = JoinOperator.this.getLeftSource().iterator();
                 while (leftIter.hasNext()) {
-                    JoinOperator.this.addRecord(this.leftTableName, leftIter.next().getValues());
+                    JoinOperator.this.addRecord(this.leftTableName, leftIter.next());
                 }
             }
             if (JoinOperator.this.getRightSource().isSequentialScan()) {
@@ -256,7 +260,7 @@ public abstract class JoinOperator extends QueryOperator {
                                           JoinOperator.this.getRightSource().getOutputSchema());
                 Iterator<Record> rightIter = JoinOperator.this.getRightSource().iterator();
                 while (rightIter.hasNext()) {
-                    JoinOperator.this.addRecord(this.rightTableName, rightIter.next().getValues());
+                    JoinOperator.this.addRecord(this.rightTableName, rightIter.next());
                 }
             }
         }
@@ -130,13 +130,10 @@ public class PNLJOperator extends JoinOperator {
             do {
                 if (this.rightRecord != null) {
                     //compare join values
-                    DataBox leftJoinValue = this.leftRecord.getValues().get(PNLJOperator.this.getLeftColumnIndex());
-                    DataBox rightJoinValue = rightRecord.getValues().get(PNLJOperator.this.getRightColumnIndex());
-                    if (leftJoinValue.equals(rightJoinValue)) {
-                        List<DataBox> leftValues = new ArrayList<>(this.leftRecord.getValues());
-                        List<DataBox> rightValues = new ArrayList<>(rightRecord.getValues());
-                        leftValues.addAll(rightValues);
-                        this.nextRecord = new Record(leftValues);
+                    if (this.leftRecord.fieldEquals(PNLJOperator.this.getLeftColumnIndex(),
+                            rightRecord, PNLJOperator.this.getRightColumnIndex())) {
+                        this.nextRecord = Record.concat(this.leftRecord, rightRecord,
+                                                        PNLJOperator.this.getOutputSchema());
                     }
                     this.rightRecord = rightRecordIterator.hasNext() ? rightRecordIterator.next() : null;
                 } else if (this.leftRecordIterator.hasNext()) {
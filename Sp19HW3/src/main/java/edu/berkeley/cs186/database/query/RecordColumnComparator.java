@@ -0,0 +1,27 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Comparator;
+
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * A RecordColumnComparator orders records by the value of a single column.
+ * Sorting with a RecordColumnComparator rather than an arbitrary Comparator
+ * lets SortOperator sort on the column's order-preserving encoding (see
+ * DataBox.toOrderedBytes), comparing most keys with a single long comparison.
+ */
+public class RecordColumnComparator implements Comparator<Record> {
+    private int columnIndex;
+
+    public RecordColumnComparator(int columnIndex) {
+        this.columnIndex = columnIndex;
+    }
+
+    public int getColumnIndex() {
+        return this.columnIndex;
+    }
+
+    public int compare(Record o1, Record o2) {
+        return o1.compareField(this.columnIndex, o2, this.columnIndex);
+    }
+}
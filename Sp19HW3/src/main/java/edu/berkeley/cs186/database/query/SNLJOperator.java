@@ -118,13 +118,10 @@ public class SNLJOperator extends JoinOperator {
             this.nextRecord = null;
             do {
                 if (this.rightRecord != null) {
-                    DataBox leftJoinValue = this.leftRecord.getValues().get(SNLJOperator.this.getLeftColumnIndex());
-                    DataBox rightJoinValue = rightRecord.getValues().get(SNLJOperator.this.getRightColumnIndex());
-                    if (leftJoinValue.equals(rightJoinValue)) {
-                        List<DataBox> leftValues = new ArrayList<>(this.leftRecord.getValues());
-                        List<DataBox> rightValues = new ArrayList<>(rightRecord.getValues());
-                        leftValues.addAll(rightValues);
-                        this.nextRecord = new Record(leftValues);
+                    if (this.leftRecord.fieldEquals(SNLJOperator.this.getLeftColumnIndex(),
+                            rightRecord, SNLJOperator.this.getRightColumnIndex())) {
+                        this.nextRecord = Record.concat(this.leftRecord, rightRecord,
+                                                        SNLJOperator.this.getOutputSchema());
                     }
                     this.rightRecord = rightIterator.hasNext() ? rightIterator.next() : null;
                 } else {
@@ -79,7 +79,17 @@ public class SelectOperator extends QueryOperator {
         private Record nextRecord;
 
         public SelectIterator() throws QueryPlanException, DatabaseException {
-            this.sourceIterator = SelectOperator.this.getSource().iterator();
+            QueryOperator source = SelectOperator.this.getSource();
+            if (SelectOperator.this.operator == QueryPlan.PredicateOperator.EQUALS &&
+                    source instanceof SequentialScanOperator &&
+                    ((SequentialScanOperator) source).isDictionaryEncoded(SelectOperator.this.columnIndex)) {
+                // Let the table compare dictionary codes rather than decoding every
+                // tuple only to throw most of them away.
+                this.sourceIterator = ((SequentialScanOperator) source).equalsIterator(
+                                          SelectOperator.this.columnIndex, SelectOperator.this.value);
+            } else {
+                this.sourceIterator = source.iterator();
+            }
             this.markerRecord = MarkerRecord.getMarker();
             this.nextRecord = null;
         }
@@ -101,43 +111,43 @@ public class SelectOperator extends QueryOperator {
                 }
                 switch (SelectOperator.this.operator) {
                 case EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
+                    if (r.fieldEquals(SelectOperator.this.columnIndex, value)) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case NOT_EQUALS:
-                    if (!r.getValues().get(SelectOperator.this.columnIndex).equals(value)) {
+                    if (!r.fieldEquals(SelectOperator.this.columnIndex, value)) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case LESS_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
+                    if (r.compareField(SelectOperator.this.columnIndex, value) < 0) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case LESS_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == -1) {
+                    if (r.compareField(SelectOperator.this.columnIndex, value) < 0) {
                         this.nextRecord = r;
                         return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
+                    } else if (r.compareField(SelectOperator.this.columnIndex, value) == 0) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case GREATER_THAN:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
+                    if (r.compareField(SelectOperator.this.columnIndex, value) > 0) {
                         this.nextRecord = r;
                         return true;
                     }
                     break;
                 case GREATER_THAN_EQUALS:
-                    if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 1) {
+                    if (r.compareField(SelectOperator.this.columnIndex, value) > 0) {
                         this.nextRecord = r;
                         return true;
-                    } else if (r.getValues().get(SelectOperator.this.columnIndex).compareTo(value) == 0) {
+                    } else if (r.compareField(SelectOperator.this.columnIndex, value) == 0) {
                         this.nextRecord = r;
                         return true;
                     }
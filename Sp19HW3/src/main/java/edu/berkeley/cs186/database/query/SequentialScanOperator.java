@@ -4,6 +4,8 @@ import java.util.Iterator;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -42,6 +44,32 @@ public class SequentialScanOperator extends QueryOperator {
         return this.transaction.getRecordIterator(tableName);
     }
 
+    /**
+     * Returns whether column `column` of the table is dictionary-encoded, in
+     * which case equality predicates on it can be evaluated with equalsIterator.
+     */
+    public boolean isDictionaryEncoded(int column) throws DatabaseException {
+        return this.transaction.isDictionaryEncoded(tableName, column);
+    }
+
+    /**
+     * Returns an iterator over the tuples of the table whose dictionary-encoded
+     * column `column` equals `value`. The predicate is evaluated on dictionary
+     * codes, so tuples that don't match are never decoded.
+     */
+    public Iterator<Record> equalsIterator(int column, DataBox value) throws DatabaseException {
+        return this.transaction.getRecordIterator(tableName, column, value);
+    }
+
+    /**
+     * Returns an iterator over the tuples of the table, each paired with its
+     * code in dictionary-encoded column `column`, or with null if the tuple's
+     * value has no code. See Table.codedIterator.
+     */
+    public Iterator<Pair<Integer, Record>> codedIterator(int column) throws DatabaseException {
+        return this.transaction.getCodedRecordIterator(tableName, column);
+    }
+
     public Schema computeSchema() throws QueryPlanException {
         try {
             return this.transaction.getFullyQualifiedSchema(this.tableName);
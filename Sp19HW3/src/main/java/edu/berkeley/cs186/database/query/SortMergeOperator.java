@@ -98,10 +98,8 @@ public class SortMergeOperator extends JoinOperator {
                 }
                 if (rightRecord != null) {
                     if (comparator.compare(leftRecord, rightRecord) == 0) {
-                        List<DataBox> leftValues = new ArrayList<>(this.leftRecord.getValues());
-                        List<DataBox> rightValues = new ArrayList<>(this.rightRecord.getValues());
-                        leftValues.addAll(rightValues);
-                        this.nextRecord = new Record(leftValues);
+                        this.nextRecord = Record.concat(this.leftRecord, this.rightRecord,
+                                                        SortMergeOperator.this.getOutputSchema());
                         rightRecord = rightIterator.hasNext() ? rightIterator.next() : null;
                     } else {
                         resetRightRecord();
@@ -171,17 +169,15 @@ public class SortMergeOperator extends JoinOperator {
             throw new UnsupportedOperationException();
         }
 
-        private class LeftRecordComparator implements Comparator<Record> {
-            public int compare(Record o1, Record o2) {
-                return o1.getValues().get(SortMergeOperator.this.getLeftColumnIndex()).compareTo(
-                           o2.getValues().get(SortMergeOperator.this.getLeftColumnIndex()));
+        private class LeftRecordComparator extends RecordColumnComparator {
+            LeftRecordComparator() {
+                super(SortMergeOperator.this.getLeftColumnIndex());
             }
         }
 
-        private class RightRecordComparator implements Comparator<Record> {
-            public int compare(Record o1, Record o2) {
-                return o1.getValues().get(SortMergeOperator.this.getRightColumnIndex()).compareTo(
-                           o2.getValues().get(SortMergeOperator.this.getRightColumnIndex()));
+        private class RightRecordComparator extends RecordColumnComparator {
+            RightRecordComparator() {
+                super(SortMergeOperator.this.getRightColumnIndex());
             }
         }
 
@@ -192,8 +188,8 @@ public class SortMergeOperator extends JoinOperator {
         */
         private class LR_RecordComparator implements Comparator<Record> {
             public int compare(Record o1, Record o2) {
-                return o1.getValues().get(SortMergeOperator.this.getLeftColumnIndex()).compareTo(
-                           o2.getValues().get(SortMergeOperator.this.getRightColumnIndex()));
+                return o1.compareField(SortMergeOperator.this.getLeftColumnIndex(),
+                                       o2, SortMergeOperator.this.getRightColumnIndex());
             }
         }
     }
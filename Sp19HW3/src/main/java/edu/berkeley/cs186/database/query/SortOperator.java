@@ -47,9 +47,13 @@ public class SortOperator {
             SortOperator.this.transaction.addRecord(this.tempTableName, values);
         }
 
+        public void addRecord(Record record) throws DatabaseException {
+            SortOperator.this.transaction.addRecord(this.tempTableName, record);
+        }
+
         public void addRecords(List<Record> records) throws DatabaseException {
             for (Record r : records) {
-                this.addRecord(r.getValues());
+                this.addRecord(r);
             }
         }
 
@@ -78,11 +82,56 @@ public class SortOperator {
             elements.add(recordIter.next());
         }
         Run toRetrun = new Run();
-        elements.sort(SortOperator.this.comparator);
+        if (SortOperator.this.comparator instanceof RecordColumnComparator) {
+            int columnIndex = ((RecordColumnComparator) SortOperator.this.comparator).getColumnIndex();
+            elements = sortByOrderedKey(elements, columnIndex);
+        } else {
+            elements.sort(SortOperator.this.comparator);
+        }
         toRetrun.addRecords(elements);
         return toRetrun;
     }
 
+    /**
+     * Sorts `records` on column `columnIndex` using the column's order-preserving
+     * encoding. Each record's key is encoded once up front, and records are then
+     * compared on the first 8 bytes of their keys packed into a long, falling
+     * back to comparing the full keys only when the prefixes tie.
+     */
+    private static List<Record> sortByOrderedKey(List<Record> records, int columnIndex) {
+        List<OrderedKeyEntry> entries = new ArrayList<>(records.size());
+        for (Record r : records) {
+            entries.add(new OrderedKeyEntry(r.toOrderedBytes(columnIndex), r));
+        }
+        entries.sort(null);
+
+        List<Record> sorted = new ArrayList<>(records.size());
+        for (OrderedKeyEntry entry : entries) {
+            sorted.add(entry.record);
+        }
+        return sorted;
+    }
+
+    private static class OrderedKeyEntry implements Comparable<OrderedKeyEntry> {
+        long prefix;
+        byte[] key;
+        Record record;
+
+        OrderedKeyEntry(byte[] key, Record record) {
+            this.prefix = DataBox.orderedPrefix(key);
+            this.key = key;
+            this.record = record;
+        }
+
+        public int compareTo(OrderedKeyEntry other) {
+            int c = Long.compareUnsigned(this.prefix, other.prefix);
+            if (c != 0 || this.key.length <= Long.BYTES) {
+                return c;
+            }
+            return DataBox.compareOrderedBytes(this.key, other.key);
+        }
+    }
+
     /**
      * Given a list of sorted runs, returns a new run that is the result
      * of merging the input runs. You should use a Priority Queue (java.util.PriorityQueue)
@@ -107,7 +156,7 @@ public class SortOperator {
         while (!nextElem.isEmpty()) {
             Pair<Record, Integer> next = nextElem.poll();
             int j = next.getSecond();
-            toReturn.addRecord(next.getFirst().getValues());
+            toReturn.addRecord(next.getFirst());
             if (runIters.get(j).hasNext()) {
                 nextElem.add(new Pair<>(runIters.get(j).next(), j));
             }
@@ -150,7 +199,7 @@ public class SortOperator {
             Run run = new Run();
             int i = 0;
             while (i < numBuffers * pageSize & allRecords.hasNext()) {
-                run.addRecord(allRecords.next().getValues());
+                run.addRecord(allRecords.next());
                 i++;
             }
             sortedRuns.add(sortRun(run));
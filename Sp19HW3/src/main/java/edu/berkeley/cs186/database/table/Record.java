@@ -1,51 +1,383 @@
 package edu.berkeley.cs186.database.table;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 
-/** A Record is just list of DataBoxes. */
+/**
+ * A Record is a list of DataBoxes. A record is stored in one of two forms:
+ *
+ *   1. As a List<DataBox>. Records constructed from a list of values (e.g.
+ *      records built by a user before being inserted) are stored this way.
+ *   2. As a flat byte[] in the on-disk record format along with the Schema
+ *      describing it. Records read from a table (see fromBytes) are stored
+ *      this way, so reading a record costs a single allocation rather than one
+ *      per field.
+ *
+ * Flat records can be read field by field with the typed accessors (getInt,
+ * getFloat, getBool, getString, getValue) and compared with compareField
+ * without ever constructing a DataBox:
+ *
+ *   Record r = table.getRecord(transaction, rid); // flat
+ *   int x = r.getInt(0);                          // no DataBox allocated
+ *   r.compareField(1, new FloatDataBox(2.0f));    // no DataBox allocated
+ *
+ * Calling getValues converts a flat record into a List<DataBox> once; from
+ * then on, the record is stored as a list, so that changes made to the list
+ * returned by getValues are reflected in the record. No other method converts
+ * a record: equals, hashCode and toString work on the bytes of flat records.
+ */
 public class Record {
+    // The values of the record, or null if the record is flat.
     private List<DataBox> values;
 
+    // The bytes and schema of a flat record, or null if the record is a list.
+    private byte[] bytes;
+    private Schema schema;
+
     public Record(List<DataBox> values) {
         this.values = values;
+        this.bytes = null;
+        this.schema = null;
+    }
+
+    /**
+     * Constructs a flat record from the serialized record `bytes` with schema
+     * `schema`. The record takes ownership of `bytes`.
+     */
+    public Record(byte[] bytes, Schema schema) {
+        assert(bytes.length == schema.getSizeInBytes());
+        this.values = null;
+        this.bytes = bytes;
+        this.schema = schema;
     }
 
     public List<DataBox> getValues() {
+        if (this.values == null) {
+            List<DataBox> values = new ArrayList<>(this.schema.getFieldTypes().size());
+            for (int i = 0; i < this.schema.getFieldTypes().size(); ++i) {
+                values.add(getValue(i));
+            }
+            this.values = values;
+            this.bytes = null;
+            this.schema = null;
+        }
         return this.values;
     }
 
+    // Field accessors ///////////////////////////////////////////////////////////
+    /** Returns the number of fields in this record. */
+    public int size() {
+        return isFlat() ? this.schema.getFieldTypes().size() : this.values.size();
+    }
+
+    /** Returns whether this record is stored as a flat byte[]. */
+    public boolean isFlat() {
+        return this.bytes != null;
+    }
+
+    /** Returns the schema of a flat record, or null if the record is a list. */
+    Schema getFlatSchema() {
+        return this.schema;
+    }
+
+    /** Returns field i of this record, constructing a DataBox if necessary. */
+    public DataBox getValue(int i) {
+        if (!isFlat()) {
+            return this.values.get(i);
+        }
+
+        Type type = this.schema.getFieldTypes().get(i);
+        switch (type.getTypeId()) {
+        case BOOL:
+            return new BoolDataBox(getBool(i));
+        case INT:
+            return new IntDataBox(getInt(i));
+        case FLOAT:
+            return new FloatDataBox(getFloat(i));
+        case STRING:
+            return new StringDataBox(getString(i), type.getSizeInBytes());
+        default:
+            String err = String.format("Unhandled TypeId %s.", type.getTypeId().toString());
+            throw new IllegalArgumentException(err);
+        }
+    }
+
+    public boolean getBool(int i) {
+        if (!isFlat()) {
+            return this.values.get(i).getBool();
+        }
+        return this.bytes[this.schema.getFieldOffset(i)] == 1;
+    }
+
+    public int getInt(int i) {
+        if (!isFlat()) {
+            return this.values.get(i).getInt();
+        }
+        int offset = this.schema.getFieldOffset(i);
+        return ((this.bytes[offset] & 0xFF) << 24) |
+               ((this.bytes[offset + 1] & 0xFF) << 16) |
+               ((this.bytes[offset + 2] & 0xFF) << 8) |
+               (this.bytes[offset + 3] & 0xFF);
+    }
+
+    public float getFloat(int i) {
+        if (!isFlat()) {
+            return this.values.get(i).getFloat();
+        }
+        int offset = this.schema.getFieldOffset(i);
+        int bits = ((this.bytes[offset] & 0xFF) << 24) |
+                   ((this.bytes[offset + 1] & 0xFF) << 16) |
+                   ((this.bytes[offset + 2] & 0xFF) << 8) |
+                   (this.bytes[offset + 3] & 0xFF);
+        return Float.intBitsToFloat(bits);
+    }
+
+    public String getString(int i) {
+        if (!isFlat()) {
+            return this.values.get(i).getString();
+        }
+        int offset = this.schema.getFieldOffset(i);
+        int length = this.schema.getFieldTypes().get(i).getSizeInBytes();
+        return new String(this.bytes, offset, length, Charset.forName("UTF-8"));
+    }
+
+    /**
+     * Compares field i of this record to `value`, returning a negative number,
+     * zero, or a positive number as in DataBox.compareTo. Flat records are
+     * compared without constructing a DataBox.
+     */
+    public int compareField(int i, DataBox value) {
+        if (!isFlat()) {
+            return this.values.get(i).compareTo(value);
+        }
+
+        // The typed getters of value throw a DataBoxException if value is not of
+        // the field's type, just like DataBox.compareTo.
+        switch (this.schema.getFieldTypes().get(i).getTypeId()) {
+        case BOOL:
+            return Boolean.compare(getBool(i), value.getBool());
+        case INT:
+            return Integer.compare(getInt(i), value.getInt());
+        case FLOAT:
+            return Float.compare(getFloat(i), value.getFloat());
+        default:
+            return getString(i).compareTo(value.getString());
+        }
+    }
+
+    /**
+     * Compares field i of this record to field j of `other`. If both records
+     * are flat, the fields are compared without constructing any DataBoxes.
+     */
+    public int compareField(int i, Record other, int j) {
+        if (!other.isFlat()) {
+            return compareField(i, other.getValue(j));
+        }
+        if (!isFlat()) {
+            return -other.compareField(j, getValue(i));
+        }
+
+        Type type = this.schema.getFieldTypes().get(i);
+        Type otherType = other.schema.getFieldTypes().get(j);
+        if (type.getTypeId() != otherType.getTypeId()) {
+            // Let DataBox produce its usual error for mismatched types.
+            return getValue(i).compareTo(other.getValue(j));
+        }
+        switch (type.getTypeId()) {
+        case BOOL:
+            return Boolean.compare(getBool(i), other.getBool(j));
+        case INT:
+            return Integer.compare(getInt(i), other.getInt(j));
+        case FLOAT:
+            return Float.compare(getFloat(i), other.getFloat(j));
+        default:
+            return getString(i).compareTo(other.getString(j));
+        }
+    }
+
+    /**
+     * Returns whether field i of this record equals `value`, as in
+     * DataBox.equals. Flat records are compared without constructing a DataBox.
+     */
+    public boolean fieldEquals(int i, DataBox value) {
+        if (!isFlat()) {
+            return this.values.get(i).equals(value);
+        }
+
+        Type type = this.schema.getFieldTypes().get(i);
+        if (!type.equals(value.type())) {
+            return false;
+        }
+        switch (type.getTypeId()) {
+        case BOOL:
+            return getBool(i) == value.getBool();
+        case INT:
+            return getInt(i) == value.getInt();
+        case FLOAT:
+            return getFloat(i) == value.getFloat();
+        default:
+            return getString(i).equals(value.getString());
+        }
+    }
+
+    /**
+     * Returns whether field i of this record equals field j of `other`, as in
+     * DataBox.equals.
+     */
+    public boolean fieldEquals(int i, Record other, int j) {
+        if (isFlat() && other.isFlat()) {
+            Type type = this.schema.getFieldTypes().get(i);
+            if (!type.equals(other.schema.getFieldTypes().get(j))) {
+                return false;
+            }
+            if (type.getTypeId() == TypeId.FLOAT) {
+                // 0.0f == -0.0f even though their bytes differ.
+                return getFloat(i) == other.getFloat(j);
+            }
+            int offset = this.schema.getFieldOffset(i);
+            int otherOffset = other.schema.getFieldOffset(j);
+            for (int k = 0; k < type.getSizeInBytes(); ++k) {
+                if (this.bytes[offset + k] != other.bytes[otherOffset + k]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return getValue(i).equals(other.getValue(j));
+    }
+
+    /**
+     * Returns the order-preserving encoding of field i of this record (see
+     * DataBox.toOrderedBytes). Flat records are encoded straight from their
+     * bytes without constructing a DataBox.
+     */
+    public byte[] toOrderedBytes(int i) {
+        if (!isFlat()) {
+            return this.values.get(i).toOrderedBytes();
+        }
+
+        Type type = this.schema.getFieldTypes().get(i);
+        int offset = this.schema.getFieldOffset(i);
+        byte[] key = new byte[type.getSizeInBytes()];
+        System.arraycopy(this.bytes, offset, key, 0, key.length);
+        switch (type.getTypeId()) {
+        case INT:
+            key[0] ^= 0x80;
+            break;
+        case FLOAT:
+            if (key[0] < 0) {
+                for (int k = 0; k < key.length; ++k) {
+                    key[k] ^= 0xFF;
+                }
+            } else {
+                key[0] ^= 0x80;
+            }
+            break;
+        default:
+            // Bools and strings are already stored in order-preserving form.
+            break;
+        }
+        return key;
+    }
+
+    /**
+     * Returns the record formed by appending the fields of `right` to the
+     * fields of `left`. If both records are flat, the result is a flat record
+     * with schema `schema`, which must describe the concatenated fields.
+     */
+    public static Record concat(Record left, Record right, Schema schema) {
+        if (left.isFlat() && right.isFlat()) {
+            byte[] bytes = new byte[left.bytes.length + right.bytes.length];
+            System.arraycopy(left.bytes, 0, bytes, 0, left.bytes.length);
+            System.arraycopy(right.bytes, 0, bytes, left.bytes.length, right.bytes.length);
+            return new Record(bytes, schema);
+        }
+
+        List<DataBox> values = new ArrayList<>(left.size() + right.size());
+        for (int i = 0; i < left.size(); ++i) {
+            values.add(left.getValue(i));
+        }
+        for (int i = 0; i < right.size(); ++i) {
+            values.add(right.getValue(i));
+        }
+        return new Record(values);
+    }
+
+    /**
+     * Returns the record formed by fields `indices` of this record, in order.
+     * If this record is flat, the result is a flat record with schema `schema`,
+     * which must describe the projected fields.
+     */
+    public Record project(List<Integer> indices, Schema schema) {
+        if (isFlat()) {
+            byte[] bytes = new byte[schema.getSizeInBytes()];
+            int offset = 0;
+            for (int index : indices) {
+                int length = this.schema.getFieldTypes().get(index).getSizeInBytes();
+                System.arraycopy(this.bytes, this.schema.getFieldOffset(index), bytes, offset, length);
+                offset += length;
+            }
+            return new Record(bytes, schema);
+        }
+
+        List<DataBox> values = new ArrayList<>(indices.size());
+        for (int index : indices) {
+            values.add(this.values.get(index));
+        }
+        return new Record(values);
+    }
+
+    // Serialization /////////////////////////////////////////////////////////////
+    /**
+     * Returns the serialized record with schema `schema`. The result is a new
+     * array, even for a flat record, so changing it doesn't change the record.
+     */
     public byte[] toBytes(Schema schema) {
+        if (isFlat() && this.bytes.length == schema.getSizeInBytes()) {
+            return this.bytes.clone();
+        }
         ByteBuffer byteBuffer = ByteBuffer.allocate(schema.getSizeInBytes());
-        for (DataBox value : values) {
-            byteBuffer.put(value.toBytes());
+        for (int i = 0; i < size(); ++i) {
+            byteBuffer.put(getValue(i).toBytes());
         }
         return byteBuffer.array();
     }
 
     /**
      * Takes a byte[] and decodes it into a Record. This method assumes that the
-     * input byte[] represents a record that corresponds to this schema.
+     * input byte[] represents a record that corresponds to this schema. The
+     * returned record is flat.
      *
      * @param buf the byte array to decode
      * @param schema the schema used for this record
      * @return the decoded Record
      */
     public static Record fromBytes(Buffer buf, Schema schema) {
-        List<DataBox> values = new ArrayList<DataBox>();
-        for (Type t : schema.getFieldTypes()) {
-            values.add(DataBox.fromBytes(buf, t));
-        }
-        return new Record(values);
+        byte[] bytes = new byte[schema.getSizeInBytes()];
+        buf.get(bytes);
+        return new Record(bytes, schema);
     }
 
     @Override
     public String toString() {
+        if (!isFlat()) {
+            return this.values.toString();
+        }
+        List<DataBox> values = new ArrayList<>(size());
+        for (int i = 0; i < size(); ++i) {
+            values.add(getValue(i));
+        }
         return values.toString();
     }
 
@@ -58,11 +390,49 @@ public class Record {
             return false;
         }
         Record r = (Record) o;
-        return values.equals(r.values);
+        if (!isFlat() && !r.isFlat()) {
+            return this.values.equals(r.values);
+        }
+        if (size() != r.size()) {
+            return false;
+        }
+        for (int i = 0; i < size(); ++i) {
+            if (!fieldEquals(i, r, i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
+    /**
+     * Returns the hash code of the record's list of values, as List.hashCode
+     * defines it, so that a flat record and a list record with the same values
+     * have the same hash code. Flat records are hashed without constructing any
+     * DataBoxes.
+     */
     @Override
     public int hashCode() {
-        return values.hashCode();
+        if (!isFlat()) {
+            return this.values.hashCode();
+        }
+        int hash = 1;
+        for (int i = 0; i < size(); ++i) {
+            hash = 31 * hash + fieldHashCode(i);
+        }
+        return hash;
+    }
+
+    /** Returns the hash code of the DataBox of field i of a flat record. */
+    private int fieldHashCode(int i) {
+        switch (this.schema.getFieldTypes().get(i).getTypeId()) {
+        case BOOL:
+            return Boolean.hashCode(getBool(i));
+        case INT:
+            return Integer.hashCode(getInt(i));
+        case FLOAT:
+            return Float.hashCode(getFloat(i));
+        default:
+            return getString(i).hashCode();
+        }
     }
 }
@@ -26,14 +26,19 @@ public class Schema {
     private List<Type> fieldTypes;
     private int sizeInBytes;
 
+    // fieldOffsets[i] is the offset (in bytes) of field i in a serialized record.
+    private int[] fieldOffsets;
+
     public Schema(List<String> fieldNames, List<Type> fieldTypes) {
         assert(fieldNames.size() == fieldTypes.size());
         this.fieldNames = fieldNames;
         this.fieldTypes = fieldTypes;
 
         sizeInBytes = 0;
-        for (Type t : fieldTypes) {
-            sizeInBytes += t.getSizeInBytes();
+        fieldOffsets = new int[fieldTypes.size()];
+        for (int i = 0; i < fieldTypes.size(); ++i) {
+            fieldOffsets[i] = sizeInBytes;
+            sizeInBytes += fieldTypes.get(i).getSizeInBytes();
         }
     }
 
@@ -49,6 +54,10 @@ public class Schema {
         return sizeInBytes;
     }
 
+    public int getFieldOffset(int i) {
+        return fieldOffsets[i];
+    }
+
     // TODO(mwhittaker): Rename to something more descriptive.
     public Record verify(List<DataBox> values) throws DatabaseException {
         if (values.size() != fieldNames.size()) {
@@ -71,6 +80,18 @@ public class Schema {
         return new Record(values);
     }
 
+    /**
+     * Like verify(List<DataBox>), but for a Record. A flat record whose fields
+     * have the same types as this schema is returned as is, without
+     * constructing any DataBoxes.
+     */
+    public Record verify(Record record) throws DatabaseException {
+        if (record.isFlat() && record.getFlatSchema().getFieldTypes().equals(fieldTypes)) {
+            return record;
+        }
+        return verify(record.getValues());
+    }
+
     public byte[] toBytes() {
         // A schema is serialized as follows. We first write the number of fields
         // (4 bytes). Then, for each field, we write
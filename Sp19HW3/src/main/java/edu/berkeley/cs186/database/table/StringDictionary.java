@@ -0,0 +1,152 @@
+package edu.berkeley.cs186.database.table;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+/**
+ * A StringDictionary maps the distinct values of a dictionary-encoded string
+ * column to small integer codes. Codes are handed out densely in the order
+ * values are first added:
+ *
+ *   StringDictionary d = new StringDictionary(5);
+ *   d.encode("NYA  "); // 0
+ *   d.encode("BOS  "); // 1
+ *   d.encode("NYA  "); // 0
+ *   d.lookup("SFN  "); // -1
+ *   d.decode(1);       // the bytes of "BOS  "
+ *
+ * Values are the space-padded strings stored in the column (i.e. the result of
+ * StringDataBox.getString), so a dictionary for a column of type
+ * Type.stringType(n) only ever holds n-byte strings. Codes are never reused or
+ * reassigned, so a code written to a data page stays valid for as long as the
+ * table exists.
+ *
+ * Codes are narrower than the values they encode: 1 byte for values of at most
+ * 2 bytes, 2 bytes for values of at most 4 bytes, and 4 bytes otherwise. A
+ * dictionary with 1- or 2-byte codes can run out of codes, so the largest code
+ * (getEscapeCode) is never assigned to a value. Once every other code is taken,
+ * encode returns the escape code for new values, and the caller has to store
+ * those values some other way.
+ */
+public class StringDictionary {
+    // The size (in bytes) of every value in the dictionary.
+    private int valueSizeInBytes;
+
+    // The size (in bytes) of every code, and the code that no value is assigned.
+    private int codeSizeInBytes;
+    private int escapeCode;
+
+    // codes.get(s) is the code of s, and values.get(c) is the serialized value
+    // with code c.
+    private Map<String, Integer> codes;
+    private List<byte[]> values;
+
+    public StringDictionary(int valueSizeInBytes) {
+        this.valueSizeInBytes = valueSizeInBytes;
+        this.codeSizeInBytes = computeCodeSizeInBytes(valueSizeInBytes);
+        this.escapeCode = codeSizeInBytes == Integer.BYTES ? Integer.MAX_VALUE
+                          : (1 << (8 * codeSizeInBytes)) - 1;
+        this.codes = new HashMap<>();
+        this.values = new ArrayList<>();
+    }
+
+    /**
+     * Returns the size (in bytes) of the codes of a dictionary of
+     * valueSizeInBytes-byte values.
+     */
+    public static int computeCodeSizeInBytes(int valueSizeInBytes) {
+        if (valueSizeInBytes <= 2) {
+            return 1;
+        } else if (valueSizeInBytes <= Integer.BYTES) {
+            return 2;
+        }
+        return Integer.BYTES;
+    }
+
+    public int getValueSizeInBytes() {
+        return valueSizeInBytes;
+    }
+
+    public int getCodeSizeInBytes() {
+        return codeSizeInBytes;
+    }
+
+    /** Returns the code that encode returns once the dictionary is full. */
+    public int getEscapeCode() {
+        return escapeCode;
+    }
+
+    /** Returns the number of distinct values in the dictionary. */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /** Returns whether every code but the escape code has been assigned. */
+    public synchronized boolean isFull() {
+        return values.size() == escapeCode;
+    }
+
+    /** Returns the code of `value`, or -1 if `value` is not in the dictionary. */
+    public synchronized int lookup(String value) {
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Returns the code of `value`, adding `value` to the dictionary if it isn't
+     * there already. If `value` is new and the dictionary is full, the
+     * dictionary is left unchanged and the escape code is returned.
+     */
+    public synchronized int encode(String value) {
+        assert(value.length() == valueSizeInBytes);
+        Integer code = codes.get(value);
+        if (code == null) {
+            if (isFull()) {
+                return escapeCode;
+            }
+            code = values.size();
+            codes.put(value, code);
+            values.add(value.getBytes(Charset.forName("UTF-8")));
+        }
+        return code;
+    }
+
+    /**
+     * Returns the serialized value with code `code`. The returned array is
+     * shared with the dictionary and must not be modified.
+     */
+    public synchronized byte[] decode(int code) {
+        return values.get(code);
+    }
+
+    /** Writes `code` into bytes[offset:offset + getCodeSizeInBytes()]. */
+    public void writeCode(byte[] bytes, int offset, int code) {
+        for (int i = codeSizeInBytes - 1; i >= 0; --i) {
+            bytes[offset + i] = (byte) code;
+            code >>>= 8;
+        }
+    }
+
+    /** Reads the code written to bytes[offset:offset + getCodeSizeInBytes()]. */
+    public int readCode(byte[] bytes, int offset) {
+        int code = 0;
+        for (int i = 0; i < codeSizeInBytes; ++i) {
+            code = (code << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return code;
+    }
+
+    /** Like readCode(bytes, offset), but reads the code from a buffer. */
+    public int readCode(Buffer buf, int offset) {
+        int code = 0;
+        for (int i = 0; i < codeSizeInBytes; ++i) {
+            code = (code << 8) | (buf.get(offset + i) & 0xFF);
+        }
+        return code;
+    }
+}
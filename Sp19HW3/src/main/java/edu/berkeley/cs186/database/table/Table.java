@@ -1,6 +1,8 @@
 package edu.berkeley.cs186.database.table;
 
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.*;
 
 import edu.berkeley.cs186.database.BaseTransaction;
@@ -9,10 +11,13 @@ import edu.berkeley.cs186.database.common.ArrayBacktrackingIterator;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
 import edu.berkeley.cs186.database.table.stats.TableStats;
@@ -93,10 +98,60 @@ import edu.berkeley.cs186.database.table.stats.TableStats;
  *
  *  When we add a record to a table, we add it to the very first free slot in
  *  the table. See addRecord for more information.
+ *
+ * # Dictionary Encoding
+ * String columns with few distinct values (e.g. team or league ids) can be
+ * dictionary-encoded when the table is created:
+ *
+ *   Table t = new Table("t", schema, "t.table", lockContext, transaction,
+ *                       Arrays.asList(1)); // dictionary-encode column 1
+ *
+ * Every distinct value of an encoded column is assigned a code by the column's
+ * StringDictionary, and data pages store the code in place of the (wider)
+ * string. Codes are 1 byte wide for columns of at most 2 bytes, 2 bytes wide
+ * for columns of at most 4 bytes, and 4 bytes wide otherwise. The layout of
+ * records on data pages is described by getStorageSchema, in which every
+ * encoded column has type int (4-byte codes) or a string type as wide as its
+ * codes. Records are encoded when written and decoded when read, so callers
+ * only ever see records with schema getSchema. Equality scans on an encoded
+ * column (see iterator(transaction, column, value)) compare codes on the data
+ * pages and only decode matching records.
+ *
+ * A column with 1- or 2-byte codes can run out of codes. Records with a value
+ * that didn't get a code store the dictionary's escape code instead, and the
+ * raw value is kept with the dictionaries, keyed by the record's RecordId.
+ *
+ * Dictionaries are persisted as a log of entries that starts in the header
+ * page after the schema:
+ *
+ *   | schema | n | column_1 ... column_n | p | m | entry_1 ... entry_m |
+ *
+ * where column_1, ..., column_n are the indices of the encoded columns. An
+ * entry is either
+ *
+ *   | column | value |                                  or
+ *   | -column - 1 | page number | entry number | value |
+ *
+ * The first kind assigns value the next code of column, and the second records
+ * the raw value of column of the record with the given RecordId (the latest
+ * such entry for a RecordId wins). Once the header page is full, the log
+ * continues on the p overflow pages of the file `filename` +
+ * DICTIONARY_FILENAME_EXTENSION, each of which is formatted as
+ *
+ *   | k | entry_1 ... entry_k |
+ *
+ * so adding records never fails for lack of room for the dictionaries.
+ *
+ * While the table is open the log only grows: deleting an escaped record, or
+ * updating it to a value with a code, only drops its raw value from memory.
+ * When the table is loaded, the raw values of records that no longer hold the
+ * escape code are dropped, and if there were any, the log is rewritten with
+ * one entry per code and one per escaped record that is left.
  */
 public class Table implements Closeable {
     public static final String FILENAME_PREFIX = "db";
     public static final String FILENAME_EXTENSION = ".table";
+    public static final String DICTIONARY_FILENAME_EXTENSION = ".dict";
 
     // The name of the database.
     private String name;
@@ -107,6 +162,37 @@ public class Table implements Closeable {
     // The schema of the database.
     private Schema schema;
 
+    // The schema of the records stored on data pages. This is schema with the
+    // type of every dictionary-encoded column replaced by the type of its codes.
+    private Schema storageSchema;
+
+    // dictionaries[i] is the dictionary of column i, or null if column i is not
+    // dictionary-encoded. escapedValues.get(i) maps the RecordIds of the records
+    // whose column i holds the escape code to their value of column i.
+    private StringDictionary[] dictionaries;
+    private List<Map<RecordId, byte[]>> escapedValues;
+
+    // The number of entries of the log that record a raw value, including the
+    // ones that are no longer needed.
+    private int numEscapedEntries;
+
+    // The offsets in the header page of the number of overflow pages and of the
+    // number of dictionary entries in the header page, the number of dictionary
+    // entries in the header page, and the offset in the header page at which the
+    // next dictionary entry is written.
+    private int numOverflowPagesOffset;
+    private int dictionarySizeOffset;
+    private int numDictionaryEntries;
+    private int dictionaryEndOffset;
+
+    // The allocator of the overflow pages of the dictionaries (or null if there
+    // are none yet), the number of overflow pages, and the number of entries on
+    // and end offset of the last overflow page.
+    private PageAllocator overflowAllocator;
+    private int numOverflowPages;
+    private int numOverflowEntries;
+    private int overflowEndOffset;
+
     // The allocator used to persist the database.
     private PageAllocator allocator;
 
@@ -135,18 +221,36 @@ public class Table implements Closeable {
      */
     public Table(String name, Schema schema, String filename, LockContext lockContext,
                  BaseTransaction transaction) {
+        this(name, schema, filename, lockContext, transaction, Collections.emptyList());
+    }
+
+    /**
+     * Construct a brand new table named `name` with schema `schema` persisted in
+     * file `filename`, in which the string columns `dictionaryColumns` are
+     * dictionary-encoded.
+     */
+    public Table(String name, Schema schema, String filename, LockContext lockContext,
+                 BaseTransaction transaction, List<Integer> dictionaryColumns) {
         this.name = name;
         this.filename = filename;
         this.schema = schema;
+        this.dictionaries = new StringDictionary[schema.getFieldTypes().size()];
+        this.escapedValues = new ArrayList<>(Collections.nCopies(dictionaries.length, null));
+        for (int i : dictionaryColumns) {
+            assert(schema.getFieldTypes().get(i).getTypeId() == TypeId.STRING);
+            addDictionary(i);
+        }
+        this.storageSchema = computeStorageSchema(schema, dictionaries);
         this.allocator = new PageAllocator(lockContext, filename, true, transaction);
-        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, schema);
-        numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, schema);
+        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, storageSchema);
+        numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, storageSchema);
         this.stats = new TableStats(this.schema);
         this.freePageNums = new TreeSet<Integer>();
         this.numRecords = 0;
         this.lockContext = lockContext;
 
         writeSchemaToHeaderPage(transaction, allocator, schema);
+        writeDictionariesToHeaderPage(transaction);
     }
 
     /**
@@ -159,8 +263,10 @@ public class Table implements Closeable {
         this.filename = filename;
         this.allocator = new PageAllocator(lockContext, filename, false, transaction);
         this.schema = readSchemaFromHeaderPage(transaction, this.allocator);
-        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, this.schema);
-        this.numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, this.schema);
+        readDictionaries(transaction, lockContext);
+        this.storageSchema = computeStorageSchema(this.schema, this.dictionaries);
+        this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, this.storageSchema);
+        this.numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, this.storageSchema);
 
         // We compute the stats, free pages, and number of records naively. We
         // iterate through every single data page of the file, and for each data
@@ -169,6 +275,12 @@ public class Table implements Closeable {
         this.freePageNums = new TreeSet<Integer>();
         this.numRecords = 0;
 
+        // The RecordIds of the records that hold the escape code, per column.
+        List<Set<RecordId>> escapedRecords = new ArrayList<>();
+        for (int i = 0; i < dictionaries.length; ++i) {
+            escapedRecords.add(new HashSet<>());
+        }
+
         Iterator<Page> iter = this.allocator.iterator(transaction);
         iter.next(); // Skip the header page.
         while(iter.hasNext()) {
@@ -177,9 +289,16 @@ public class Table implements Closeable {
 
             for (short i = 0; i < numRecordsPerPage; ++i) {
                 if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
-                    Record r = getRecord(transaction, new RecordId(page.getPageNum(), i));
+                    RecordId rid = new RecordId(page.getPageNum(), i);
+                    Record r = getRecord(transaction, rid);
                     stats.addRecord(r);
                     numRecords++;
+                    for (int column = 0; column < dictionaries.length; ++column) {
+                        if (dictionaries[column] != null &&
+                                getCode(transaction, page, i, column) == dictionaries[column].getEscapeCode()) {
+                            escapedRecords.get(column).add(rid);
+                        }
+                    }
                 }
             }
 
@@ -189,7 +308,7 @@ public class Table implements Closeable {
         }
 
         this.lockContext = lockContext;
-
+        compactDictionaries(transaction, escapedRecords);
     }
 
     // Accessors /////////////////////////////////////////////////////////////////
@@ -205,6 +324,27 @@ public class Table implements Closeable {
         return schema;
     }
 
+    /**
+     * Returns the schema of the records stored on data pages. This differs from
+     * getSchema only if the table has dictionary-encoded columns.
+     */
+    public Schema getStorageSchema() {
+        return storageSchema;
+    }
+
+    /** Returns whether column `column` is dictionary-encoded. */
+    public boolean isDictionaryEncoded(int column) {
+        return dictionaries[column] != null;
+    }
+
+    /**
+     * Returns the dictionary of column `column`, or null if the column is not
+     * dictionary-encoded.
+     */
+    public StringDictionary getDictionary(int column) {
+        return dictionaries[column];
+    }
+
     public PageAllocator getAllocator() {
         return allocator;
     }
@@ -263,9 +403,9 @@ public class Table implements Closeable {
 
     // Modifiers /////////////////////////////////////////////////////////////////
     private synchronized void insertRecord(BaseTransaction transaction, Page page, int entryNum,
-                                           Record record) {
-        int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
-        page.getBuffer(transaction).position(offset).put(record.toBytes(schema));
+                                           byte[] bytes) {
+        int offset = bitmapSizeInBytes + (entryNum * storageSchema.getSizeInBytes());
+        page.getBuffer(transaction).position(offset).put(bytes);
     }
 
     /**
@@ -278,7 +418,17 @@ public class Table implements Closeable {
      */
     public synchronized RecordId addRecord(BaseTransaction transaction,
                                            List<DataBox> values) throws DatabaseException {
-        Record record = schema.verify(values);
+        return addRecord(transaction, schema.verify(values));
+    }
+
+    /**
+     * Like addRecord(transaction, values), but adds an existing Record. Flat
+     * records (e.g. records read from another table with the same field types)
+     * are copied into the table without being converted to DataBoxes.
+     */
+    public synchronized RecordId addRecord(BaseTransaction transaction,
+                                           Record record) throws DatabaseException {
+        record = schema.verify(record);
 
         // Get a free page, allocating a new one if necessary.
         if (freePageNums.isEmpty()) {
@@ -297,9 +447,10 @@ public class Table implements Closeable {
             }
         }
         assert(entryNum < numRecordsPerPage);
+        RecordId rid = new RecordId(page.getPageNum(), (short) entryNum);
 
         // Insert the record and update the bitmap.
-        insertRecord(transaction, page, entryNum, record);
+        insertRecord(transaction, page, entryNum, encodeRecord(transaction, record, rid));
         Bits.setBit(page.getBuffer(transaction), entryNum, Bits.Bit.ONE);
 
         // Update the metadata.
@@ -309,7 +460,7 @@ public class Table implements Closeable {
         }
         numRecords++;
 
-        return new RecordId(page.getPageNum(), (short) entryNum);
+        return rid;
     }
 
     /**
@@ -326,10 +477,15 @@ public class Table implements Closeable {
             throw new DatabaseException(msg);
         }
 
-        int offset = bitmapSizeInBytes + (rid.getEntryNum() * schema.getSizeInBytes());
+        int offset = bitmapSizeInBytes + (rid.getEntryNum() * storageSchema.getSizeInBytes());
         Buffer buf = page.getBuffer(transaction);
         buf.position(offset);
-        return Record.fromBytes(buf, schema);
+        if (storageSchema == schema) {
+            return Record.fromBytes(buf, schema);
+        }
+        byte[] bytes = new byte[storageSchema.getSizeInBytes()];
+        buf.get(bytes);
+        return decodeRecord(bytes, rid);
     }
 
     /**
@@ -342,9 +498,10 @@ public class Table implements Closeable {
         validateRecordId(rid);
         Record newRecord = schema.verify(values);
         Record oldRecord = getRecord(transaction, rid);
+        byte[] bytes = encodeRecord(transaction, newRecord, rid);
 
         Page page = allocator.fetchPage(transaction, rid.getPageNum());
-        insertRecord(transaction, page, rid.getEntryNum(), newRecord);
+        insertRecord(transaction, page, rid.getEntryNum(), bytes);
         this.stats.removeRecord(oldRecord);
         this.stats.addRecord(newRecord);
         return oldRecord;
@@ -361,6 +518,11 @@ public class Table implements Closeable {
         Page page = allocator.fetchPage(transaction, rid.getPageNum());
         Record record = getRecord(transaction, rid);
         Bits.setBit(page.getBuffer(transaction), rid.getEntryNum(), Bits.Bit.ZERO);
+        for (Map<RecordId, byte[]> escaped : escapedValues) {
+            if (escaped != null) {
+                escaped.remove(rid);
+            }
+        }
 
         stats.removeRecord(record);
         if(numRecordsOnPage(transaction, page) == numRecordsPerPage - 1) {
@@ -383,6 +545,9 @@ public class Table implements Closeable {
 
     public void close() {
         allocator.close();
+        if (overflowAllocator != null) {
+            overflowAllocator.close();
+        }
     }
 
     // Helpers ///////////////////////////////////////////////////////////////////
@@ -400,6 +565,302 @@ public class Table implements Closeable {
         headerPage.getBuffer(transaction).put(schema.toBytes());
     }
 
+    /** Makes column `column` dictionary-encoded, with an empty dictionary. */
+    private void addDictionary(int column) {
+        dictionaries[column] = new StringDictionary(schema.getFieldTypes().get(column).getSizeInBytes());
+        escapedValues.set(column, new HashMap<>());
+    }
+
+    /**
+     * Writes the (empty) dictionaries of this table into the header page just
+     * after the schema. See the comment at the top of this file for the format.
+     */
+    private void writeDictionariesToHeaderPage(BaseTransaction transaction) {
+        List<Integer> columns = new ArrayList<>();
+        for (int i = 0; i < dictionaries.length; ++i) {
+            if (dictionaries[i] != null) {
+                columns.add(i);
+            }
+        }
+
+        int offset = schema.toBytes().length;
+        Buffer buf = allocator.fetchPage(transaction, 0).getBuffer(transaction);
+        buf.position(offset).putInt(columns.size());
+        for (int i : columns) {
+            buf.putInt(i);
+        }
+        numOverflowPagesOffset = offset + Integer.BYTES * (columns.size() + 1);
+        numOverflowPages = 0;
+        buf.putInt(numOverflowPages);
+        dictionarySizeOffset = numOverflowPagesOffset + Integer.BYTES;
+        numDictionaryEntries = 0;
+        dictionaryEndOffset = dictionarySizeOffset + Integer.BYTES;
+        buf.putInt(numDictionaryEntries);
+    }
+
+    /**
+     * Reads the dictionaries of this table from the header page and its
+     * overflow pages. Tables created before dictionary encoding existed have
+     * zeros after their schema, which reads as no encoded columns.
+     */
+    private void readDictionaries(BaseTransaction transaction, LockContext lockContext) {
+        dictionaries = new StringDictionary[schema.getFieldTypes().size()];
+        escapedValues = new ArrayList<>(Collections.nCopies(dictionaries.length, null));
+
+        int offset = schema.toBytes().length;
+        Buffer buf = allocator.fetchPage(transaction, 0).getBuffer(transaction);
+        buf.position(offset);
+        int numColumns = buf.getInt();
+        for (int i = 0; i < numColumns; ++i) {
+            addDictionary(buf.getInt());
+        }
+
+        numOverflowPagesOffset = buf.position();
+        numOverflowPages = buf.getInt();
+        dictionarySizeOffset = buf.position();
+        numDictionaryEntries = buf.getInt();
+        for (int i = 0; i < numDictionaryEntries; ++i) {
+            readDictionaryEntry(buf);
+        }
+        dictionaryEndOffset = buf.position();
+
+        if (numOverflowPages > 0) {
+            overflowAllocator = new PageAllocator(lockContext.childContext("dictionary"),
+                                                  filename + DICTIONARY_FILENAME_EXTENSION, false,
+                                                  transaction);
+            for (int pageNum = 0; pageNum < numOverflowPages; ++pageNum) {
+                buf = overflowAllocator.fetchPage(transaction, pageNum).getBuffer(transaction);
+                numOverflowEntries = buf.getInt();
+                for (int i = 0; i < numOverflowEntries; ++i) {
+                    readDictionaryEntry(buf);
+                }
+                overflowEndOffset = buf.position();
+            }
+        }
+    }
+
+    /** Reads one dictionary entry from buf and applies it. */
+    private void readDictionaryEntry(Buffer buf) {
+        int column = buf.getInt();
+        if (column >= 0) {
+            byte[] bytes = new byte[dictionaries[column].getValueSizeInBytes()];
+            buf.get(bytes);
+            dictionaries[column].encode(new String(bytes, Charset.forName("UTF-8")));
+        } else {
+            column = -column - 1;
+            int pageNum = buf.getInt();
+            short entryNum = buf.getShort();
+            byte[] bytes = new byte[dictionaries[column].getValueSizeInBytes()];
+            buf.get(bytes);
+            escapedValues.get(column).put(new RecordId(pageNum, entryNum), bytes);
+            numEscapedEntries++;
+        }
+    }
+
+    /** Returns the log entry that assigns `value` the next code of `column`. */
+    private static byte[] codeEntry(int column, byte[] value) {
+        return ByteBuffer.allocate(Integer.BYTES + value.length).putInt(column).put(value).array();
+    }
+
+    /**
+     * Returns the log entry that records `value` as the raw value of column
+     * `column` of the record with id `rid`.
+     */
+    private static byte[] escapedEntry(int column, RecordId rid, byte[] value) {
+        return ByteBuffer.allocate(2 * Integer.BYTES + Short.BYTES + value.length)
+               .putInt(-column - 1).putInt(rid.getPageNum()).putShort(rid.getEntryNum())
+               .put(value).array();
+    }
+
+    /**
+     * Drops the raw values of the records that are not in escapedRecords (i.e.
+     * that were deleted or updated to a value with a code since their raw
+     * value was logged), and rewrites the log of dictionary entries if that,
+     * or a later entry for the same record, made any of its entries stale.
+     * The rewritten log assigns every code in order and then records the raw
+     * value of every escaped record, so it no longer depends on how the table
+     * got to its current contents.
+     */
+    private void compactDictionaries(BaseTransaction transaction,
+                                     List<Set<RecordId>> escapedRecords) {
+        int numLiveEntries = 0;
+        for (int i = 0; i < dictionaries.length; ++i) {
+            if (dictionaries[i] != null) {
+                escapedValues.get(i).keySet().retainAll(escapedRecords.get(i));
+                numLiveEntries += escapedValues.get(i).size();
+            }
+        }
+        if (numLiveEntries == numEscapedEntries) {
+            return;
+        }
+
+        if (overflowAllocator != null) {
+            overflowAllocator.close();
+            overflowAllocator = null;
+        }
+        writeDictionariesToHeaderPage(transaction);
+        numEscapedEntries = 0;
+        for (int i = 0; i < dictionaries.length; ++i) {
+            if (dictionaries[i] != null) {
+                for (int code = 0; code < dictionaries[i].size(); ++code) {
+                    appendDictionaryEntry(transaction, codeEntry(i, dictionaries[i].decode(code)));
+                }
+            }
+        }
+        for (int i = 0; i < dictionaries.length; ++i) {
+            if (dictionaries[i] != null) {
+                for (Map.Entry<RecordId, byte[]> entry : escapedValues.get(i).entrySet()) {
+                    appendDictionaryEntry(transaction, escapedEntry(i, entry.getKey(), entry.getValue()));
+                    numEscapedEntries++;
+                }
+            }
+        }
+    }
+
+    /** Returns the number of entries of the log that record a raw value. */
+    int getNumEscapedEntries() {
+        return numEscapedEntries;
+    }
+
+    /**
+     * Appends `entry` to the log of dictionary entries: to the header page while
+     * it has room, and to the last overflow page (allocating a new one when the
+     * last one is full) from then on.
+     */
+    private void appendDictionaryEntry(BaseTransaction transaction, byte[] entry) {
+        if (numOverflowPages == 0 && dictionaryEndOffset + entry.length <= Page.pageSize) {
+            Buffer buf = allocator.fetchPage(transaction, 0).getBuffer(transaction);
+            buf.position(dictionaryEndOffset).put(entry);
+            dictionaryEndOffset += entry.length;
+            numDictionaryEntries++;
+            buf.putInt(dictionarySizeOffset, numDictionaryEntries);
+            return;
+        }
+
+        if (numOverflowPages == 0 || overflowEndOffset + entry.length > Page.pageSize) {
+            if (overflowAllocator == null) {
+                overflowAllocator = new PageAllocator(lockContext.childContext("dictionary"),
+                                                      filename + DICTIONARY_FILENAME_EXTENSION, true,
+                                                      transaction);
+            }
+            int pageNum = overflowAllocator.allocPage(transaction);
+            assert(pageNum == numOverflowPages);
+            numOverflowPages++;
+            numOverflowEntries = 0;
+            overflowEndOffset = Integer.BYTES;
+            allocator.fetchPage(transaction, 0).getBuffer(transaction)
+            .putInt(numOverflowPagesOffset, numOverflowPages);
+        }
+
+        Buffer buf = overflowAllocator.fetchPage(transaction, numOverflowPages - 1).getBuffer(transaction);
+        buf.position(overflowEndOffset).put(entry);
+        overflowEndOffset += entry.length;
+        numOverflowEntries++;
+        buf.putInt(0, numOverflowEntries);
+    }
+
+    /**
+     * Returns the code of `value` in the dictionary of column `column` for the
+     * record with id `rid`, adding `value` to the dictionary (and persisting the
+     * new entry) if necessary. If the dictionary is full, the escape code is
+     * returned and `value` is persisted as the raw value of the record.
+     */
+    private int encodeValue(BaseTransaction transaction, int column, String value, RecordId rid) {
+        StringDictionary dictionary = dictionaries[column];
+        int code = dictionary.lookup(value);
+        if (code == -1) {
+            code = dictionary.encode(value);
+            byte[] bytes = value.getBytes(Charset.forName("UTF-8"));
+            if (code == dictionary.getEscapeCode()) {
+                escapedValues.get(column).put(rid, bytes);
+                appendDictionaryEntry(transaction, escapedEntry(column, rid, bytes));
+                numEscapedEntries++;
+                return code;
+            }
+            appendDictionaryEntry(transaction, codeEntry(column, bytes));
+        }
+        escapedValues.get(column).remove(rid);
+        return code;
+    }
+
+    /**
+     * Returns the code of column `column` of the record stored in entry
+     * `entryNum` of `page`.
+     */
+    private int getCode(BaseTransaction transaction, Page page, int entryNum, int column) {
+        int offset = bitmapSizeInBytes + entryNum * storageSchema.getSizeInBytes() +
+                     storageSchema.getFieldOffset(column);
+        return dictionaries[column].readCode(page.getBuffer(transaction), offset);
+    }
+
+    /** Returns the raw value of column `column` of the record with id `rid`. */
+    private synchronized byte[] getEscapedValue(int column, RecordId rid) {
+        return escapedValues.get(column).get(rid);
+    }
+
+    /**
+     * Serializes `record`, which is to be stored with id `rid`, in the format of
+     * storageSchema.
+     */
+    private byte[] encodeRecord(BaseTransaction transaction, Record record, RecordId rid) {
+        byte[] bytes = record.toBytes(schema);
+        if (storageSchema == schema) {
+            return bytes;
+        }
+
+        byte[] stored = new byte[storageSchema.getSizeInBytes()];
+        for (int i = 0; i < dictionaries.length; ++i) {
+            int offset = storageSchema.getFieldOffset(i);
+            if (dictionaries[i] == null) {
+                System.arraycopy(bytes, schema.getFieldOffset(i), stored, offset,
+                                 schema.getFieldTypes().get(i).getSizeInBytes());
+            } else {
+                int code = encodeValue(transaction, i, record.getString(i), rid);
+                dictionaries[i].writeCode(stored, offset, code);
+            }
+        }
+        return stored;
+    }
+
+    /**
+     * Deserializes the record with id `rid` stored in the format of
+     * storageSchema into a flat record with schema schema. Encoded strings are
+     * copied out of their dictionaries, so no DataBoxes are constructed.
+     */
+    private Record decodeRecord(byte[] stored, RecordId rid) {
+        byte[] bytes = new byte[schema.getSizeInBytes()];
+        for (int i = 0; i < dictionaries.length; ++i) {
+            int offset = storageSchema.getFieldOffset(i);
+            int size = schema.getFieldTypes().get(i).getSizeInBytes();
+            if (dictionaries[i] == null) {
+                System.arraycopy(stored, offset, bytes, schema.getFieldOffset(i), size);
+            } else {
+                int code = dictionaries[i].readCode(stored, offset);
+                byte[] value = code == dictionaries[i].getEscapeCode() ? escapedValues.get(i).get(rid)
+                               : dictionaries[i].decode(code);
+                System.arraycopy(value, 0, bytes, schema.getFieldOffset(i), size);
+            }
+        }
+        return new Record(bytes, schema);
+    }
+
+    /**
+     * Returns schema with the type of every column with a dictionary replaced by
+     * the type of its codes, or schema itself if no column has a dictionary.
+     */
+    private static Schema computeStorageSchema(Schema schema, StringDictionary[] dictionaries) {
+        List<Type> fieldTypes = new ArrayList<>(schema.getFieldTypes());
+        boolean encoded = false;
+        for (int i = 0; i < dictionaries.length; ++i) {
+            if (dictionaries[i] != null) {
+                int codeSize = dictionaries[i].getCodeSizeInBytes();
+                fieldTypes.set(i, codeSize == Integer.BYTES ? Type.intType() : Type.stringType(codeSize));
+                encoded = true;
+            }
+        }
+        return encoded ? new Schema(schema.getFieldNames(), fieldTypes) : schema;
+    }
+
     /**
      * Recall that every data page contains an m-byte bitmap followed by n
      * records. The following three functions computes m and n such that n is
@@ -467,6 +928,45 @@ public class Table implements Closeable {
         return new RecordIterator(transaction, this, ridIterator(transaction));
     }
 
+    /**
+     * Returns an iterator over the records whose dictionary-encoded column
+     * `column` equals `value`. `value` is encoded once, and every record is
+     * filtered by comparing its code on the data page, so only matching records
+     * are ever decoded. If `value` is not in the column's dictionary, no record
+     * can match and no page is read, unless the dictionary is full; then the
+     * records with the escape code are compared on their raw values.
+     */
+    public RecordIterator iterator(BaseTransaction transaction, int column, DataBox value) {
+        assert(isDictionaryEncoded(column));
+        StringDictionary dictionary = dictionaries[column];
+        int code = -1;
+        byte[] escapedValue = null;
+        if (value.type().equals(schema.getFieldTypes().get(column))) {
+            code = dictionary.lookup(value.getString());
+            if (code == -1 && dictionary.isFull()) {
+                code = dictionary.getEscapeCode();
+                escapedValue = value.getString().getBytes(Charset.forName("UTF-8"));
+            }
+        }
+        Iterator<RecordId> ridIter = new ArrayBacktrackingIterator<>(new RecordId[0]);
+        if (code != -1) {
+            ridIter = new DictionaryRIDIterator(transaction, column, code, escapedValue);
+        }
+        return new RecordIterator(transaction, this, ridIter);
+    }
+
+    /**
+     * Returns an iterator over every record of the table, each paired with its
+     * code in dictionary-encoded column `column`, or with null if the record
+     * holds the escape code. Two records have the same non-null code if and
+     * only if they have the same value in the column, so the codes can stand
+     * in for the values when records are only compared for equality.
+     */
+    public Iterator<Pair<Integer, Record>> codedIterator(BaseTransaction transaction, int column) {
+        assert(isDictionaryEncoded(column));
+        return new CodedRecordIterator(transaction, column);
+    }
+
     public BacktrackingIterator<Record> blockIterator(BaseTransaction transaction, Page[] block) {
         return new RecordIterator(transaction, this, new RIDBlockIterator(transaction, block));
     }
@@ -714,6 +1214,95 @@ public class Table implements Closeable {
         }
     }
 
+    /**
+     * DictionaryRIDIterator is an Iterator over the RecordIds of the records
+     * whose dictionary-encoded column has a given code. It filters the RecordIds
+     * of the whole table by reading the code straight from the data page. If the
+     * code is the escape code, records must also have the raw value
+     * escapedValue.
+     */
+    private class DictionaryRIDIterator implements Iterator<RecordId> {
+        private BaseTransaction transaction;
+        private Iterator<RecordId> ridIter;
+        private int column;
+        private int codeOffset;
+        private int code;
+        private byte[] escapedValue;
+        private Page page = null;
+        private RecordId nextRecordId = null;
+
+        DictionaryRIDIterator(BaseTransaction transaction, int column, int code,
+                              byte[] escapedValue) {
+            this.transaction = transaction;
+            this.ridIter = ridIterator(transaction);
+            this.column = column;
+            this.codeOffset = storageSchema.getFieldOffset(column);
+            this.code = code;
+            this.escapedValue = escapedValue;
+        }
+
+        public boolean hasNext() {
+            while (nextRecordId == null && ridIter.hasNext()) {
+                RecordId rid = ridIter.next();
+                if (page == null || page.getPageNum() != rid.getPageNum()) {
+                    page = allocator.fetchPage(transaction, rid.getPageNum());
+                }
+                int offset = bitmapSizeInBytes + rid.getEntryNum() * storageSchema.getSizeInBytes();
+                int storedCode = dictionaries[column].readCode(page.getBuffer(transaction),
+                                 offset + codeOffset);
+                if (storedCode == code &&
+                        (escapedValue == null || Arrays.equals(escapedValue, getEscapedValue(column, rid)))) {
+                    nextRecordId = rid;
+                }
+            }
+            return nextRecordId != null;
+        }
+
+        public RecordId next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RecordId rid = nextRecordId;
+            nextRecordId = null;
+            return rid;
+        }
+    }
+
+    /**
+     * CodedRecordIterator is an Iterator over the records of the table, each
+     * paired with its code in a dictionary-encoded column. See codedIterator.
+     */
+    private class CodedRecordIterator implements Iterator<Pair<Integer, Record>> {
+        private BaseTransaction transaction;
+        private Iterator<RecordId> ridIter;
+        private int column;
+        private Page page = null;
+
+        CodedRecordIterator(BaseTransaction transaction, int column) {
+            this.transaction = transaction;
+            this.ridIter = ridIterator(transaction);
+            this.column = column;
+        }
+
+        public boolean hasNext() {
+            return ridIter.hasNext();
+        }
+
+        public Pair<Integer, Record> next() {
+            RecordId rid = ridIter.next();
+            if (page == null || page.getPageNum() != rid.getPageNum()) {
+                page = allocator.fetchPage(transaction, rid.getPageNum());
+            }
+            int code = getCode(transaction, page, rid.getEntryNum(), column);
+            try {
+                Record record = getRecord(transaction, rid);
+                return new Pair<>(code == dictionaries[column].getEscapeCode() ? null : code, record);
+            } catch (DatabaseException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
     /**
      * A helper function that returns the same iterator passed in, but with
      * a single page skipped.
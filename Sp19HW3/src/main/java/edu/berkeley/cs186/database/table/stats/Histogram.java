@@ -86,7 +86,7 @@ public class Histogram {
      *  are preserved.
      */
     private float quantization(Record record, int attribute) {
-        DataBox d = record.getValues().get(attribute);
+        DataBox d = record.getValue(attribute);
         return quantization(d);
     }
 
@@ -1,5 +1,7 @@
 package edu.berkeley.cs186.database;
 
+import java.util.List;
+
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockManager;
 import edu.berkeley.cs186.database.table.Schema;
@@ -26,6 +28,12 @@ public class DatabaseWithTableStub extends Database {
         return new TableStub(tableName, schema, fileName, lockContext, transaction);
     }
 
+    @Override
+    protected Table newTable(String tableName, Schema schema, String fileName, LockContext lockContext,
+                             BaseTransaction transaction, List<Integer> dictionaryColumns) {
+        return new TableStub(tableName, schema, fileName, lockContext, transaction, dictionaryColumns);
+    }
+
     @Override
     protected Table newTable(String tableName, String fileName, LockContext lockContext,
                              BaseTransaction transaction)
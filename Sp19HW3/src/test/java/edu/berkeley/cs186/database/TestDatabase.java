@@ -1,6 +1,10 @@
 package edu.berkeley.cs186.database;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.query.*;
 import edu.berkeley.cs186.database.table.*;
 
 import org.junit.After;
@@ -13,6 +17,10 @@ import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 
 @Category({HW99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -64,6 +72,73 @@ public class TestDatabase {
         t1.end();
     }
 
+    @Test
+    public void testDictionaryEncodedTableSelect() throws DatabaseException, QueryPlanException {
+        Schema s = new Schema(Arrays.asList("id", "team"),
+                              Arrays.asList(Type.intType(), Type.stringType(10)));
+        String[] teams = new String[] {"BOS", "NYA", "SFN", "CHN"};
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createDictionaryEncodedTable(s, "teams", Arrays.asList("team"));
+        for (int i = 0; i < 1000; ++i) {
+            t1.addRecord("teams", Arrays.asList(new IntDataBox(i),
+                                                new StringDataBox(teams[i % teams.length], 10)));
+        }
+
+        QueryOperator scan = new SequentialScanOperator(t1, "teams");
+        QueryOperator select = new SelectOperator(scan, "team", QueryPlan.PredicateOperator.EQUALS,
+                new StringDataBox("SFN", 10));
+        Iterator<Record> iter = select.iterator();
+        int count = 0;
+        while (iter.hasNext()) {
+            Record r = iter.next();
+            assertEquals(2, r.getInt(0) % teams.length);
+            assertEquals(new StringDataBox("SFN", 10), r.getValue(1));
+            count++;
+        }
+        assertEquals(250, count);
+        t1.end();
+    }
+
+    @Test
+    public void testDictionaryEncodedTableGroupBy() throws DatabaseException, QueryPlanException {
+        Schema s = new Schema(Arrays.asList("id", "team"),
+                              Arrays.asList(Type.intType(), Type.stringType(10)));
+        String[] teams = new String[] {"BOS", "NYA", "SFN", "CHN"};
+
+        Database.Transaction t1 = db.beginTransaction();
+        t1.createDictionaryEncodedTable(s, "teams", Arrays.asList("team"));
+        for (int i = 0; i < 1000; ++i) {
+            t1.addRecord("teams", Arrays.asList(new IntDataBox(i),
+                                                new StringDataBox(teams[i % teams.length], 10)));
+        }
+
+        QueryOperator scan = new SequentialScanOperator(t1, "teams");
+        QueryOperator groupBy = new GroupByOperator(scan, t1, "team");
+        Iterator<Record> iter = groupBy.iterator();
+        Set<Integer> seenTeams = new HashSet<>();
+        int count = 0;
+        int groupTeam = -1;
+        while (iter.hasNext()) {
+            Record r = iter.next();
+            if (r == MarkerRecord.getMarker()) {
+                groupTeam = -1;
+                continue;
+            }
+            int team = r.getInt(0) % teams.length;
+            assertEquals(new StringDataBox(teams[team], 10), r.getValue(1));
+            if (groupTeam == -1) {
+                assertTrue(seenTeams.add(team));
+                groupTeam = team;
+            }
+            assertEquals(groupTeam, team);
+            count++;
+        }
+        assertEquals(teams.length, seenTeams.size());
+        assertEquals(1000, count);
+        t1.end();
+    }
+
     @Test
     public void testTransactionTempTable() throws DatabaseException {
         Schema s = TestUtils.createSchemaWithAllTypes();
@@ -7,6 +7,7 @@ import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.LoggingLockManager;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
@@ -51,6 +52,11 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public void createDictionaryEncodedTable(Schema s, String tableName,
+            List<String> dictionaryColumns) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public void createTableWithIndices(Schema s, String tableName,
                                        List<String> indexColumns) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -106,6 +112,10 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public RecordId addRecord(String tableName, Record record) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public int getNumMemoryPages() throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
@@ -122,6 +132,20 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public RecordIterator getRecordIterator(String tableName, int column,
+                                            DataBox value) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public Iterator<Pair<Integer, Record>> getCodedRecordIterator(String tableName,
+            int column) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    public boolean isDictionaryEncoded(String tableName, int column) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public RecordId updateRecord(String tableName, List<DataBox> values,
                                  RecordId rid)  throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
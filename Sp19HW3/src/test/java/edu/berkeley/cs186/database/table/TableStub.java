@@ -8,6 +8,7 @@ import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.io.Page;
 
 import java.util.Iterator;
+import java.util.List;
 
 public class TableStub extends Table {
     public TableStub(String name, Schema schema, String filename, LockContext lockContext,
@@ -15,6 +16,11 @@ public class TableStub extends Table {
         super(name, schema, filename, lockContext, transaction);
     }
 
+    public TableStub(String name, Schema schema, String filename, LockContext lockContext,
+                     BaseTransaction transaction, List<Integer> dictionaryColumns) {
+        super(name, schema, filename, lockContext, transaction, dictionaryColumns);
+    }
+
     public TableStub(String name, String filename, LockContext lockContext,
                      BaseTransaction transaction) throws DatabaseException {
         super(name, filename, lockContext, transaction);
@@ -1,7 +1,9 @@
 package edu.berkeley.cs186.database.table;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 
@@ -67,4 +69,76 @@ public class TestRecord {
         assertNotEquals(c, b);
         assertEquals(c, c);
     }
+
+    @Test
+    public void testFlatAccessors() {
+        Schema s = new Schema(Arrays.asList("w", "x", "y", "z"),
+                              Arrays.asList(Type.boolType(), Type.intType(),
+                                            Type.floatType(), Type.stringType(3)));
+        Record r = new Record(Arrays.asList(
+                                  new BoolDataBox(true),
+                                  new IntDataBox(-42),
+                                  new FloatDataBox(1.5f),
+                                  new StringDataBox("foo", 3)
+                              ));
+        Record flat = Record.fromBytes(ByteBuffer.wrap(r.toBytes(s)), s);
+
+        assertTrue(flat.isFlat());
+        assertEquals(4, flat.size());
+        assertTrue(flat.getBool(0));
+        assertEquals(-42, flat.getInt(1));
+        assertEquals(1.5f, flat.getFloat(2), 0.0f);
+        assertEquals("foo", flat.getString(3));
+        assertEquals(new IntDataBox(-42), flat.getValue(1));
+
+        assertTrue(flat.compareField(1, new IntDataBox(0)) < 0);
+        assertTrue(flat.compareField(2, new FloatDataBox(1.5f)) == 0);
+        assertTrue(flat.compareField(3, new StringDataBox("bar", 3)) > 0);
+        assertTrue(flat.fieldEquals(3, new StringDataBox("foo", 3)));
+        assertFalse(flat.fieldEquals(1, new IntDataBox(42)));
+        assertTrue(flat.fieldEquals(1, r, 1));
+        assertTrue(flat.compareField(2, r, 2) == 0);
+
+        // Comparing, hashing and printing a flat record leave it flat.
+        assertEquals(r, flat);
+        assertEquals(flat, r);
+        assertEquals(flat, Record.fromBytes(ByteBuffer.wrap(r.toBytes(s)), s));
+        assertEquals(r.hashCode(), flat.hashCode());
+        assertEquals(r.toString(), flat.toString());
+        assertTrue(flat.isFlat());
+
+        // Writing to the bytes of a flat record doesn't change the record.
+        byte[] bytes = flat.toBytes(s);
+        bytes[s.getFieldOffset(1) + 3] = 0;
+        assertEquals(-42, flat.getInt(1));
+
+        // Materializing the values of a flat record turns it into a list.
+        assertEquals(4, flat.getValues().size());
+        assertFalse(flat.isFlat());
+    }
+
+    @Test
+    public void testFlatConcatAndProject() {
+        Schema s = new Schema(Arrays.asList("x", "y"),
+                              Arrays.asList(Type.intType(), Type.stringType(3)));
+        Record a = new Record(Arrays.asList(new IntDataBox(1), new StringDataBox("foo", 3)));
+        Record b = new Record(Arrays.asList(new IntDataBox(2), new StringDataBox("bar", 3)));
+        Record flatA = Record.fromBytes(ByteBuffer.wrap(a.toBytes(s)), s);
+        Record flatB = Record.fromBytes(ByteBuffer.wrap(b.toBytes(s)), s);
+
+        Schema joined = new Schema(Arrays.asList("x", "y", "x", "y"),
+                                   Arrays.asList(Type.intType(), Type.stringType(3),
+                                                 Type.intType(), Type.stringType(3)));
+        Record flatJoined = Record.concat(flatA, flatB, joined);
+        assertTrue(flatJoined.isFlat());
+        assertEquals(Record.concat(a, b, joined), flatJoined);
+
+        Schema projected = new Schema(Arrays.asList("y", "x"),
+                                      Arrays.asList(Type.stringType(3), Type.intType()));
+        Record flatProjected = Record.fromBytes(ByteBuffer.wrap(b.toBytes(s)), s)
+                               .project(Arrays.asList(1, 0), projected);
+        assertTrue(flatProjected.isFlat());
+        assertEquals(new Record(Arrays.asList(new StringDataBox("bar", 3), new IntDataBox(2))),
+                     flatProjected);
+    }
 }
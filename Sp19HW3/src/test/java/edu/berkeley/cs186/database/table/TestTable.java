@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.table;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -26,7 +27,10 @@ import org.junit.runners.MethodSorters;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.TestUtils;
 import edu.berkeley.cs186.database.common.BacktrackingIterator;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
 
@@ -524,4 +528,253 @@ public class TestTable {
         checkSequentialRecords(1, numRecords, 2, iter);
         assertFalse(iter.hasNext());
     }
+
+    private Table createDictionaryEncodedTable(String tableName) throws DatabaseException {
+        return createDictionaryEncodedTable(tableName, 20);
+    }
+
+    private Table createDictionaryEncodedTable(String tableName, int width) throws DatabaseException {
+        List<String> names = Arrays.asList("id", "team");
+        List<Type> types = Arrays.asList(Type.intType(), Type.stringType(width));
+        Schema schema = new Schema(names, types);
+        try {
+            File file = tempFolder.newFile(tableName + Table.FILENAME_EXTENSION);
+            return new Table(tableName, schema, file.getAbsolutePath(), new DummyLockContext(), null,
+                             Arrays.asList(1));
+        } catch (IOException e) {
+            throw new DatabaseException(e.getMessage());
+        }
+    }
+
+    private static List<DataBox> createTeamRecord(int i) {
+        String[] teams = new String[] {"BOS", "NYA", "SFN"};
+        return Arrays.asList(new IntDataBox(i), new StringDataBox(teams[i % teams.length], 20));
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDictionaryEncoding() throws DatabaseException {
+        Table dictTable = createDictionaryEncodedTable("dicttable");
+        try {
+            // Codes of 20-byte strings are 4 bytes wide, so far more records fit on a page.
+            assertEquals(Type.intType(), dictTable.getStorageSchema().getFieldTypes().get(1));
+            assertTrue(dictTable.getNumRecordsPerPage() >
+                       Table.computeNumRecordsPerPage(Page.pageSize, dictTable.getSchema()));
+
+            int numRecords = dictTable.getNumRecordsPerPage() * 2 + 42;
+            List<RecordId> rids = new ArrayList<>();
+            for (int i = 0; i < numRecords; ++i) {
+                rids.add(dictTable.addRecord(null, createTeamRecord(i)));
+            }
+            assertEquals(3, dictTable.getDictionary(1).size());
+            for (int i = 0; i < numRecords; ++i) {
+                assertEquals(new Record(createTeamRecord(i)), dictTable.getRecord(null, rids.get(i)));
+            }
+
+            // Dictionaries survive reloading the table.
+            dictTable.close();
+            dictTable = new Table(dictTable.getName(), dictTable.getFilename(), new DummyLockContext(),
+                                  null);
+            assertTrue(dictTable.isDictionaryEncoded(1));
+            for (int i = 0; i < numRecords; ++i) {
+                assertEquals(new Record(createTeamRecord(i)), dictTable.getRecord(null, rids.get(i)));
+            }
+
+            // Equality scans only return matching records.
+            Iterator<Record> iter = dictTable.iterator(null, 1, new StringDataBox("NYA", 20));
+            int count = 0;
+            while (iter.hasNext()) {
+                Record r = iter.next();
+                assertEquals(1, r.getInt(0) % 3);
+                count++;
+            }
+            assertEquals((numRecords + 1) / 3, count);
+            assertFalse(dictTable.iterator(null, 1, new StringDataBox("CHN", 20)).hasNext());
+        } finally {
+            dictTable.close();
+        }
+    }
+
+    /** Returns a distinct 2-character id for every i < 62 * 62. */
+    private static String twoCharacterId(int i) {
+        String chars = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+        return "" + chars.charAt(i / chars.length()) + chars.charAt(i % chars.length());
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDictionaryOverflow() throws DatabaseException {
+        Table dictTable = createDictionaryEncodedTable("dicttable");
+        try {
+            // Every dictionary entry takes 24 bytes, so the dictionary no longer
+            // fits in the header page.
+            int numRecords = Page.pageSize / 24 * 3;
+            for (int i = 0; i < numRecords; ++i) {
+                dictTable.addRecord(null, Arrays.asList(new IntDataBox(i),
+                                                        new StringDataBox("team" + i, 20)));
+            }
+            assertEquals(numRecords, dictTable.getDictionary(1).size());
+
+            dictTable.close();
+            dictTable = new Table(dictTable.getName(), dictTable.getFilename(), new DummyLockContext(),
+                                  null);
+            assertEquals(numRecords, dictTable.getDictionary(1).size());
+            for (int i = 0; i < numRecords; i += 97) {
+                Iterator<Record> iter = dictTable.iterator(null, 1, new StringDataBox("team" + i, 20));
+                assertTrue(iter.hasNext());
+                assertEquals(i, iter.next().getInt(0));
+                assertFalse(iter.hasNext());
+            }
+        } finally {
+            dictTable.close();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNarrowDictionaryEncoding() throws DatabaseException {
+        Table dictTable = createDictionaryEncodedTable("dicttable", 2);
+        try {
+            // Codes of 2-byte strings are 1 byte wide.
+            assertEquals(Type.stringType(1), dictTable.getStorageSchema().getFieldTypes().get(1));
+
+            // 1-byte codes run out after 255 distinct values. Later values are
+            // stored raw, and both kinds of records can be read, updated,
+            // deleted, reloaded, and scanned for.
+            int numRecords = 400;
+            List<RecordId> rids = new ArrayList<>();
+            for (int i = 0; i < numRecords; ++i) {
+                rids.add(dictTable.addRecord(null, Arrays.asList(new IntDataBox(i),
+                                             new StringDataBox(twoCharacterId(i), 2))));
+            }
+            assertTrue(dictTable.getDictionary(1).isFull());
+            dictTable.updateRecord(null, Arrays.asList(new IntDataBox(1),
+                                   new StringDataBox(twoCharacterId(399), 2)), rids.get(1));
+            dictTable.updateRecord(null, Arrays.asList(new IntDataBox(398),
+                                   new StringDataBox(twoCharacterId(0), 2)), rids.get(398));
+            dictTable.deleteRecord(null, rids.get(300));
+
+            dictTable.close();
+            dictTable = new Table(dictTable.getName(), dictTable.getFilename(), new DummyLockContext(),
+                                  null);
+            assertEquals(Type.stringType(1), dictTable.getStorageSchema().getFieldTypes().get(1));
+            for (int i = 0; i < numRecords; ++i) {
+                if (i == 300) {
+                    continue;
+                }
+                String id = i == 1 ? twoCharacterId(399) : i == 398 ? twoCharacterId(0) : twoCharacterId(i);
+                assertEquals(new Record(Arrays.asList(new IntDataBox(i), new StringDataBox(id, 2))),
+                             dictTable.getRecord(null, rids.get(i)));
+            }
+
+            int[][] expected = new int[][] {{0, 0, 398}, {399, 1, 399}, {250, 250}, {350, 350}, {300}};
+            for (int[] query : expected) {
+                Iterator<Record> iter = dictTable.iterator(null, 1,
+                                        new StringDataBox(twoCharacterId(query[0]), 2));
+                List<Integer> ids = new ArrayList<>();
+                while (iter.hasNext()) {
+                    ids.add(iter.next().getInt(0));
+                }
+                List<Integer> expectedIds = new ArrayList<>();
+                for (int j = 1; j < query.length; ++j) {
+                    expectedIds.add(query[j]);
+                }
+                assertEquals(expectedIds, ids);
+            }
+        } finally {
+            dictTable.close();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testDictionaryLogCompaction() throws DatabaseException {
+        Table dictTable = createDictionaryEncodedTable("dicttable", 2);
+        try {
+            // Records 255 through 299 are escaped.
+            int numRecords = 300;
+            List<RecordId> rids = new ArrayList<>();
+            for (int i = 0; i < numRecords; ++i) {
+                rids.add(dictTable.addRecord(null, Arrays.asList(new IntDataBox(i),
+                                             new StringDataBox(twoCharacterId(i), 2))));
+            }
+            assertEquals(45, dictTable.getNumEscapedEntries());
+
+            // Every update of an escaped record logs its new raw value, and
+            // deleting escaped records leaves their raw values in the log.
+            for (int i = 0; i < 200; ++i) {
+                dictTable.updateRecord(null, Arrays.asList(new IntDataBox(299),
+                                       new StringDataBox(twoCharacterId(300 + i), 2)), rids.get(299));
+            }
+            for (int i = 255; i < 265; ++i) {
+                dictTable.deleteRecord(null, rids.get(i));
+            }
+            dictTable.updateRecord(null, Arrays.asList(new IntDataBox(265),
+                                   new StringDataBox(twoCharacterId(0), 2)), rids.get(265));
+            assertEquals(245, dictTable.getNumEscapedEntries());
+
+            // Loading the table drops the stale entries, and loading it again
+            // reads back the same records from the rewritten log.
+            for (int reload = 0; reload < 2; ++reload) {
+                dictTable.close();
+                dictTable = new Table(dictTable.getName(), dictTable.getFilename(), new DummyLockContext(),
+                                      null);
+                assertEquals(34, dictTable.getNumEscapedEntries());
+                assertEquals(255, dictTable.getDictionary(1).size());
+                for (int i = 0; i < numRecords; ++i) {
+                    if (i >= 255 && i < 265) {
+                        continue;
+                    }
+                    String id = i == 299 ? twoCharacterId(499) : i == 265 ? twoCharacterId(0) : twoCharacterId(i);
+                    assertEquals(new Record(Arrays.asList(new IntDataBox(i), new StringDataBox(id, 2))),
+                                 dictTable.getRecord(null, rids.get(i)));
+                }
+            }
+
+            // The rewritten log can still be appended to.
+            RecordId rid = dictTable.addRecord(null, Arrays.asList(new IntDataBox(numRecords),
+                                               new StringDataBox(twoCharacterId(500), 2)));
+            dictTable.close();
+            dictTable = new Table(dictTable.getName(), dictTable.getFilename(), new DummyLockContext(),
+                                  null);
+            assertEquals(35, dictTable.getNumEscapedEntries());
+            assertEquals(new Record(Arrays.asList(new IntDataBox(numRecords),
+                                                  new StringDataBox(twoCharacterId(500), 2))),
+                         dictTable.getRecord(null, rid));
+        } finally {
+            dictTable.close();
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testCodedIterator() throws DatabaseException {
+        Table dictTable = createDictionaryEncodedTable("dicttable", 2);
+        try {
+            // Records 255 through 299 are escaped, and every value appears twice.
+            int numRecords = 600;
+            for (int i = 0; i < numRecords; ++i) {
+                dictTable.addRecord(null, Arrays.asList(new IntDataBox(i),
+                                                        new StringDataBox(twoCharacterId(i % 300), 2)));
+            }
+
+            StringDictionary dictionary = dictTable.getDictionary(1);
+            Iterator<Pair<Integer, Record>> iter = dictTable.codedIterator(null, 1);
+            for (int i = 0; i < numRecords; ++i) {
+                assertTrue(iter.hasNext());
+                Pair<Integer, Record> coded = iter.next();
+                String id = twoCharacterId(i % 300);
+                assertEquals(new Record(Arrays.asList(new IntDataBox(i), new StringDataBox(id, 2))),
+                             coded.getSecond());
+                if (i % 300 < 255) {
+                    assertEquals(Integer.valueOf(dictionary.lookup(id)), coded.getFirst());
+                } else {
+                    assertNull(coded.getFirst());
+                }
+            }
+            assertFalse(iter.hasNext());
+        } finally {
+            dictTable.close();
+        }
+    }
 }
@@ -13,6 +13,7 @@ import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
+import edu.berkeley.cs186.database.table.stats.ZoneMap;
 
 public abstract class BaseTransaction implements AutoCloseable {
     public abstract long getTransNum();
@@ -117,6 +118,9 @@ public abstract class BaseTransaction implements AutoCloseable {
 
     public abstract RecordIterator getRecordIterator(String tableName) throws DatabaseException;
 
+    public abstract RecordIterator getRecordIterator(String tableName, int column,
+            QueryPlan.PredicateOperator predicate, DataBox value) throws DatabaseException;
+
     public abstract RecordId updateRecord(String tableName, List<DataBox> values,
                           RecordId rid)  throws DatabaseException;
 
@@ -138,6 +142,8 @@ public abstract class BaseTransaction implements AutoCloseable {
 
     public abstract int getNumDataPages(String tableName) throws DatabaseException;
 
+    public abstract ZoneMap getZoneMap(String tableName) throws DatabaseException;
+
     public abstract int getNumEntriesPerPage(String tableName) throws DatabaseException;
 
     public abstract byte[] readPageHeader(String tableName, Page p) throws DatabaseException;
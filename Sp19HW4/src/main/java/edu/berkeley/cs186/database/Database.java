@@ -24,7 +24,9 @@ import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.stats.BloomFilter;
 import edu.berkeley.cs186.database.table.stats.TableStats;
+import edu.berkeley.cs186.database.table.stats.ZoneMap;
 import edu.berkeley.cs186.database.io.PageAllocator.PageIterator;
 
 public class Database {
@@ -408,6 +410,15 @@ public class Database {
 
         public boolean contains(String tableName, String columnName, DataBox key) throws DatabaseException {
             Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+
+            // A negative answer from the column's Bloom filter saves the index lookup.
+            Table tab = getTable(tableName);
+            String indexColumnName = index.getFirst().split(",")[1];
+            int column = tab.getSchema().getFieldNames().indexOf(indexColumnName);
+            BloomFilter filter = tab.getStats().getBloomFilter(column);
+            if (filter != null && !filter.mightContain(key)) {
+                return false;
+            }
             return index.getSecond().get(this, key).isPresent();
         }
 
@@ -466,6 +477,13 @@ public class Database {
             return getTable(tableName).iterator(this);
         }
 
+        public RecordIterator getRecordIterator(String tableName, int column,
+                                                QueryPlan.PredicateOperator predicate,
+                                                DataBox value) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).iterator(this, column, predicate, value);
+        }
+
         public RecordId updateRecord(String tableName, List<DataBox> values,
                                      RecordId rid)  throws DatabaseException {
             return runUpdateRecord(tableName, values, rid);
@@ -553,6 +571,11 @@ public class Database {
             return getTable(tableName).getNumDataPages();
         }
 
+        public ZoneMap getZoneMap(String tableName) throws DatabaseException {
+            assert(this.active);
+            return getTable(tableName).getZoneMap();
+        }
+
         public int getNumEntriesPerPage(String tableName) throws DatabaseException {
             assert(this.active);
             return getTable(tableName).getNumRecordsPerPage();
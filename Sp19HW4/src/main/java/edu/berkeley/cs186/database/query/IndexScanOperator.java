@@ -7,6 +7,7 @@ import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.BloomFilter;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 import edu.berkeley.cs186.database.table.stats.Histogram;
 
@@ -88,6 +89,15 @@ public class IndexScanOperator extends QueryOperator {
                                        this.value);
     }
 
+    @Override
+    public BloomFilter getBloomFilter(int column) throws QueryPlanException {
+        try {
+            return this.transaction.getStats(this.tableName).getBloomFilter(column);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
     /**
      * Estimates the IO cost of executing this query operator.
      * You should calculate this estimate cost with the formula
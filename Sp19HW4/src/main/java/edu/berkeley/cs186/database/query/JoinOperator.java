@@ -14,6 +14,7 @@ import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.BloomFilter;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public abstract class JoinOperator extends QueryOperator {
@@ -142,6 +143,15 @@ public abstract class JoinOperator extends QueryOperator {
 
     public abstract int estimateIOCost() throws QueryPlanException;
 
+    @Override
+    public BloomFilter getBloomFilter(int column) throws QueryPlanException {
+        int numLeftColumns = this.leftSource.getOutputSchema().getFieldNames().size();
+        if (column < numLeftColumns) {
+            return this.leftSource.getBloomFilter(column);
+        }
+        return this.rightSource.getBloomFilter(column - numLeftColumns);
+    }
+
     public Schema getSchema(String tableName) throws DatabaseException {
         return this.transaction.getSchema(tableName);
     }
@@ -233,12 +243,26 @@ public abstract class JoinOperator extends QueryOperator {
      * All iterators for subclasses of JoinOperator should subclass from
      * JoinIterator; JoinIterator handles creating temporary tables out of the left and right
      * input operators.
+     *
+     * If the sources have Bloom filters on their join columns, records that
+     * can't join with anything on the other side are left out of the temporary
+     * tables. Iterators that read a sequential scan's table directly should
+     * skip such records using rightMightMatch and leftMightMatch.
      */
     protected abstract class JoinIterator implements Iterator<Record> {
         private String leftTableName;
         private String rightTableName;
 
+        // Bloom filters on the join columns of the sources, or null.
+        private BloomFilter leftFilter;
+        private BloomFilter rightFilter;
+
         public JoinIterator() throws QueryPlanException, DatabaseException {
+            this.leftFilter = JoinOperator.this.getLeftSource().getBloomFilter(
+                                  JoinOperator.this.getLeftColumnIndex());
+            this.rightFilter = JoinOperator.this.getRightSource().getBloomFilter(
+                                   JoinOperator.this.getRightColumnIndex());
+
             if (JoinOperator.this.getLeftSource().isSequentialScan()) {
                 this.leftTableName = ((SequentialScanOperator) JoinOperator.this.getLeftSource()).getTableName();
             } else {
@@ -246,7 +270,10 @@ public abstract class JoinOperator extends QueryOperator {
                                          JoinOperator.this.getLeftSource().getOutputSchema());
                 Iterator<Record> leftIter = JoinOperator.this.getLeftSource().iterator();
                 while (leftIter.hasNext()) {
-                    JoinOperator.this.addRecord(this.leftTableName, leftIter.next().getValues());
+                    Record leftRecord = leftIter.next();
+                    if (this.rightMightMatch(leftRecord)) {
+                        JoinOperator.this.addRecord(this.leftTableName, leftRecord.getValues());
+                    }
                 }
             }
             if (JoinOperator.this.getRightSource().isSequentialScan()) {
@@ -256,7 +283,10 @@ public abstract class JoinOperator extends QueryOperator {
                                           JoinOperator.this.getRightSource().getOutputSchema());
                 Iterator<Record> rightIter = JoinOperator.this.getRightSource().iterator();
                 while (rightIter.hasNext()) {
-                    JoinOperator.this.addRecord(this.rightTableName, rightIter.next().getValues());
+                    Record rightRecord = rightIter.next();
+                    if (this.leftMightMatch(rightRecord)) {
+                        JoinOperator.this.addRecord(this.rightTableName, rightRecord.getValues());
+                    }
                 }
             }
         }
@@ -268,5 +298,29 @@ public abstract class JoinOperator extends QueryOperator {
         protected String getRightTableName() {
             return this.rightTableName;
         }
+
+        /**
+         * Returns false if the right source's Bloom filter proves that no right
+         * record joins with leftRecord.
+         */
+        protected boolean rightMightMatch(Record leftRecord) {
+            if (this.rightFilter == null) {
+                return true;
+            }
+            DataBox leftJoinValue = leftRecord.getValues().get(JoinOperator.this.getLeftColumnIndex());
+            return this.rightFilter.mightContain(leftJoinValue);
+        }
+
+        /**
+         * Returns false if the left source's Bloom filter proves that no left
+         * record joins with rightRecord.
+         */
+        protected boolean leftMightMatch(Record rightRecord) {
+            if (this.leftFilter == null) {
+                return true;
+            }
+            DataBox rightJoinValue = rightRecord.getValues().get(JoinOperator.this.getRightColumnIndex());
+            return this.leftFilter.mightContain(rightJoinValue);
+        }
     }
 }
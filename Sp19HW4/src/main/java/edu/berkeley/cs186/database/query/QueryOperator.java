@@ -6,6 +6,7 @@ import java.util.List;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.BloomFilter;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public abstract class QueryOperator {
@@ -184,4 +185,17 @@ public abstract class QueryOperator {
     public int getIOCost() {
         return this.cost;
     }
+
+    /**
+     * Returns a Bloom filter containing every value of column `column` of this
+     * operator's output, or null if no such filter is available. By default no
+     * filter is available; operators whose output columns come straight from a
+     * table with built statistics override this.
+     *
+     * @param column the index of the column in this operator's output schema
+     * @return a BloomFilter on the column, or null
+     */
+    public BloomFilter getBloomFilter(int column) throws QueryPlanException {
+        return null;
+    }
 }
@@ -7,6 +7,7 @@ import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.ZoneMap;
 
 /**
  * QueryPlan provides a set of functions to generate simple queries. Calling the methods corresponding
@@ -255,6 +256,35 @@ public class QueryPlan {
         return selectIndices;
     }
 
+    /**
+     * Gets all SELECT predicates on the given table whose column is tracked by
+     * the table's zone map, and so can be used to skip pages during a sequential
+     * scan. Columns with an index are left out: the index is the access path of
+     * choice for predicates on them.
+     *
+     * @return an ArrayList of SELECT predicates
+     */
+    private List<Integer> getEligibleZoneMapColumns(String table) throws DatabaseException {
+        List<Integer> selectIndices = new ArrayList<Integer>();
+
+        Schema schema = this.transaction.getFullyQualifiedSchema(table);
+        ZoneMap zoneMap = this.transaction.getZoneMap(table);
+        for (int i = 0; i < this.selectColumnNames.size(); i++) {
+            String column = this.selectColumnNames.get(i);
+            if (!column.contains(".")) {
+                column = table + "." + column;
+            }
+
+            int columnIndex = schema.getFieldNames().indexOf(column);
+            if (columnIndex != -1 && zoneMap.isTracked(columnIndex) &&
+                    !this.transaction.indexExists(table, this.selectColumnNames.get(i))) {
+                selectIndices.add(i);
+            }
+        }
+
+        return selectIndices;
+    }
+
     /**
      * Gets all columns for which there exists an index for that table
      *
@@ -332,6 +362,21 @@ public class QueryPlan {
         minOp = new SequentialScanOperator(this.transaction, table);
         int minCost = minOp.getIOCost();
 
+        // 1b. For each SELECT predicate on a column tracked by the table's zone
+        // map, find the cost of a sequential scan that skips the pages the zone
+        // map rules out. The predicate is still applied by a pushed down SELECT.
+        for (int index : getEligibleZoneMapColumns(table)) {
+            QueryOperator zoneScanOp = new SequentialScanOperator(this.transaction, table,
+                    this.selectColumnNames.get(index),
+                    this.selectOperators.get(index),
+                    this.selectDataBoxes.get(index));
+            int zoneScanCost = zoneScanOp.getIOCost();
+            if (zoneScanCost < minCost) {
+                minOp = zoneScanOp;
+                minCost = zoneScanCost;
+            }
+        }
+
         // 2. For each eligible index column, find the cost of an index scan of the
         // table and retain the lowest cost operator
         List<Integer> predIndexs = getEligibleIndexColumns(table);
@@ -69,6 +69,9 @@ public class SNLJOperator extends JoinOperator {
             this.nextRecord = null;
 
             this.leftRecord = leftIterator.hasNext() ? leftIterator.next() : null;
+            while (this.leftRecord != null && !rightMightMatch(this.leftRecord)) {
+                this.leftRecord = leftIterator.hasNext() ? leftIterator.next() : null;
+            }
             this.rightRecord = rightIterator.hasNext() ? rightIterator.next() : null;
 
             // We mark the first record so we can reset to it when we advance the left record.
@@ -104,8 +107,10 @@ public class SNLJOperator extends JoinOperator {
          * @throws DatabaseException
          */
         private void nextLeftRecord() throws DatabaseException {
-            if (!leftIterator.hasNext()) { throw new DatabaseException("All Done!"); }
-            leftRecord = leftIterator.next();
+            do {
+                if (!leftIterator.hasNext()) { throw new DatabaseException("All Done!"); }
+                leftRecord = leftIterator.next();
+            } while (!rightMightMatch(leftRecord));
         }
 
         /**
@@ -1,5 +1,6 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -8,6 +9,7 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.BloomFilter;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public class SelectOperator extends QueryOperator {
@@ -68,6 +70,11 @@ public class SelectOperator extends QueryOperator {
         return this.getSource().getIOCost();
     }
 
+    @Override
+    public BloomFilter getBloomFilter(int column) throws QueryPlanException {
+        return this.getSource().getBloomFilter(column);
+    }
+
     public Iterator<Record> iterator() throws QueryPlanException, DatabaseException { return new SelectIterator(); }
 
     /**
@@ -79,7 +86,16 @@ public class SelectOperator extends QueryOperator {
         private Record nextRecord;
 
         public SelectIterator() throws QueryPlanException, DatabaseException {
-            this.sourceIterator = SelectOperator.this.getSource().iterator();
+            // If the source's Bloom filter proves that no record can be equal to
+            // value, we don't need to read the source at all.
+            BloomFilter filter = SelectOperator.this.getSource().getBloomFilter(
+                                     SelectOperator.this.columnIndex);
+            if (SelectOperator.this.operator == QueryPlan.PredicateOperator.EQUALS &&
+                    filter != null && !filter.mightContain(value)) {
+                this.sourceIterator = Collections.emptyIterator();
+            } else {
+                this.sourceIterator = SelectOperator.this.getSource().iterator();
+            }
             this.markerRecord = MarkerRecord.getMarker();
             this.nextRecord = null;
         }
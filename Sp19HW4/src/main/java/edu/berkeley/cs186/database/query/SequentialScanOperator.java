@@ -4,14 +4,22 @@ import java.util.Iterator;
 
 import edu.berkeley.cs186.database.Database;
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.BloomFilter;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 public class SequentialScanOperator extends QueryOperator {
     private Database.Transaction transaction;
     private String tableName;
 
+    // An optional predicate used to skip pages using the table's zone map. If
+    // columnIndex is -1, every page is scanned.
+    private int columnIndex = -1;
+    private QueryPlan.PredicateOperator predicate;
+    private DataBox value;
+
     /**
      * Creates a new SequentialScanOperator that provides an iterator on all tuples in a table.
      *
@@ -34,12 +42,55 @@ public class SequentialScanOperator extends QueryOperator {
         this.cost = this.estimateIOCost();
     }
 
+    /**
+     * Creates a new SequentialScanOperator that uses the table's zone map to skip
+     * every page that cannot contain a tuple satisfying `columnName predicate
+     * value`. Tuples on the remaining pages are returned unfiltered, so a
+     * SelectOperator is still needed on top of this operator.
+     *
+     * @param transaction
+     * @param tableName
+     * @param columnName the column used to skip pages
+     * @param predicate
+     * @param value
+     * @throws QueryPlanException
+     * @throws DatabaseException
+     */
+    public SequentialScanOperator(Database.Transaction transaction,
+                                  String tableName,
+                                  String columnName,
+                                  QueryPlan.PredicateOperator predicate,
+                                  DataBox value) throws QueryPlanException, DatabaseException {
+        super(OperatorType.SEQSCAN);
+        this.transaction = transaction;
+        this.tableName = tableName;
+        this.predicate = predicate;
+        this.value = value;
+        this.setOutputSchema(this.computeSchema());
+        columnName = this.checkSchemaForColumn(this.getOutputSchema(), columnName);
+        this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(columnName);
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
     public String getTableName() {
         return this.tableName;
     }
 
     public Iterator<Record> iterator() throws DatabaseException {
-        return this.transaction.getRecordIterator(tableName);
+        if (this.columnIndex == -1) {
+            return this.transaction.getRecordIterator(tableName);
+        }
+        return this.transaction.getRecordIterator(tableName, this.columnIndex, this.predicate,
+                this.value);
+    }
+
+    /**
+     * Returns whether this scan skips pages using the table's zone map.
+     */
+    public boolean usesZoneMap() {
+        return this.columnIndex != -1;
     }
 
     public Schema computeSchema() throws QueryPlanException {
@@ -51,8 +102,13 @@ public class SequentialScanOperator extends QueryOperator {
     }
 
     public String str() {
-        return "type: " + this.getType() +
-               "\ntable: " + this.tableName;
+        String str = "type: " + this.getType() +
+                     "\ntable: " + this.tableName;
+        if (this.usesZoneMap()) {
+            str += "\nzone map: " + this.getOutputSchema().getFieldNames().get(this.columnIndex) +
+                   " " + this.predicate + " " + this.value;
+        }
+        return str;
     }
 
     /**
@@ -68,8 +124,25 @@ public class SequentialScanOperator extends QueryOperator {
         }
     }
 
+    @Override
+    public BloomFilter getBloomFilter(int column) throws QueryPlanException {
+        try {
+            return this.transaction.getStats(this.tableName).getBloomFilter(column);
+        } catch (DatabaseException de) {
+            throw new QueryPlanException(de);
+        }
+    }
+
+    /**
+     * A plain sequential scan reads every data page. A scan using the zone map
+     * only reads the pages whose zones admit the predicate.
+     */
     public int estimateIOCost() throws QueryPlanException {
         try {
+            if (this.usesZoneMap()) {
+                return this.transaction.getZoneMap(this.tableName).getNumPagesMayContain(
+                           this.columnIndex, this.predicate, this.value);
+            }
             return this.transaction.getNumDataPages(this.tableName);
         } catch (DatabaseException de) {
             throw new QueryPlanException(de);
@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.table;
 
 import java.io.Closeable;
 import java.util.*;
+import java.util.function.Consumer;
 
 import edu.berkeley.cs186.database.BaseTransaction;
 import edu.berkeley.cs186.database.DatabaseException;
@@ -15,7 +16,9 @@ import edu.berkeley.cs186.database.concurrency.LockUtil;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.io.Page;
 import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
 import edu.berkeley.cs186.database.table.stats.TableStats;
+import edu.berkeley.cs186.database.table.stats.ZoneMap;
 
 /**
  * # Overview
@@ -119,6 +122,9 @@ public class Table implements Closeable {
     // Statistics about the contents of the database.
     private TableStats stats;
 
+    // Per-page min/max of every numeric column, used to skip pages during scans.
+    private ZoneMap zoneMap;
+
     // The page numbers of all allocated pages which have room for more records.
     private TreeSet<Integer> freePageNums;
 
@@ -142,6 +148,7 @@ public class Table implements Closeable {
         this.bitmapSizeInBytes = computeBitmapSizeInBytes(Page.pageSize, schema);
         numRecordsPerPage = computeNumRecordsPerPage(Page.pageSize, schema);
         this.stats = new TableStats(this.schema);
+        this.zoneMap = new ZoneMap(this.schema);
         this.freePageNums = new TreeSet<Integer>();
         this.numRecords = 0;
         this.lockContext = lockContext;
@@ -166,6 +173,7 @@ public class Table implements Closeable {
         // iterate through every single data page of the file, and for each data
         // data page, we use the bitmap to read every single record.
         this.stats = new TableStats(this.schema);
+        this.zoneMap = new ZoneMap(this.schema);
         this.freePageNums = new TreeSet<Integer>();
         this.numRecords = 0;
 
@@ -179,6 +187,7 @@ public class Table implements Closeable {
                 if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
                     Record r = getRecord(transaction, new RecordId(page.getPageNum(), i));
                     stats.addRecord(r);
+                    zoneMap.addRecord(page.getPageNum(), r);
                     numRecords++;
                 }
             }
@@ -221,6 +230,10 @@ public class Table implements Closeable {
         return stats;
     }
 
+    public ZoneMap getZoneMap() {
+        return zoneMap;
+    }
+
     public long getNumRecords() {
         return numRecords;
     }
@@ -253,11 +266,12 @@ public class Table implements Closeable {
 
     // Modifiers /////////////////////////////////////////////////////////////////
     /**
-     * buildStatistics builds histograms on each of the columns of a table. Running
-     * it multiple times refreshes the statistics
+     * buildStatistics builds histograms and Bloom filters on each of the columns
+     * of a table. Running it multiple times refreshes the statistics
      */
     public TableStats buildStatistics(BaseTransaction transaction, int buckets) {
         this.stats.refreshHistograms(transaction, buckets, this);
+        this.stats.refreshBloomFilters(transaction, this);
         return this.stats;
     }
 
@@ -304,6 +318,7 @@ public class Table implements Closeable {
 
         // Update the metadata.
         stats.addRecord(record);
+        zoneMap.addRecord(page.getPageNum(), record);
         if (numRecordsOnPage(transaction, page) == numRecordsPerPage) {
             freePageNums.pollFirst();
         }
@@ -347,6 +362,7 @@ public class Table implements Closeable {
         insertRecord(transaction, page, rid.getEntryNum(), newRecord);
         this.stats.removeRecord(oldRecord);
         this.stats.addRecord(newRecord);
+        this.zoneMap.addRecord(rid.getPageNum(), newRecord);
         return oldRecord;
     }
 
@@ -363,9 +379,13 @@ public class Table implements Closeable {
         Bits.setBit(page.getBuffer(transaction), rid.getEntryNum(), Bits.Bit.ZERO);
 
         stats.removeRecord(record);
-        if(numRecordsOnPage(transaction, page) == numRecordsPerPage - 1) {
+        int numRecordsLeft = numRecordsOnPage(transaction, page);
+        if (numRecordsLeft == numRecordsPerPage - 1) {
             freePageNums.add(page.getPageNum());
         }
+        if (numRecordsLeft == 0) {
+            zoneMap.clearPage(page.getPageNum());
+        }
         numRecords--;
 
         return record;
@@ -458,6 +478,27 @@ public class Table implements Closeable {
         }
     }
 
+    /**
+     * Calls action on every record of the table. Like the constructor, this
+     * reads the bitmap of every data page directly rather than going through
+     * iterator.
+     */
+    public void forEachRecord(BaseTransaction transaction, Consumer<Record> action) {
+        Iterator<Page> iter = this.allocator.iterator(transaction);
+        iter.next(); // Skip the header page.
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            byte[] bitmap = getBitMap(transaction, page);
+            Buffer buf = page.getBuffer(transaction);
+            for (int i = 0; i < numRecordsPerPage; ++i) {
+                if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
+                    buf.position(bitmapSizeInBytes + i * schema.getSizeInBytes());
+                    action.accept(Record.fromBytes(buf, schema));
+                }
+            }
+        }
+    }
+
     // Iterators /////////////////////////////////////////////////////////////////
     public BacktrackingIterator<RecordId> ridIterator(BaseTransaction transaction) {
         return newTableIterator(transaction);
@@ -467,6 +508,27 @@ public class Table implements Closeable {
         return new RecordIterator(transaction, this, ridIterator(transaction));
     }
 
+    /**
+     * Returns an iterator over the RecordIds of the table that never fetches a
+     * page which the zone map proves cannot contain a record satisfying `column
+     * predicate value`. The iterator may still return records that do not
+     * satisfy the predicate; callers must filter them themselves.
+     */
+    public Iterator<RecordId> ridIterator(BaseTransaction transaction, int column,
+                                          PredicateOperator predicate, DataBox value) {
+        return new ZoneMapRIDIterator(transaction, column, predicate, value);
+    }
+
+    /**
+     * Like ridIterator(transaction, column, predicate, value), but returns the
+     * records rather than their RecordIds.
+     */
+    public RecordIterator iterator(BaseTransaction transaction, int column,
+                                   PredicateOperator predicate, DataBox value) {
+        return new RecordIterator(transaction, this,
+                                  ridIterator(transaction, column, predicate, value));
+    }
+
     public BacktrackingIterator<Record> blockIterator(BaseTransaction transaction, Page[] block) {
         return new RecordIterator(transaction, this, new RIDBlockIterator(transaction, block));
     }
@@ -659,6 +721,68 @@ public class Table implements Closeable {
         }
     }
 
+    /**
+     * ZoneMapRIDIterator is an Iterator over the RecordIds of the data pages
+     * whose zones admit a predicate. Every page with a record on it has a zone,
+     * so the iterator walks the page numbers of the zone map, in order, and
+     * rules pages out before fetching them: a skipped page is never read. The
+     * bitmap of every remaining page is read when the iterator reaches it.
+     */
+    private class ZoneMapRIDIterator implements Iterator<RecordId> {
+        private BaseTransaction transaction;
+        private Iterator<Integer> pageNums;
+
+        // The page being iterated over, its bitmap, and the entry number to
+        // look at next.
+        private int pageNum = -1;
+        private byte[] bitmap = null;
+        private int entryNum = 0;
+
+        private RecordId nextRecordId = null;
+
+        ZoneMapRIDIterator(BaseTransaction transaction, int column,
+                           PredicateOperator predicate, DataBox value) {
+            this.transaction = transaction;
+            List<Integer> pageNums = new ArrayList<>();
+            for (int pageNum : zoneMap.getPageNums()) {
+                if (zoneMap.mayContain(pageNum, column, predicate, value)) {
+                    pageNums.add(pageNum);
+                }
+            }
+            Collections.sort(pageNums);
+            this.pageNums = pageNums.iterator();
+        }
+
+        public boolean hasNext() {
+            while (this.nextRecordId == null) {
+                if (this.bitmap == null || this.entryNum == numRecordsPerPage) {
+                    if (!this.pageNums.hasNext()) {
+                        return false;
+                    }
+                    this.pageNum = this.pageNums.next();
+                    Page page = allocator.fetchPage(this.transaction, this.pageNum);
+                    this.bitmap = getBitMap(this.transaction, page);
+                    this.entryNum = 0;
+                    continue;
+                }
+                if (Bits.getBit(this.bitmap, this.entryNum) == Bits.Bit.ONE) {
+                    this.nextRecordId = new RecordId(this.pageNum, (short) this.entryNum);
+                }
+                this.entryNum++;
+            }
+            return true;
+        }
+
+        public RecordId next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            RecordId rid = this.nextRecordId;
+            this.nextRecordId = null;
+            return rid;
+        }
+    }
+
     /**
      * A helper function that returns the same iterator passed in, but with
      * a single page skipped.
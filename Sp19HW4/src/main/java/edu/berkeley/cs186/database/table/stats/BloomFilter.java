@@ -0,0 +1,90 @@
+package edu.berkeley.cs186.database.table.stats;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+
+/**
+ * A BloomFilter is a compact, probabilistic summary of the set of values in a
+ * column. It answers the question "could this column contain value v?" with
+ * either a definite no or a maybe:
+ *
+ *   BloomFilter filter = new BloomFilter(1000);
+ *   filter.add(new IntDataBox(1));
+ *   filter.add(new IntDataBox(2));
+ *   filter.mightContain(new IntDataBox(1)); // true
+ *   filter.mightContain(new IntDataBox(3)); // almost certainly false
+ *
+ * Values can only be added, never removed, so a filter stays correct (if a bit
+ * less selective) as records are deleted from the table it summarizes.
+ *
+ * The filter is sized for an expected number of values using BITS_PER_VALUE
+ * bits and NUM_HASHES hash functions per value, which gives a false positive
+ * rate of roughly 1% while the expected number of values is not exceeded. The
+ * hash functions are derived from DataBox.hashCode using double hashing.
+ */
+public class BloomFilter {
+    static final int BITS_PER_VALUE = 10;
+    static final int NUM_HASHES = 7;
+
+    // The smallest filter we'll build, so that filters on tiny or empty tables
+    // don't saturate after a handful of inserts.
+    static final int MIN_NUM_BITS = 1024;
+
+    private long[] bits;
+    private int numBits;
+
+    /** Construct an empty BloomFilter sized for `expectedNumValues` values. */
+    public BloomFilter(int expectedNumValues) {
+        long numBits = Math.max((long) expectedNumValues * BITS_PER_VALUE, MIN_NUM_BITS);
+        numBits = Math.min(numBits, Integer.MAX_VALUE - Long.SIZE);
+        this.bits = new long[(int) ((numBits + Long.SIZE - 1) / Long.SIZE)];
+        this.numBits = this.bits.length * Long.SIZE;
+    }
+
+    // Modifiers /////////////////////////////////////////////////////////////////
+    public synchronized void add(DataBox value) {
+        int h1 = value.hashCode();
+        int h2 = secondHash(h1);
+        for (int i = 0; i < NUM_HASHES; ++i) {
+            int bit = bitIndex(h1 + i * h2);
+            bits[bit / Long.SIZE] |= 1L << (bit % Long.SIZE);
+        }
+    }
+
+    // Accessors /////////////////////////////////////////////////////////////////
+    /**
+     * Returns false if `value` was definitely never added to this filter, and
+     * true if it may have been.
+     */
+    public synchronized boolean mightContain(DataBox value) {
+        int h1 = value.hashCode();
+        int h2 = secondHash(h1);
+        for (int i = 0; i < NUM_HASHES; ++i) {
+            int bit = bitIndex(h1 + i * h2);
+            if ((bits[bit / Long.SIZE] & (1L << (bit % Long.SIZE))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getNumBits() {
+        return numBits;
+    }
+
+    // Helpers ///////////////////////////////////////////////////////////////////
+    private int bitIndex(int hash) {
+        return Math.floorMod(hash, numBits);
+    }
+
+    /**
+     * DataBox hash codes are often poorly distributed (an IntDataBox hashes to
+     * its own value), so we scramble the first hash with a multiplicative hash
+     * to get an independent second one. The result is forced to be odd so that
+     * the NUM_HASHES probes never collapse onto a single bit.
+     */
+    private static int secondHash(int hash) {
+        int h = hash * 0x9E3779B9;
+        h ^= h >>> 16;
+        return h | 1;
+    }
+}
@@ -45,12 +45,24 @@ import edu.berkeley.cs186.database.table.Table;
  *   stats.getNumRecords(); // Estimated number of records.
  *   stats.getNumPages();   // Estimated number of pages.
  *   stats.getHistograms(); // Histograms on each column.
+ *
+ * Once a table's statistics have been built, the TableStats of the table also
+ * carries a Bloom filter on every column, which can prove that a value does not appear
+ * in the column without reading any of the table's pages:
+ *
+ *   BloomFilter filter = stats.getBloomFilter(0);
+ *   if (filter != null && !filter.mightContain(x1)) {
+ *     // No record has x = x1.
+ *   }
  */
 public class TableStats {
     private Schema tableSchema;
     private int numRecords;
     private List<Histogram> histograms;
 
+    // A Bloom filter on each column, or null if they have not been built yet.
+    private List<BloomFilter> bloomFilters;
+
     /** Construct a TableStats for an empty table with schema `tableSchema`. */
     public TableStats(Schema tableSchema) {
         this.tableSchema = tableSchema;
@@ -60,17 +72,25 @@ public class TableStats {
             Histogram h = new Histogram();
             this.histograms.add(h);
         }
+        this.bloomFilters = null;
     }
 
     private TableStats(Schema tableSchema, int numRecords, List<Histogram> histograms) {
         this.tableSchema = tableSchema;
         this.numRecords = numRecords;
         this.histograms = histograms;
+        this.bloomFilters = null;
     }
 
     // Modifiers /////////////////////////////////////////////////////////////////
     public void addRecord(Record record) {
         numRecords++;
+        if (bloomFilters != null) {
+            List<DataBox> values = record.getValues();
+            for (int i = 0; i < bloomFilters.size(); ++i) {
+                bloomFilters.get(i).add(values.get(i));
+            }
+        }
     }
 
     public void refreshHistograms(BaseTransaction transaction, int buckets, Table tab) {
@@ -89,6 +109,28 @@ public class TableStats {
         this.numRecords = (int) Math.round(((float)totalRecords) / count);
     }
 
+    /**
+     * Rebuilds the Bloom filter on every column of `tab` with a single pass over
+     * the table. The filters are sized for the current number of records, and
+     * are kept up to date by addRecord from then on.
+     */
+    public void refreshBloomFilters(BaseTransaction transaction, Table tab) {
+        int expectedNumValues = (int) Math.min(tab.getNumRecords(), Integer.MAX_VALUE);
+        List<BloomFilter> newBloomFilters = new ArrayList<>();
+        for (int i = 0; i < tableSchema.getFieldTypes().size(); ++i) {
+            newBloomFilters.add(new BloomFilter(expectedNumValues));
+        }
+
+        tab.forEachRecord(transaction, record -> {
+            List<DataBox> values = record.getValues();
+            for (int i = 0; i < newBloomFilters.size(); ++i) {
+                newBloomFilters.get(i).add(values.get(i));
+            }
+        });
+
+        this.bloomFilters = newBloomFilters;
+    }
+
     public void removeRecord(Record record) {
         numRecords = Math.max(numRecords - 1, 0);
     }
@@ -119,6 +161,17 @@ public class TableStats {
         return histograms;
     }
 
+    /**
+     * Returns the Bloom filter on column `column`, or null if no Bloom filters
+     * have been built.
+     */
+    public BloomFilter getBloomFilter(int column) {
+        if (bloomFilters == null || column < 0 || column >= bloomFilters.size()) {
+            return null;
+        }
+        return bloomFilters.get(column);
+    }
+
     // Copiers ///////////////////////////////////////////////////////////////////
     /**
      * Estimates the table statistics for the table that would be produced after
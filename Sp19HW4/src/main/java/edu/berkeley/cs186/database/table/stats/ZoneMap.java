@@ -0,0 +1,148 @@
+package edu.berkeley.cs186.database.table.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A ZoneMap records, for every data page of a table, the minimum and maximum
+ * value of each numeric (int or float) column stored on that page. A scan with
+ * a predicate like `x > 100` can consult the zone map and skip every page
+ * whose maximum value of x is at most 100 without ever fetching the page:
+ *
+ *   page 1: x in [0, 40]    <- skipped
+ *   page 2: x in [35, 99]   <- skipped
+ *   page 3: x in [90, 180]  <- scanned
+ *   page 4: x in [150, 210] <- scanned
+ *
+ * Zones are only ever widened. Adding a record to a page widens the page's
+ * zone to include the record, but removing a record (or overwriting it)
+ * leaves the zone as is, so a zone is always a superset of the values
+ * actually on the page. This keeps maintenance cheap while guaranteeing that
+ * we never skip a page which contains a matching record. Calling clearPage
+ * resets a page's zone once the page is known to be empty.
+ *
+ * Columns of any other type (bool, string) are not tracked, and mayContain
+ * conservatively returns true for predicates on them.
+ */
+public class ZoneMap {
+    private Schema schema;
+
+    // Maps a page number to the [min, max] of each column on that page. Untracked
+    // columns have a null zone.
+    private Map<Integer, DataBox[][]> zones;
+
+    /** Construct an empty ZoneMap for a table with schema `schema`. */
+    public ZoneMap(Schema schema) {
+        this.schema = schema;
+        this.zones = new HashMap<>();
+    }
+
+    // Modifiers /////////////////////////////////////////////////////////////////
+    /** Widens the zone of page `pageNum` to include `record`. */
+    public synchronized void addRecord(int pageNum, Record record) {
+        List<DataBox> values = record.getValues();
+        DataBox[][] zone = zones.get(pageNum);
+        if (zone == null) {
+            zone = new DataBox[values.size()][];
+            zones.put(pageNum, zone);
+        }
+
+        for (int i = 0; i < values.size(); ++i) {
+            if (!isTracked(i)) {
+                continue;
+            }
+            DataBox value = values.get(i);
+            if (zone[i] == null) {
+                zone[i] = new DataBox[] {value, value};
+            } else {
+                if (value.compareTo(zone[i][0]) < 0) {
+                    zone[i][0] = value;
+                }
+                if (value.compareTo(zone[i][1]) > 0) {
+                    zone[i][1] = value;
+                }
+            }
+        }
+    }
+
+    /** Forgets the zone of page `pageNum`, e.g. because the page is now empty. */
+    public synchronized void clearPage(int pageNum) {
+        zones.remove(pageNum);
+    }
+
+    // Accessors /////////////////////////////////////////////////////////////////
+    /**
+     * Returns whether column `column` is tracked by this zone map, i.e. whether
+     * predicates on the column can be used to skip pages.
+     */
+    public boolean isTracked(int column) {
+        TypeId typeId = schema.getFieldTypes().get(column).getTypeId();
+        return typeId == TypeId.INT || typeId == TypeId.FLOAT;
+    }
+
+    /**
+     * Returns false only if no record on page `pageNum` can satisfy the
+     * predicate `column predicate value`. A page with no zone has never had a
+     * record added to it and so cannot contain a match.
+     */
+    public synchronized boolean mayContain(int pageNum, int column,
+                                           PredicateOperator predicate, DataBox value) {
+        if (!isTracked(column)) {
+            return true;
+        }
+
+        DataBox[][] zone = zones.get(pageNum);
+        if (zone == null) {
+            return false;
+        }
+
+        DataBox min = zone[column][0];
+        DataBox max = zone[column][1];
+        switch (predicate) {
+        case EQUALS:
+            return min.compareTo(value) <= 0 && max.compareTo(value) >= 0;
+        case NOT_EQUALS:
+            return !(min.compareTo(value) == 0 && max.compareTo(value) == 0);
+        case LESS_THAN:
+            return min.compareTo(value) < 0;
+        case LESS_THAN_EQUALS:
+            return min.compareTo(value) <= 0;
+        case GREATER_THAN:
+            return max.compareTo(value) > 0;
+        case GREATER_THAN_EQUALS:
+            return max.compareTo(value) >= 0;
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of pages that may contain a record satisfying the
+     * predicate `column predicate value`. If the column is not tracked, this is
+     * simply the number of pages with a zone.
+     */
+    public synchronized int getNumPagesMayContain(int column, PredicateOperator predicate,
+                                                  DataBox value) {
+        int numPages = 0;
+        for (int pageNum : zones.keySet()) {
+            if (mayContain(pageNum, column, predicate, value)) {
+                numPages++;
+            }
+        }
+        return numPages;
+    }
+
+    /** Returns the page numbers of all pages with a zone, in no particular order. */
+    public synchronized List<Integer> getPageNums() {
+        return new ArrayList<>(zones.keySet());
+    }
+}
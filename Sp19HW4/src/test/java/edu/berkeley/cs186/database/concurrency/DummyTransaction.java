@@ -16,6 +16,7 @@ import edu.berkeley.cs186.database.table.RecordId;
 import edu.berkeley.cs186.database.table.RecordIterator;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
+import edu.berkeley.cs186.database.table.stats.ZoneMap;
 
 /**
  * A dummy transaction class that only supports checking/setting active/blocked
@@ -122,6 +123,12 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public RecordIterator getRecordIterator(String tableName, int column,
+                                            QueryPlan.PredicateOperator predicate,
+                                            DataBox value) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public RecordId updateRecord(String tableName, List<DataBox> values,
                                  RecordId rid)  throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -159,6 +166,10 @@ public class DummyTransaction extends BaseTransaction {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    public ZoneMap getZoneMap(String tableName) throws DatabaseException {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     public int getNumEntriesPerPage(String tableName) throws DatabaseException {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
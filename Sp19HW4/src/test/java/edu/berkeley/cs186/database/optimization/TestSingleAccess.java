@@ -6,14 +6,18 @@ import org.junit.*;
 import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
 
+import static org.junit.Assert.*;
+
 import java.io.File;
 import java.util.Arrays;
+import java.util.Iterator;
 
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.query.QueryOperator;
 import edu.berkeley.cs186.database.query.QueryPlanException;
+import edu.berkeley.cs186.database.query.SequentialScanOperator;
 
 import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.Record;
@@ -161,6 +165,47 @@ public class TestSingleAccess {
         assert(op.getSource().isSequentialScan());
     }
 
+    @Test
+    @Category(PublicTests.class)
+    public void testZoneMapSequentialScan() throws DatabaseException, QueryPlanException {
+        Table table = db.getTable(TABLENAME);
+        BaseTransaction transaction = this.db.beginTransaction();
+
+        try {
+            for (int i = 0; i < 2000; ++i) {
+                Record r = createRecordWithAllTypes(false, i, "test", 0.0f);
+                table.addRecord(transaction, r.getValues());
+            }
+        } catch(DatabaseException e) {}
+
+        table.buildStatistics(transaction, 10);
+
+        transaction.end();
+        transaction = this.db.beginTransaction();
+
+        transaction.queryAs(TABLENAME, "t1");
+
+        QueryPlan query = transaction.query("t1");
+        query.select("int", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(1990));
+
+        QueryOperator op = query.minCostSingleAccess("t1");
+
+        assertTrue(op.isSelect());
+        assertTrue(op.getSource().isSequentialScan());
+        SequentialScanOperator scan = (SequentialScanOperator) op.getSource();
+        assertTrue(scan.usesZoneMap());
+        assertEquals(1, scan.getIOCost());
+        assertTrue(scan.getIOCost() < transaction.getNumDataPages("t1"));
+
+        Iterator<Record> records = op.execute();
+        int count = 0;
+        while (records.hasNext()) {
+            assertTrue(records.next().getValues().get(1).getInt() >= 1990);
+            count++;
+        }
+        assertEquals(10, count);
+    }
+
     @Test
     @Category(PublicTests.class)
     public void testPushDownMultipleSelects() throws DatabaseException, QueryPlanException {
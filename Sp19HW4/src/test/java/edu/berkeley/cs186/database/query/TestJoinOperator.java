@@ -456,4 +456,35 @@ public class TestJoinOperator {
         }
         assertTrue(count == 82944);
     }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBloomFilterSkipsLeftRecords() throws QueryPlanException, DatabaseException,
+        IOException {
+        File tempDir = tempFolder.newFolder("joinTest");
+        Database database = new Database(tempDir.getAbsolutePath());
+        Database.Transaction transaction = database.beginTransaction();
+        transaction.createTable(TestUtils.createSchemaWithAllTypes(), "rightTable");
+        for (int i = 0; i < 10; i++) {
+            transaction.addRecord("rightTable", TestUtils.createRecordWithAllTypesWithValue(i).getValues());
+        }
+        database.getTable("rightTable").buildStatistics(transaction, 10);
+
+        List<Record> leftRecords = new ArrayList<Record>();
+        for (int i = 0; i < 100; i++) {
+            leftRecords.add(TestUtils.createRecordWithAllTypesWithValue(i));
+        }
+        TestSourceOperator leftSource = new TestSourceOperator(leftRecords,
+                TestUtils.createSchemaWithAllTypes());
+        JoinOperator joinOperator = new BNLJOperator(leftSource,
+                new SequentialScanOperator(transaction, "rightTable"), "int", "int", transaction);
+        joinOperator.iterator();
+
+        // The left source is written out to a temporary table, leaving out the
+        // records that the right table's Bloom filter rejects. Only the ten
+        // matching records, and the odd false positive, are left.
+        long numLeftRecords = transaction.getNumRecords("tempTable0");
+        assertTrue(numLeftRecords >= 10);
+        assertTrue(numLeftRecords < 20);
+    }
 }
@@ -0,0 +1,122 @@
+package edu.berkeley.cs186.database.stats;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.table.TableStub;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import edu.berkeley.cs186.database.table.stats.BloomFilter;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.DatabaseException;
+
+import edu.berkeley.cs186.database.table.Table;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.BoolDataBox;
+
+import static org.junit.Assert.*;
+import org.junit.After;
+
+@Category(HW4Tests.class)
+public class TestBloomFilter {
+    private Table table;
+    private Schema schema;
+    public static final String TABLENAME = "testtable";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        this.schema = TestUtils.createSchemaWithAllTypes();
+        this.table = createTestTable(this.schema, TABLENAME);
+    }
+
+    @After
+    public void afterEach() {
+        this.table.close();
+    }
+
+    private Table createTestTable(Schema schema, String tableName) throws DatabaseException {
+        try {
+            File file = tempFolder.newFile(tableName + Table.FILENAME_EXTENSION);
+            return new TableStub(tableName, schema, file.getAbsolutePath(), new DummyLockContext(), null);
+        } catch (IOException e) {
+            throw new DatabaseException(e.getMessage());
+        }
+    }
+
+    //creates a record with all specified types
+    private static Record createRecordWithAllTypes(boolean a1, int a2, String a3, float a4) {
+        Record r = TestUtils.createRecordWithAllTypes();
+        r.getValues().set(0, new BoolDataBox(a1));
+        r.getValues().set(1, new IntDataBox(a2));
+        r.getValues().set(2, new StringDataBox(a3, 5));
+        r.getValues().set(3, new FloatDataBox(a4));
+        return r;
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(1000);
+        for (int i = 0; i < 1000; ++i) {
+            filter.add(new IntDataBox(i * 7));
+        }
+        for (int i = 0; i < 1000; ++i) {
+            assertTrue(filter.mightContain(new IntDataBox(i * 7)));
+        }
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testFalsePositiveRate() {
+        BloomFilter filter = new BloomFilter(1000);
+        for (int i = 0; i < 1000; ++i) {
+            filter.add(new IntDataBox(i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 1000; i < 11000; ++i) {
+            if (filter.mightContain(new IntDataBox(i))) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300);
+    }
+
+    @Test
+    @Category(PublicTests.class)
+    public void testBuildAndMaintain() throws DatabaseException {
+        for (int i = 0; i < 500; ++i) {
+            Record r = createRecordWithAllTypes(false, i, "test", 1.0f);
+            table.addRecord(null, r.getValues());
+        }
+
+        // Bloom filters are only built along with the rest of the statistics.
+        assertNull(table.getStats().getBloomFilter(1));
+
+        table.buildStatistics(null, 10);
+        BloomFilter filter = table.getStats().getBloomFilter(1);
+        assertNotNull(filter);
+        for (int i = 0; i < 500; ++i) {
+            assertTrue(filter.mightContain(new IntDataBox(i)));
+        }
+        assertTrue(table.getStats().getBloomFilter(2).mightContain(new StringDataBox("test", 5)));
+
+        // Records added after the statistics are built are added to the filters.
+        Record r = createRecordWithAllTypes(true, 123456, "test", 1.0f);
+        table.addRecord(null, r.getValues());
+        assertTrue(filter.mightContain(new IntDataBox(123456)));
+    }
+}
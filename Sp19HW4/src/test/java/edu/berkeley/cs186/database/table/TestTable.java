@@ -8,8 +8,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
@@ -29,6 +31,8 @@ import edu.berkeley.cs186.database.common.BacktrackingIterator;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.Page;
+import edu.berkeley.cs186.database.io.PageAllocator;
+import edu.berkeley.cs186.database.query.QueryPlan.PredicateOperator;
 
 @Category(HW3Tests.class)
 public class TestTable {
@@ -457,6 +461,51 @@ public class TestTable {
         assertFalse(iter.hasNext());
     }
 
+    /**
+     * Test that a zone map scan only fetches the pages whose zones admit the
+     * predicate.
+     */
+    @Test
+    @Category(PublicTests.class)
+    public void testZoneMapRIDIteratorSkipsPages() throws DatabaseException {
+        int numRecordsPerPage = table.getNumRecordsPerPage();
+        for (int i = 0; i < numRecordsPerPage * 3; ++i) {
+            table.addRecord(null, createRecordWithAllTypes(i).getValues());
+        }
+
+        // Only the last page can hold ints of at least 3 * numRecordsPerPage - 5.
+        int min = numRecordsPerPage * 3 - 5;
+        long numIOs = PageAllocator.getNumIOs();
+        Iterator<RecordId> rids = table.ridIterator(null, 1,
+                                  PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(min));
+        Set<Integer> pageNums = new HashSet<>();
+        int numRids = 0;
+        while (rids.hasNext()) {
+            pageNums.add(rids.next().getPageNum());
+            numRids++;
+        }
+        assertEquals(1, pageNums.size());
+        assertEquals(numRecordsPerPage, numRids);
+        assertEquals(1, PageAllocator.getNumIOs() - numIOs);
+
+        // No page can hold a negative int, so nothing is fetched.
+        numIOs = PageAllocator.getNumIOs();
+        rids = table.ridIterator(null, 1, PredicateOperator.LESS_THAN, new IntDataBox(0));
+        assertFalse(rids.hasNext());
+        assertEquals(0, PageAllocator.getNumIOs() - numIOs);
+
+        // The records returned include the ones that satisfy the predicate.
+        Iterator<Record> records = table.iterator(null, 1, PredicateOperator.GREATER_THAN_EQUALS,
+                                   new IntDataBox(min));
+        int numMatches = 0;
+        while (records.hasNext()) {
+            if (records.next().getValues().get(1).getInt() >= min) {
+                numMatches++;
+            }
+        }
+        assertEquals(5, numMatches);
+    }
+
     /**
      * Simple test of TableIterator over three pages of records with no gaps.
      */